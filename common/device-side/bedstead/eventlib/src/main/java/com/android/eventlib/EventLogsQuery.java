@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * Interface to provide additional restrictions on an {@link Event} query.
@@ -70,18 +71,29 @@ public abstract class EventLogsQuery<E extends Event, F extends EventLogsQuery>
     }
 
     /**
-     * Returns true if {@code E} matches custom and default filters for this {@link Event} subclass.
+     * Compiles the serializable part of this query into a predicate over logged events.
+     *
+     * <p>This is evaluated in the process which logged the events, so only matching events have
+     * to be returned to the querying process. Custom filters are not included as they cannot be
+     * sent to another process, see {@link #filterCustom}.
      */
-    protected final boolean filterAll(E event) {
-        if (mFilters != null) {
-            // Filters will be null when called remotely
-            for (Function<E, Boolean> filter : mFilters) {
-                if (!filter.apply(event)) {
-                    return false;
-                }
+    final Predicate<Event> compile() {
+        Class<E> eventClass = mEventClass;
+        return event -> eventClass.isInstance(event) && filter((E) event);
+    }
+
+    /**
+     * Returns true if {@code E} matches the custom filters applied with {@link #filter(Function)}.
+     *
+     * <p>The event must already match {@link #compile()}.
+     */
+    final boolean filterCustom(E event) {
+        for (Function<E, Boolean> filter : mFilters) {
+            if (!filter.apply(event)) {
+                return false;
             }
         }
-        return filter(event);
+        return true;
     }
 
     /** Returns true if {@code E} matches the custom filters for this {@link Event} subclass. */
@@ -19,34 +19,32 @@ package com.android.eventlib;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Event store for the current package. */
 final class Events {
 
     private static final String TAG = "EventLibEvents";
-    private static final String EVENT_LOG_FILE_NAME = "Events";
+    // The single file events were written to before they were written to segments
+    private static final String LEGACY_EVENT_LOG_FILE_NAME = "Events";
+    private static final String EVENT_LOG_DIRECTORY_NAME = "EventLog";
     private static final Duration MAX_LOG_AGE = Duration.ofMinutes(5);
-    private static final int BYTES_PER_INT = 4;
 
     private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
-    private AtomicBoolean mLoadedHistory = new AtomicBoolean(false);
 
     /** Interface used to be informed when new events are logged. */
     interface EventListener {
@@ -55,7 +53,7 @@ final class Events {
 
     private static Events mInstance;
 
-    static Events getInstance(Context context, boolean needsHistory) {
+    static Events getInstance(Context context) {
         if (mInstance == null) {
             synchronized (Events.class) {
                 if (mInstance == null) {
@@ -64,71 +62,30 @@ final class Events {
             }
         }
 
-        if (needsHistory) {
-            mInstance.loadHistory();
-        }
-
         return mInstance;
     }
 
-    private final Context mContext; // ApplicationContext
-    private FileOutputStream mOutputStream;
+    private final SegmentedEventLog mEventLog;
+    // Events logged by earlier processes, loaded when an event class is first queried
+    private final Map<Class<? extends Event>, List<Event>> mHistory = new HashMap<>();
 
     private Events(Context context) {
-        this.mContext = context;
-    }
-
-    private void loadHistory() {
-        if (mLoadedHistory.getAndSet(true)) {
-            return;
-        }
-
-        loadEventsFromFile();
+        context.deleteFile(LEGACY_EVENT_LOG_FILE_NAME);
+        mEventLog = new SegmentedEventLog(
+                new File(context.getFilesDir(), EVENT_LOG_DIRECTORY_NAME), MAX_LOG_AGE);
     }
 
-    private void loadEventsFromFile() {
-        synchronized (mEventList) {
-            mEventList.clear();
-            Instant now = Instant.now();
-            Deque<Event> eventQueue = new ArrayDeque<>();
-            try (FileInputStream fileInputStream = mContext.openFileInput(EVENT_LOG_FILE_NAME)) {
-                Event event = readEvent(fileInputStream);
-
-                while (event != null) {
-                    // I'm not sure if we need this
-                    if (event.mTimestamp.plus(MAX_LOG_AGE).isAfter(now)) {
-                        eventQueue.addFirst(event);
-                    }
-                    event = readEvent(fileInputStream);
-                }
-
-                for (Event e : eventQueue) {
-                    mEventList.addFirst(e);
-                }
-            } catch (FileNotFoundException e) {
-                // Ignore this exception as if there's no file there's nothing to load
-                Log.i(TAG, "No existing event file");
-            } catch (IOException e) {
-                Log.e(TAG, "Error when loading events from file", e);
+    private List<Event> getHistory(Class<? extends Event> eventClass) {
+        synchronized (mHistory) {
+            List<Event> history = mHistory.get(eventClass);
+            if (history == null) {
+                history = mEventLog.readHistory(eventClass);
+                mHistory.put(eventClass, history);
             }
+            return history;
         }
     }
 
-    private Event readEvent(FileInputStream fileInputStream) throws IOException {
-        if (fileInputStream.available() < BYTES_PER_INT) {
-            return null;
-        }
-        byte[] sizeBytes = new byte[BYTES_PER_INT];
-        fileInputStream.read(sizeBytes);
-
-        int size = ByteBuffer.wrap(sizeBytes).getInt();
-
-        byte[] eventBytes = new byte[size];
-        fileInputStream.read(eventBytes);
-
-        return Event.fromBytes(eventBytes);
-    }
-
     /** Saves the event so it can be queried. */
     void log(Event event) {
         sExecutor.execute(() -> {
@@ -142,24 +99,20 @@ final class Events {
     }
 
     private void writeEventToFile(Event event) {
+        byte[] eventBytes;
         try {
-            if (mOutputStream == null) {
-                mOutputStream = mContext.openFileOutput(
-                        EVENT_LOG_FILE_NAME, Context.MODE_PRIVATE | Context.MODE_APPEND);
-            }
+            eventBytes = event.toBytes();
+        } catch (Throwable e) {
+            // This will happen if the event contains a Binder - can't be written to disk
+            Log.e(TAG, "We can't write this event to disk because it contains a Binder "
+                    + "(this may cause errors in tests after this point - particularly related"
+                    + " to EventLib)", e);
+            return;
+        }
 
+        try {
             Log.e(TAG, "writing event to file: " + event);
-            try {
-                byte[] eventBytes = event.toBytes();
-                mOutputStream.write(
-                        ByteBuffer.allocate(BYTES_PER_INT).putInt(eventBytes.length).array());
-                mOutputStream.write(eventBytes);
-            } catch (Throwable e) {
-                // This will happen if the event contains a Binder - can't be written to disk
-                Log.e(TAG, "We can't write this event to disk because it contains a Binder "
-                        + "(this may cause errors in tests after this point - particularly related"
-                        + " to EventLib)", e);
-            }
+            mEventLog.append(event, eventBytes);
         } catch (IOException e) {
             throw new IllegalStateException("Error writing event to log", e);
         }
@@ -170,22 +123,39 @@ final class Events {
     private final Set<EventListener> mEventListeners
             = Collections.newSetFromMap(new WeakHashMap<>());
 
-    /** Get all logged events. */
+    /** Get all events logged by this process. */
     public Queue<Event> getEvents() {
         return mEventList;
     }
 
-    /** Register an {@link EventListener} to be called when a new {@link Event} is logged. */
-    public Queue<Event> registerEventListener(EventListener listener) {
+    /**
+     * Register an {@link EventListener} to be called when a new {@link Event} is logged.
+     *
+     * @return the events of {@code eventClass} logged by earlier processes followed by all events
+     *     logged by this process
+     */
+    public Queue<Event> registerEventListener(
+            EventListener listener, Class<? extends Event> eventClass) {
+        List<Event> history = getHistory(eventClass);
         synchronized (mEventList) {
             synchronized (mEventListeners) {
                 mEventListeners.add(listener);
 
-                return getEvents();
+                Deque<Event> events = new ArrayDeque<>(history.size() + mEventList.size());
+                events.addAll(history);
+                events.addAll(mEventList);
+                return events;
             }
         }
     }
 
+    /** Stop calling an {@link EventListener} registered with {@link #registerEventListener}. */
+    public void unregisterEventListener(EventListener listener) {
+        synchronized (mEventListeners) {
+            mEventListeners.remove(listener);
+        }
+    }
+
     private void triggerEventListeners(Event event) {
         synchronized (mEventListeners) {
             for (EventListener listener : mEventListeners) {
@@ -20,23 +20,38 @@ import android.content.Context;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 
 /**
  * Implementation of {@link EventQuerier} which queries data about the current package.
+ *
+ * <p>The query is compiled once using {@link EventLogsQuery#compile()} and only events which match
+ * it are kept, so polls only have to look at matching events.
  */
 public class LocalEventQuerier<E extends Event, F extends EventLogsQuery> implements EventQuerier<E>, Events.EventListener {
-    private final EventLogsQuery<E, F> mEventLogsQuery;
+    private final Predicate<Event> mQuery;
     private final Events mEvents;
-    private final BlockingDeque<Event> mFetchedEvents;
+    private final BlockingDeque<E> mFetchedEvents = new LinkedBlockingDeque<>();
 
     LocalEventQuerier(Context context, EventLogsQuery<E, F> eventLogsQuery) {
-        mEventLogsQuery = eventLogsQuery;
-        mEvents = Events.getInstance(context, /* needsHistory= */ true);
-        mFetchedEvents = new LinkedBlockingDeque<>(mEvents.registerEventListener(this));
+        mQuery = eventLogsQuery.compile();
+        mEvents = Events.getInstance(context);
+        List<E> history = new ArrayList<>();
+        for (Event event : mEvents.registerEventListener(this, eventLogsQuery.eventClass())) {
+            if (mQuery.test(event)) {
+                history.add((E) event);
+            }
+        }
+        // Events logged since registering have already been added, so go before them
+        for (int i = history.size() - 1; i >= 0; i--) {
+            mFetchedEvents.addFirst(history.get(i));
+        }
     }
 
     @Override
@@ -52,7 +67,7 @@ public class LocalEventQuerier<E extends Event, F extends EventLogsQuery> implem
     public E poll(Instant earliestLogTime, Duration timeout, int skip) {
         Instant endTime = Instant.now().plus(timeout);
         while (true) {
-            Event event = null;
+            E event = null;
             try {
                 Duration remainingTimeout = Duration.between(Instant.now(), endTime);
                 event = mFetchedEvents.pollFirst(remainingTimeout.toMillis(), TimeUnit.MILLISECONDS);
@@ -65,26 +80,29 @@ public class LocalEventQuerier<E extends Event, F extends EventLogsQuery> implem
                 return null;
             }
 
-            if (mEventLogsQuery.eventClass().isInstance(event)) {
-                if (event.mTimestamp.isBefore(earliestLogTime)) {
-                    continue;
-                }
-
-                E typedEvent = (E) event;
-                if (mEventLogsQuery.filterAll(typedEvent)) {
-                    if (skip > 0) {
-                        skip--;
-                        continue;
-                    }
+            if (event.mTimestamp.isBefore(earliestLogTime)) {
+                continue;
+            }
 
-                    return typedEvent;
-                }
+            if (skip > 0) {
+                skip--;
+                continue;
             }
+
+            return event;
         }
     }
 
+    /** Stops receiving new events, after which this querier should not be polled. */
+    public void close() {
+        mEvents.unregisterEventListener(this);
+        mFetchedEvents.clear();
+    }
+
     @Override
     public void onNewEvent(Event event) {
-        mFetchedEvents.addLast(event);
+        if (mQuery.test(event)) {
+            mFetchedEvents.addLast((E) event);
+        }
     }
 }
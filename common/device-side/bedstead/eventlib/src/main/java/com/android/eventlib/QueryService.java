@@ -23,6 +23,10 @@ import android.os.IBinder;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of {@link IQueryService}.
@@ -31,33 +35,76 @@ public final class QueryService extends Service {
 
     public static final String EARLIEST_LOG_TIME_KEY = "EARLIEST_LOG_TIME";
     public static final String QUERIER_KEY = "QUERIER";
-    public static final String EVENT_KEY = "EVENT";
+    public static final String EVENTS_KEY = "EVENTS";
     public static final String TIMEOUT_KEY = "TIMEOUT";
 
+    private final AtomicLong mNextSessionId = new AtomicLong();
+    // Each session holds its own querier, which is the position of the query in the events.
+    private final Map<Long, LocalEventQuerier<?, ?>> mSessions = new ConcurrentHashMap<>();
+
     private final IQueryService.Stub binder = new IQueryService.Stub() {
         @Override
-        public Bundle poll(Bundle data, int skip) {
+        public long openSession(Bundle data, int skip) {
             EventLogsQuery<?, ?> query = (EventLogsQuery<?, ?>) data.getSerializable(QUERIER_KEY);
             LocalEventQuerier<?, ?> querier =
                     new LocalEventQuerier<>(getApplicationContext(), query);
-            Instant earliestLogtime = (Instant) data.getSerializable(EARLIEST_LOG_TIME_KEY);
-            Duration timeoutDuration = (Duration) data.getSerializable(TIMEOUT_KEY);
-            Event e = querier.poll(earliestLogtime, timeoutDuration, skip);
-            return prepareReturnBundle(e);
+            Instant earliestLogTime = (Instant) data.getSerializable(EARLIEST_LOG_TIME_KEY);
+            for (int i = 0; i < skip; i++) {
+                if (querier.poll(earliestLogTime, Duration.ZERO) == null) {
+                    break;
+                }
+            }
+
+            long sessionId = mNextSessionId.incrementAndGet();
+            mSessions.put(sessionId, querier);
+            return sessionId;
         }
 
-        private Bundle prepareReturnBundle(Event event) {
+        @Override
+        public Bundle pollSession(long sessionId, Bundle data, int maxEvents) {
             Bundle responseBundle = new Bundle();
-            if (event != null) {
-                responseBundle.putSerializable(EVENT_KEY, event);
+            LocalEventQuerier<?, ?> querier = mSessions.get(sessionId);
+            if (querier == null) {
+                return responseBundle;
+            }
+
+            Instant earliestLogTime = (Instant) data.getSerializable(EARLIEST_LOG_TIME_KEY);
+            Duration timeoutDuration = (Duration) data.getSerializable(TIMEOUT_KEY);
+            ArrayList<Event> events = new ArrayList<>();
+            Event e = querier.poll(earliestLogTime, timeoutDuration);
+            while (e != null) {
+                events.add(e);
+                if (events.size() >= maxEvents) {
+                    break;
+                }
+                // Only return events which have already been logged
+                e = querier.poll(earliestLogTime, Duration.ZERO);
             }
 
+            responseBundle.putSerializable(EVENTS_KEY, events);
             return responseBundle;
         }
+
+        @Override
+        public void closeSession(long sessionId) {
+            LocalEventQuerier<?, ?> querier = mSessions.remove(sessionId);
+            if (querier != null) {
+                querier.close();
+            }
+        }
     };
 
     @Override
     public IBinder onBind(Intent intent) {
         return binder;
     }
+
+    @Override
+    public void onDestroy() {
+        for (LocalEventQuerier<?, ?> querier : mSessions.values()) {
+            querier.close();
+        }
+        mSessions.clear();
+        super.onDestroy();
+    }
 }
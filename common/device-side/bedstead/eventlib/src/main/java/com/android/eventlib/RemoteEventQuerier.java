@@ -20,7 +20,7 @@ import static android.Manifest.permission.INTERACT_ACROSS_USERS_FULL;
 import static android.content.Context.BIND_AUTO_CREATE;
 
 import static com.android.eventlib.QueryService.EARLIEST_LOG_TIME_KEY;
-import static com.android.eventlib.QueryService.EVENT_KEY;
+import static com.android.eventlib.QueryService.EVENTS_KEY;
 import static com.android.eventlib.QueryService.QUERIER_KEY;
 import static com.android.eventlib.QueryService.TIMEOUT_KEY;
 
@@ -40,13 +40,22 @@ import com.android.bedstead.nene.users.UserReference;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Implementation of {@link EventQuerier} used to query a single other process.
+ *
+ * <p>The connection to the other process and the query session in it are kept between polls,
+ * and closed once no poll has been made for {@link #IDLE_DISCONNECT_TIMEOUT}.
  */
 public class
     RemoteEventQuerier<E extends Event, F extends EventLogsQuery> implements EventQuerier<E> {
@@ -54,10 +63,22 @@ public class
     private static final int CONNECTION_TIMEOUT_SECONDS = 30;
     private static final String LOG_TAG = "RemoteEventQuerier";
     private static final Context sContext = TestApis.context().instrumentedContext();
+    private static final Duration IDLE_DISCONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_EVENTS_PER_POLL = 20;
+    private static final long NO_SESSION = -1;
+    private static final ScheduledExecutorService sDisconnectExecutor =
+            Executors.newSingleThreadScheduledExecutor();
 
     private final String mPackageName;
     private final EventLogsQuery<E, F> mEventLogsQuery;
+    // Events received from the other process which have not been returned yet
+    private final Deque<E> mReceivedEvents = new ArrayDeque<>();
+    // The number of events received, to be skipped if the session has to be opened again
     private int mPollSkip = 0;
+    private IQueryService mSessionService;
+    private long mSessionId = NO_SESSION;
+    private boolean mIsBound = false;
+    private ScheduledFuture<?> mDisconnect;
 
     public RemoteEventQuerier(String packageName, EventLogsQuery<E, F> eventLogsQuery) {
         mPackageName = packageName;
@@ -92,29 +113,108 @@ public class
             };
 
     @Override
-    public E poll(Instant earliestLogTime, Duration timeout) {
+    public synchronized E poll(Instant earliestLogTime, Duration timeout) {
+        if (mDisconnect != null) {
+            mDisconnect.cancel(/* mayInterruptIfRunning= */ false);
+            mDisconnect = null;
+        }
         try {
-            ensureInitialised();
             Instant endTime = Instant.now().plus(timeout);
-            Bundle data = createRequestBundle();
-            Duration remainingTimeout = Duration.between(Instant.now(), endTime);
-            data.putSerializable(TIMEOUT_KEY, remainingTimeout);
-            try {
-                Bundle resultMessage = mQuery.get().poll(data, mPollSkip++);
-                E e = (E) resultMessage.getSerializable(EVENT_KEY);
-                while (e != null && !mEventLogsQuery.filterAll(e)) {
-                    remainingTimeout = Duration.between(Instant.now(), endTime);
-                    data.putSerializable(TIMEOUT_KEY, remainingTimeout);
-                    resultMessage = mQuery.get().poll(data, mPollSkip++);
-                    e = (E) resultMessage.getSerializable(EVENT_KEY);
+            while (true) {
+                E e = pollReceivedEvents();
+                if (e != null) {
+                    return e;
+                }
+                if (!receiveEvents(Duration.between(Instant.now(), endTime))) {
+                    return null;
                 }
+            }
+        } finally {
+            mDisconnect = sDisconnectExecutor.schedule(
+                    this::disconnect, IDLE_DISCONNECT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private E pollReceivedEvents() {
+        while (!mReceivedEvents.isEmpty()) {
+            E e = mReceivedEvents.removeFirst();
+            // The earliest log time may have been moved since the event was received. The other
+            // process only returns events which match the query, apart from the custom filters.
+            if (!e.mTimestamp.isBefore(EventLogs.sEarliestLogTime)
+                    && mEventLogsQuery.filterCustom(e)) {
                 return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Receives the next batch of matching events from the other process.
+     *
+     * @return false if no event was logged before the timeout
+     */
+    private boolean receiveEvents(Duration timeout) {
+        Bundle data = new Bundle();
+        data.putSerializable(EARLIEST_LOG_TIME_KEY, EventLogs.sEarliestLogTime);
+        data.putSerializable(TIMEOUT_KEY, timeout);
+        Bundle resultMessage;
+        try {
+            resultMessage = pollSession(data);
+        } catch (RemoteException e) {
+            // The other process may have died, so try again with a new connection
+            Log.i(LOG_TAG, "Error polling, reconnecting", e);
+            disconnect();
+            try {
+                resultMessage = pollSession(data);
+            } catch (RemoteException e2) {
+                throw new IllegalStateException("Error making cross-process call", e2);
+            }
+        }
+
+        List<E> events = (List<E>) resultMessage.getSerializable(EVENTS_KEY);
+        mPollSkip += events.size();
+        mReceivedEvents.addAll(events);
+        return !events.isEmpty();
+    }
+
+    private Bundle pollSession(Bundle data) throws RemoteException {
+        IQueryService service = ensureSession();
+        Bundle resultMessage = service.pollSession(mSessionId, data, MAX_EVENTS_PER_POLL);
+        if (!resultMessage.containsKey(EVENTS_KEY)) {
+            // The service was restarted without the connection being lost
+            mSessionId = NO_SESSION;
+            service = ensureSession();
+            resultMessage = service.pollSession(mSessionId, data, MAX_EVENTS_PER_POLL);
+        }
+        return resultMessage;
+    }
+
+    private IQueryService ensureSession() throws RemoteException {
+        ensureInitialised();
+        IQueryService service = mQuery.get();
+        if (service == null) {
+            throw new IllegalStateException("Lost connection to " + mPackageName);
+        }
+        if (service != mSessionService || mSessionId == NO_SESSION) {
+            mSessionId = service.openSession(createRequestBundle(), mPollSkip);
+            mSessionService = service;
+        }
+        return service;
+    }
+
+    private synchronized void disconnect() {
+        IQueryService service = mQuery.get();
+        if (service != null && service == mSessionService && mSessionId != NO_SESSION) {
+            try {
+                service.closeSession(mSessionId);
             } catch (RemoteException e) {
-                throw new IllegalStateException("Error making cross-process call", e);
+                // Ignore, the session is gone with the other process
+                Log.i(LOG_TAG, "Error closing session", e);
             }
-        } finally {
-            ensureClosed();
         }
+        mSessionService = null;
+        mSessionId = NO_SESSION;
+        ensureClosed();
     }
 
     private Bundle createRequestBundle() {
@@ -132,7 +232,10 @@ public class
 
     private void ensureClosed() {
         mQuery.set(null);
-        sContext.unbindService(connection);
+        if (mIsBound) {
+            mIsBound = false;
+            sContext.unbindService(connection);
+        }
     }
 
     private void ensureInitialised() {
@@ -185,6 +288,7 @@ public class
         }
 
         if (didBind.get()) {
+            mIsBound = true;
             try {
                 mConnectionCountdown.await(CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
             } catch (InterruptedException e) {
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.eventlib;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only log of {@link Event}s on disk.
+ *
+ * <p>The log is split into segments, one for each {@link #SEGMENT_DURATION} of time and process
+ * writing to it. Every record has a header with the class, timestamp and package of the event, so
+ * events can be skipped without being deserialized, and every segment has an index of the event
+ * classes it contains, so segments can be skipped without being read. Segments which only contain
+ * events older than the maximum age are deleted whole.
+ *
+ * <p>The segments of the current process are never read, as the events logged by this process are
+ * kept in memory.
+ */
+final class SegmentedEventLog {
+
+    private static final String TAG = "EventLibEvents";
+    private static final Duration SEGMENT_DURATION = Duration.ofMinutes(1);
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final char NAME_SEPARATOR = '_';
+
+    private final File mDirectory;
+    private final Duration mMaxAge;
+    // Identifies the segments written by this process
+    private final String mGeneration;
+
+    private long mSegmentStartMillis = -1;
+    private FileOutputStream mSegmentStream;
+    private FileOutputStream mIndexStream;
+    private final Set<String> mSegmentEventClasses = new HashSet<>();
+
+    SegmentedEventLog(File directory, Duration maxAge) {
+        this(directory, maxAge,
+                Long.toHexString(System.currentTimeMillis()) + "-" + Process.myPid());
+    }
+
+    /**
+     * Creates a log whose segments are identified by {@code generation}, which must be unique
+     * to each process, so tests can read back the segments of another instance.
+     */
+    SegmentedEventLog(File directory, Duration maxAge, String generation) {
+        mDirectory = directory;
+        mMaxAge = maxAge;
+        mGeneration = generation;
+    }
+
+    /**
+     * Appends the serialized event.
+     *
+     * <p>This must not be called concurrently.
+     */
+    void append(Event event, byte[] eventBytes) throws IOException {
+        long segmentStartMillis = segmentStart(event.mTimestamp);
+        if (segmentStartMillis != mSegmentStartMillis || mSegmentStream == null) {
+            openSegment(segmentStartMillis);
+        }
+
+        String eventClass = event.getClass().getName();
+        if (mSegmentEventClasses.add(eventClass)) {
+            // The index is written first so it never misses a class in the segment
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            new DataOutputStream(indexBytes).writeUTF(eventClass);
+            mIndexStream.write(indexBytes.toByteArray());
+        }
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream(eventBytes.length + 128);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeUTF(eventClass);
+        out.writeLong(event.mTimestamp.getEpochSecond());
+        out.writeInt(event.mTimestamp.getNano());
+        out.writeUTF(event.mPackageName == null ? "" : event.mPackageName);
+        out.writeInt(eventBytes.length);
+        out.write(eventBytes);
+        // One write per record, so a process being killed leaves at most one partial record
+        mSegmentStream.write(record.toByteArray());
+    }
+
+    private void openSegment(long segmentStartMillis) throws IOException {
+        closeSegment();
+        deleteExpiredSegments();
+        mDirectory.mkdirs();
+
+        String name = segmentStartMillis + String.valueOf(NAME_SEPARATOR) + mGeneration;
+        mIndexStream = new FileOutputStream(new File(mDirectory, name + INDEX_SUFFIX), true);
+        mSegmentStream = new FileOutputStream(new File(mDirectory, name + SEGMENT_SUFFIX), true);
+        mSegmentStartMillis = segmentStartMillis;
+        mSegmentEventClasses.clear();
+    }
+
+    private void closeSegment() {
+        for (FileOutputStream stream : new FileOutputStream[] {mSegmentStream, mIndexStream}) {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing event log segment", e);
+                }
+            }
+        }
+        mSegmentStream = null;
+        mIndexStream = null;
+    }
+
+    /**
+     * Reads the events logged by other processes which are instances of {@code eventClass} and
+     * not older than the maximum age, in the order they were logged.
+     */
+    List<Event> readHistory(Class<? extends Event> eventClass) {
+        deleteExpiredSegments();
+        List<Event> events = new ArrayList<>();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return events;
+        }
+
+        Map<String, Boolean> matchingClasses = new HashMap<>();
+        Instant earliestTime = Instant.now().minus(mMaxAge);
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SEGMENT_SUFFIX) || isOwnSegment(name)) {
+                continue;
+            }
+            String baseName = name.substring(0, name.length() - SEGMENT_SUFFIX.length());
+            Set<String> indexedClasses = readIndex(new File(mDirectory, baseName + INDEX_SUFFIX));
+            if (indexedClasses != null && !containsMatchingClass(
+                    indexedClasses, eventClass, matchingClasses)) {
+                continue;
+            }
+            readSegment(file, eventClass, matchingClasses, earliestTime, events);
+        }
+
+        events.sort(Comparator.comparing(event -> event.mTimestamp));
+        return events;
+    }
+
+    private void readSegment(File file, Class<? extends Event> eventClass,
+            Map<String, Boolean> matchingClasses, Instant earliestTime, List<Event> events) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                String className = in.readUTF();
+                Instant timestamp = Instant.ofEpochSecond(in.readLong(), in.readInt());
+                in.readUTF(); // package name
+                int size = in.readInt();
+                if (timestamp.isBefore(earliestTime)
+                        || !isMatchingClass(className, eventClass, matchingClasses)) {
+                    skipFully(in, size);
+                    continue;
+                }
+
+                byte[] eventBytes = new byte[size];
+                in.readFully(eventBytes);
+                events.add(Event.fromBytes(eventBytes));
+            }
+        } catch (EOFException e) {
+            // End of the segment, or a partial record left by a process which was killed
+        } catch (FileNotFoundException e) {
+            // The segment expired since it was listed
+        } catch (IOException e) {
+            Log.e(TAG, "Error when loading events from " + file, e);
+        }
+    }
+
+    private static void skipFully(DataInputStream in, int size) throws IOException {
+        while (size > 0) {
+            int skipped = in.skipBytes(size);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            size -= skipped;
+        }
+    }
+
+    /** Returns the classes in the index or null if it cannot be read. */
+    private Set<String> readIndex(File indexFile) {
+        Set<String> classes = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            while (true) {
+                classes.add(in.readUTF());
+            }
+        } catch (EOFException e) {
+            return classes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean containsMatchingClass(Set<String> classNames,
+            Class<? extends Event> eventClass, Map<String, Boolean> matchingClasses) {
+        for (String className : classNames) {
+            if (isMatchingClass(className, eventClass, matchingClasses)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMatchingClass(String className, Class<? extends Event> eventClass,
+            Map<String, Boolean> matchingClasses) {
+        Boolean matching = matchingClasses.get(className);
+        if (matching == null) {
+            try {
+                matching = eventClass.isAssignableFrom(
+                        Class.forName(className, /* initialize= */ false,
+                                eventClass.getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                matching = false;
+            }
+            matchingClasses.put(className, matching);
+        }
+        return matching;
+    }
+
+    private void deleteExpiredSegments() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long expiredBeforeMillis =
+                Instant.now().minus(mMaxAge).minus(SEGMENT_DURATION).toEpochMilli();
+        for (File file : files) {
+            String name = file.getName();
+            int separator = name.indexOf(NAME_SEPARATOR);
+            if (separator < 0) {
+                continue;
+            }
+            try {
+                if (Long.parseLong(name.substring(0, separator)) < expiredBeforeMillis) {
+                    file.delete();
+                }
+            } catch (NumberFormatException e) {
+                // Not a segment
+            }
+        }
+    }
+
+    private boolean isOwnSegment(String name) {
+        int separator = name.indexOf(NAME_SEPARATOR);
+        return separator >= 0 && name.startsWith(mGeneration + ".", separator + 1);
+    }
+
+    private static long segmentStart(Instant timestamp) {
+        long millis = timestamp.toEpochMilli();
+        return millis - Math.floorMod(millis, SEGMENT_DURATION.toMillis());
+    }
+}
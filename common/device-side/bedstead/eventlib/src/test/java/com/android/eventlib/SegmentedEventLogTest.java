@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.eventlib;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class SegmentedEventLogTest {
+
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+    private static final String PACKAGE_NAME = "com.android.eventlib.tests";
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private SegmentedEventLog mWriter;
+    private SegmentedEventLog mReader;
+    // The start of the current minute, which is a segment boundary
+    private Instant mBoundary;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = mTemporaryFolder.newFolder();
+        mWriter = new SegmentedEventLog(mDirectory, MAX_AGE, "writer");
+        mReader = new SegmentedEventLog(mDirectory, MAX_AGE, "reader");
+        long now = System.currentTimeMillis();
+        mBoundary = Instant.ofEpochMilli(now - now % Duration.ofMinutes(1).toMillis());
+    }
+
+    @Test
+    public void append_acrossMinuteBoundary_writesOneSegmentPerMinute() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.minusSeconds(1));
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+
+        assertThat(filesEndingWith(".seg")).hasSize(2);
+        assertThat(filesEndingWith(".idx")).hasSize(2);
+    }
+
+    @Test
+    public void append_withinMinute_writesOneSegment() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        append(mWriter, new SecondEvent(), mBoundary.plusSeconds(2));
+
+        assertThat(filesEndingWith(".seg")).hasSize(1);
+    }
+
+    @Test
+    public void readHistory_readsEventsAcrossSegmentsInOrder() throws IOException {
+        SegmentedEventLog otherWriter = new SegmentedEventLog(mDirectory, MAX_AGE, "other");
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        append(otherWriter, new FirstEvent(), mBoundary.minusSeconds(2));
+        append(mWriter, new FirstEvent(), mBoundary.minusSeconds(1));
+
+        assertThat(timestamps(mReader.readHistory(FirstEvent.class))).containsExactly(
+                mBoundary.minusSeconds(2), mBoundary.minusSeconds(1), mBoundary.plusSeconds(1))
+                .inOrder();
+    }
+
+    @Test
+    public void readHistory_skipsEventsOfOtherClasses() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        append(mWriter, new SecondEvent(), mBoundary.plusSeconds(2));
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(3));
+
+        List<Event> events = mReader.readHistory(SecondEvent.class);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0)).isInstanceOf(SecondEvent.class);
+        assertThat(events.get(0).packageName()).isEqualTo(PACKAGE_NAME);
+    }
+
+    @Test
+    public void readHistory_superclass_readsEventsOfSubclasses() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        append(mWriter, new SecondEvent(), mBoundary.plusSeconds(2));
+
+        assertThat(mReader.readHistory(Event.class)).hasSize(2);
+    }
+
+    @Test
+    public void readHistory_indexWithoutClass_skipsSegment() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        // The segment is only read if its index contains a matching class
+        writeIndex(filesEndingWith(".idx").get(0), SecondEvent.class);
+
+        assertThat(mReader.readHistory(FirstEvent.class)).isEmpty();
+    }
+
+    @Test
+    public void readHistory_missingIndex_readsSegment() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        assertThat(filesEndingWith(".idx").get(0).delete()).isTrue();
+
+        assertThat(mReader.readHistory(FirstEvent.class)).hasSize(1);
+    }
+
+    @Test
+    public void readHistory_partialRecord_readsPrecedingEvents() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+        try (FileOutputStream out =
+                     new FileOutputStream(filesEndingWith(".seg").get(0), /* append= */ true)) {
+            new DataOutputStream(out).writeUTF(FirstEvent.class.getName());
+        }
+
+        assertThat(mReader.readHistory(FirstEvent.class)).hasSize(1);
+    }
+
+    @Test
+    public void readHistory_eventOlderThanMaxAge_isNotRead() throws IOException {
+        append(mWriter, new FirstEvent(), Instant.now().minus(MAX_AGE).minusSeconds(1));
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+
+        assertThat(timestamps(mReader.readHistory(FirstEvent.class)))
+                .containsExactly(mBoundary.plusSeconds(1));
+    }
+
+    @Test
+    public void readHistory_ownSegments_areNotRead() throws IOException {
+        append(mWriter, new FirstEvent(), mBoundary.plusSeconds(1));
+
+        assertThat(mWriter.readHistory(FirstEvent.class)).isEmpty();
+    }
+
+    private static void append(SegmentedEventLog log, Event event, Instant timestamp)
+            throws IOException {
+        event.mPackageName = PACKAGE_NAME;
+        event.mTimestamp = timestamp;
+        log.append(event, event.toBytes());
+    }
+
+    private List<File> filesEndingWith(String suffix) {
+        List<File> files = new ArrayList<>();
+        for (File file : mDirectory.listFiles()) {
+            if (file.getName().endsWith(suffix)) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static void writeIndex(File indexFile, Class<? extends Event> eventClass)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile))) {
+            out.writeUTF(eventClass.getName());
+        }
+    }
+
+    private static List<Instant> timestamps(List<Event> events) {
+        List<Instant> timestamps = new ArrayList<>();
+        for (Event event : events) {
+            timestamps.add(event.timestamp());
+        }
+        return timestamps;
+    }
+
+    private static final class FirstEvent extends Event {
+        private static final long serialVersionUID = 1;
+    }
+
+    private static final class SecondEvent extends Event {
+        private static final long serialVersionUID = 1;
+    }
+}
@@ -326,6 +326,8 @@ public final class BedsteadJUnit4 extends BlockJUnit4ClassRunner {
         modifiedTests = generateGeneralParameterisationMethods(modifiedTests);
 
         sortMethodsByBedsteadAnnotations(modifiedTests);
+        TransitionCostOrdering.sort(modifiedTests, annotation -> annotation.annotationType()
+                .getCanonicalName().contains(BEDSTEAD_PACKAGE_NAME));
 
         return modifiedTests;
     }
@@ -423,6 +425,9 @@ public final class BedsteadJUnit4 extends BlockJUnit4ClassRunner {
      *
      * <p>This will also ensure that all tests methods which are not annotated for bedstead will
      * run before any tests which are annotated.
+     *
+     * <p>This order is then refined by {@link TransitionCostOrdering}, which keeps it when the
+     * costs of changing device state are the same.
      */
     private void sortMethodsByBedsteadAnnotations(List<FrameworkMethod> modifiedTests) {
         List<Annotation> bedsteadAnnotationsSortedByMostCommon =
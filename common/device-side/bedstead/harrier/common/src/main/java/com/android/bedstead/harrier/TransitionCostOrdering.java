@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.harrier;
+
+import com.android.bedstead.harrier.annotations.EnsurePackageNotInstalled;
+import com.android.bedstead.harrier.annotations.EnsureTestAppInstalled;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasDelegate;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasDeviceOwner;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasNoDelegate;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasNoDeviceOwner;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasNoDpc;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasNoProfileOwner;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasProfileOwner;
+import com.android.bedstead.harrier.annotations.meta.EnsureHasNoProfileAnnotation;
+import com.android.bedstead.harrier.annotations.meta.EnsureHasNoUserAnnotation;
+import com.android.bedstead.harrier.annotations.meta.EnsureHasProfileAnnotation;
+import com.android.bedstead.harrier.annotations.meta.EnsureHasUserAnnotation;
+import com.android.bedstead.harrier.annotations.meta.RequireRunOnProfileAnnotation;
+import com.android.bedstead.harrier.annotations.meta.RequireRunOnUserAnnotation;
+
+import org.junit.runners.model.FrameworkMethod;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Orders test methods so that the device state changes made by {@code DeviceState} between them
+ * are as cheap as possible.
+ *
+ * <p>The state required by a bedstead annotation is kept until a later test requires a different
+ * value for the same state, such as a work profile existing or not existing. Running a test
+ * therefore costs the changes of state for each of its annotations whose state was last set
+ * differently, estimated by {@link #cost(Annotation)}.
+ *
+ * <p>Tests with the same bedstead annotations are kept together in their existing order. The
+ * groups are then ordered greedily, by always running next the group which is cheapest to change
+ * to from the state left by the previous groups.
+ */
+final class TransitionCostOrdering {
+
+    // Creating, removing or switching to a user or profile
+    static final int USER_COST = 100;
+    // Installing a device policy controller and setting or removing it
+    static final int DPC_COST = 40;
+    // Installing or uninstalling a package
+    static final int PACKAGE_COST = 10;
+    // Any other state, such as permissions or settings
+    static final int DEFAULT_COST = 1;
+
+    private TransitionCostOrdering() {
+
+    }
+
+    /**
+     * Sort {@code methods} by transition cost, considering only annotations matched by
+     * {@code isBedsteadAnnotation}.
+     *
+     * <p>Tests without any bedstead annotations run first.
+     */
+    static void sort(List<FrameworkMethod> methods, Predicate<Annotation> isBedsteadAnnotation) {
+        Map<Set<Annotation>, List<FrameworkMethod>> groups = new LinkedHashMap<>();
+        for (FrameworkMethod method : methods) {
+            Set<Annotation> annotations = new HashSet<>();
+            for (Annotation annotation : method.getAnnotations()) {
+                if (isBedsteadAnnotation.test(annotation)) {
+                    annotations.add(annotation);
+                }
+            }
+            groups.computeIfAbsent(annotations, k -> new ArrayList<>()).add(method);
+        }
+
+        methods.clear();
+        List<FrameworkMethod> unannotated = groups.remove(new HashSet<Annotation>());
+        if (unannotated != null) {
+            methods.addAll(unannotated);
+        }
+
+        // The last annotation to set each state
+        Map<Object, Annotation> state = new HashMap<>();
+        List<Set<Annotation>> remaining = new ArrayList<>(groups.keySet());
+        while (!remaining.isEmpty()) {
+            Set<Annotation> next = null;
+            int nextCost = Integer.MAX_VALUE;
+            for (Set<Annotation> group : remaining) {
+                int cost = transitionCost(state, group);
+                if (cost < nextCost) {
+                    next = group;
+                    nextCost = cost;
+                }
+            }
+
+            remaining.remove(next);
+            for (Annotation annotation : next) {
+                for (Object stateKey : stateKeys(annotation)) {
+                    state.put(stateKey, annotation);
+                }
+            }
+            methods.addAll(groups.get(next));
+        }
+    }
+
+    private static int transitionCost(Map<Object, Annotation> state, Set<Annotation> group) {
+        int cost = 0;
+        for (Annotation annotation : group) {
+            for (Object stateKey : stateKeys(annotation)) {
+                if (!annotation.equals(state.get(stateKey))) {
+                    cost += cost(annotation);
+                    break;
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * The estimated relative cost of changing the device to the state required by
+     * {@code annotation}.
+     */
+    static int cost(Annotation annotation) {
+        Class<? extends Annotation> annotationType = annotation.annotationType();
+        if (annotationType.getAnnotation(EnsureHasUserAnnotation.class) != null
+                || annotationType.getAnnotation(EnsureHasNoUserAnnotation.class) != null
+                || annotationType.getAnnotation(EnsureHasProfileAnnotation.class) != null
+                || annotationType.getAnnotation(EnsureHasNoProfileAnnotation.class) != null
+                || annotationType.getAnnotation(RequireRunOnUserAnnotation.class) != null
+                || annotationType.getAnnotation(RequireRunOnProfileAnnotation.class) != null) {
+            return USER_COST;
+        }
+        if (annotation instanceof EnsureHasDeviceOwner
+                || annotation instanceof EnsureHasNoDeviceOwner
+                || annotation instanceof EnsureHasProfileOwner
+                || annotation instanceof EnsureHasNoProfileOwner
+                || annotation instanceof EnsureHasNoDpc
+                || annotation instanceof EnsureHasDelegate
+                || annotation instanceof EnsureHasNoDelegate) {
+            return DPC_COST;
+        }
+        if (annotation instanceof EnsureTestAppInstalled
+                || annotation instanceof EnsurePackageNotInstalled) {
+            return PACKAGE_COST;
+        }
+        return DEFAULT_COST;
+    }
+
+    /**
+     * Identifies the states set by {@code annotation}.
+     *
+     * <p>Annotations for users, profiles and device policy controllers share the key with the
+     * annotations requiring other values of the same state. {@link EnsureHasNoDpc} sets both the
+     * device owner and the profile owner state. Any other annotation is its own key.
+     */
+    private static List<Object> stateKeys(Annotation annotation) {
+        Class<? extends Annotation> annotationType = annotation.annotationType();
+
+        EnsureHasUserAnnotation ensureHasUser =
+                annotationType.getAnnotation(EnsureHasUserAnnotation.class);
+        if (ensureHasUser != null) {
+            return Collections.singletonList(ensureHasUser.value());
+        }
+        EnsureHasNoUserAnnotation ensureHasNoUser =
+                annotationType.getAnnotation(EnsureHasNoUserAnnotation.class);
+        if (ensureHasNoUser != null) {
+            return Collections.singletonList(ensureHasNoUser.value());
+        }
+        EnsureHasProfileAnnotation ensureHasProfile =
+                annotationType.getAnnotation(EnsureHasProfileAnnotation.class);
+        if (ensureHasProfile != null) {
+            return Collections.singletonList(ensureHasProfile.value());
+        }
+        EnsureHasNoProfileAnnotation ensureHasNoProfile =
+                annotationType.getAnnotation(EnsureHasNoProfileAnnotation.class);
+        if (ensureHasNoProfile != null) {
+            return Collections.singletonList(ensureHasNoProfile.value());
+        }
+        if (annotationType.getAnnotation(RequireRunOnUserAnnotation.class) != null
+                || annotationType.getAnnotation(RequireRunOnProfileAnnotation.class) != null) {
+            return Collections.singletonList(RequireRunOnUserAnnotation.class);
+        }
+        if (annotation instanceof EnsureHasNoDpc) {
+            return Arrays.asList(EnsureHasDeviceOwner.class, EnsureHasProfileOwner.class);
+        }
+        if (annotation instanceof EnsureHasDeviceOwner
+                || annotation instanceof EnsureHasNoDeviceOwner) {
+            return Collections.singletonList(EnsureHasDeviceOwner.class);
+        }
+        if (annotation instanceof EnsureHasProfileOwner
+                || annotation instanceof EnsureHasNoProfileOwner) {
+            return Collections.singletonList(EnsureHasProfileOwner.class);
+        }
+        if (annotation instanceof EnsureHasDelegate || annotation instanceof EnsureHasNoDelegate) {
+            return Collections.singletonList(EnsureHasDelegate.class);
+        }
+        return Collections.singletonList(annotation);
+    }
+}
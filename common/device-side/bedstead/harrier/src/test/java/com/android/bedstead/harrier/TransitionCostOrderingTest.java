@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.harrier;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.bedstead.harrier.annotations.EnsureHasNoWorkProfile;
+import com.android.bedstead.harrier.annotations.EnsureHasPermission;
+import com.android.bedstead.harrier.annotations.EnsureHasWorkProfile;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasNoDpc;
+import com.android.bedstead.harrier.annotations.enterprise.EnsureHasProfileOwner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.model.FrameworkMethod;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+@RunWith(JUnit4.class)
+public class TransitionCostOrderingTest {
+
+    private static final Predicate<Annotation> IS_BEDSTEAD_ANNOTATION =
+            annotation -> annotation.annotationType().getCanonicalName()
+                    .contains("com.android.bedstead");
+
+    /** The methods to be ordered, which are never run. */
+    public static final class Methods {
+        public void unannotated() {
+        }
+
+        @EnsureHasWorkProfile
+        public void workProfile() {
+        }
+
+        @EnsureHasWorkProfile
+        public void otherWorkProfile() {
+        }
+
+        @EnsureHasNoWorkProfile
+        public void noWorkProfile() {
+        }
+
+        @EnsureHasWorkProfile
+        @EnsureHasPermission("android.permission.INTERNET")
+        public void workProfileWithPermission() {
+        }
+
+        @EnsureHasNoDpc
+        public void noDpc() {
+        }
+
+        @EnsureHasProfileOwner
+        @EnsureHasPermission("android.permission.INTERNET")
+        public void profileOwnerWithPermission() {
+        }
+
+        @EnsureHasNoDpc
+        @EnsureHasWorkProfile
+        public void noDpcWithWorkProfile() {
+        }
+
+        @EnsureHasProfileOwner
+        @EnsureHasWorkProfile
+        public void profileOwnerWithWorkProfile() {
+        }
+    }
+
+    @Test
+    public void sort_unannotatedMethodsRunFirst() throws Exception {
+        assertThat(sort("workProfile", "unannotated"))
+                .containsExactly("unannotated", "workProfile").inOrder();
+    }
+
+    @Test
+    public void sort_methodsWithSameAnnotations_keptTogetherInOrder() throws Exception {
+        assertThat(sort("workProfile", "noWorkProfile", "otherWorkProfile"))
+                .containsExactly("workProfile", "otherWorkProfile", "noWorkProfile").inOrder();
+    }
+
+    @Test
+    public void sort_runsCheapestTransitionNext() throws Exception {
+        assertThat(sort("workProfile", "noWorkProfile", "workProfileWithPermission"))
+                .containsExactly("workProfile", "workProfileWithPermission", "noWorkProfile")
+                .inOrder();
+    }
+
+    @Test
+    public void sort_ensureHasNoDpc_isChangedBySettingProfileOwner() throws Exception {
+        // After the profile owner is set, running noDpcWithWorkProfile costs removing it as well
+        // as creating the work profile, so profileOwnerWithWorkProfile is cheaper
+        assertThat(sort("noDpc", "profileOwnerWithPermission", "noDpcWithWorkProfile",
+                "profileOwnerWithWorkProfile"))
+                .containsExactly("noDpc", "profileOwnerWithPermission",
+                        "profileOwnerWithWorkProfile", "noDpcWithWorkProfile")
+                .inOrder();
+    }
+
+    @Test
+    public void cost_estimatesCostOfAnnotation() throws Exception {
+        assertThat(TransitionCostOrdering.cost(annotation("workProfile",
+                EnsureHasWorkProfile.class))).isEqualTo(TransitionCostOrdering.USER_COST);
+        assertThat(TransitionCostOrdering.cost(annotation("noDpc", EnsureHasNoDpc.class)))
+                .isEqualTo(TransitionCostOrdering.DPC_COST);
+        assertThat(TransitionCostOrdering.cost(annotation("workProfileWithPermission",
+                EnsureHasPermission.class))).isEqualTo(TransitionCostOrdering.DEFAULT_COST);
+    }
+
+    private static List<String> sort(String... methodNames) throws Exception {
+        List<FrameworkMethod> methods = new ArrayList<>();
+        for (String methodName : methodNames) {
+            methods.add(new FrameworkMethod(Methods.class.getMethod(methodName)));
+        }
+
+        TransitionCostOrdering.sort(methods, IS_BEDSTEAD_ANNOTATION);
+
+        List<String> sortedNames = new ArrayList<>();
+        for (FrameworkMethod method : methods) {
+            sortedNames.add(method.getName());
+        }
+        return sortedNames;
+    }
+
+    private static Annotation annotation(String methodName,
+            Class<? extends Annotation> annotationType) throws Exception {
+        return Methods.class.getMethod(methodName).getAnnotation(annotationType);
+    }
+}
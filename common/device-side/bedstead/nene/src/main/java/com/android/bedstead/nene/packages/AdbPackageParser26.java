@@ -16,8 +16,6 @@
 
 package com.android.bedstead.nene.packages;
 
-import static com.android.bedstead.nene.utils.ParserUtils.extractIndentedSections;
-
 import android.os.Build;
 
 import androidx.annotation.RequiresApi;
@@ -25,6 +23,7 @@ import androidx.annotation.RequiresApi;
 import com.android.bedstead.nene.TestApis;
 import com.android.bedstead.nene.exceptions.AdbParseException;
 import com.android.bedstead.nene.users.UserReference;
+import com.android.bedstead.nene.utils.IndentedLineReader;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -36,6 +35,9 @@ import java.util.regex.Pattern;
 /**
  * Parser for `adb dumpsys package` on Android O+.
  *
+ * <p>The output is read one line at a time using {@link IndentedLineReader}, as it contains every
+ * package on the device and can be megabytes long.
+ *
  * <p>This class is structured so that future changes in ADB output can be dealt with by extending
  * this class and overriding the appropriate section parsers.
  */
@@ -43,6 +45,8 @@ import java.util.regex.Pattern;
 public class AdbPackageParser26 implements AdbPackageParser {
 
     private static final int PACKAGE_LIST_BASE_INDENTATION = 2;
+    private static final int PACKAGE_SECTION_BASE_INDENTATION = 4;
+    private static final int USER_SECTION_BASE_INDENTATION = 6;
 
     AdbPackageParser26() {
     }
@@ -56,79 +60,78 @@ public class AdbPackageParser26 implements AdbPackageParser {
     }
 
     Set<String> parseFeatures(String dumpsysPackageOutput) throws AdbParseException {
-        String featuresList = extractFeaturesList(dumpsysPackageOutput);
+        IndentedLineReader reader = new IndentedLineReader(dumpsysPackageOutput);
+        if (!reader.skipTo("Features:")) {
+            throw new AdbParseException("Error extracting features list", dumpsysPackageOutput);
+        }
+
         Set<String> features = new HashSet<>();
-        for (String featureLine : featuresList.split("\n")) {
-            features.add(featureLine.trim());
+        while (reader.next() && !reader.isEmpty()) {
+            features.add(reader.line().trim());
         }
         return features;
     }
 
-    String extractFeaturesList(String dumpsysPackageOutput) throws AdbParseException {
-        try {
-            return dumpsysPackageOutput.split("Features:\n", 2)[1].split("\n\n", 2)[0];
-        } catch (IndexOutOfBoundsException e) {
-            throw new AdbParseException("Error extracting features list", dumpsysPackageOutput, e);
+    Map<String, AdbPackage> parsePackages(String dumpsysPackageOutput)
+            throws AdbParseException {
+        IndentedLineReader reader = new IndentedLineReader(dumpsysPackageOutput);
+        if (!reader.skipTo("Packages:")) {
+            throw new AdbParseException("Error extracting packages list", dumpsysPackageOutput);
         }
-    }
-
-    Map<String, AdbPackage> parsePackages(String dumpsysUsersOutput) throws AdbParseException {
-        String packagesList = extractPackagesList(dumpsysUsersOutput);
 
-        Set<String> packageStrings = extractPackageStrings(packagesList);
         Map<String, AdbPackage> packages = new HashMap<>();
-        for (String packageString : packageStrings) {
-            AdbPackage pkg = new AdbPackage(parsePackage(packageString));
+        // The list ends at the first empty line
+        while (reader.next() && !reader.isEmpty()) {
+            if (reader.indentation() != PACKAGE_LIST_BASE_INDENTATION) {
+                // Not the start of a package
+                continue;
+            }
+            AdbPackage pkg = new AdbPackage(parsePackage(reader));
             packages.put(pkg.packageName(), pkg);
         }
         return packages;
     }
 
-    String extractPackagesList(String dumpsysPackageOutput) throws AdbParseException {
-        try {
-            return dumpsysPackageOutput.split("\nPackages:\n", 2)[1].split("\n\n", 2)[0];
-        } catch (IndexOutOfBoundsException e) {
-            throw new AdbParseException("Error extracting packages list", dumpsysPackageOutput, e);
-        }
-    }
-
-    Set<String> extractPackageStrings(String packagesList) throws AdbParseException {
-        return extractIndentedSections(packagesList, PACKAGE_LIST_BASE_INDENTATION);
-    }
-
     private static final Pattern USER_INSTALLED_PATTERN =
             Pattern.compile("User (\\d+):.*?installed=(\\w+)");
 
-    AdbPackage.MutablePackage parsePackage(String packageString) throws AdbParseException {
+    /**
+     * Parse the package whose heading is the current line of {@code reader}, leaving the reader
+     * on the last line of the package.
+     */
+    AdbPackage.MutablePackage parsePackage(IndentedLineReader reader) throws AdbParseException {
+        String packageHeader = reader.line();
         try {
-            String packageName = packageString.split("\\[", 2)[1].split("]", 2)[0];
+            String packageName = packageHeader.split("\\[", 2)[1].split("]", 2)[0];
             AdbPackage.MutablePackage pkg = new AdbPackage.MutablePackage();
             pkg.mPackageName = packageName;
             pkg.mInstalledOnUsers = new HashMap<>();
             pkg.mInstallPermissions = new HashSet<>();
 
-            Set<String> sections = extractIndentedSections(
-                    packageString.split("\n", 2)[1], // Remove first line (package name)
-                    /* baseIndentation= */ 4);
-
-            for (String section : sections) {
+            while (nextInSection(reader, PACKAGE_LIST_BASE_INDENTATION)) {
+                if (reader.indentation() != PACKAGE_SECTION_BASE_INDENTATION) {
+                    // Not the start of a section
+                    continue;
+                }
+                String section = reader.line().trim();
                 if (section.startsWith("install permissions")) {
-                    parseInstallPermissions(section, pkg);
+                    parseInstallPermissions(reader, pkg);
                 } else if (section.startsWith("User ")) {
-                    parseUser(section, pkg);
+                    parseUser(reader, pkg);
+                } else {
+                    skipSection(reader, PACKAGE_SECTION_BASE_INDENTATION);
                 }
             }
 
             return pkg;
         } catch (IndexOutOfBoundsException | NumberFormatException e) {
-            throw new AdbParseException("Error parsing package", packageString, e);
+            throw new AdbParseException("Error parsing package", packageHeader, e);
         }
     }
 
-    void parseInstallPermissions(String section, AdbPackage.MutablePackage pkg) {
-        String list = section.split("\n", 2)[1]; // remove header
-        for (String item : list.split("\n")) {
-            String[] trimmed = item.trim().split(":", 2);
+    void parseInstallPermissions(IndentedLineReader reader, AdbPackage.MutablePackage pkg) {
+        while (nextInSection(reader, PACKAGE_SECTION_BASE_INDENTATION)) {
+            String[] trimmed = reader.line().trim().split(":", 2);
             String permissionName = trimmed[0];
 
             if (trimmed[1].contains("granted=true")) {
@@ -137,15 +140,18 @@ public class AdbPackageParser26 implements AdbPackageParser {
         }
     }
 
-    void parseUser(String section, AdbPackage.MutablePackage pkg) throws AdbParseException {
-        Matcher userInstalledMatcher = USER_INSTALLED_PATTERN.matcher(section);
+    void parseUser(IndentedLineReader reader, AdbPackage.MutablePackage pkg)
+            throws AdbParseException {
+        String userHeader = reader.line();
+        Matcher userInstalledMatcher = USER_INSTALLED_PATTERN.matcher(userHeader);
         if (!userInstalledMatcher.find()) {
-            throw new AdbParseException("Error parsing user section in package", section);
+            throw new AdbParseException("Error parsing user section in package", userHeader);
         }
         int userId = Integer.parseInt(userInstalledMatcher.group(1));
         boolean isInstalled = Boolean.parseBoolean(userInstalledMatcher.group(2));
 
         if (!isInstalled) {
+            skipSection(reader, PACKAGE_SECTION_BASE_INDENTATION);
             return;
         }
 
@@ -154,33 +160,46 @@ public class AdbPackageParser26 implements AdbPackageParser {
         userPackage.mGrantedPermissions = new HashSet<>();
         pkg.mInstalledOnUsers.put(user, userPackage);
 
-
         try {
-            String[] sectionParts = section.split("\n", 2); // remove header
-
-            if (sectionParts.length < 2) {
-                return; // No content - just the header
-            }
-
-            Set<String> userSections = extractIndentedSections(
-                    sectionParts[1], // Remove first line (user name)
-                    /* baseIndentation= */ 6);
-
-            for (String userSection : userSections) {
-                if (userSection.startsWith("runtime permissions:")) {
-                    String list = userSection.split("\n", 2)[1]; // remove header
-                    for (String item : list.split("\n")) {
-                        String[] trimmed = item.trim().split(":", 2);
-                        String permissionName = trimmed[0];
+            while (nextInSection(reader, PACKAGE_SECTION_BASE_INDENTATION)) {
+                if (reader.indentation() != USER_SECTION_BASE_INDENTATION
+                        || !reader.line().trim().startsWith("runtime permissions:")) {
+                    skipSection(reader, USER_SECTION_BASE_INDENTATION);
+                    continue;
+                }
+                while (nextInSection(reader, USER_SECTION_BASE_INDENTATION)) {
+                    String[] trimmed = reader.line().trim().split(":", 2);
+                    String permissionName = trimmed[0];
 
-                        if (trimmed[1].contains("granted=true")) {
-                            userPackage.mGrantedPermissions.add(permissionName);
-                        }
+                    if (trimmed[1].contains("granted=true")) {
+                        userPackage.mGrantedPermissions.add(permissionName);
                     }
                 }
             }
         } catch (IndexOutOfBoundsException e) {
-            throw new AdbParseException("Error parsing user section", section, e);
+            throw new AdbParseException("Error parsing user section", userHeader, e);
+        }
+    }
+
+    /**
+     * Move to the next line if it is part of the section with the given heading indentation.
+     *
+     * <p>Lines with a different indentation up to the next empty line are part of the section.
+     */
+    private static boolean nextInSection(IndentedLineReader reader, int sectionIndentation) {
+        if (!reader.next()) {
+            return false;
+        }
+        if (reader.isEmpty() || reader.indentation() <= sectionIndentation) {
+            reader.unread();
+            return false;
+        }
+        return true;
+    }
+
+    private static void skipSection(IndentedLineReader reader, int sectionIndentation) {
+        while (nextInSection(reader, sectionIndentation)) {
+            // Skip
         }
     }
 }
@@ -51,6 +51,7 @@ import com.android.bedstead.nene.exceptions.NeneException;
 import com.android.bedstead.nene.permissions.PermissionContext;
 import com.android.bedstead.nene.users.UserReference;
 import com.android.bedstead.nene.utils.BlockingIntentSender;
+import com.android.bedstead.nene.utils.DumpsysSnapshot;
 import com.android.bedstead.nene.utils.ShellCommand;
 import com.android.bedstead.nene.utils.ShellCommandUtils;
 import com.android.bedstead.nene.utils.Versions;
@@ -159,6 +160,8 @@ public final class Packages {
             TestApis.context().instrumentedContext().getPackageManager();
 
     static final AdbPackageParser sParser = AdbPackageParser.get(SDK_INT);
+    private static final DumpsysSnapshot<AdbPackageParser.ParseResult> sDumpsysPackage =
+            new DumpsysSnapshot<>("dumpsys package", sParser::parse);
 
 
     public Packages() {
@@ -408,6 +411,7 @@ public final class Packages {
                                 EXTRA_STATUS, /* defaultValue= */ STATUS_FAILURE)
                                 + " extra info: " + intent.getStringExtra(EXTRA_STATUS_MESSAGE));
                     }
+                    DumpsysSnapshot.invalidateAll();
                 }
             }
             return waitForPackageAddedBroadcast(broadcastReceiver);
@@ -558,8 +562,7 @@ public final class Packages {
 
     static AdbPackageParser.ParseResult parseDumpsys() {
         try {
-            String dumpsysOutput = ShellCommand.builder("dumpsys package").execute();
-            return Packages.sParser.parse(dumpsysOutput);
+            return sDumpsysPackage.get();
         } catch (AdbException | AdbParseException e) {
             throw new NeneException("Error parsing package dumpsys", e);
         }
@@ -292,11 +292,11 @@ public class UserReference implements AutoCloseable {
     /** Is the user running? */
     public boolean isRunning() {
         if (!Versions.meetsMinimumSdkVersionRequirement(S)) {
-            AdbUser adbUser = adbUserOrNull();
+            AdbUser adbUser = TestApis.users().fetchCurrentUser(mId);
             if (adbUser == null) {
                 return false;
             }
-            return RUNNING_STATES.contains(adbUser().state());
+            return RUNNING_STATES.contains(adbUser.state());
         }
         try (PermissionContext p = TestApis.permissions().withPermission(INTERACT_ACROSS_USERS)) {
             return mUserManager.isUserRunning(userHandle());
@@ -306,7 +306,7 @@ public class UserReference implements AutoCloseable {
     /** Is the user unlocked? */
     public boolean isUnlocked() {
         if (!Versions.meetsMinimumSdkVersionRequirement(S)) {
-            AdbUser adbUser = adbUserOrNull();
+            AdbUser adbUser = TestApis.users().fetchCurrentUser(mId);
             if (adbUser == null) {
                 return false;
             }
@@ -46,6 +46,7 @@ import com.android.bedstead.nene.exceptions.AdbParseException;
 import com.android.bedstead.nene.exceptions.NeneException;
 import com.android.bedstead.nene.permissions.PermissionContext;
 import com.android.bedstead.nene.permissions.Permissions;
+import com.android.bedstead.nene.utils.DumpsysSnapshot;
 import com.android.bedstead.nene.utils.Poll;
 import com.android.bedstead.nene.utils.ShellCommand;
 import com.android.bedstead.nene.utils.Versions;
@@ -75,7 +76,8 @@ public final class Users {
     private Map<Integer, AdbUser> mCachedUsers = null;
     private Map<String, UserType> mCachedUserTypes = null;
     private Set<UserType> mCachedUserTypeValues = null;
-    private final AdbUserParser mParser;
+    private final DumpsysSnapshot<AdbUserParser.ParseResult> mDumpsysUser;
+    private AdbUserParser.ParseResult mCachedParseResult = null;
     private static final UserManager sUserManager =
             TestApis.context().instrumentedContext().getSystemService(UserManager.class);
     private Map<Integer, UserReference> mUsers = new ConcurrentHashMap<>();
@@ -83,7 +85,7 @@ public final class Users {
     public static final Users sInstance = new Users();
 
     private Users() {
-        mParser = AdbUserParser.get(SDK_INT);
+        mDumpsysUser = new DumpsysSnapshot<>("dumpsys user", AdbUserParser.get(SDK_INT)::parse);
     }
 
     /** Get all {@link UserReference}s on the device. */
@@ -359,8 +361,11 @@ public final class Users {
     private void fillCache() {
         try {
             // TODO: Replace use of adb on supported versions of Android
-            String userDumpsysOutput = ShellCommand.builder("dumpsys user").execute();
-            AdbUserParser.ParseResult result = mParser.parse(userDumpsysOutput);
+            AdbUserParser.ParseResult result = mDumpsysUser.get();
+            if (result == mCachedParseResult) {
+                // The users have not changed since they were last cached
+                return;
+            }
 
             mCachedUsers = result.mUsers;
             if (result.mUserTypes != null) {
@@ -408,6 +413,7 @@ public final class Users {
 
             mCachedUserTypeValues = new HashSet<>();
             mCachedUserTypeValues.addAll(mCachedUserTypes.values());
+            mCachedParseResult = result;
 
         } catch (AdbException | AdbParseException e) {
             throw new RuntimeException("Error filling cache", e);
@@ -486,6 +492,16 @@ public final class Users {
         return mCachedUsers.get(id);
     }
 
+    /**
+     * See {@link #fetchUser(int)} except that the user is always read from the device, for state
+     * which changes without Nene being involved, such as whether the user is running.
+     */
+    @Nullable
+    AdbUser fetchCurrentUser(int id) {
+        mDumpsysUser.invalidate();
+        return fetchUser(id);
+    }
+
     @Experimental
     public boolean supportsMultipleUsers() {
         return UserManager.supportsMultipleUsers();
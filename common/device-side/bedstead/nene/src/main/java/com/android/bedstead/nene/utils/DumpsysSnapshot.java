@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.nene.utils;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.android.bedstead.nene.TestApis;
+import com.android.bedstead.nene.exceptions.AdbException;
+import com.android.bedstead.nene.exceptions.AdbParseException;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The parsed output of a {@code dumpsys} command, which is reused until the packages or users on
+ * the device may have changed.
+ *
+ * <p>All snapshots are invalidated together, when Nene runs a shell command which changes packages
+ * or users, when a package or user broadcast is received, and before each attempt of a
+ * {@link Poll}. Callers which need state that changes without any of these happening, such as
+ * whether a user is running, should call {@link #invalidate()} first.
+ */
+public final class DumpsysSnapshot<E> {
+
+    /** Parser for the output of the command. */
+    public interface Parser<E> {
+        E parse(String output) throws AdbParseException;
+    }
+
+    private static final String[] MODIFYING_COMMAND_PREFIXES = new String[] {
+            "pm ", "cmd package ", "cmd user ", "am start-user", "am stop-user", "am switch-user",
+            "dpm ", "cmd device_policy "
+    };
+
+    private static final AtomicLong sGeneration = new AtomicLong();
+    private static final AtomicBoolean sIsListeningForBroadcasts = new AtomicBoolean();
+
+    private final String mCommand;
+    private final Parser<E> mParser;
+    private E mSnapshot = null;
+    private long mSnapshotGeneration;
+
+    public DumpsysSnapshot(String command, Parser<E> parser) {
+        if (command == null || parser == null) {
+            throw new NullPointerException();
+        }
+        mCommand = command;
+        mParser = parser;
+    }
+
+    /**
+     * Get the parsed output of the command, only running it if the state may have changed since
+     * it last ran.
+     */
+    public synchronized E get() throws AdbException, AdbParseException {
+        listenForBroadcasts();
+
+        // Read before running the command so that changes made while it runs are not missed
+        long generation = sGeneration.get();
+        if (mSnapshot == null || mSnapshotGeneration != generation) {
+            mSnapshot = mParser.parse(ShellCommand.builder(mCommand).execute());
+            mSnapshotGeneration = generation;
+        }
+        return mSnapshot;
+    }
+
+    /** Run the command again on the next call to {@link #get()}. */
+    public synchronized void invalidate() {
+        mSnapshot = null;
+    }
+
+    /** Run the command again on the next call to {@link #get()} of all snapshots. */
+    public static void invalidateAll() {
+        sGeneration.incrementAndGet();
+    }
+
+    /** Called when Nene has run {@code command}, to invalidate snapshots if required. */
+    static void onShellCommandExecuted(String command) {
+        for (String prefix : MODIFYING_COMMAND_PREFIXES) {
+            if (command.startsWith(prefix)) {
+                invalidateAll();
+                return;
+            }
+        }
+    }
+
+    private static void listenForBroadcasts() {
+        if (!sIsListeningForBroadcasts.compareAndSet(false, true)) {
+            return;
+        }
+
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidateAll();
+            }
+        };
+        Context context = TestApis.context().instrumentedContext();
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        context.registerReceiver(receiver, packageFilter);
+
+        IntentFilter userFilter = new IntentFilter();
+        userFilter.addAction(Intent.ACTION_USER_ADDED);
+        userFilter.addAction(Intent.ACTION_USER_REMOVED);
+        userFilter.addAction(Intent.ACTION_MANAGED_PROFILE_ADDED);
+        userFilter.addAction(Intent.ACTION_MANAGED_PROFILE_REMOVED);
+        context.registerReceiver(receiver, userFilter);
+    }
+}
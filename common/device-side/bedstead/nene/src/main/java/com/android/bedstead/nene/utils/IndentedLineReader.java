@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.nene.utils;
+
+/**
+ * Reads adb output one line at a time, without splitting the whole output.
+ *
+ * <p>This is an alternative to {@link ParserUtils#extractIndentedSections(String, int)} for large
+ * outputs. Sections organised using significant whitespace can be parsed by reading lines while
+ * their {@link #indentation()} is deeper than the section heading, and using {@link #unread()} to
+ * leave the line which ends the section to the caller.
+ */
+public final class IndentedLineReader {
+
+    private final String mOutput;
+    private int mNextLineStart = 0;
+    private String mLine = null;
+    private int mIndentation = 0;
+    private boolean mIsUnread = false;
+
+    public IndentedLineReader(String output) {
+        if (output == null) {
+            throw new NullPointerException();
+        }
+        mOutput = output;
+    }
+
+    /**
+     * Move to the next line.
+     *
+     * @return {@code false} if there are no more lines
+     */
+    public boolean next() {
+        if (mIsUnread) {
+            mIsUnread = false;
+            return true;
+        }
+        if (mNextLineStart > mOutput.length()
+                || (mNextLineStart == mOutput.length() && mLine != null)) {
+            return false;
+        }
+
+        int lineEnd = mOutput.indexOf('\n', mNextLineStart);
+        if (lineEnd < 0) {
+            lineEnd = mOutput.length();
+        }
+        mLine = mOutput.substring(mNextLineStart, lineEnd);
+        mNextLineStart = lineEnd + 1;
+        mIndentation = countIndentation(mLine);
+        return true;
+    }
+
+    /**
+     * Move to the next line which is equal to {@code line}.
+     *
+     * @return {@code false} if there is no such line
+     */
+    public boolean skipTo(String line) {
+        while (next()) {
+            if (mLine.equals(line)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the current line to be returned again by the next call to {@link #next()}. */
+    public void unread() {
+        if (mLine == null) {
+            throw new IllegalStateException("No line has been read");
+        }
+        mIsUnread = true;
+    }
+
+    /** The current line. */
+    public String line() {
+        return mLine;
+    }
+
+    /** The number of whitespace characters at the start of the current line. */
+    public int indentation() {
+        return mIndentation;
+    }
+
+    /** {@code true} if the current line is empty. */
+    public boolean isEmpty() {
+        return mLine.isEmpty();
+    }
+
+    private static int countIndentation(String line) {
+        int indentation = 0;
+        while (indentation < line.length()
+                && Character.isWhitespace(line.charAt(indentation))) {
+            indentation++;
+        }
+        return indentation;
+    }
+}
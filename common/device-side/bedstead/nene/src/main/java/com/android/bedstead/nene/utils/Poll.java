@@ -200,6 +200,8 @@ public final class Poll<E> {
         while (!Duration.between(Instant.now(), endTime).isNegative()) {
             tries++;
             try {
+                // The state being polled for may be read from a dumpsys snapshot
+                DumpsysSnapshot.invalidateAll();
                 value = mSupplier.get();
                 if (mChecker.apply(value)) {
                     return value;
@@ -228,6 +230,7 @@ public final class Poll<E> {
 
         // We call again to allow exceptions to be thrown - if it passes here we can still return
         try {
+            DumpsysSnapshot.invalidateAll();
             value = mSupplier.get();
         } catch (Throwable e) {
             long seconds = Duration.between(startTime, Instant.now()).toMillis() / 1000;
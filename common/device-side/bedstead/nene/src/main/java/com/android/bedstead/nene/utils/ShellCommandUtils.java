@@ -80,6 +80,15 @@ public final class ShellCommandUtils {
 
     static String executeCommand(String command, boolean allowEmptyOutput, byte[] stdInBytes)
             throws AdbException {
+        try {
+            return runCommand(command, allowEmptyOutput, stdInBytes);
+        } finally {
+            DumpsysSnapshot.onShellCommandExecuted(command);
+        }
+    }
+
+    private static String runCommand(
+            String command, boolean allowEmptyOutput, byte[] stdInBytes) throws AdbException {
         logCommand(command, allowEmptyOutput, stdInBytes);
 
         if (!Versions.meetsMinimumSdkVersionRequirement(S)) {
@@ -118,6 +127,15 @@ public final class ShellCommandUtils {
     }
 
     static byte[] executeCommandForBytes(String command, byte[] stdInBytes) throws AdbException {
+        try {
+            return runCommandForBytes(command, stdInBytes);
+        } finally {
+            DumpsysSnapshot.onShellCommandExecuted(command);
+        }
+    }
+
+    private static byte[] runCommandForBytes(String command, byte[] stdInBytes)
+            throws AdbException {
         logCommand(command, /* allowEmptyOutput= */ false, stdInBytes);
 
         if (!Versions.meetsMinimumSdkVersionRequirement(S)) {
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.nene.packages;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.testng.Assert.assertThrows;
+
+import com.android.bedstead.nene.TestApis;
+import com.android.bedstead.nene.exceptions.AdbParseException;
+import com.android.bedstead.nene.users.UserReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class AdbPackageParser26Test {
+
+    private static final String PACKAGE_A = "com.android.bedstead.nene.test.a";
+    private static final String PACKAGE_B = "com.android.bedstead.nene.test.b";
+
+    // Trimmed "dumpsys package" output, with sections at every level which are not parsed
+    private static final String DUMPSYS_PACKAGE_OUTPUT =
+            "Database versions:\n"
+            + "  Internal:\n"
+            + "    sdkVersion=31 databaseVersion=3\n"
+            + "\n"
+            + "Features:\n"
+            + "  reqGlEsVersion=0x30002\n"
+            + "  feature:android.hardware.camera\n"
+            + "  feature:android.software.device_admin\n"
+            + "\n"
+            + "Packages:\n"
+            + "  Package [" + PACKAGE_A + "] (1a2b3c):\n"
+            + "    userId=10100\n"
+            + "    pkg=Package{4d5e6f " + PACKAGE_A + "}\n"
+            + "    declared permissions:\n"
+            + "      " + PACKAGE_A + ".permission.A: prot=signature, INSTALLED\n"
+            + "    install permissions:\n"
+            + "      android.permission.INTERNET: granted=true\n"
+            + "      android.permission.BLUETOOTH: granted=false\n"
+            + "    User 0: ceDataInode=1234 installed=true hidden=false stopped=false\n"
+            + "      gids=[3003]\n"
+            + "      disabledComponents:\n"
+            + "        " + PACKAGE_A + ".Disabled\n"
+            + "      runtime permissions:\n"
+            + "        android.permission.CAMERA: granted=true, flags=[ USER_SET ]\n"
+            + "        android.permission.READ_CONTACTS: granted=false, flags=[ USER_SET ]\n"
+            + "      enabledComponents:\n"
+            + "        " + PACKAGE_A + ".Enabled\n"
+            + "    User 10: ceDataInode=0 installed=false hidden=false stopped=true\n"
+            + "      runtime permissions:\n"
+            + "        android.permission.CAMERA: granted=true, flags=[ USER_SET ]\n"
+            + "  Package [" + PACKAGE_B + "] (7a8b9c):\n"
+            + "    userId=10101\n"
+            + "    User 0: ceDataInode=5678 installed=true hidden=false stopped=false\n"
+            + "\n"
+            + "Queries:\n"
+            + "  system apps queryable: false\n"
+            + "  Package [com.android.bedstead.nene.test.notinlist] (1):\n"
+            + "    User 0: ceDataInode=1 installed=true hidden=false stopped=false\n";
+
+    private final AdbPackageParser26 mParser = new AdbPackageParser26();
+
+    @Test
+    public void parseFeatures_returnsFeatures() throws Exception {
+        assertThat(mParser.parseFeatures(DUMPSYS_PACKAGE_OUTPUT)).containsExactly(
+                "reqGlEsVersion=0x30002",
+                "feature:android.hardware.camera",
+                "feature:android.software.device_admin");
+    }
+
+    @Test
+    public void parseFeatures_noFeatures_throwsException() {
+        assertThrows(AdbParseException.class, () -> mParser.parseFeatures("Packages:\n"));
+    }
+
+    @Test
+    public void parsePackages_returnsPackagesInList() throws Exception {
+        assertThat(mParser.parsePackages(DUMPSYS_PACKAGE_OUTPUT).keySet())
+                .containsExactly(PACKAGE_A, PACKAGE_B);
+    }
+
+    @Test
+    public void parsePackages_noPackages_throwsException() {
+        assertThrows(AdbParseException.class, () -> mParser.parsePackages("Features:\n"));
+    }
+
+    @Test
+    public void parsePackages_onlyUsersWhereInstalled() throws Exception {
+        Map<String, AdbPackage> packages = mParser.parsePackages(DUMPSYS_PACKAGE_OUTPUT);
+
+        assertThat(packages.get(PACKAGE_A).installedOnUsers()).containsExactly(systemUser());
+        assertThat(packages.get(PACKAGE_B).installedOnUsers()).containsExactly(systemUser());
+    }
+
+    @Test
+    public void parsePackages_grantedPermissions_containsGrantedInstallAndRuntimePermissions()
+            throws Exception {
+        Map<String, AdbPackage> packages = mParser.parsePackages(DUMPSYS_PACKAGE_OUTPUT);
+
+        assertThat(packages.get(PACKAGE_A).grantedPermissions(systemUser())).containsExactly(
+                "android.permission.INTERNET", "android.permission.CAMERA");
+    }
+
+    @Test
+    public void parsePackages_userWithoutSections_hasNoGrantedPermissions() throws Exception {
+        Map<String, AdbPackage> packages = mParser.parsePackages(DUMPSYS_PACKAGE_OUTPUT);
+
+        assertThat(packages.get(PACKAGE_B).grantedPermissions(systemUser())).isEmpty();
+    }
+
+    @Test
+    public void parsePackages_invalidPackageHeader_throwsException() {
+        assertThrows(AdbParseException.class,
+                () -> mParser.parsePackages("Packages:\n  Package without name\n"));
+    }
+
+    private static UserReference systemUser() {
+        return TestApis.users().system();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.nene.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import static org.testng.Assert.assertThrows;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class DumpsysSnapshotTest {
+
+    private static final String DUMPSYS_USER_COMMAND = "dumpsys user";
+
+    // Commands are only passed to onShellCommandExecuted, so are never run
+    private static final String[] MODIFYING_COMMANDS = new String[] {
+            "pm install-existing com.example",
+            "cmd package install-existing com.example",
+            "cmd user set-user-restriction no_sms 1",
+            "am start-user 10",
+            "am stop-user 10",
+            "am switch-user 10",
+            "dpm set-device-owner com.example/.Receiver",
+            "cmd device_policy mark-profile-owner-on-organization-owned-device"
+    };
+
+    private static final String[] NON_MODIFYING_COMMANDS = new String[] {
+            "dumpsys package",
+            "dumpsys user",
+            "am start-activity com.example/.Activity",
+            "settings get global adb_enabled",
+            "cmd packages",
+            " pm list users"
+    };
+
+    private final AtomicInteger mParseCount = new AtomicInteger();
+    private final DumpsysSnapshot<Integer> mSnapshot =
+            new DumpsysSnapshot<>(DUMPSYS_USER_COMMAND, output -> mParseCount.incrementAndGet());
+
+    @Before
+    public void setUp() throws Exception {
+        mSnapshot.get();
+    }
+
+    @Test
+    public void constructor_nullCommand_throwsException() {
+        assertThrows(NullPointerException.class,
+                () -> new DumpsysSnapshot<>(/* command= */ null, output -> output));
+    }
+
+    @Test
+    public void get_notInvalidated_doesNotRunCommandAgain() throws Exception {
+        assertThat(mSnapshot.get()).isEqualTo(1);
+        assertThat(mParseCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_invalidated_runsCommandAgain() throws Exception {
+        mSnapshot.invalidate();
+
+        assertThat(mSnapshot.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_allInvalidated_runsCommandAgain() throws Exception {
+        DumpsysSnapshot.invalidateAll();
+
+        assertThat(mSnapshot.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void onShellCommandExecuted_modifyingCommand_invalidatesAllSnapshots()
+            throws Exception {
+        for (String command : MODIFYING_COMMANDS) {
+            int parseCount = mParseCount.get();
+
+            DumpsysSnapshot.onShellCommandExecuted(command);
+            mSnapshot.get();
+
+            assertWithMessage(command).that(mParseCount.get()).isEqualTo(parseCount + 1);
+        }
+    }
+
+    @Test
+    public void onShellCommandExecuted_nonModifyingCommand_doesNotInvalidateSnapshots()
+            throws Exception {
+        for (String command : NON_MODIFYING_COMMANDS) {
+            DumpsysSnapshot.onShellCommandExecuted(command);
+            mSnapshot.get();
+
+            assertWithMessage(command).that(mParseCount.get()).isEqualTo(1);
+        }
+    }
+}
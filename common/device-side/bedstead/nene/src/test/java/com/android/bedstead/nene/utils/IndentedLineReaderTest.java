@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.bedstead.nene.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.testng.Assert.assertThrows;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashSet;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class IndentedLineReaderTest {
+
+    private static final String SECTIONS =
+            "section1\n"
+            + "    a\n"
+            + "        alpha\n"
+            + "        beta\n"
+            + "    b\n"
+            + "    c\n"
+            + "section2\n"
+            + "    a2\n"
+            + "    b2\n";
+
+    @Test
+    public void constructor_nullOutput_throwsException() {
+        assertThrows(NullPointerException.class, () -> new IndentedLineReader(null));
+    }
+
+    @Test
+    public void next_readsEachLineWithIndentation() {
+        IndentedLineReader reader = new IndentedLineReader("a\n  b\n\tc");
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("a");
+        assertThat(reader.indentation()).isEqualTo(0);
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("  b");
+        assertThat(reader.indentation()).isEqualTo(2);
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("\tc");
+        assertThat(reader.indentation()).isEqualTo(1);
+        assertThat(reader.next()).isFalse();
+    }
+
+    @Test
+    public void next_trailingNewline_doesNotReadExtraLine() {
+        IndentedLineReader reader = new IndentedLineReader("a\n");
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.next()).isFalse();
+    }
+
+    @Test
+    public void next_emptyLines_areRead() {
+        IndentedLineReader reader = new IndentedLineReader("a\n\nb");
+
+        reader.next();
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.isEmpty()).isTrue();
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("b");
+    }
+
+    @Test
+    public void next_emptyOutput_readsOneEmptyLine() {
+        IndentedLineReader reader = new IndentedLineReader("");
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.isEmpty()).isTrue();
+        assertThat(reader.next()).isFalse();
+    }
+
+    @Test
+    public void unread_nextReturnsSameLine() {
+        IndentedLineReader reader = new IndentedLineReader("a\n  b\nc");
+        reader.next();
+        reader.next();
+
+        reader.unread();
+
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("  b");
+        assertThat(reader.indentation()).isEqualTo(2);
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("c");
+    }
+
+    @Test
+    public void unread_noLineRead_throwsException() {
+        IndentedLineReader reader = new IndentedLineReader("a");
+
+        assertThrows(IllegalStateException.class, reader::unread);
+    }
+
+    @Test
+    public void skipTo_movesToMatchingLine() {
+        IndentedLineReader reader = new IndentedLineReader("a\nFeatures:\nb");
+
+        assertThat(reader.skipTo("Features:")).isTrue();
+        assertThat(reader.next()).isTrue();
+        assertThat(reader.line()).isEqualTo("b");
+    }
+
+    @Test
+    public void skipTo_noMatchingLine_returnsFalse() {
+        IndentedLineReader reader = new IndentedLineReader("a\n  Features:\nb");
+
+        assertThat(reader.skipTo("Features:")).isFalse();
+    }
+
+    @Test
+    public void readSections_matchesExtractIndentedSections() throws Exception {
+        assertReadSectionsMatchExtractIndentedSections(SECTIONS, /* baseIndentation= */ 0);
+    }
+
+    @Test
+    public void readSections_subsections_matchesExtractIndentedSections() throws Exception {
+        String subsections = SECTIONS.split("\n", 2)[1].split("section2")[0];
+
+        assertReadSectionsMatchExtractIndentedSections(subsections, /* baseIndentation= */ 4);
+    }
+
+    @Test
+    public void readSections_leadingEmptyLines_matchesExtractIndentedSections()
+            throws Exception {
+        assertReadSectionsMatchExtractIndentedSections("\n\n" + SECTIONS, 0);
+    }
+
+    @Test
+    public void readSections_nestedSections_matchesExtractIndentedSections() throws Exception {
+        String packages =
+                "  Package [com.example.a] (1234):\n"
+                + "    userId=10100\n"
+                + "    install permissions:\n"
+                + "      android.permission.INTERNET: granted=true\n"
+                + "    User 0: ceDataInode=1 installed=true hidden=false\n"
+                + "      runtime permissions:\n"
+                + "        android.permission.CAMERA: granted=false\n"
+                + "  Package [com.example.b] (5678):\n"
+                + "    userId=10101\n";
+
+        assertReadSectionsMatchExtractIndentedSections(packages, /* baseIndentation= */ 2);
+    }
+
+    /**
+     * Read the sections using {@link IndentedLineReader} in the same way as
+     * {@code AdbPackageParser26}, and check they are the same as those of
+     * {@link ParserUtils#extractIndentedSections(String, int)}.
+     */
+    private static void assertReadSectionsMatchExtractIndentedSections(
+            String output, int baseIndentation) throws Exception {
+        Set<String> sections = new HashSet<>();
+        IndentedLineReader reader = new IndentedLineReader(output);
+        while (reader.next()) {
+            if (reader.isEmpty() || reader.indentation() != baseIndentation) {
+                continue;
+            }
+            StringBuilder section = new StringBuilder(reader.line()).append("\n");
+            while (reader.next()) {
+                if (reader.isEmpty() || reader.indentation() <= baseIndentation) {
+                    reader.unread();
+                    break;
+                }
+                section.append(reader.line()).append("\n");
+            }
+            sections.add(section.toString().trim());
+        }
+
+        assertThat(sections).isEqualTo(
+                ParserUtils.extractIndentedSections(output, baseIndentation));
+    }
+}
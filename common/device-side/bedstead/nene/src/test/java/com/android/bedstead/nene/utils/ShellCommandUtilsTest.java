@@ -32,12 +32,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 @RunWith(JUnit4.class)
 public class ShellCommandUtilsTest {
 
     private static final String LIST_USERS_COMMAND = "pm list users";
+    private static final String DUMPSYS_USER_COMMAND = "dumpsys user";
     private static final String LIST_USERS_EXPECTED_OUTPUT = "Users:";
     private static final String INVALID_COMMAND_LEGACY_OUTPUT = "pm list-users";
     private static final String INVALID_COMMAND_EXPECTED_LEGACY_OUTPUT = "Unknown command:";
@@ -108,4 +110,60 @@ public class ShellCommandUtilsTest {
     public void startsWithSuccess_doesNotStartWithSuccess_returnsFalse() {
         assertThat(ShellCommandUtils.startsWithSuccess("not success...")).isFalse();
     }
+
+    @Test
+    public void executeCommand_modifyingCommand_invalidatesDumpsysSnapshots() throws Exception {
+        AtomicInteger parseCount = new AtomicInteger();
+        DumpsysSnapshot<Integer> snapshot = countingSnapshot(parseCount);
+        snapshot.get();
+
+        ShellCommandUtils.executeCommand(LIST_USERS_COMMAND);
+        snapshot.get();
+
+        assertThat(parseCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void executeCommand_failedModifyingCommand_invalidatesDumpsysSnapshots()
+            throws Exception {
+        AtomicInteger parseCount = new AtomicInteger();
+        DumpsysSnapshot<Integer> snapshot = countingSnapshot(parseCount);
+        snapshot.get();
+
+        assertThrows(AdbException.class,
+                () -> ShellCommandUtils.executeCommand(INVALID_COMMAND_CORRECT_OUTPUT));
+        snapshot.get();
+
+        assertThat(parseCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void executeCommand_nonModifyingCommand_doesNotInvalidateDumpsysSnapshots()
+            throws Exception {
+        AtomicInteger parseCount = new AtomicInteger();
+        DumpsysSnapshot<Integer> snapshot = countingSnapshot(parseCount);
+        snapshot.get();
+
+        ShellCommandUtils.executeCommand(DUMPSYS_USER_COMMAND);
+        snapshot.get();
+
+        assertThat(parseCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void executeCommandForBytes_modifyingCommand_invalidatesDumpsysSnapshots()
+            throws Exception {
+        AtomicInteger parseCount = new AtomicInteger();
+        DumpsysSnapshot<Integer> snapshot = countingSnapshot(parseCount);
+        snapshot.get();
+
+        ShellCommandUtils.executeCommandForBytes(LIST_USERS_COMMAND);
+        snapshot.get();
+
+        assertThat(parseCount.get()).isEqualTo(2);
+    }
+
+    private static DumpsysSnapshot<Integer> countingSnapshot(AtomicInteger parseCount) {
+        return new DumpsysSnapshot<>(DUMPSYS_USER_COMMAND, output -> parseCount.incrementAndGet());
+    }
 }
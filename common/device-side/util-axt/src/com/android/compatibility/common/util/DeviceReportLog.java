@@ -24,12 +24,20 @@ import android.util.Log;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Handles adding results to the report for device side tests.
  *
  * NOTE: tests MUST call {@link #submit(Instrumentation)} if and only if the test passes in order to
  * send the results to the runner.
+ *
+ * A buffered report log keeps its metrics in memory and writes them on a background thread when
+ * it is submitted, so that writing the report log does not affect timing measurements made by
+ * the test. Tests using buffered report logs MUST call {@link #awaitSubmissions()} before they
+ * finish, in order for the results to be sent before the instrumentation ends.
  */
 public class DeviceReportLog extends ReportLog {
     private static final String TAG = DeviceReportLog.class.getSimpleName();
@@ -37,14 +45,36 @@ public class DeviceReportLog extends ReportLog {
     private static final int INST_STATUS_ERROR = -1;
     private static final int INST_STATUS_IN_PROGRESS = 2;
 
+    // Submissions of buffered report logs, in order, which also keeps them in order with the
+    // other submissions to the same report log file
+    private static final ExecutorService sSubmitExecutor = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private ReportLogDeviceInfoStore store;
+    // Null unless the report log is buffered
+    private ReportLogBuffer buffer;
+    // Where metrics are added, which is the buffer if there is one and the store otherwise
+    private DeviceInfoStore metricsStore;
 
     public DeviceReportLog(String reportLogName, String streamName) {
+        this(reportLogName, streamName, /* buffered= */ false);
+    }
+
+    public DeviceReportLog(String reportLogName, String streamName, boolean buffered) {
         this(reportLogName, streamName,
-                new File(Environment.getExternalStorageDirectory(), "report-log-files"));
+                new File(Environment.getExternalStorageDirectory(), "report-log-files"), buffered);
     }
 
     public DeviceReportLog(String reportLogName, String streamName, File logDirectory) {
+        this(reportLogName, streamName, logDirectory, /* buffered= */ false);
+    }
+
+    public DeviceReportLog(String reportLogName, String streamName, File logDirectory,
+            boolean buffered) {
         super(reportLogName, streamName);
         try {
             // dir value must match the src-dir value configured in ReportLogCollector target
@@ -57,7 +87,14 @@ public class DeviceReportLog extends ReportLog {
             } else {
                 File jsonFile = new File(logDirectory, mReportLogName + ".reportlog.json");
                 store = new ReportLogDeviceInfoStore(jsonFile, mStreamName);
-                store.open();
+                if (buffered) {
+                    // The store is only opened when the buffer is written on submission.
+                    buffer = new ReportLogBuffer();
+                    metricsStore = buffer;
+                } else {
+                    store.open();
+                    metricsStore = store;
+                }
             }
         } catch (Exception e) {
             Log.e(TAG, "Could not create report log file.", e);
@@ -72,7 +109,7 @@ public class DeviceReportLog extends ReportLog {
             ResultUnit unit) {
         super.addValue(source, message, value, type, unit);
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -85,7 +122,7 @@ public class DeviceReportLog extends ReportLog {
     public void addValue(String message, double value, ResultType type, ResultUnit unit) {
         super.addValue(message, value, type, unit);
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -99,7 +136,7 @@ public class DeviceReportLog extends ReportLog {
             ResultUnit unit) {
         super.addValues(source, message, values, type, unit);
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -112,7 +149,7 @@ public class DeviceReportLog extends ReportLog {
     public void addValues(String message, double[] values, ResultType type, ResultUnit unit) {
         super.addValues(message, values, type, unit);
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -124,7 +161,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValue(String message, int value, ResultType type, ResultUnit unit) {
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -136,7 +173,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValue(String message, long value, ResultType type, ResultUnit unit) {
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -148,7 +185,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValue(String message, float value, ResultType type, ResultUnit unit) {
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -160,7 +197,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValue(String message, boolean value, ResultType type, ResultUnit unit) {
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -172,7 +209,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValue(String message, String value, ResultType type, ResultUnit unit) {
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -184,7 +221,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValues(String message, int[] values, ResultType type, ResultUnit unit) {
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -196,7 +233,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValues(String message, long[] values, ResultType type, ResultUnit unit) {
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -208,7 +245,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValues(String message, float[] values, ResultType type, ResultUnit unit) {
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -220,7 +257,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValues(String message, boolean[] values, ResultType type, ResultUnit unit) {
         try {
-            store.addArrayResult(message, values);
+            metricsStore.addArrayResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -232,7 +269,7 @@ public class DeviceReportLog extends ReportLog {
     @Override
     public void addValues(String message, List<String> values, ResultType type, ResultUnit unit) {
         try {
-            store.addListResult(message, values);
+            metricsStore.addListResult(message, values);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -247,7 +284,7 @@ public class DeviceReportLog extends ReportLog {
     public void setSummary(String message, double value, ResultType type, ResultUnit unit) {
         super.setSummary(message, value, type, unit);
         try {
-            store.addResult(message, value);
+            metricsStore.addResult(message, value);
         } catch (Exception e) {
             Log.e(TAG, "Could not log metric.", e);
         }
@@ -257,8 +294,17 @@ public class DeviceReportLog extends ReportLog {
      * Closes report file and submits report to instrumentation.
      */
     public void submit(Instrumentation instrumentation) {
+        if (buffer != null) {
+            sSubmitExecutor.execute(() -> submitNow(instrumentation));
+            return;
+        }
+        awaitSubmissions();
+        submitNow(instrumentation);
+    }
+
+    private void submitNow(Instrumentation instrumentation) {
         try {
-            store.close();
+            closeStore();
             Bundle output = new Bundle();
             output.putString(RESULT, serialize(this));
             instrumentation.sendStatus(INST_STATUS_IN_PROGRESS, output);
@@ -274,10 +320,47 @@ public class DeviceReportLog extends ReportLog {
      * does not appear in the result XML.
      */
     public void submit() {
+        if (buffer != null) {
+            sSubmitExecutor.execute(this::submitNow);
+            return;
+        }
+        awaitSubmissions();
+        submitNow();
+    }
+
+    private void submitNow() {
         try {
-            store.close();
+            closeStore();
         } catch (Exception e) {
             Log.e(TAG, "ReportLog Submit Failed", e);
         }
     }
+
+    private void closeStore() throws Exception {
+        if (buffer == null) {
+            store.close();
+            return;
+        }
+        store.open();
+        try {
+            buffer.writeTo(store);
+        } finally {
+            // Also deletes the temp file the metrics are written to
+            store.close();
+        }
+    }
+
+    /**
+     * Waits until all buffered report logs which have been submitted are written to their files
+     * and sent to the instrumentation.
+     */
+    public static void awaitSubmissions() {
+        try {
+            sSubmitExecutor.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Could not wait for ReportLog submissions", e);
+        }
+    }
 }
@@ -16,17 +16,32 @@
 
 package com.android.compatibility.common.util;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A poor man's implementation of the readelf command. This program is designed
- * to parse ELF (Executable and Linkable Format) files.
+ * to parse ELF (Executable and Linkable Format) files, either from a file or from
+ * memory, e.g. a library stored in an APK.
  */
 public class ReadElf implements AutoCloseable {
+    public static final String ARCH_ARM = "arm";
+    public static final String ARCH_X86 = "x86";
+    public static final String ARCH_MIPS = "mips";
+    public static final String ARCH_UNKNOWN = "unknown";
+
     /** The magic values for the ELF identification. */
     private static final byte[] ELFMAG = {
             (byte) 0x7F, (byte) 'E', (byte) 'L', (byte) 'F', };
@@ -54,10 +69,21 @@ public class ReadElf implements AutoCloseable {
 
     private static final long PT_LOAD = 1;
 
+    private static final int SHT_PROGBITS = 1;
     private static final int SHT_SYMTAB = 2;
     private static final int SHT_STRTAB = 3;
     private static final int SHT_DYNAMIC = 6;
     private static final int SHT_DYNSYM = 11;
+    private static final int SHT_GNU_VERNEED = 0x6ffffffe;
+    private static final int SHT_GNU_VERSYM = 0x6fffffff;
+
+    private static final int SHN_UNDEF = 0;
+
+    private static final int DT_NULL = 0;
+    private static final int DT_NEEDED = 1;
+
+    /** Mask of the version index in a .gnu.version entry, without the hidden bit. */
+    private static final int VERSYM_VERSION = 0x7fff;
 
     public static class Symbol {
         public static final int STB_LOCAL = 0;
@@ -77,11 +103,35 @@ public class ReadElf implements AutoCloseable {
         public final String name;
         public final int bind;
         public final int type;
+        public final int shndx;
+
+        /** File name of the library the symbol version is needed from, if any. */
+        private final String mExternalLibFileName;
 
-        Symbol(String name, int st_info) {
+        Symbol(String name, int st_info, int st_shndx, String externalLibFileName) {
             this.name = name;
             this.bind = (st_info >> 4) & 0x0F;
             this.type = st_info & 0x0F;
+            this.shndx = st_shndx;
+            mExternalLibFileName = externalLibFileName;
+        }
+
+        /** Returns whether the symbol is a global or weak symbol defined by this file. */
+        public boolean isExtern() {
+            return (bind == STB_GLOBAL || bind == STB_WEAK) && shndx != SHN_UNDEF;
+        }
+
+        /** Returns whether the symbol is a global symbol that another file must define. */
+        public boolean isGlobalUnd() {
+            return bind == STB_GLOBAL && shndx == SHN_UNDEF;
+        }
+
+        /**
+         * Returns the file name of the library that defines an undefined symbol, as recorded by
+         * its symbol version, or {@link ReadElf#ARCH_UNKNOWN} if the symbol is not versioned.
+         */
+        public String getExternalLibFileName() {
+            return mExternalLibFileName != null ? mExternalLibFileName : ARCH_UNKNOWN;
         }
 
         @Override
@@ -123,13 +173,14 @@ public class ReadElf implements AutoCloseable {
     }
 
     private final String mPath;
-    private final RandomAccessFile mFile;
-    private final byte[] mBuffer = new byte[512];
+    private final ByteBuffer mData;
+    private final byte[] mBuffer = new byte[EI_NIDENT];
     private int mEndian;
     private boolean mIsDynamic;
     private boolean mIsPIE;
     private int mType;
     private int mAddrSize;
+    private String mArch;
 
     /** Symbol Table offset */
     private long mSymTabOffset;
@@ -161,19 +212,72 @@ public class ReadElf implements AutoCloseable {
     /** Dynamic String Table size */
     private long mDynStrSize;
 
+    /** Dynamic Section offset */
+    private long mDynamicOffset;
+
+    /** Dynamic Section size */
+    private long mDynamicSize;
+
+    /** Read-only Data Section offset */
+    private long mRoDataOffset;
+
+    /** Read-only Data Section size */
+    private long mRoDataSize;
+
+    /** Symbol Version Table offset */
+    private long mVerSymOffset;
+
+    /** Symbol Version Table size */
+    private long mVerSymSize;
+
+    /** Version Needed Section offset */
+    private long mVerNeedOffset;
+
+    /** Version Needed Section size */
+    private long mVerNeedSize;
+
     /** Symbol Table symbol names */
     private Map<String, Symbol> mSymbols;
 
     /** Dynamic Symbol Table symbol names */
     private Map<String, Symbol> mDynamicSymbols;
 
+    /** Dynamic Symbol Table symbols in table order */
+    private Symbol[] mDynamicSymbolArr;
+
     public static ReadElf read(File file) throws IOException {
-        return new ReadElf(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed.
+            return new ReadElf(file.getPath(),
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Parses an ELF file from memory.
+     *
+     * @param name the name of the ELF file, used in error messages
+     * @param content the ELF file between the buffer's position and limit, which are not changed
+     */
+    public static ReadElf read(String name, ByteBuffer content) throws IOException {
+        return new ReadElf(name, content.slice());
+    }
+
+    /** Returns whether a file starts with the ELF magic values. */
+    public static boolean isElf(File file) {
+        byte[] magic = new byte[ELFMAG.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(magic);
+        } catch (IOException e) {
+            return false;
+        }
+        return Arrays.equals(magic, ELFMAG);
     }
 
     public static void main(String[] args) throws IOException {
         for (String arg : args) {
-            ReadElf re = new ReadElf(new File(arg));
+            ReadElf re = read(new File(arg));
             re.getSymbol("x");
             re.getDynamicSymbol("x");
             re.close();
@@ -192,37 +296,35 @@ public class ReadElf implements AutoCloseable {
         return mIsPIE;
     }
 
-    private ReadElf(File file) throws IOException {
-        mPath = file.getPath();
-        mFile = new RandomAccessFile(file, "r");
+    /** Returns 32 or 64. */
+    public int getBits() {
+        return mAddrSize * 8;
+    }
 
-        if (mFile.length() < EI_NIDENT) {
-            throw new IllegalArgumentException("Too small to be an ELF file: " + file);
+    /** Returns one of the ARCH_ values; {@link #getBits} tells e.g. arm and arm64 apart. */
+    public String getArchitecture() {
+        return mArch;
+    }
+
+    private ReadElf(String path, ByteBuffer data) throws IOException {
+        mPath = path;
+        mData = data;
+
+        if (mData.limit() < EI_NIDENT) {
+            throw new IllegalArgumentException("Too small to be an ELF file: " + path);
         }
 
         readHeader();
     }
 
+    /** Nothing to release: a mapped file is unmapped once the ReadElf is garbage collected. */
     @Override
     public void close() {
-        try {
-            mFile.close();
-        } catch (IOException ignored) {
-        }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        try {
-            close();
-        } finally {
-            super.finalize();
-        }
     }
 
     private void readHeader() throws IOException {
-        mFile.seek(0);
-        mFile.readFully(mBuffer, 0, EI_NIDENT);
+        seek(0);
+        mData.get(mBuffer, 0, EI_NIDENT);
 
         if (mBuffer[0] != ELFMAG[0] || mBuffer[1] != ELFMAG[1] ||
                 mBuffer[2] != ELFMAG[2] || mBuffer[3] != ELFMAG[3]) {
@@ -266,6 +368,16 @@ public class ReadElf implements AutoCloseable {
                     e_machine + "/" + elfClass + ": " + mPath);
         }
 
+        if (e_machine == EM_ARM || e_machine == EM_AARCH64) {
+            mArch = ARCH_ARM;
+        } else if (e_machine == EM_386 || e_machine == EM_X86_64) {
+            mArch = ARCH_X86;
+        } else if (e_machine == EM_MIPS) {
+            mArch = ARCH_MIPS;
+        } else {
+            mArch = ARCH_UNKNOWN;
+        }
+
         long e_version = readWord();
         if (e_version != EV_CURRENT) {
             throw new IOException("Invalid e_version: " + e_version + ": " + mPath);
@@ -292,7 +404,7 @@ public class ReadElf implements AutoCloseable {
             throws IOException {
         // Read the Section Header String Table offset first.
         {
-            mFile.seek(sh_off + e_shstrndx * e_shentsize);
+            seek(sh_off + e_shstrndx * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -314,7 +426,7 @@ public class ReadElf implements AutoCloseable {
                 continue;
             }
 
-            mFile.seek(sh_off + i * e_shentsize);
+            seek(sh_off + i * e_shentsize);
 
             long sh_name = readWord();
             long sh_type = readWord();
@@ -343,13 +455,26 @@ public class ReadElf implements AutoCloseable {
                 }
             } else if (sh_type == SHT_DYNAMIC) {
                 mIsDynamic = true;
+                mDynamicOffset = sh_offset;
+                mDynamicSize = sh_size;
+            } else if (sh_type == SHT_PROGBITS) {
+                if (".rodata".equals(readShStrTabEntry(sh_name))) {
+                    mRoDataOffset = sh_offset;
+                    mRoDataSize = sh_size;
+                }
+            } else if (sh_type == SHT_GNU_VERSYM) {
+                mVerSymOffset = sh_offset;
+                mVerSymSize = sh_size;
+            } else if (sh_type == SHT_GNU_VERNEED) {
+                mVerNeedOffset = sh_offset;
+                mVerNeedSize = sh_size;
             }
         }
     }
 
     private void readProgramHeaders(long ph_off, int e_phnum, int e_phentsize) throws IOException {
         for (int i = 0; i < e_phnum; ++i) {
-            mFile.seek(ph_off + i * e_phentsize);
+            seek(ph_off + i * e_phentsize);
 
             long p_type = readWord();
             if (p_type == PT_LOAD) {
@@ -368,17 +493,22 @@ public class ReadElf implements AutoCloseable {
         }
     }
 
-    private HashMap<String, Symbol> readSymbolTable(long symStrOffset, long symStrSize,
-            long tableOffset, long tableSize) throws IOException {
-        HashMap<String, Symbol> result = new HashMap<String, Symbol>();
-        mFile.seek(tableOffset);
-        while (mFile.getFilePointer() < tableOffset + tableSize) {
+    /**
+     * Reads a symbol table in table order. The versions give, for each symbol index, the library
+     * its version is needed from; they are only known for the Dynamic Symbol Table.
+     */
+    private List<Symbol> readSymbolTable(long symStrOffset, long symStrSize,
+            long tableOffset, long tableSize, String[] versions) throws IOException {
+        List<Symbol> result = new ArrayList<Symbol>();
+        seek(tableOffset);
+        for (int index = 0; mData.position() < tableOffset + tableSize; ++index) {
             long st_name = readWord();
             int st_info;
+            int st_shndx;
             if (mAddrSize == 8) {
                 st_info = readByte();
                 int st_other = readByte();
-                int st_shndx = readHalf();
+                st_shndx = readHalf();
                 long st_value = readAddr();
                 long st_size = readX(mAddrSize);
             } else {
@@ -386,7 +516,7 @@ public class ReadElf implements AutoCloseable {
                 long st_size = readWord();
                 st_info = readByte();
                 int st_other = readByte();
-                int st_shndx = readHalf();
+                st_shndx = readHalf();
             }
             if (st_name == 0) {
                 continue;
@@ -394,13 +524,72 @@ public class ReadElf implements AutoCloseable {
 
             final String symName = readStrTabEntry(symStrOffset, symStrSize, st_name);
             if (symName != null) {
-                Symbol s = new Symbol(symName, st_info);
-                result.put(symName, s);
+                String libFileName = index < versions.length ? versions[index] : null;
+                result.add(new Symbol(symName, st_info, st_shndx, libFileName));
             }
         }
         return result;
     }
 
+    private static Map<String, Symbol> toMap(List<Symbol> symbols) {
+        HashMap<String, Symbol> result = new HashMap<String, Symbol>();
+        for (Symbol symbol : symbols) {
+            result.put(symbol.name, symbol);
+        }
+        return result;
+    }
+
+    /** Returns, for each Dynamic Symbol Table index, the library its version is needed from. */
+    private String[] readSymbolVersions() throws IOException {
+        if (mVerSymOffset == 0 || mVerNeedOffset == 0) {
+            return new String[0];
+        }
+        Map<Integer, String> libFileNames = readVersionsNeeded();
+        String[] result = new String[(int) (mVerSymSize / 2)];
+        seek(mVerSymOffset);
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = libFileNames.get(readHalf() & VERSYM_VERSION);
+        }
+        return result;
+    }
+
+    /** Returns the library file name for each version index in the Version Needed Section. */
+    private Map<Integer, String> readVersionsNeeded() throws IOException {
+        Map<Integer, String> result = new HashMap<Integer, String>();
+        long verNeedOffset = mVerNeedOffset;
+        while (verNeedOffset < mVerNeedOffset + mVerNeedSize) {
+            seek(verNeedOffset);
+            int vn_version = readHalf();
+            int vn_cnt = readHalf();
+            long vn_file = readWord();
+            long vn_aux = readWord();
+            long vn_next = readWord();
+
+            final String libFileName = readStrTabEntry(mDynStrOffset, mDynStrSize, vn_file);
+            long auxOffset = verNeedOffset + vn_aux;
+            for (int i = 0; i < vn_cnt; ++i) {
+                seek(auxOffset);
+                long vna_hash = readWord();
+                int vna_flags = readHalf();
+                int vna_other = readHalf();
+                long vna_name = readWord();
+                long vna_next = readWord();
+
+                result.put(vna_other, libFileName);
+                if (vna_next == 0) {
+                    break;
+                }
+                auxOffset += vna_next;
+            }
+
+            if (vn_next == 0) {
+                break;
+            }
+            verNeedOffset += vn_next;
+        }
+        return result;
+    }
+
     private String readShStrTabEntry(long strOffset) throws IOException {
         if (mShStrTabOffset == 0 || strOffset < 0 || strOffset >= mShStrTabSize) {
             return null;
@@ -433,7 +622,10 @@ public class ReadElf implements AutoCloseable {
     }
 
     private long readX(int byteCount) throws IOException {
-        mFile.readFully(mBuffer, 0, byteCount);
+        if (mData.remaining() < byteCount) {
+            throw new EOFException("Unexpected end of ELF file: " + mPath);
+        }
+        mData.get(mBuffer, 0, byteCount);
 
         int answer = 0;
         if (mEndian == ELFDATA2LSB) {
@@ -450,15 +642,19 @@ public class ReadElf implements AutoCloseable {
         return answer;
     }
 
+    /** Reads a NUL-terminated string without moving the current position. */
     private String readString(long offset) throws IOException {
-        long originalOffset = mFile.getFilePointer();
-        mFile.seek(offset);
-        mFile.readFully(mBuffer, 0, (int) Math.min(mBuffer.length, mFile.length() - offset));
-        mFile.seek(originalOffset);
-
-        for (int i = 0; i < mBuffer.length; ++i) {
-            if (mBuffer[i] == 0) {
-                return new String(mBuffer, 0, i);
+        if (offset < 0 || offset >= mData.limit()) {
+            throw new EOFException("Invalid string offset " + offset + ": " + mPath);
+        }
+
+        for (int i = (int) offset; i < mData.limit(); ++i) {
+            if (mData.get(i) == 0) {
+                byte[] bytes = new byte[i - (int) offset];
+                ByteBuffer string = mData.duplicate();
+                string.position((int) offset);
+                string.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
             }
         }
 
@@ -466,13 +662,24 @@ public class ReadElf implements AutoCloseable {
     }
 
     private int readByte() throws IOException {
-        return mFile.read() & 0xff;
+        if (!mData.hasRemaining()) {
+            throw new EOFException("Unexpected end of ELF file: " + mPath);
+        }
+        return mData.get() & 0xff;
+    }
+
+    private void seek(long offset) throws IOException {
+        if (offset < 0 || offset > mData.limit()) {
+            throw new EOFException("Invalid offset " + offset + ": " + mPath);
+        }
+        mData.position((int) offset);
     }
 
     public Symbol getSymbol(String name) {
         if (mSymbols == null) {
             try {
-                mSymbols = readSymbolTable(mStrTabOffset, mStrTabSize, mSymTabOffset, mSymTabSize);
+                mSymbols = toMap(readSymbolTable(mStrTabOffset, mStrTabSize,
+                        mSymTabOffset, mSymTabSize, new String[0]));
             } catch (IOException e) {
                 return null;
             }
@@ -483,12 +690,69 @@ public class ReadElf implements AutoCloseable {
     public Symbol getDynamicSymbol(String name) {
         if (mDynamicSymbols == null) {
             try {
-                mDynamicSymbols = readSymbolTable(
-                        mDynStrOffset, mDynStrSize, mDynSymOffset, mDynSymSize);
+                mDynamicSymbols = toMap(Arrays.asList(getDynSymArr()));
             } catch (IOException e) {
                 return null;
             }
         }
         return mDynamicSymbols.get(name);
     }
+
+    /** Returns the symbols of the Dynamic Symbol Table in table order. */
+    public Symbol[] getDynSymArr() throws IOException {
+        if (mDynamicSymbolArr == null) {
+            mDynamicSymbolArr = readSymbolTable(mDynStrOffset, mDynStrSize,
+                    mDynSymOffset, mDynSymSize, readSymbolVersions()).toArray(new Symbol[0]);
+        }
+        return mDynamicSymbolArr;
+    }
+
+    /** Returns the file names of the libraries in the DT_NEEDED entries, in order. */
+    public List<String> getDynamicDependencies() throws IOException {
+        List<String> result = new ArrayList<String>();
+        if (mDynamicOffset == 0) {
+            return result;
+        }
+        seek(mDynamicOffset);
+        while (mData.position() + 2 * mAddrSize <= mDynamicOffset + mDynamicSize) {
+            long d_tag = readX(mAddrSize);
+            long d_val = readX(mAddrSize);
+            if (d_tag == DT_NULL) {
+                break;
+            } else if (d_tag == DT_NEEDED) {
+                final String libFileName = readStrTabEntry(mDynStrOffset, mDynStrSize, d_val);
+                if (libFileName != null) {
+                    result.add(libFileName);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the content of the .rodata section, or an empty array if there is none. */
+    public byte[] getRoData() throws IOException {
+        if (mRoDataOffset == 0 || mRoDataOffset + mRoDataSize > mData.limit()) {
+            return new byte[0];
+        }
+        byte[] result = new byte[(int) mRoDataSize];
+        seek(mRoDataOffset);
+        mData.get(result);
+        return result;
+    }
+
+    /** Returns the non-empty NUL-terminated strings in the .rodata section. */
+    public List<String> getRoStrings() throws IOException {
+        byte[] roData = getRoData();
+        List<String> result = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < roData.length; ++i) {
+            if (roData[i] == 0) {
+                if (i > start) {
+                    result.add(new String(roData, start, i - start, StandardCharsets.UTF_8));
+                }
+                start = i + 1;
+            }
+        }
+        return result;
+    }
 }
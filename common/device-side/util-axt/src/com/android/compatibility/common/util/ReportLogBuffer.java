@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.compatibility.common.util;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the metrics added to a buffered {@link DeviceReportLog} in memory until they are written
+ * to a {@link DeviceInfoStore} by {@link #writeTo(DeviceInfoStore)}.
+ *
+ * <p>Numbers, and arrays of numbers, are copied into growable primitive arrays rather than boxed,
+ * so adding a metric does not allocate once the arrays are large enough. Values are written to
+ * the store the same way as if they had been added to it directly.
+ *
+ * <p>Metric names are checked when a metric is added, so an invalid metric is rejected by the
+ * {@code add} method as it would be by the store, rather than when the buffer is written.
+ */
+final class ReportLogBuffer extends DeviceInfoStore {
+
+    private static final String TAG = ReportLogBuffer.class.getSimpleName();
+
+    private static final byte TYPE_DOUBLE = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_STRING = 3;
+    private static final byte TYPE_DOUBLE_ARRAY = 4;
+    private static final byte TYPE_LONG_ARRAY = 5;
+    private static final byte TYPE_BOOLEAN_ARRAY = 6;
+    private static final byte TYPE_STRING_LIST = 7;
+
+    private static final int INITIAL_METRIC_CAPACITY = 64;
+    private static final int INITIAL_VALUE_CAPACITY = 1024;
+
+    // For each metric, its type, name, and the offset and length of its values
+    private byte[] mTypes = new byte[INITIAL_METRIC_CAPACITY];
+    private String[] mNames = new String[INITIAL_METRIC_CAPACITY];
+    private int[] mOffsets = new int[INITIAL_METRIC_CAPACITY];
+    private int[] mLengths = new int[INITIAL_METRIC_CAPACITY];
+    private int mMetricCount = 0;
+
+    private double[] mDoubles = new double[INITIAL_VALUE_CAPACITY];
+    private int mDoubleCount = 0;
+    // Holds long, int and boolean values
+    private long[] mLongs = new long[INITIAL_VALUE_CAPACITY];
+    private int mLongCount = 0;
+    // Holds String and List values
+    private final List<Object> mObjects = new ArrayList<>();
+
+    /**
+     * Writes the buffered metrics, in the order they were added, to {@code store} which must be
+     * open. A metric which cannot be written is logged and skipped.
+     */
+    void writeTo(DeviceInfoStore store) {
+        for (int i = 0; i < mMetricCount; i++) {
+            try {
+                writeMetric(store, i);
+            } catch (IOException | RuntimeException e) {
+                // Keep writing the other metrics, as the store does when they are added to it
+                Log.e(TAG, "Could not log metric " + mNames[i], e);
+            }
+        }
+    }
+
+    private void writeMetric(DeviceInfoStore store, int i) throws IOException {
+        String name = mNames[i];
+        int offset = mOffsets[i];
+        int length = mLengths[i];
+        switch (mTypes[i]) {
+            case TYPE_DOUBLE:
+                store.addResult(name, mDoubles[offset]);
+                break;
+            case TYPE_LONG:
+                store.addResult(name, mLongs[offset]);
+                break;
+            case TYPE_BOOLEAN:
+                store.addResult(name, mLongs[offset] != 0);
+                break;
+            case TYPE_STRING:
+                store.addResult(name, (String) mObjects.get(offset));
+                break;
+            case TYPE_DOUBLE_ARRAY:
+                store.addArrayResult(name, Arrays.copyOfRange(mDoubles, offset,
+                        offset + length));
+                break;
+            case TYPE_LONG_ARRAY:
+                store.addArrayResult(name, Arrays.copyOfRange(mLongs, offset,
+                        offset + length));
+                break;
+            case TYPE_BOOLEAN_ARRAY:
+                boolean[] booleans = new boolean[length];
+                for (int j = 0; j < length; j++) {
+                    booleans[j] = mLongs[offset + j] != 0;
+                }
+                store.addArrayResult(name, booleans);
+                break;
+            case TYPE_STRING_LIST:
+                @SuppressWarnings("unchecked")
+                List<String> list = (List<String>) mObjects.get(offset);
+                store.addListResult(name, list);
+                break;
+            default:
+                throw new IllegalStateException("Unknown metric type " + mTypes[i]);
+        }
+    }
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void addResult(String name, int value) {
+        addResult(name, (long) value);
+    }
+
+    @Override
+    public void addResult(String name, long value) {
+        addMetric(TYPE_LONG, name, reserveLongs(1), 1);
+        mLongs[mLongCount++] = value;
+    }
+
+    @Override
+    public void addResult(String name, float value) {
+        addResult(name, (double) value);
+    }
+
+    @Override
+    public void addResult(String name, double value) {
+        addMetric(TYPE_DOUBLE, name, reserveDoubles(1), 1);
+        mDoubles[mDoubleCount++] = value;
+    }
+
+    @Override
+    public void addResult(String name, boolean value) {
+        addMetric(TYPE_BOOLEAN, name, reserveLongs(1), 1);
+        mLongs[mLongCount++] = value ? 1 : 0;
+    }
+
+    @Override
+    public void addResult(String name, String value) {
+        addMetric(TYPE_STRING, name, mObjects.size(), 1);
+        mObjects.add(value);
+    }
+
+    @Override
+    public void addArrayResult(String name, int[] array) {
+        addMetric(TYPE_LONG_ARRAY, name, reserveLongs(array.length), array.length);
+        for (int value : array) {
+            mLongs[mLongCount++] = value;
+        }
+    }
+
+    @Override
+    public void addArrayResult(String name, long[] array) {
+        addMetric(TYPE_LONG_ARRAY, name, reserveLongs(array.length), array.length);
+        System.arraycopy(array, 0, mLongs, mLongCount, array.length);
+        mLongCount += array.length;
+    }
+
+    @Override
+    public void addArrayResult(String name, float[] array) {
+        addMetric(TYPE_DOUBLE_ARRAY, name, reserveDoubles(array.length), array.length);
+        for (float value : array) {
+            mDoubles[mDoubleCount++] = value;
+        }
+    }
+
+    @Override
+    public void addArrayResult(String name, double[] array) {
+        addMetric(TYPE_DOUBLE_ARRAY, name, reserveDoubles(array.length), array.length);
+        System.arraycopy(array, 0, mDoubles, mDoubleCount, array.length);
+        mDoubleCount += array.length;
+    }
+
+    @Override
+    public void addArrayResult(String name, boolean[] array) {
+        addMetric(TYPE_BOOLEAN_ARRAY, name, reserveLongs(array.length), array.length);
+        for (boolean value : array) {
+            mLongs[mLongCount++] = value ? 1 : 0;
+        }
+    }
+
+    @Override
+    public void addListResult(String name, List<String> list) {
+        addMetric(TYPE_STRING_LIST, name, mObjects.size(), list.size());
+        // Copied as the caller may change the list before it is written
+        mObjects.add(new ArrayList<>(list));
+    }
+
+    private void addMetric(byte type, String name, int offset, int length) {
+        checkName(name);
+        if (mMetricCount == mTypes.length) {
+            int capacity = mMetricCount * 2;
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mOffsets = Arrays.copyOf(mOffsets, capacity);
+            mLengths = Arrays.copyOf(mLengths, capacity);
+        }
+        mTypes[mMetricCount] = type;
+        mNames[mMetricCount] = name;
+        mOffsets[mMetricCount] = offset;
+        mLengths[mMetricCount] = length;
+        mMetricCount++;
+    }
+
+    /** Makes room for {@code count} more doubles and returns the offset of the first. */
+    private int reserveDoubles(int count) {
+        if (mDoubleCount + count > mDoubles.length) {
+            mDoubles = Arrays.copyOf(mDoubles, Math.max(mDoubles.length * 2, mDoubleCount + count));
+        }
+        return mDoubleCount;
+    }
+
+    /** Makes room for {@code count} more longs and returns the offset of the first. */
+    private int reserveLongs(int count) {
+        if (mLongCount + count > mLongs.length) {
+            mLongs = Arrays.copyOf(mLongs, Math.max(mLongs.length * 2, mLongCount + count));
+        }
+        return mLongCount;
+    }
+}
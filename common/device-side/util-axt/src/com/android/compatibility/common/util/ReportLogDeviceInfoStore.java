@@ -17,15 +17,26 @@ package com.android.compatibility.common.util;
 
 import android.util.JsonWriter;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Adds a metric stream to a report log, which is a JSON object with a member for each stream.
+ *
+ * <p>The metrics are written to a temp file while the stream is open, so a failed test does not
+ * leave an invalid report log. On {@link #close()} the stream is appended to the report log in
+ * place, by overwriting the closing brace of the existing object, so submitting a stream only
+ * writes the bytes of that stream rather than rewriting the whole report log.
+ */
 public class ReportLogDeviceInfoStore extends DeviceInfoStore {
 
+    private static final int BUFFER_SIZE = 8192;
+
     private final String mStreamName;
     private File tempJsonFile;
 
@@ -40,31 +51,8 @@ public class ReportLogDeviceInfoStore extends DeviceInfoStore {
     @Override
     public void open() throws IOException {
         // Write new metrics to a temp file to avoid invalid JSON files due to failed tests.
-        BufferedWriter formatWriter;
         tempJsonFile = File.createTempFile(mStreamName, "-temp-report-log");
-        formatWriter = new BufferedWriter(new FileWriter(tempJsonFile));
-        if (mJsonFile.exists()) {
-            BufferedReader jsonReader = new BufferedReader(new FileReader(mJsonFile));
-            String currentLine;
-            String nextLine = jsonReader.readLine();
-            while ((currentLine = nextLine) != null) {
-                nextLine = jsonReader.readLine();
-                if (nextLine == null && currentLine.charAt(currentLine.length() - 1) == '}') {
-                    // Reopen overall JSON object to write new metrics.
-                    currentLine = currentLine.substring(0, currentLine.length() - 1) + ",";
-                }
-                // Copy to temp file directly to avoid large metrics string in memory.
-                formatWriter.write(currentLine, 0, currentLine.length());
-            }
-            jsonReader.close();
-        } else {
-            formatWriter.write("{", 0 , 1);
-        }
-        // Start new JSON object for new metrics.
-        formatWriter.write("\"" + mStreamName + "\":", 0, mStreamName.length() + 3);
-        formatWriter.flush();
-        formatWriter.close();
-        mJsonWriter = new JsonWriter(new FileWriter(tempJsonFile, true));
+        mJsonWriter = new JsonWriter(new FileWriter(tempJsonFile));
         mJsonWriter.beginObject();
     }
 
@@ -76,21 +64,79 @@ public class ReportLogDeviceInfoStore extends DeviceInfoStore {
         // Close JSON Writer.
         mJsonWriter.endObject();
         mJsonWriter.close();
-        // Close overall JSON Object.
-        try (BufferedWriter formatWriter = new BufferedWriter(new FileWriter(tempJsonFile, true))) {
-            formatWriter.write("}", 0, 1);
+
+        try (RandomAccessFile reportLog = new RandomAccessFile(mJsonFile, "rw");
+                InputStream metrics = new FileInputStream(tempJsonFile)) {
+            long closingBrace = findClosingBrace(reportLog);
+            if (closingBrace < 0) {
+                if (lastNonWhitespace(reportLog, reportLog.length()) >= 0) {
+                    // Appending would turn e.g. a log truncated by a crashed run into invalid JSON.
+                    throw new IOException("Report log " + mJsonFile
+                            + " does not end with a JSON object");
+                }
+                // Start the overall JSON object, dropping any whitespace.
+                reportLog.setLength(0);
+                reportLog.write('{');
+            } else {
+                // Reopen overall JSON object to write new metrics.
+                reportLog.seek(closingBrace);
+                if (!isEmptyObject(reportLog, closingBrace)) {
+                    reportLog.write(',');
+                }
+            }
+            reportLog.write(("\"" + mStreamName + "\":").getBytes(StandardCharsets.UTF_8));
+            // Copy from temp file directly to avoid large metrics string in memory.
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = metrics.read(buffer)) != -1) {
+                reportLog.write(buffer, 0, read);
+            }
+            // Close overall JSON Object.
+            reportLog.write('}');
+            reportLog.setLength(reportLog.getFilePointer());
+        } finally {
+            tempJsonFile.delete();
         }
-        // Copy metrics from temp file and delete temp file.
-        mJsonFile.createNewFile();
-        try (
-                BufferedReader jsonReader = new BufferedReader(new FileReader(tempJsonFile));
-                BufferedWriter metricsWriter = new BufferedWriter(new FileWriter(mJsonFile))
-        ) {
-            String line;
-            while ((line = jsonReader.readLine()) != null) {
-                // Copy from temp file directly to avoid large metrics string in memory.
-                metricsWriter.write(line, 0, line.length());
+    }
+
+    /**
+     * Returns the position of the brace closing the overall JSON object, or -1 if the report log
+     * has no non-whitespace content or does not end with one.
+     */
+    private static long findClosingBrace(RandomAccessFile reportLog) throws IOException {
+        long position = lastNonWhitespace(reportLog, reportLog.length());
+        if (position < 0) {
+            return -1;
+        }
+        reportLog.seek(position);
+        return reportLog.read() == '}' ? position : -1;
+    }
+
+    /** Returns whether only whitespace is between the braces of the overall JSON object. */
+    private static boolean isEmptyObject(RandomAccessFile reportLog, long closingBrace)
+            throws IOException {
+        long position = lastNonWhitespace(reportLog, closingBrace);
+        if (position < 0) {
+            return false;
+        }
+        reportLog.seek(position);
+        boolean isEmpty = reportLog.read() == '{';
+        reportLog.seek(closingBrace);
+        return isEmpty;
+    }
+
+    /**
+     * Returns the position of the last non-whitespace byte before {@code end}, or -1 if there is
+     * none.
+     */
+    private static long lastNonWhitespace(RandomAccessFile reportLog, long end)
+            throws IOException {
+        for (long position = end - 1; position >= 0; position--) {
+            reportLog.seek(position);
+            if (!Character.isWhitespace(reportLog.read())) {
+                return position;
             }
         }
+        return -1;
     }
 }
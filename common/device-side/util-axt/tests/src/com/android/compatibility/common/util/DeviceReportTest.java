@@ -151,4 +151,79 @@ public class DeviceReportTest extends TestCase {
         assertTrue("Incorrect metrics",
                 jsonObject.getJSONObject(STREAM_NAME_4).getDouble(TEST_MESSAGE_4) == TEST_VALUE_4);
     }
+
+    public void testBufferedFile() throws Exception {
+        assertTrue("External storage is not mounted",
+                Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED));
+        final File dir = new File(Environment.getExternalStorageDirectory(), "report-log-files");
+        assertTrue("Report Log directory missing", dir.isDirectory() || dir.mkdirs());
+        File jsonFile = new File(dir, REPORT_NAME_1 + ".reportlog.json");
+        jsonFile.delete();
+
+        TestInstrumentation inst = new TestInstrumentation();
+
+        DeviceReportLog log1 = new DeviceReportLog(REPORT_NAME_1, STREAM_NAME_1,
+                /* buffered= */ true);
+        log1.addValue(TEST_MESSAGE_1, TEST_VALUE_1, TEST_TYPE_1, TEST_UNIT_1);
+        log1.addValues(TEST_MESSAGE_2, new double[] {TEST_VALUE_2, TEST_VALUE_3}, TEST_TYPE_2,
+                TEST_UNIT_2);
+        log1.setSummary(TEST_MESSAGE_1, TEST_VALUE_1, TEST_TYPE_1, TEST_UNIT_1);
+        log1.submit(inst);
+
+        // Not buffered, so it is written after the buffered report log submitted before it
+        DeviceReportLog log2 = new DeviceReportLog(REPORT_NAME_1, STREAM_NAME_2);
+        log2.addValue(TEST_MESSAGE_3, TEST_VALUE_3, TEST_TYPE_3, TEST_UNIT_3);
+        log2.submit(inst);
+
+        DeviceReportLog.awaitSubmissions();
+        assertEquals("Incorrect result code", RESULT_CODE, inst.mResultCode);
+
+        BufferedReader jsonReader = new BufferedReader(new FileReader(jsonFile));
+        StringBuilder metricsBuilder = new StringBuilder();
+        String line;
+        while ((line = jsonReader.readLine()) != null) {
+            metricsBuilder.append(line);
+        }
+        JSONObject jsonObject = new JSONObject(metricsBuilder.toString().trim());
+        JSONObject stream1 = jsonObject.getJSONObject(STREAM_NAME_1);
+        assertTrue("Incorrect metrics", stream1.getDouble(TEST_MESSAGE_1) == TEST_VALUE_1);
+        assertTrue("Incorrect metrics",
+                stream1.getJSONArray(TEST_MESSAGE_2).getDouble(1) == TEST_VALUE_3);
+        assertTrue("Incorrect metrics",
+                jsonObject.getJSONObject(STREAM_NAME_2).getDouble(TEST_MESSAGE_3) == TEST_VALUE_3);
+    }
+
+    public void testBufferedFile_invalidMetric_writesOtherMetrics() throws Exception {
+        assertTrue("External storage is not mounted",
+                Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED));
+        final File dir = new File(Environment.getExternalStorageDirectory(), "report-log-files");
+        assertTrue("Report Log directory missing", dir.isDirectory() || dir.mkdirs());
+        File jsonFile = new File(dir, REPORT_NAME_2 + ".reportlog.json");
+        jsonFile.delete();
+
+        TestInstrumentation inst = new TestInstrumentation();
+
+        DeviceReportLog log = new DeviceReportLog(REPORT_NAME_2, STREAM_NAME_1,
+                /* buffered= */ true);
+        log.addValue(TEST_MESSAGE_1, TEST_VALUE_1, TEST_TYPE_1, TEST_UNIT_1);
+        // Rejected when added, so the metrics after it are still written
+        log.addValue(/* message= */ null, 2, TEST_TYPE_2, TEST_UNIT_2);
+        log.addValue(TEST_MESSAGE_3, TEST_VALUE_3, TEST_TYPE_3, TEST_UNIT_3);
+        log.submit(inst);
+
+        DeviceReportLog.awaitSubmissions();
+        assertEquals("Incorrect result code", RESULT_CODE, inst.mResultCode);
+
+        BufferedReader jsonReader = new BufferedReader(new FileReader(jsonFile));
+        StringBuilder metricsBuilder = new StringBuilder();
+        String line;
+        while ((line = jsonReader.readLine()) != null) {
+            metricsBuilder.append(line);
+        }
+        JSONObject stream = new JSONObject(metricsBuilder.toString().trim())
+                .getJSONObject(STREAM_NAME_1);
+        assertEquals("Incorrect metrics", 2, stream.length());
+        assertTrue("Incorrect metrics", stream.getDouble(TEST_MESSAGE_1) == TEST_VALUE_1);
+        assertTrue("Incorrect metrics", stream.getDouble(TEST_MESSAGE_3) == TEST_VALUE_3);
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package com.android.compatibility.common.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.testng.Assert.assertThrows;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Tests for {@link ReportLogDeviceInfoStore}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReportLogDeviceInfoStoreTest {
+
+    private static final String STREAM_NAME_1 = "SampleStream1";
+    private static final String STREAM_NAME_2 = "SampleStream2";
+    private static final String METRIC_NAME = "Foo";
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mJsonFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mJsonFile = mTemporaryFolder.newFile("TestReport.reportlog.json");
+    }
+
+    @Test
+    public void testClose_emptyFile_startsObject() throws Exception {
+        writeStream(STREAM_NAME_1, 1);
+
+        JSONObject reportLog = readReportLog();
+        assertThat(reportLog.length()).isEqualTo(1);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_1).getInt(METRIC_NAME)).isEqualTo(1);
+    }
+
+    @Test
+    public void testClose_emptyObject_addsStream() throws Exception {
+        writeReportLog("{}");
+
+        writeStream(STREAM_NAME_1, 1);
+
+        JSONObject reportLog = readReportLog();
+        assertThat(reportLog.length()).isEqualTo(1);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_1).getInt(METRIC_NAME)).isEqualTo(1);
+    }
+
+    @Test
+    public void testClose_oneStream_addsStream() throws Exception {
+        writeStream(STREAM_NAME_1, 1);
+
+        writeStream(STREAM_NAME_2, 2);
+
+        JSONObject reportLog = readReportLog();
+        assertThat(reportLog.length()).isEqualTo(2);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_1).getInt(METRIC_NAME)).isEqualTo(1);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_2).getInt(METRIC_NAME)).isEqualTo(2);
+    }
+
+    @Test
+    public void testClose_trailingWhitespace_addsStream() throws Exception {
+        writeReportLog("{\"" + STREAM_NAME_1 + "\":{\"" + METRIC_NAME + "\":1}}\n  ");
+
+        writeStream(STREAM_NAME_2, 2);
+
+        JSONObject reportLog = readReportLog();
+        assertThat(reportLog.length()).isEqualTo(2);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_2).getInt(METRIC_NAME)).isEqualTo(2);
+    }
+
+    @Test
+    public void testClose_whitespaceOnly_startsObject() throws Exception {
+        writeReportLog(" \n\t");
+
+        writeStream(STREAM_NAME_1, 1);
+
+        assertThat(readReportLogString()).startsWith("{");
+        JSONObject reportLog = readReportLog();
+        assertThat(reportLog.length()).isEqualTo(1);
+        assertThat(reportLog.getJSONObject(STREAM_NAME_1).getInt(METRIC_NAME)).isEqualTo(1);
+    }
+
+    @Test
+    public void testClose_truncatedReportLog_throwsAndLeavesReportLog() throws Exception {
+        String truncated = "{\"" + STREAM_NAME_1 + "\":{\"" + METRIC_NAME + "\":";
+        writeReportLog(truncated);
+
+        assertThrows(IOException.class, () -> writeStream(STREAM_NAME_2, 2));
+
+        assertThat(readReportLogString()).isEqualTo(truncated);
+    }
+
+    private void writeStream(String streamName, int value) throws Exception {
+        ReportLogDeviceInfoStore store = new ReportLogDeviceInfoStore(mJsonFile, streamName);
+        store.open();
+        store.addResult(METRIC_NAME, value);
+        store.close();
+    }
+
+    private void writeReportLog(String content) throws IOException {
+        Files.write(mJsonFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readReportLogString() throws IOException {
+        return new String(Files.readAllBytes(mJsonFile.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private JSONObject readReportLog() throws Exception {
+        return new JSONObject(readReportLogString());
+    }
+}
@@ -79,9 +79,10 @@ public class BluetoothStatsTests extends DeviceTestCase implements IBuildReceive
                 atomTag, /*useAttributionChain=*/ true);
 
         DeviceUtils.runDeviceTestsOnStatsdApp(getDevice(), ".AtomTests", "testBleScanUnoptimized");
-        Thread.sleep(AtomTestUtils.WAIT_TIME_SHORT);
 
-        List<StatsLog.EventMetricData> data = ReportUtils.getEventMetricDataList(getDevice());
+        // Wait for the scan to be turned on and off
+        List<StatsLog.EventMetricData> data = ReportUtils.awaitEventMetricDataList(getDevice(),
+                events -> events.size() >= 2, AtomTestUtils.WAIT_TIME_SHORT);
         AtomTestUtils.assertStatesOccurredInOrder(stateSet, data, expectedWait,
                 atom -> atom.getBleScanStateChanged().getState().getNumber());
     }
@@ -102,9 +103,10 @@ public class BluetoothStatsTests extends DeviceTestCase implements IBuildReceive
                 atomTag, /*useAttributionChain=*/ true);
 
         DeviceUtils.runDeviceTestsOnStatsdApp(getDevice(), ".AtomTests", "testBleScanUnoptimized");
-        Thread.sleep(AtomTestUtils.WAIT_TIME_SHORT);
 
-        List<StatsLog.EventMetricData> data = ReportUtils.getEventMetricDataList(getDevice());
+        // Wait for the scan to be turned on and off
+        List<StatsLog.EventMetricData> data = ReportUtils.awaitEventMetricDataList(getDevice(),
+                events -> events.size() >= 2, AtomTestUtils.WAIT_TIME_SHORT);
         AtomTestUtils.assertTimeDiffBetween(data.get(0), data.get(1), minTimeDiffMillis,
                 maxTimeDiffMillis);
         AtomsProto.BleScanStateChanged a0 = data.get(0).getAtom().getBleScanStateChanged();
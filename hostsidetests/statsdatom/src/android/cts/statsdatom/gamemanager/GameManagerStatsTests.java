@@ -68,9 +68,9 @@ public class GameManagerStatsTests extends DeviceTestCase implements IBuildRecei
         ConfigUtils.uploadConfigForPushedAtom(getDevice(), DeviceUtils.STATSD_ATOM_TEST_PKG,
                 AtomsProto.Atom.GAME_STATE_CHANGED_FIELD_NUMBER);
         DeviceUtils.runDeviceTestsOnStatsdApp(getDevice(), ".AtomTests", "testGameState");
-        Thread.sleep(AtomTestUtils.WAIT_TIME_LONG);
 
-        List<StatsLog.EventMetricData> data = ReportUtils.getEventMetricDataList(getDevice());
+        List<StatsLog.EventMetricData> data = ReportUtils.awaitEventMetricDataList(getDevice(),
+                events -> !events.isEmpty(), AtomTestUtils.WAIT_TIME_LONG);
         assertThat(data.size()).isAtLeast(1);
         AtomsProto.GameStateChanged a0 = data.get(0).getAtom().getGameStateChanged();
         assertThat(a0.getUid()).isGreaterThan(10000);  // Not a system service UID.
@@ -33,6 +33,8 @@ import com.android.internal.os.StatsdConfigProto.TimeUnit;
 import com.android.os.AtomsProto.Atom;
 import com.android.tradefed.device.ITestDevice;
 import com.android.tradefed.log.LogUtil.CLog;
+import com.android.tradefed.util.CommandResult;
+import com.android.tradefed.util.CommandStatus;
 
 import com.google.common.io.Files;
 
@@ -271,22 +273,38 @@ public final class ConfigUtils {
         CLog.d("Uploading the following config to statsd:\n" + config.toString());
 
         File configFile = File.createTempFile("statsdconfig", ".config");
-        configFile.deleteOnExit();
-        Files.write(config.toByteArray(), configFile);
-
-        // Push config to temporary location
-        String remotePath = "/data/local/tmp/" + configFile.getName();
-        device.pushFile(configFile, remotePath);
-
-        // Send config to statsd
-        device.executeShellCommand(String.join(" ", "cat", remotePath, "|", UPDATE_CONFIG_CMD,
-                CONFIG_ID_STRING));
+        try {
+            Files.write(config.toByteArray(), configFile);
+
+            // Send config to statsd over stdin, without pushing it to the device first
+            CommandResult result = device.executeShellV2Command(
+                    String.join(" ", UPDATE_CONFIG_CMD, CONFIG_ID_STRING), configFile);
+            if (result.getStatus() != CommandStatus.SUCCESS) {
+                throw new IllegalStateException("Failed to upload config to statsd: "
+                        + result.getStatus() + " " + result.getStderr());
+            }
+        } finally {
+            configFile.delete();
+        }
 
-        // Remove config from temporary location
-        device.executeShellCommand("rm " + remotePath);
+        // Wait until statsd has the config before more work is done within the test.
+        waitForConfig(device);
+    }
 
-        // Sleep for a bit so that statsd receives config before more work is done within the test.
-        Thread.sleep(AtomTestUtils.WAIT_TIME_SHORT);
+    /**
+     * Polls statsd until it has a report for the CTS config, which it only has once the config is
+     * active.
+     */
+    private static void waitForConfig(ITestDevice device) throws Exception {
+        long deadline = System.currentTimeMillis() + AtomTestUtils.WAIT_TIME_LONG;
+        while (ReportUtils.peekReportList(device).getReportsCount() == 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                CLog.w("statsd has no report for config " + CONFIG_ID_STRING + " after "
+                        + AtomTestUtils.WAIT_TIME_LONG + "ms");
+                return;
+            }
+            Thread.sleep(ReportUtils.POLL_INTERVAL_MS);
+        }
     }
 
     /**
@@ -39,11 +39,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public final class ReportUtils {
     private static final String DUMP_REPORT_CMD = "cmd stats dump-report";
     private static final long NS_PER_SEC = (long) 1E+9;
+    static final long POLL_INTERVAL_MS = 50;
 
     /**
      * Returns a list of event metrics, which is sorted by timestamp, from the statsd report.
@@ -62,8 +64,39 @@ public final class ReportUtils {
     public static List<EventMetricData> getEventMetricDataList(ConfigMetricsReportList reportList)
             throws Exception {
         assertThat(reportList.getReportsCount()).isEqualTo(1);
-        ConfigMetricsReport report = reportList.getReports(0);
+        List<EventMetricData> data = extractEventMetricData(reportList.getReports(0));
+
+        CLog.d("Get EventMetricDataList as following:\n");
+        for (EventMetricData d : data) {
+            CLog.d("Atom at " + d.getElapsedTimestampNanos() + ":\n" + d.getAtom().toString());
+        }
+        return data;
+    }
+
+    /**
+     * Waits until the EventMetricData in the statsd report satisfies {@code isComplete}, or until
+     * {@code timeoutMs} has passed, and then returns it as {@link #getEventMetricDataList(
+     * ITestDevice)} does. This should be used instead of sleeping for a fixed time before getting
+     * the report, as it returns as soon as the expected atoms have been logged.
+     * Note: Calling this function deletes the report from statsd.
+     */
+    public static List<EventMetricData> awaitEventMetricDataList(ITestDevice device,
+            Predicate<List<EventMetricData>> isComplete, long timeoutMs) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            // Event metrics have no buckets, so all of their data is in the report without
+            // including the current bucket, which would split the buckets of other metrics.
+            ConfigMetricsReportList reportList = peekReportList(device);
+            if (reportList.getReportsCount() == 1
+                    && isComplete.test(extractEventMetricData(reportList.getReports(0)))) {
+                break;
+            }
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+        return getEventMetricDataList(device);
+    }
 
+    private static List<EventMetricData> extractEventMetricData(ConfigMetricsReport report) {
         List<EventMetricData> data = new ArrayList<>();
         for (StatsLogReport metric : report.getMetricsList()) {
             for (EventMetricData metricData :
@@ -76,15 +109,9 @@ public final class ReportUtils {
             }
         }
         data.sort(Comparator.comparing(EventMetricData::getElapsedTimestampNanos));
-
-        CLog.d("Get EventMetricDataList as following:\n");
-        for (EventMetricData d : data) {
-            CLog.d("Atom at " + d.getElapsedTimestampNanos() + ":\n" + d.getAtom().toString());
-        }
         return data;
     }
 
-
     private static List<EventMetricData> backfillAggregatedAtomsInEventMetric(
             EventMetricData metricData) {
         if (!metricData.hasAggregatedAtomInfo()) {
@@ -114,7 +141,17 @@ public final class ReportUtils {
      */
     public static List<Atom> getGaugeMetricAtoms(ITestDevice device,
             boolean checkTimestampTruncated) throws Exception {
-        ConfigMetricsReportList reportList = getReportList(device);
+        return getGaugeMetricAtoms(getReportList(device), checkTimestampTruncated);
+    }
+
+    /**
+     * Extracts the gauge atoms from the given ConfigMetricsReportList (which must contain a single
+     * report with a single metric). Assumes that there is only one bucket for the gauge metric.
+     *
+     * @param checkTimestampTrucated if true, checks that atom timestmaps are properly truncated
+     */
+    public static List<Atom> getGaugeMetricAtoms(ConfigMetricsReportList reportList,
+            boolean checkTimestampTruncated) throws Exception {
         assertThat(reportList.getReportsCount()).isEqualTo(1);
         ConfigMetricsReport report = reportList.getReports(0);
         assertThat(report.getMetricsCount()).isEqualTo(1);
@@ -163,13 +200,28 @@ public final class ReportUtils {
     }
 
     /**
-     * Retrieves the ConfigMetricsReports corresponding to the CTS config from statsd.
+     * Retrieves the ConfigMetricsReports corresponding to the CTS config from statsd. The typed
+     * extractions, such as {@link #getEventMetricDataList(ConfigMetricsReportList)}, can then be
+     * made from the same report.
      * Note: Calling this functions deletes the report from statsd.
      */
-    private static ConfigMetricsReportList getReportList(ITestDevice device) throws Exception {
+    public static ConfigMetricsReportList getReportList(ITestDevice device) throws Exception {
+        return dumpReportList(device, "--include_current_bucket");
+    }
+
+    /**
+     * Retrieves the ConfigMetricsReports corresponding to the CTS config from statsd without
+     * deleting them, and without the current bucket of bucketed metrics.
+     */
+    static ConfigMetricsReportList peekReportList(ITestDevice device) throws Exception {
+        return dumpReportList(device, "--keep_data");
+    }
+
+    private static ConfigMetricsReportList dumpReportList(ITestDevice device, String option)
+            throws Exception {
         try {
             String cmd = String.join(" ", DUMP_REPORT_CMD, ConfigUtils.CONFIG_ID_STRING,
-                    "--include_current_bucket", "--proto");
+                    option, "--proto");
             ConfigMetricsReportList reportList = DeviceUtils.getShellCommandOutput(device,
                     ConfigMetricsReportList.parser(), cmd);
             return reportList;
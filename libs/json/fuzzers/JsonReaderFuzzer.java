@@ -15,12 +15,18 @@
  */
 
 import com.android.json.stream.JsonReader;
+import com.android.json.stream.JsonToken;
+import com.android.json.stream.Utf8JsonReader;
 
 import com.code_intelligence.jazzer.api.FuzzedDataProvider;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * JsonReaderFuzzer contains fuzzerTestOneInput(...) method to fuzz JsonReader
@@ -36,7 +42,14 @@ public class JsonReaderFuzzer {
      * data types to feed into the fuzzer program.
      */
     public static void fuzzerTestOneInput(FuzzedDataProvider data) {
-        String initString = data.consumeRemainingAsString();
+        boolean lenient = data.consumeBoolean();
+        byte[] bytes = data.consumeRemainingAsString().getBytes(StandardCharsets.UTF_8);
+        // Decode the bytes again so that both readers see the same valid UTF-8 text
+        String initString = new String(bytes, StandardCharsets.UTF_8);
+
+        compareReaders(new JsonReader(new StringReader(initString)),
+                new Utf8JsonReader(ByteBuffer.wrap(bytes)), lenient);
+
         Reader in = new StringReader(initString);
         JsonReader jsonReader = new JsonReader(in);
         boolean hasNext = true;
@@ -53,4 +66,257 @@ public class JsonReaderFuzzer {
             }
         }
     }
+
+    /**
+     * Reads every token with both readers and throws if they do not return the same tokens, or
+     * do not fail in the same way.
+     */
+    private static void compareReaders(JsonReader expected, Utf8JsonReader actual,
+            boolean lenient) {
+        expected.setLenient(lenient);
+        actual.setLenient(lenient);
+        TokenReader expectedReader = new JsonTokenReader(expected);
+        TokenReader actualReader = new Utf8TokenReader(actual);
+        while (true) {
+            Object expectedToken = readToken(expectedReader);
+            Object actualToken = readToken(actualReader);
+            if (!Objects.equals(expectedToken, actualToken)) {
+                throw new IllegalStateException("Utf8JsonReader returned " + actualToken
+                        + " but JsonReader returned " + expectedToken);
+            }
+            if (expectedToken == JsonToken.END_DOCUMENT
+                    || (expectedToken instanceof String
+                            && ((String) expectedToken).endsWith("Exception"))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Consumes the next token, returning the token, its value or the class of the exception
+     * thrown.
+     */
+    private static Object readToken(TokenReader reader) {
+        try {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    return token;
+                case END_ARRAY:
+                    reader.endArray();
+                    return token;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    return token;
+                case END_OBJECT:
+                    reader.endObject();
+                    return token;
+                case NAME:
+                    return "name:" + reader.nextName();
+                case STRING:
+                    return "string:" + reader.nextString();
+                case NUMBER:
+                    // Check the numeric accessors as well as the text of the number
+                    String number = reader.nextString();
+                    return "number:" + number + ":"
+                            + parseNumber(reader.forJson("[" + number + "]"));
+                case BOOLEAN:
+                    return reader.nextBoolean();
+                case NULL:
+                    reader.nextNull();
+                    return token;
+                default:
+                    return token;
+            }
+        } catch (IOException | RuntimeException e) {
+            return e.getClass().getSimpleName();
+        }
+    }
+
+    /**
+     * Returns the double, long and int values of the number in the array of one number that each
+     * reader from {@code readers} reads.
+     */
+    private static String parseNumber(Supplier<TokenReader> readers) {
+        StringBuilder result = new StringBuilder();
+        for (int accessor = 0; accessor < 3; accessor++) {
+            result.append(':');
+            try {
+                TokenReader reader = readers.get();
+                reader.beginArray();
+                result.append(accessor == 0 ? Double.doubleToLongBits(reader.nextDouble())
+                        : accessor == 1 ? reader.nextLong() : reader.nextInt());
+            } catch (IOException | RuntimeException e) {
+                result.append(e.getClass().getSimpleName());
+            }
+        }
+        return result.toString();
+    }
+
+    /** The methods of {@link JsonReader} and {@link Utf8JsonReader} which are compared. */
+    private interface TokenReader {
+        JsonToken peek() throws IOException;
+        void beginArray() throws IOException;
+        void endArray() throws IOException;
+        void beginObject() throws IOException;
+        void endObject() throws IOException;
+        String nextName() throws IOException;
+        String nextString() throws IOException;
+        boolean nextBoolean() throws IOException;
+        void nextNull() throws IOException;
+        double nextDouble() throws IOException;
+        long nextLong() throws IOException;
+        int nextInt() throws IOException;
+
+        /** Returns new readers of the same kind for {@code json}. */
+        Supplier<TokenReader> forJson(String json);
+    }
+
+    private static final class JsonTokenReader implements TokenReader {
+        private final JsonReader mReader;
+
+        JsonTokenReader(JsonReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            return mReader.peek();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            mReader.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            mReader.endArray();
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            mReader.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            mReader.endObject();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return mReader.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return mReader.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return mReader.nextBoolean();
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            mReader.nextNull();
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            return mReader.nextDouble();
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            return mReader.nextLong();
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            return mReader.nextInt();
+        }
+
+        @Override
+        public Supplier<TokenReader> forJson(String json) {
+            return () -> new JsonTokenReader(new JsonReader(new StringReader(json)));
+        }
+    }
+
+    private static final class Utf8TokenReader implements TokenReader {
+        private final Utf8JsonReader mReader;
+
+        Utf8TokenReader(Utf8JsonReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public JsonToken peek() throws IOException {
+            return mReader.peek();
+        }
+
+        @Override
+        public void beginArray() throws IOException {
+            mReader.beginArray();
+        }
+
+        @Override
+        public void endArray() throws IOException {
+            mReader.endArray();
+        }
+
+        @Override
+        public void beginObject() throws IOException {
+            mReader.beginObject();
+        }
+
+        @Override
+        public void endObject() throws IOException {
+            mReader.endObject();
+        }
+
+        @Override
+        public String nextName() throws IOException {
+            return mReader.nextName();
+        }
+
+        @Override
+        public String nextString() throws IOException {
+            return mReader.nextString();
+        }
+
+        @Override
+        public boolean nextBoolean() throws IOException {
+            return mReader.nextBoolean();
+        }
+
+        @Override
+        public void nextNull() throws IOException {
+            mReader.nextNull();
+        }
+
+        @Override
+        public double nextDouble() throws IOException {
+            return mReader.nextDouble();
+        }
+
+        @Override
+        public long nextLong() throws IOException {
+            return mReader.nextLong();
+        }
+
+        @Override
+        public int nextInt() throws IOException {
+            return mReader.nextInt();
+        }
+
+        @Override
+        public Supplier<TokenReader> forJson(String json) {
+            return () -> new Utf8TokenReader(
+                    new Utf8JsonReader(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
 }
@@ -0,0 +1,1160 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a UTF-8 encoded JSON (<a href="http://www.ietf.org/rfc/rfc4627.txt">RFC 4627</a>)
+ * value directly from a {@link ByteBuffer}, such as a memory-mapped file.
+ *
+ * <p>This has the same API and accepts the same input as {@link JsonReader}, which should be used
+ * for streams, but avoids decoding the input into characters. Tokens are scanned in place and
+ * their text is only decoded when it is asked for:
+ * <ul>
+ *   <li>{@link #nextDouble}, {@link #nextLong} and {@link #nextInt} parse most numbers without
+ *       creating a string.
+ *   <li>{@link #nextNameEquals} compares the next name without creating a string.
+ *   <li>{@link #nextName} returns the same string instance for repeated names.
+ *   <li>{@link #skipValue} does not decode any of the skipped text.
+ * </ul>
+ *
+ * <p>Each {@code Utf8JsonReader} may be used to read a single JSON value. Instances of this class
+ * are not thread safe.
+ */
+public final class Utf8JsonReader implements Closeable {
+
+    private static final String TRUE = "true";
+    private static final String FALSE = "false";
+
+    /**
+     * Literals at least this long are always strings, as {@link JsonReader} only decodes literals
+     * which fit in its buffer as numbers.
+     */
+    private static final int MAX_NUMBER_LENGTH = 1024;
+
+    /** The number of names which are remembered, which must be a power of two. */
+    private static final int NAME_CACHE_SIZE = 256;
+
+    /** The largest power of ten which is exactly representable as a double. */
+    private static final int MAX_EXACT_POWER_OF_TEN = 22;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER_OF_TEN + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_EXACT_POWER_OF_TEN; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** The largest integer with this many digits is exactly representable as a double. */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /** The largest integer with this many digits, or this many less one and a sign, is a long. */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /** The input JSON. */
+    private final ByteBuffer buffer;
+    private int pos;
+    private final int limit;
+
+    /** True to accept non-spec compliant JSON */
+    private boolean lenient = false;
+
+    private final List<JsonScope> stack = new ArrayList<JsonScope>();
+    {
+        push(JsonScope.EMPTY_DOCUMENT);
+    }
+
+    /**
+     * The type of the next token to be returned by {@link #peek} and {@link
+     * #advance}. If null, peek() will assign a value.
+     */
+    private JsonToken token;
+
+    /*
+     * For the next name or literal value, we have either the text value, or
+     * the range of the buffer which contains it.
+     */
+    private String value;
+    private int valueStart;
+    private int valueEnd;
+    /** True if the range of the value contains escape sequences. */
+    private boolean valueHasEscapes;
+
+    /** Recently read names, indexed by the hash of their bytes. */
+    private final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+    /** Creates a new instance that reads UTF-8 encoded JSON from {@code buffer}. */
+    public Utf8JsonReader(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer == null");
+        }
+        this.buffer = buffer;
+        this.pos = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    /** Creates a new instance that reads UTF-8 encoded JSON from a memory-mapped {@code file}. */
+    public static Utf8JsonReader map(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+                FileChannel channel = in.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            return new Utf8JsonReader(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Configure this parser to be liberal in what it accepts, as by
+     * {@link JsonReader#setLenient(boolean)}.
+     */
+    public void setLenient(boolean lenient) {
+        this.lenient = lenient;
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * beginning of a new array.
+     */
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * end of the current array.
+     */
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * beginning of a new object.
+     */
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is the
+     * end of the current object.
+     */
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+    }
+
+    /**
+     * Consumes {@code expected}.
+     */
+    private void expect(JsonToken expected) throws IOException {
+        peek();
+        if (token != expected) {
+            throw new IllegalStateException("Expected " + expected + " but was " + peek());
+        }
+        advance();
+    }
+
+    /**
+     * Returns true if the current array or object has another element.
+     */
+    public boolean hasNext() throws IOException {
+        peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     */
+    public JsonToken peek() throws IOException {
+        if (token != null) {
+            return token;
+        }
+
+        switch (peekStack()) {
+            case EMPTY_DOCUMENT:
+                replaceTop(JsonScope.NONEMPTY_DOCUMENT);
+                JsonToken firstToken = nextValue();
+                if (token != JsonToken.BEGIN_ARRAY && token != JsonToken.BEGIN_OBJECT) {
+                    throw new IOException(
+                            "Expected JSON document to start with '[' or '{' but was " + token);
+                }
+                return firstToken;
+            case EMPTY_ARRAY:
+                return nextInArray(true);
+            case NONEMPTY_ARRAY:
+                return nextInArray(false);
+            case EMPTY_OBJECT:
+                return nextInObject(true);
+            case DANGLING_NAME:
+                return objectValue();
+            case NONEMPTY_OBJECT:
+                return nextInObject(false);
+            case NONEMPTY_DOCUMENT:
+                return token = JsonToken.END_DOCUMENT;
+            case CLOSED:
+                throw new IllegalStateException("JsonReader is closed");
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * Advances the cursor in the JSON stream to the next token.
+     */
+    private JsonToken advance() throws IOException {
+        peek();
+
+        JsonToken result = token;
+        token = null;
+        value = null;
+        return result;
+    }
+
+    /**
+     * Returns the next token, a {@link JsonToken#NAME property name}, and
+     * consumes it. Repeated names return the same instance.
+     *
+     * @throws IOException if the next token in the stream is not a property
+     *     name.
+     */
+    public String nextName() throws IOException {
+        peek();
+        if (token != JsonToken.NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek());
+        }
+        String result = value != null ? value : internName();
+        advance();
+        return result;
+    }
+
+    /**
+     * Consumes the next token, a {@link JsonToken#NAME property name}, if it is
+     * equal to {@code expected}, without creating a string for the name.
+     *
+     * @return false, leaving the name to be consumed, if it is not equal to
+     *     {@code expected}
+     * @throws IllegalStateException if the next token is not a property name.
+     */
+    public boolean nextNameEquals(String expected) throws IOException {
+        peek();
+        if (token != JsonToken.NAME) {
+            throw new IllegalStateException("Expected a name but was " + peek());
+        }
+        boolean equal;
+        if (value != null) {
+            equal = value.equals(expected);
+        } else if (!valueHasEscapes && isAscii(valueStart, valueEnd)) {
+            equal = asciiEquals(valueStart, valueEnd, expected);
+        } else {
+            equal = decodeValue().equals(expected);
+        }
+        if (equal) {
+            advance();
+        }
+        return equal;
+    }
+
+    /**
+     * Returns the {@link JsonToken#STRING string} value of the next token,
+     * consuming it. If the next token is a number, this method will return its
+     * string form.
+     *
+     * @throws IllegalStateException if the next token is not a string or if
+     *     this reader is closed.
+     */
+    public String nextString() throws IOException {
+        peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a string but was " + peek());
+        }
+
+        String result = value != null ? value : decodeValue();
+        advance();
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#BOOLEAN boolean} value of the next token,
+     * consuming it.
+     *
+     * @throws IllegalStateException if the next token is not a boolean or if
+     *     this reader is closed.
+     */
+    public boolean nextBoolean() throws IOException {
+        peek();
+        if (token != JsonToken.BOOLEAN) {
+            throw new IllegalStateException("Expected a boolean but was " + token);
+        }
+
+        boolean result = (value == TRUE);
+        advance();
+        return result;
+    }
+
+    /**
+     * Consumes the next token from the JSON stream and asserts that it is a
+     * literal null.
+     *
+     * @throws IllegalStateException if the next token is not null or if this
+     *     reader is closed.
+     */
+    public void nextNull() throws IOException {
+        peek();
+        if (token != JsonToken.NULL) {
+            throw new IllegalStateException("Expected null but was " + token);
+        }
+
+        advance();
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER double} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as a double using {@link Double#parseDouble(String)}.
+     *
+     * @throws IllegalStateException if the next token is not a literal value.
+     */
+    public double nextDouble() throws IOException {
+        peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a double but was " + token);
+        }
+
+        double result = token == JsonToken.NUMBER
+                ? parseNumberAsDouble()
+                : Double.parseDouble(value != null ? value : decodeValue());
+        advance();
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER long} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as a long. If the next token's numeric value cannot be exactly
+     * represented by a Java {@code long}, this method throws.
+     *
+     * @throws IllegalStateException if the next token is not a literal value.
+     * @throws NumberFormatException if the next literal value cannot be parsed
+     *     as a number, or exactly represented as a long.
+     */
+    public long nextLong() throws IOException {
+        peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected a long but was " + token);
+        }
+
+        long result;
+        if (token == JsonToken.NUMBER && isShortInteger()) {
+            result = parseIntegerAsLong();
+        } else {
+            String text = value != null ? value : decodeValue();
+            try {
+                result = Long.parseLong(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (long) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
+            }
+        }
+
+        advance();
+        return result;
+    }
+
+    /**
+     * Returns the {@link JsonToken#NUMBER int} value of the next token,
+     * consuming it. If the next token is a string, this method will attempt to
+     * parse it as an int. If the next token's numeric value cannot be exactly
+     * represented by a Java {@code int}, this method throws.
+     *
+     * @throws IllegalStateException if the next token is not a literal value.
+     * @throws NumberFormatException if the next literal value cannot be parsed
+     *     as a number, or exactly represented as an int.
+     */
+    public int nextInt() throws IOException {
+        peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw new IllegalStateException("Expected an int but was " + token);
+        }
+
+        int result;
+        if (token == JsonToken.NUMBER && isShortInteger()) {
+            long asLong = parseIntegerAsLong();
+            result = (int) asLong;
+            if (result != asLong) {
+                throw new NumberFormatException(decodeValue());
+            }
+        } else {
+            String text = value != null ? value : decodeValue();
+            try {
+                result = Integer.parseInt(text);
+            } catch (NumberFormatException ignored) {
+                double asDouble = Double.parseDouble(text); // don't catch this NumberFormatException
+                result = (int) asDouble;
+                if ((double) result != asDouble) {
+                    throw new NumberFormatException(text);
+                }
+            }
+        }
+
+        advance();
+        return result;
+    }
+
+    /**
+     * Closes this JSON reader. The buffer is not changed.
+     */
+    public void close() {
+        value = null;
+        token = null;
+        stack.clear();
+        stack.add(JsonScope.CLOSED);
+    }
+
+    /**
+     * Skips the next value recursively. If it is an object or array, all nested
+     * elements are skipped. This method is intended for use when the JSON token
+     * stream contains unrecognized or unhandled values.
+     */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            JsonToken token = advance();
+            if (token == JsonToken.BEGIN_ARRAY || token == JsonToken.BEGIN_OBJECT) {
+                count++;
+            } else if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                count--;
+            }
+        } while (count != 0);
+    }
+
+    private JsonScope peekStack() {
+        return stack.get(stack.size() - 1);
+    }
+
+    private JsonScope pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    private void push(JsonScope newTop) {
+        stack.add(newTop);
+    }
+
+    /**
+     * Replace the value on the top of the stack with the given value.
+     */
+    private void replaceTop(JsonScope newTop) {
+        stack.set(stack.size() - 1, newTop);
+    }
+
+    private JsonToken nextInArray(boolean firstElement) throws IOException {
+        if (firstElement) {
+            replaceTop(JsonScope.NONEMPTY_ARRAY);
+        } else {
+            /* Look for a comma before each element after the first element. */
+            switch (nextNonWhitespace()) {
+                case ']':
+                    pop();
+                    return token = JsonToken.END_ARRAY;
+                case ';':
+                    checkLenient(); // fall-through
+                case ',':
+                    break;
+                default:
+                    throw syntaxError("Unterminated array");
+            }
+        }
+
+        switch (nextNonWhitespace()) {
+            case ']':
+                if (firstElement) {
+                    pop();
+                    return token = JsonToken.END_ARRAY;
+                }
+                // fall-through to handle ",]"
+            case ';':
+            case ',':
+                /* In lenient mode, a 0-length literal means 'null' */
+                checkLenient();
+                pos--;
+                value = "null";
+                return token = JsonToken.NULL;
+            default:
+                pos--;
+                return nextValue();
+        }
+    }
+
+    private JsonToken nextInObject(boolean firstElement) throws IOException {
+        /*
+         * Read delimiters. Either a comma/semicolon separating this and the
+         * previous name-value pair, or a close brace to denote the end of the
+         * object.
+         */
+        if (firstElement) {
+            /* Peek to see if this is the empty object. */
+            switch (nextNonWhitespace()) {
+                case '}':
+                    pop();
+                    return token = JsonToken.END_OBJECT;
+                default:
+                    pos--;
+            }
+        } else {
+            switch (nextNonWhitespace()) {
+                case '}':
+                    pop();
+                    return token = JsonToken.END_OBJECT;
+                case ';':
+                case ',':
+                    break;
+                default:
+                    throw syntaxError("Unterminated object");
+            }
+        }
+
+        /* Read the name. */
+        int quote = nextNonWhitespace();
+        switch (quote) {
+            case '\'':
+                checkLenient(); // fall-through
+            case '"':
+                scanString((byte) quote);
+                break;
+            default:
+                checkLenient();
+                pos--;
+                scanLiteral();
+                if (valueStart == valueEnd) {
+                    throw syntaxError("Expected name");
+                }
+        }
+
+        replaceTop(JsonScope.DANGLING_NAME);
+        return token = JsonToken.NAME;
+    }
+
+    private JsonToken objectValue() throws IOException {
+        /*
+         * Read the name/value separator. Usually a colon ':'. In lenient mode
+         * we also accept an equals sign '=', or an arrow "=>".
+         */
+        switch (nextNonWhitespace()) {
+            case ':':
+                break;
+            case '=':
+                checkLenient();
+                if (pos < limit && buffer.get(pos) == '>') {
+                    pos++;
+                }
+                break;
+            default:
+                throw syntaxError("Expected ':'");
+        }
+
+        replaceTop(JsonScope.NONEMPTY_OBJECT);
+        return nextValue();
+    }
+
+    private JsonToken nextValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{':
+                push(JsonScope.EMPTY_OBJECT);
+                return token = JsonToken.BEGIN_OBJECT;
+
+            case '[':
+                push(JsonScope.EMPTY_ARRAY);
+                return token = JsonToken.BEGIN_ARRAY;
+
+            case '\'':
+                checkLenient(); // fall-through
+            case '"':
+                scanString((byte) c);
+                return token = JsonToken.STRING;
+
+            default:
+                pos--;
+                return readLiteral();
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while (pos < limit) {
+            int c = buffer.get(pos++);
+            switch (c) {
+                case '\t':
+                case ' ':
+                case '\n':
+                case '\r':
+                    continue;
+
+                case '/':
+                    if (pos == limit) {
+                        return c;
+                    }
+
+                    checkLenient();
+                    byte peek = buffer.get(pos);
+                    switch (peek) {
+                        case '*':
+                            // skip a /* c-style comment */
+                            pos++;
+                            if (!skipToEndOfComment()) {
+                                throw syntaxError("Unterminated comment");
+                            }
+                            pos += 2;
+                            continue;
+
+                        case '/':
+                            // skip a // end-of-line comment
+                            pos++;
+                            skipToEndOfLine();
+                            continue;
+
+                        default:
+                            return c;
+                    }
+
+                case '#':
+                    /*
+                     * Skip a # hash end-of-line comment. The JSON RFC doesn't
+                     * specify this behaviour, but it's required to parse
+                     * existing documents. See http://b/2571423.
+                     */
+                    checkLenient();
+                    skipToEndOfLine();
+                    continue;
+
+                default:
+                    return c;
+            }
+        }
+
+        throw syntaxError("End of input");
+    }
+
+    private void checkLenient() throws IOException {
+        if (!lenient) {
+            throw syntaxError("Use JsonReader.setLenient(true) to accept malformed JSON");
+        }
+    }
+
+    /**
+     * Advances the position until after the next newline character. If the line
+     * is terminated by "\r\n", the '\n' must be consumed as whitespace by the
+     * caller.
+     */
+    private void skipToEndOfLine() {
+        while (pos < limit) {
+            byte c = buffer.get(pos++);
+            if (c == '\r' || c == '\n') {
+                break;
+            }
+        }
+    }
+
+    /** Advances the position to the next "*}{@code /}", which must be followed by more input. */
+    private boolean skipToEndOfComment() {
+        for (; pos + 2 < limit; pos++) {
+            if (buffer.get(pos) == '*' && buffer.get(pos + 1) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the string up to but not including {@code quote}, and assigns its
+     * range to the value. The opening quote should have already been read.
+     * This consumes the closing quote, but does not include it in the range.
+     *
+     * @param quote either ' or ".
+     * @throws NumberFormatException if any unicode escape sequences are
+     *     malformed.
+     */
+    private void scanString(byte quote) throws IOException {
+        valueStart = pos;
+        valueHasEscapes = false;
+        while (pos < limit) {
+            byte c = buffer.get(pos++);
+            if (c == quote) {
+                valueEnd = pos - 1;
+                return;
+            } else if (c == '\\') {
+                valueHasEscapes = true;
+                readEscapeCharacter(null);
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    /**
+     * Finds the value up to but not including any delimiter characters, and
+     * assigns its range to the value. This does not consume the delimiter
+     * character.
+     */
+    private void scanLiteral() throws IOException {
+        valueStart = pos;
+        valueHasEscapes = false;
+
+        findNonLiteralCharacter:
+        for (; pos < limit; pos++) {
+            switch (buffer.get(pos)) {
+                case '/':
+                case '\\':
+                case ';':
+                case '#':
+                case '=':
+                    checkLenient(); // fall-through
+                case '{':
+                case '}':
+                case '[':
+                case ']':
+                case ':':
+                case ',':
+                case ' ':
+                case '\t':
+                case '\f':
+                case '\r':
+                case '\n':
+                    break findNonLiteralCharacter;
+            }
+        }
+        valueEnd = pos;
+    }
+
+    @Override public String toString() {
+        return getClass().getSimpleName() + " near " + getSnippet();
+    }
+
+    /**
+     * Consumes the escape sequence whose backslash '\' has already been read,
+     * appending the character or characters it identifies to {@code builder}
+     * unless it is null. This supports both unicode escapes "u000A" and
+     * two-character escapes "\n".
+     *
+     * @throws NumberFormatException if any unicode escape sequences are
+     *     malformed.
+     */
+    private void readEscapeCharacter(StringBuilder builder) throws IOException {
+        if (pos == limit) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+
+        byte escaped = buffer.get(pos++);
+        char unescaped;
+        switch (escaped) {
+            case 'u':
+                unescaped = readUnicodeEscape();
+                break;
+
+            case 't':
+                unescaped = '\t';
+                break;
+
+            case 'b':
+                unescaped = '\b';
+                break;
+
+            case 'n':
+                unescaped = '\n';
+                break;
+
+            case 'r':
+                unescaped = '\r';
+                break;
+
+            case 'f':
+                unescaped = '\f';
+                break;
+
+            default:
+                if (escaped < 0) {
+                    // Any other character escapes itself, which may be several bytes
+                    int start = pos - 1;
+                    pos = Math.min(limit, start + utf8SequenceLength(escaped));
+                    if (builder != null) {
+                        builder.append(decode(start, pos));
+                    }
+                    return;
+                }
+                unescaped = (char) escaped;
+        }
+        if (builder != null) {
+            builder.append(unescaped);
+        }
+    }
+
+    /** Reads the four characters of a unicode escape and returns the character they identify. */
+    private char readUnicodeEscape() throws IOException {
+        String hex;
+        if (pos + 4 <= limit && isAscii(pos, pos + 4)) {
+            hex = decode(pos, pos + 4);
+            pos += 4;
+        } else {
+            // The characters of the escape sequence are not all single bytes.
+            String chars = decode(pos, Math.min(limit, pos + 16));
+            if (chars.length() < 4) {
+                throw syntaxError("Unterminated escape sequence");
+            }
+            hex = chars.substring(0, 4);
+            for (int i = 0; i < hex.length(); i++) {
+                char c = hex.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    throw new NumberFormatException("For input string: \"" + hex + "\"");
+                }
+                pos += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+        }
+        return (char) Integer.parseInt(hex, 16);
+    }
+
+    private static int utf8SequenceLength(byte leadByte) {
+        if ((leadByte & 0xE0) == 0xC0) {
+            return 2;
+        } else if ((leadByte & 0xF0) == 0xE0) {
+            return 3;
+        } else if ((leadByte & 0xF8) == 0xF0) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Reads a null, boolean, numeric or unquoted string literal value.
+     */
+    private JsonToken readLiteral() throws IOException {
+        scanLiteral();
+        if (valueStart == valueEnd) {
+            throw syntaxError("Expected literal value");
+        }
+        token = decodeLiteral();
+        if (token == JsonToken.STRING) {
+            checkLenient();
+        }
+        return token;
+    }
+
+    /**
+     * Assigns {@code nextToken} based on the range of the value.
+     */
+    private JsonToken decodeLiteral() {
+        int length = valueEnd - valueStart;
+        if (length >= MAX_NUMBER_LENGTH) {
+            return JsonToken.STRING;
+        } else if (length == 4
+                && ('n' == lower(valueStart)) && ('u' == lower(valueStart + 1))
+                && ('l' == lower(valueStart + 2)) && ('l' == lower(valueStart + 3))) {
+            value = "null";
+            return JsonToken.NULL;
+        } else if (length == 4
+                && ('t' == lower(valueStart)) && ('r' == lower(valueStart + 1))
+                && ('u' == lower(valueStart + 2)) && ('e' == lower(valueStart + 3))) {
+            value = TRUE;
+            return JsonToken.BOOLEAN;
+        } else if (length == 5
+                && ('f' == lower(valueStart)) && ('a' == lower(valueStart + 1))
+                && ('l' == lower(valueStart + 2)) && ('s' == lower(valueStart + 3))
+                && ('e' == lower(valueStart + 4))) {
+            value = FALSE;
+            return JsonToken.BOOLEAN;
+        } else {
+            return decodeNumber(valueStart, valueEnd);
+        }
+    }
+
+    /** Returns the ASCII letter at {@code index} in lower case. */
+    private int lower(int index) {
+        int c = buffer.get(index);
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    /** Returns the byte at {@code index}, or 0 if it is not part of the value. */
+    private int valueByte(int index) {
+        return index < valueEnd ? buffer.get(index) : 0;
+    }
+
+    /**
+     * Determine whether the bytes are a JSON number. Numbers are of the
+     * form -12.34e+56. Fractional and exponential parts are optional. Leading
+     * zeroes are not allowed in the value or exponential part, but are allowed
+     * in the fraction.
+     */
+    private JsonToken decodeNumber(int start, int end) {
+        int i = start;
+        int c = valueByte(i);
+
+        if (c == '-') {
+            c = valueByte(++i);
+        }
+
+        if (c == '0') {
+            c = valueByte(++i);
+        } else if (c >= '1' && c <= '9') {
+            c = valueByte(++i);
+            while (c >= '0' && c <= '9') {
+                c = valueByte(++i);
+            }
+        } else {
+            return JsonToken.STRING;
+        }
+
+        if (c == '.') {
+            c = valueByte(++i);
+            while (c >= '0' && c <= '9') {
+                c = valueByte(++i);
+            }
+        }
+
+        if (c == 'e' || c == 'E') {
+            c = valueByte(++i);
+            if (c == '+' || c == '-') {
+                c = valueByte(++i);
+            }
+            if (c >= '0' && c <= '9') {
+                c = valueByte(++i);
+                while (c >= '0' && c <= '9') {
+                    c = valueByte(++i);
+                }
+            } else {
+                return JsonToken.STRING;
+            }
+        }
+
+        if (i == end) {
+            return JsonToken.NUMBER;
+        } else {
+            return JsonToken.STRING;
+        }
+    }
+
+    /**
+     * Returns true if the value, which must be a number, is an integer which
+     * can be parsed by {@link #parseIntegerAsLong()}.
+     */
+    private boolean isShortInteger() {
+        if (valueEnd - valueStart > MAX_LONG_DIGITS) {
+            return false;
+        }
+        for (int i = valueStart; i < valueEnd; i++) {
+            byte c = buffer.get(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the value, which must be a number for which {@link
+     * #isShortInteger()} is true, as a long.
+     */
+    private long parseIntegerAsLong() {
+        int i = valueStart;
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+        long result = 0;
+        for (; i < valueEnd; i++) {
+            result = result * 10 + (buffer.get(i) - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses the value, which must be a number, as a double. Numbers with few
+     * enough digits are computed exactly from the digits and a power of ten,
+     * and others are parsed by {@link Double#parseDouble(String)}.
+     */
+    private double parseNumberAsDouble() {
+        int i = valueStart;
+        boolean negative = buffer.get(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        long digits = 0;
+        int digitCount = 0;
+        int exponent = 0;
+        boolean inFraction = false;
+        for (; i < valueEnd; i++) {
+            byte c = buffer.get(i);
+            if (c == '.') {
+                inFraction = true;
+                continue;
+            } else if (c == 'e' || c == 'E') {
+                break;
+            }
+            if (digits != 0 || c != '0') {
+                if (++digitCount > MAX_EXACT_DIGITS) {
+                    return Double.parseDouble(decodeValue());
+                }
+                digits = digits * 10 + (c - '0');
+            }
+            if (inFraction) {
+                exponent--;
+            }
+        }
+
+        if (i < valueEnd) {
+            // Skip the 'e' and read the exponent
+            i++;
+            boolean negativeExponent = buffer.get(i) == '-';
+            if (negativeExponent || buffer.get(i) == '+') {
+                i++;
+            }
+            int explicitExponent = 0;
+            for (; i < valueEnd; i++) {
+                explicitExponent = explicitExponent * 10 + (buffer.get(i) - '0');
+                if (explicitExponent > MAX_NUMBER_LENGTH) {
+                    return Double.parseDouble(decodeValue());
+                }
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        double result = digits;
+        if (digits != 0) {
+            if (exponent < -MAX_EXACT_POWER_OF_TEN || exponent > MAX_EXACT_POWER_OF_TEN) {
+                return Double.parseDouble(decodeValue());
+            } else if (exponent < 0) {
+                result /= POWERS_OF_TEN[-exponent];
+            } else {
+                result *= POWERS_OF_TEN[exponent];
+            }
+        }
+        return negative ? -result : result;
+    }
+
+    /** Returns the name, reusing the string if the same name was read before. */
+    private String internName() {
+        if (valueHasEscapes || !isAscii(valueStart, valueEnd)) {
+            return decodeValue();
+        }
+
+        int hash = 0;
+        for (int i = valueStart; i < valueEnd; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        // Spread the bits, as short names differ mostly in their low bits
+        int index = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+        String cached = nameCache[index];
+        if (cached != null && asciiEquals(valueStart, valueEnd, cached)) {
+            return cached;
+        }
+        String name = decode(valueStart, valueEnd);
+        nameCache[index] = name;
+        return name;
+    }
+
+    private boolean isAscii(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if the ASCII bytes from {@code start} to {@code end} are equal to {@code s}. */
+    private boolean asciiEquals(int start, int end, String s) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) != s.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the text of the value, unescaping any character escape sequences. */
+    private String decodeValue() {
+        if (!valueHasEscapes) {
+            return decode(valueStart, valueEnd);
+        }
+
+        // Escape sequences were validated when the value was scanned
+        int savedPos = pos;
+        try {
+            StringBuilder builder = new StringBuilder(valueEnd - valueStart);
+            int start = valueStart;
+            pos = valueStart;
+            while (pos < valueEnd) {
+                if (buffer.get(pos++) == '\\') {
+                    builder.append(decode(start, pos - 1));
+                    readEscapeCharacter(builder);
+                    start = pos;
+                }
+            }
+            builder.append(decode(start, valueEnd));
+            return builder.toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } finally {
+            pos = savedPos;
+        }
+    }
+
+    /** Decodes the UTF-8 bytes from {@code start} to {@code end}. */
+    private String decode(int start, int end) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, end - start,
+                    StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Throws a new IO exception with the given message and a context snippet
+     * with this reader's content.
+     */
+    private IOException syntaxError(String message) throws IOException {
+        throw new JsonSyntaxException(message + " near " + getSnippet());
+    }
+
+    private CharSequence getSnippet() {
+        int start = Math.max(buffer.position(), pos - 20);
+        int end = Math.min(limit, pos + 20);
+        return decode(start, end);
+    }
+
+    private static class JsonSyntaxException extends IOException {
+        private JsonSyntaxException(String s) {
+            super(s);
+        }
+    }
+}
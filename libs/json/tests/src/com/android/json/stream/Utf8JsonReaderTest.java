@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.json.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Unit tests for {@link Utf8JsonReader}. */
+@RunWith(JUnit4.class)
+public class Utf8JsonReaderTest {
+
+    // Numbers which are parsed from the digits, and ones which fall back to Double.parseDouble
+    private static final String[] NUMBERS = {
+            "0", "-0", "1", "-1", "0.1", "0.3", "-12.34", "1.5e3", "1.5E-3", "-2e+2", "0.000",
+            "100.0", "123456789012345", "0.123456789012345", "9007199254740993",
+            "3.141592653589793238", "1e22", "1e23", "1e-22", "4.9e-324", "1e400", "-1e400",
+            "1e-400", "1.7976931348623157e308"
+    };
+
+    @Test
+    public void nextDouble_number_isSameAsParseDouble() throws IOException {
+        for (String number : NUMBERS) {
+            Utf8JsonReader reader = reader("[" + number + "]");
+            reader.beginArray();
+
+            assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+                    Double.doubleToLongBits(reader.nextDouble()));
+        }
+    }
+
+    @Test
+    public void nextDouble_string_isParsed() throws IOException {
+        Utf8JsonReader reader = reader("[\"1.5\"]");
+        reader.beginArray();
+
+        assertEquals(1.5, reader.nextDouble(), 0);
+    }
+
+    @Test
+    public void nextLong_number_isParsed() throws IOException {
+        Utf8JsonReader reader = reader(
+                "[9223372036854775807, -9223372036854775808, -0, 1e3, 12.0]");
+        reader.beginArray();
+
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertEquals(Long.MIN_VALUE, reader.nextLong());
+        assertEquals(0, reader.nextLong());
+        assertEquals(1000, reader.nextLong());
+        assertEquals(12, reader.nextLong());
+    }
+
+    @Test
+    public void nextLong_fraction_throwsAndDoesNotConsume() throws IOException {
+        Utf8JsonReader reader = reader("[1.5]");
+        reader.beginArray();
+
+        assertThrows(NumberFormatException.class, reader::nextLong);
+        assertEquals(1.5, reader.nextDouble(), 0);
+    }
+
+    @Test
+    public void nextInt_number_isParsed() throws IOException {
+        Utf8JsonReader reader = reader("[2147483647, -2147483648, 1e3]");
+        reader.beginArray();
+
+        assertEquals(Integer.MAX_VALUE, reader.nextInt());
+        assertEquals(Integer.MIN_VALUE, reader.nextInt());
+        assertEquals(1000, reader.nextInt());
+    }
+
+    @Test
+    public void nextInt_tooLarge_throws() throws IOException {
+        Utf8JsonReader reader = reader("[2147483648]");
+        reader.beginArray();
+
+        assertThrows(NumberFormatException.class, reader::nextInt);
+    }
+
+    @Test
+    public void peek_numbers_areNumbersOnlyIfValid() throws IOException {
+        Utf8JsonReader reader = reader("[1, -0.5e-3, 1., 01, .5, 1e, -]");
+        reader.setLenient(true);
+        reader.beginArray();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(JsonToken.NUMBER, reader.peek());
+            reader.skipValue();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals(JsonToken.STRING, reader.peek());
+            reader.skipValue();
+        }
+        reader.endArray();
+    }
+
+    @Test
+    public void nextString_multiByteCharacters_areDecoded() throws IOException {
+        String text = "caf\u00e9 \u65e5\u672c \ud83d\ude00";
+        Utf8JsonReader reader = reader("{\"" + text + "\": \"" + text + "\\n\\u0041\"}");
+        reader.beginObject();
+
+        assertEquals(text, reader.nextName());
+        assertEquals(text + "\nA", reader.nextString());
+        reader.endObject();
+    }
+
+    @Test
+    public void nextNameEquals_consumesOnlyEqualName() throws IOException {
+        Utf8JsonReader reader = reader("{\"a\": 1, \"b\": 2}");
+        reader.beginObject();
+
+        assertTrue(reader.nextNameEquals("a"));
+        assertEquals(1, reader.nextInt());
+        assertFalse(reader.nextNameEquals("a"));
+        assertEquals("b", reader.nextName());
+        assertEquals(2, reader.nextInt());
+        reader.endObject();
+    }
+
+    @Test
+    public void strict_unquotedName_throws() throws IOException {
+        Utf8JsonReader reader = reader("{a: 1}");
+        reader.beginObject();
+
+        assertThrows(IOException.class, reader::nextName);
+    }
+
+    @Test
+    public void lenient_unquotedName_isRead() throws IOException {
+        Utf8JsonReader reader = reader("{a: 1}");
+        reader.setLenient(true);
+        reader.beginObject();
+
+        assertEquals("a", reader.nextName());
+        assertEquals(1, reader.nextInt());
+    }
+
+    @Test
+    public void strict_comment_throws() throws IOException {
+        Utf8JsonReader reader = reader("[/* comment */ 1]");
+        reader.beginArray();
+
+        assertThrows(IOException.class, reader::peek);
+    }
+
+    @Test
+    public void lenient_comments_areSkipped() throws IOException {
+        Utf8JsonReader reader = reader("[/* comment */ 1, # comment\n 2 // comment\n]");
+        reader.setLenient(true);
+        reader.beginArray();
+
+        assertEquals(1, reader.nextInt());
+        assertEquals(2, reader.nextInt());
+        reader.endArray();
+    }
+
+    @Test
+    public void strict_singleQuotedString_throws() throws IOException {
+        Utf8JsonReader reader = reader("['a']");
+        reader.beginArray();
+
+        assertThrows(IOException.class, reader::peek);
+    }
+
+    @Test
+    public void lenient_singleQuotedString_isRead() throws IOException {
+        Utf8JsonReader reader = reader("['a']");
+        reader.setLenient(true);
+        reader.beginArray();
+
+        assertEquals("a", reader.nextString());
+    }
+
+    @Test
+    public void lenient_topLevelValue_throws() {
+        // As for JsonReader, the document must be an array or object even if lenient
+        Utf8JsonReader reader = reader("1");
+        reader.setLenient(true);
+
+        assertThrows(IOException.class, reader::peek);
+    }
+
+    @Test
+    public void strict_unquotedString_throws() throws IOException {
+        Utf8JsonReader reader = reader("[NaN]");
+        reader.beginArray();
+
+        assertThrows(IOException.class, reader::peek);
+    }
+
+    @Test
+    public void lenient_unquotedString_isRead() throws IOException {
+        Utf8JsonReader reader = reader("[NaN]");
+        reader.setLenient(true);
+        reader.beginArray();
+
+        assertEquals(JsonToken.STRING, reader.peek());
+        assertEquals("NaN", reader.nextString());
+    }
+
+    @Test
+    public void truncatedInput_throws() throws IOException {
+        Utf8JsonReader reader = reader("[1,");
+        reader.beginArray();
+        reader.nextInt();
+
+        assertThrows(IOException.class, reader::peek);
+    }
+
+    private static Utf8JsonReader reader(String json) {
+        return new Utf8JsonReader(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -33,6 +33,8 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
+import org.apache.http.ProtocolException;
+import org.apache.http.ProtocolVersion;
 import org.apache.http.RequestLine;
 import org.apache.http.StatusLine;
 import org.apache.http.client.utils.URLEncodedUtils;
@@ -40,9 +42,13 @@ import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.DefaultHttpRequestFactory;
 import org.apache.http.impl.DefaultHttpServerConnection;
 import org.apache.http.impl.cookie.DateUtils;
 import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicLineFormatter;
+import org.apache.http.message.BasicLineParser;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.params.HttpParams;
@@ -50,16 +56,23 @@ import org.apache.http.params.HttpParams;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyStore;
@@ -67,14 +80,18 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ExecutorService;
@@ -140,9 +157,29 @@ public class CtsTestServer {
         TRUST_ANY_CLIENT
     }
 
+    /** How the server handles connections. */
+    public enum ServerMode {
+        /**
+         * Connections are accepted one at a time, and each request is handled by one of a fixed
+         * pool of threads. The connection is closed after each response. Connections are created
+         * by {@link #createHttpServerConnection()}.
+         */
+        THREAD_POOL,
+        /**
+         * A single thread handles all of the connections using non-blocking IO, so many
+         * concurrent and slow connections can be open at once. Connections are kept alive and
+         * requests may be pipelined. Delayed responses are sent when their delay has passed
+         * without holding up other connections. Only {@link SslMode#INSECURE} is supported, and
+         * {@link #createHttpServerConnection()} is not used.
+         */
+        EVENT_LOOP
+    }
+
     private static Hashtable<Integer, String> sReasons;
 
     private ServerThread mServerThread;
+    private EventLoopThread mEventLoopThread;
+    private ServerMode mServerMode;
     private String mServerUri;
     private AssetManager mAssets;
     private Context mContext;
@@ -232,6 +269,24 @@ public class CtsTestServer {
      */
     public CtsTestServer(Context context, SslMode sslMode, X509TrustManager trustManager,
             int keyResId, int certResId) throws Exception {
+        this(context, sslMode, trustManager, keyResId, certResId, ServerMode.THREAD_POOL);
+    }
+
+    /**
+     * Create and start a local HTTP server instance.
+     * @param context The application context to use for fetching assets.
+     * @param serverMode How the server handles connections.
+     * @throws Exception
+     */
+    public CtsTestServer(Context context, ServerMode serverMode) throws Exception {
+        this(context, SslMode.INSECURE, new CtsTrustManager(), 0, 0, serverMode);
+    }
+
+    private CtsTestServer(Context context, SslMode sslMode, X509TrustManager trustManager,
+            int keyResId, int certResId, ServerMode serverMode) throws Exception {
+        if (serverMode == ServerMode.EVENT_LOOP && sslMode != SslMode.INSECURE) {
+            throw new IllegalArgumentException("The event loop server does not support SSL");
+        }
         mContext = context;
         mAssets = mContext.getAssets();
         mResources = mContext.getResources();
@@ -240,30 +295,49 @@ public class CtsTestServer {
         mMap = MimeTypeMap.getSingleton();
         mQueries = new Vector<String>();
         mTrustManager = trustManager;
-        if (keyResId == 0 && certResId == 0) {
-            mServerThread = new ServerThread(this, mSsl, null, null);
+        mServerMode = serverMode;
+        int port;
+        if (mServerMode == ServerMode.EVENT_LOOP) {
+            mEventLoopThread = new EventLoopThread(this);
+            port = mEventLoopThread.mChannel.socket().getLocalPort();
         } else {
-            mServerThread = new ServerThread(this, mSsl, mResources.openRawResource(keyResId),
-                    mResources.openRawResource(certResId));
+            if (keyResId == 0 && certResId == 0) {
+                mServerThread = new ServerThread(this, mSsl, null, null);
+            } else {
+                mServerThread = new ServerThread(this, mSsl, mResources.openRawResource(keyResId),
+                        mResources.openRawResource(certResId));
+            }
+            port = mServerThread.mSocket.getLocalPort();
         }
         if (mSsl == SslMode.INSECURE) {
             mServerUri = "http:";
         } else {
             mServerUri = "https:";
         }
-        mServerUri += "//localhost:" + mServerThread.mSocket.getLocalPort();
-        mServerThread.start();
+        mServerUri += "//localhost:" + port;
+        if (mEventLoopThread != null) {
+            mEventLoopThread.start();
+        } else {
+            mServerThread.start();
+        }
     }
 
     /**
      * Terminate the http server.
      */
     public void shutdown() {
-        mServerThread.shutDownOnClientThread();
+        Thread thread;
+        if (mEventLoopThread != null) {
+            mEventLoopThread.shutDownOnClientThread();
+            thread = mEventLoopThread;
+        } else {
+            mServerThread.shutDownOnClientThread();
+            thread = mServerThread;
+        }
 
         try {
             // Block until the server thread is done shutting down.
-            mServerThread.join();
+            thread.join();
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
@@ -622,13 +696,15 @@ public class CtsTestServer {
             path = FAVICON_ASSET_PATH;
         }
         if (path.startsWith(DELAY_PREFIX)) {
-            String delayPath = path.substring(DELAY_PREFIX.length() + 1);
-            String delay = delayPath.substring(0, delayPath.indexOf('/'));
-            path = delayPath.substring(delay.length());
-            try {
-                Thread.sleep(Integer.valueOf(delay));
-            } catch (InterruptedException ignored) {
-                // ignore
+            int delayMillis = getDelayMillis(path);
+            path = path.substring(path.indexOf('/', DELAY_PREFIX.length() + 1));
+            // The event loop delays sending the response instead of holding up its thread
+            if (mServerMode == ServerMode.THREAD_POOL) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ignored) {
+                    // ignore
+                }
             }
         }
         if (path.startsWith(AUTH_PREFIX)) {
@@ -820,6 +896,18 @@ public class CtsTestServer {
         return response;
     }
 
+    /**
+     * Return the delay of a path returned by {@link #getDelayedAssetUrl(String, int)}, or 0 for
+     * any other path.
+     */
+    private static int getDelayMillis(String path) {
+        if (!path.startsWith(DELAY_PREFIX)) {
+            return 0;
+        }
+        String delayPath = path.substring(DELAY_PREFIX.length() + 1);
+        return Integer.valueOf(delayPath.substring(0, delayPath.indexOf('/')));
+    }
+
     private void setDateHeaders(HttpResponse response) {
         long time = System.currentTimeMillis();
         synchronized (this) {
@@ -1147,4 +1235,625 @@ public class CtsTestServer {
             }
         }
     }
+
+    /**
+     * Handles all connections on one thread using non-blocking IO, for
+     * {@link ServerMode#EVENT_LOOP}.
+     *
+     * <p>Requests are parsed as their bytes arrive, and their responses are created straight away
+     * by {@link CtsTestServer#getResponse(HttpRequest)}. Responses are sent in the order of the
+     * requests on each connection. A delayed response waits in a queue ordered by the time it can
+     * be sent, which sets the timeout for the next select, instead of blocking the thread.
+     */
+    private static class EventLoopThread extends Thread {
+        private static final int BUFFER_SIZE = 16 * 1024;
+        private static final int MAX_HEADER_SIZE = 64 * 1024;
+        // Requests on a connection are not read while this many responses are waiting to be sent
+        private static final int MAX_PIPELINED_REQUESTS = 32;
+        private static final int ACCEPT_BACKLOG = 1024;
+
+        private final CtsTestServer mServer;
+        private final Selector mSelector;
+        private final ServerSocketChannel mChannel;
+        // Responses which may not be sent yet, ordered by the time they can be sent
+        private final PriorityQueue<PendingResponse> mDelayedResponses =
+                new PriorityQueue<PendingResponse>();
+        private final ByteBuffer mReadBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final DefaultHttpRequestFactory mRequestFactory = new DefaultHttpRequestFactory();
+        private volatile boolean mWillShutDown = false;
+
+        EventLoopThread(CtsTestServer server) throws IOException {
+            super("EventLoopThread");
+            mServer = server;
+            mSelector = Selector.open();
+            mChannel = ServerSocketChannel.open();
+            mChannel.socket().bind(new InetSocketAddress(0), ACCEPT_BACKLOG);
+            mChannel.configureBlocking(false);
+            mChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+        }
+
+        public void run() {
+            try {
+                while (!mWillShutDown) {
+                    mSelector.select(releaseDelayedResponses());
+                    Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                    while (keys.hasNext() && !mWillShutDown) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isAcceptable()) {
+                                accept();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        } catch (IOException e) {
+                            // normal when the client closes the connection, ignore
+                            Log.w(TAG, e);
+                            if (connection != null) {
+                                connection.close();
+                            }
+                        } catch (RuntimeException e) {
+                            // Only drop the connection, so the other connections are still served
+                            Log.e(TAG, "Error handling connection:", e);
+                            if (connection != null) {
+                                connection.close();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error in event loop:", e);
+            } finally {
+                for (SelectionKey key : mSelector.keys()) {
+                    if (key.attachment() != null) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                closeQuietly(mChannel);
+                try {
+                    mSelector.close();
+                } catch (IOException ignored) {
+                    // safe to ignore
+                }
+            }
+        }
+
+        /**
+         * Stop the event loop, closing all of the connections.
+         * Note this method is called on the client thread, instead of the server thread.
+         */
+        public void shutDownOnClientThread() {
+            mWillShutDown = true;
+            mSelector.wakeup();
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = mChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(channel);
+                connection.mKey = channel.register(mSelector, SelectionKey.OP_READ, connection);
+            }
+        }
+
+        /**
+         * Allow the delayed responses whose time has come to be sent.
+         *
+         * @return the number of milliseconds until the next delayed response can be sent, or 0 if
+         *         there are none
+         */
+        private long releaseDelayedResponses() {
+            long now = System.nanoTime();
+            while (!mDelayedResponses.isEmpty() && mDelayedResponses.peek().mSendTime <= now) {
+                PendingResponse response = mDelayedResponses.remove();
+                response.mIsDelayed = false;
+                response.mConnection.updateInterest();
+            }
+            if (mDelayedResponses.isEmpty()) {
+                return 0;
+            }
+            // Round up, so that the response can be sent when the select times out
+            long delayNanos = mDelayedResponses.peek().mSendTime - now;
+            return TimeUnit.NANOSECONDS.toMillis(delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        }
+
+        /**
+         * Return whether the connection of {@code request} should be kept open for more requests
+         * after its response.
+         */
+        private static boolean isKeepAlive(HttpRequest request) {
+            Header connection = request.getLastHeader("Connection");
+            if (connection != null) {
+                String value = connection.getValue().toLowerCase(Locale.US);
+                if (value.contains("close")) {
+                    return false;
+                }
+                if (value.contains("keep-alive")) {
+                    return true;
+                }
+            }
+            return !request.getRequestLine().getProtocolVersion().lessEquals(HttpVersion.HTTP_1_0);
+        }
+
+        /** Close the stream of {@code entity}, if it is one which is read from a stream. */
+        private static void closeContent(HttpEntity entity) {
+            if (entity != null && entity.isStreaming()) {
+                try {
+                    closeQuietly(entity.getContent());
+                } catch (IOException ignored) {
+                    // safe to ignore
+                }
+            }
+        }
+
+        private static void closeQuietly(Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // safe to ignore
+            }
+        }
+
+        /** A response which has been created, but not yet sent. */
+        private static class PendingResponse implements Comparable<PendingResponse> {
+            final Connection mConnection;
+            final HttpRequest mRequest;
+            final HttpResponse mResponse;
+            final boolean mKeepAlive;
+            final long mSendTime;
+            boolean mIsDelayed;
+
+            PendingResponse(Connection connection, HttpRequest request, HttpResponse response,
+                    boolean keepAlive, long sendTime, boolean isDelayed) {
+                mConnection = connection;
+                mRequest = request;
+                mResponse = response;
+                mKeepAlive = keepAlive;
+                mSendTime = sendTime;
+                mIsDelayed = isDelayed;
+            }
+
+            @Override
+            public int compareTo(PendingResponse other) {
+                return Long.signum(mSendTime - other.mSendTime);
+            }
+        }
+
+        private class Connection {
+            private final SocketChannel mChannel;
+            private SelectionKey mKey;
+
+            // Bytes received, but not yet parsed into requests
+            private byte[] mInput = new byte[BUFFER_SIZE];
+            private int mInputLength = 0;
+            // True once no more requests will be read, because the client has closed its output
+            // or a request asked for the connection to be closed
+            private boolean mIsInputDone = false;
+
+            private final ArrayDeque<PendingResponse> mResponses =
+                    new ArrayDeque<PendingResponse>();
+            // The response being sent, and what remains of it
+            private PendingResponse mSending;
+            private boolean mCloseAfterSending;
+            private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            private ByteBuffer mOutput = ByteBuffer.allocate(0);
+            private InputStream mBody;
+            // The number of bytes of mBody still to send, or -1 to send until the end of the stream
+            private long mBodyRemaining;
+            private boolean mIsClosed = false;
+
+            Connection(SocketChannel channel) {
+                mChannel = channel;
+            }
+
+            void read() throws IOException {
+                mReadBuffer.clear();
+                int count = mChannel.read(mReadBuffer);
+                if (count == -1) {
+                    mIsInputDone = true;
+                } else {
+                    if (mInputLength + count > mInput.length) {
+                        mInput = Arrays.copyOf(mInput,
+                                Math.max(mInput.length * 2, mInputLength + count));
+                    }
+                    System.arraycopy(mReadBuffer.array(), 0, mInput, mInputLength, count);
+                    mInputLength += count;
+                    readRequests();
+                }
+                updateInterest();
+            }
+
+            /** Create the responses for all of the complete requests which have been received. */
+            private void readRequests() {
+                int start = 0;
+                while (!mIsInputDone && mResponses.size() < MAX_PIPELINED_REQUESTS) {
+                    // Ignore empty lines before a request
+                    while (start < mInputLength
+                            && (mInput[start] == '\r' || mInput[start] == '\n')) {
+                        start++;
+                    }
+                    int end = readRequest(start);
+                    if (end == -1) {
+                        break;
+                    }
+                    start = end;
+                }
+                mInputLength -= start;
+                System.arraycopy(mInput, start, mInput, 0, mInputLength);
+            }
+
+            /**
+             * Create the response for the request starting at {@code start}.
+             *
+             * @return the end of the request, or -1 if all of it has not been received
+             */
+            private int readRequest(int start) {
+                int headerEnd = findHeaderEnd(start);
+                if (headerEnd == -1) {
+                    if (mInputLength - start > MAX_HEADER_SIZE) {
+                        Log.w(TAG, "Request header too large");
+                        mIsInputDone = true;
+                    }
+                    return -1;
+                }
+
+                HttpRequest request;
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                int end;
+                long delayNanos;
+                try {
+                    String[] lines = new String(mInput, start, headerEnd - start, "ISO-8859-1")
+                            .split("\r?\n");
+                    request = mRequestFactory.newHttpRequest(
+                            BasicLineParser.parseRequestLine(lines[0], null));
+                    String header = null;
+                    for (int i = 1; i < lines.length; i++) {
+                        if (lines[i].startsWith(" ") || lines[i].startsWith("\t")) {
+                            // A continuation of the previous header
+                            if (header == null) {
+                                throw new ProtocolException("Invalid header: " + lines[i]);
+                            }
+                            header += " " + lines[i].trim();
+                            continue;
+                        }
+                        if (header != null) {
+                            request.addHeader(BasicLineParser.parseHeader(header, null));
+                        }
+                        header = lines[i].isEmpty() ? null : lines[i];
+                    }
+                    if (header != null) {
+                        request.addHeader(BasicLineParser.parseHeader(header, null));
+                    }
+                    end = readBody(request, headerEnd, body);
+                    String path = URI.create(request.getRequestLine().getUri()).getPath();
+                    delayNanos = TimeUnit.MILLISECONDS.toNanos(getDelayMillis(path));
+                } catch (HttpException | IOException | RuntimeException e) {
+                    // Includes a malformed line, URI or delay in the request
+                    Log.w(TAG, e);
+                    mIsInputDone = true;
+                    return -1;
+                }
+                if (end == -1) {
+                    return -1;
+                }
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    ByteArrayEntity entity = new ByteArrayEntity(body.toByteArray());
+                    entity.setContentType(request.getFirstHeader("Content-Type"));
+                    entity.setContentEncoding(request.getFirstHeader("Content-Encoding"));
+                    ((HttpEntityEnclosingRequest) request).setEntity(entity);
+                }
+
+                boolean keepAlive = isKeepAlive(request);
+                mIsInputDone = !keepAlive;
+                HttpResponse response;
+                try {
+                    response = mServer.getResponse(request);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error handling request:", e);
+                    response = createResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+                    keepAlive = false;
+                    mIsInputDone = true;
+                }
+                PendingResponse pendingResponse = new PendingResponse(this, request, response,
+                        keepAlive, System.nanoTime() + delayNanos, delayNanos > 0);
+                mResponses.add(pendingResponse);
+                if (pendingResponse.mIsDelayed) {
+                    mDelayedResponses.add(pendingResponse);
+                }
+                return end;
+            }
+
+            /** Return the index after the empty line ending the header starting at start. */
+            private int findHeaderEnd(int start) {
+                for (int i = start; i < mInputLength; i++) {
+                    if (mInput[i] != '\n') {
+                        continue;
+                    }
+                    if (i + 1 < mInputLength && mInput[i + 1] == '\n') {
+                        return i + 2;
+                    }
+                    if (i + 2 < mInputLength && mInput[i + 1] == '\r' && mInput[i + 2] == '\n') {
+                        return i + 3;
+                    }
+                }
+                return -1;
+            }
+
+            /**
+             * Copy the body of {@code request}, which starts at {@code start}, to {@code body}.
+             *
+             * @return the end of the body, or -1 if all of it has not been received
+             */
+            private int readBody(HttpRequest request, int start, ByteArrayOutputStream body)
+                    throws IOException, ProtocolException {
+                Header transferEncoding = request.getLastHeader("Transfer-Encoding");
+                if (transferEncoding != null
+                        && transferEncoding.getValue().equalsIgnoreCase("chunked")) {
+                    return readChunkedBody(start, body);
+                }
+                Header contentLength = request.getLastHeader("Content-Length");
+                long length = 0;
+                if (contentLength != null) {
+                    try {
+                        length = Long.parseLong(contentLength.getValue().trim());
+                    } catch (NumberFormatException e) {
+                        throw new ProtocolException("Invalid content length: " + contentLength);
+                    }
+                }
+                if (length < 0) {
+                    throw new ProtocolException("Invalid content length: " + contentLength);
+                }
+                if (mInputLength - start < length) {
+                    return -1;
+                }
+                body.write(mInput, start, (int) length);
+                return start + (int) length;
+            }
+
+            private int readChunkedBody(int start, ByteArrayOutputStream body)
+                    throws ProtocolException {
+                int position = start;
+                while (true) {
+                    int lineEnd = indexOf('\n', position);
+                    if (lineEnd == -1) {
+                        return -1;
+                    }
+                    String sizeLine = new String(mInput, position, lineEnd - position).trim();
+                    int extension = sizeLine.indexOf(';');
+                    if (extension != -1) {
+                        sizeLine = sizeLine.substring(0, extension).trim();
+                    }
+                    int size;
+                    try {
+                        size = Integer.parseInt(sizeLine, 16);
+                    } catch (NumberFormatException e) {
+                        throw new ProtocolException("Invalid chunk size: " + sizeLine);
+                    }
+                    position = lineEnd + 1;
+                    if (size == 0) {
+                        // Skip any trailers, up to the empty line ending the body
+                        while (true) {
+                            lineEnd = indexOf('\n', position);
+                            if (lineEnd == -1) {
+                                return -1;
+                            }
+                            boolean isEmpty = lineEnd == position
+                                    || (lineEnd == position + 1 && mInput[position] == '\r');
+                            position = lineEnd + 1;
+                            if (isEmpty) {
+                                return position;
+                            }
+                        }
+                    }
+                    if (size < 0 || mInputLength - position < size) {
+                        return -1;
+                    }
+                    body.write(mInput, position, size);
+                    // Skip the line ending after the data
+                    lineEnd = indexOf('\n', position + size);
+                    if (lineEnd == -1) {
+                        return -1;
+                    }
+                    position = lineEnd + 1;
+                }
+            }
+
+            private int indexOf(char c, int start) {
+                for (int i = start; i < mInputLength; i++) {
+                    if (mInput[i] == c) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+
+            void write() throws IOException {
+                while (true) {
+                    if (mOutput.hasRemaining()) {
+                        mChannel.write(mOutput);
+                        if (mOutput.hasRemaining()) {
+                            // Wait for the client to read some more
+                            break;
+                        }
+                    } else if (mBody != null) {
+                        fillOutputFromBody();
+                    } else if (mSending != null) {
+                        mSending = null;
+                        if (mCloseAfterSending) {
+                            close();
+                            return;
+                        }
+                        if (mInputLength > 0) {
+                            // Requests may have been left unread while the queue was full
+                            readRequests();
+                        }
+                    } else if (!mResponses.isEmpty() && !mResponses.peek().mIsDelayed) {
+                        startResponse(mResponses.remove());
+                    } else {
+                        break;
+                    }
+                }
+                updateInterest();
+            }
+
+            private void startResponse(PendingResponse pendingResponse) throws IOException {
+                mSending = pendingResponse;
+                HttpRequest request = pendingResponse.mRequest;
+                HttpResponse response = pendingResponse.mResponse;
+                HttpEntity entity = response.getEntity();
+                boolean sendBody = entity != null
+                        && !request.getRequestLine().getMethod().equals("HEAD");
+
+                // The length of the body, or -1 for it to be ended by closing the connection
+                long length;
+                long declaredLength = getContentLength(response);
+                String query = URI.create(request.getRequestLine().getUri()).getQuery();
+                if (declaredLength >= 0) {
+                    length = declaredLength;
+                } else if (entity == null) {
+                    length = 0;
+                    response.setHeader("Content-Length", "0");
+                } else if ((query == null || !query.contains(NOLENGTH_POSTFIX))
+                        && entity.getContentLength() >= 0) {
+                    length = entity.getContentLength();
+                    response.setHeader("Content-Length", Long.toString(length));
+                } else {
+                    length = -1;
+                }
+                // Without a length, the end of the body is shown by closing the connection
+                mCloseAfterSending = !pendingResponse.mKeepAlive || length == -1;
+                if (mCloseAfterSending) {
+                    mIsInputDone = true;
+                }
+
+                // Answer HTTP/1.1 requests with HTTP/1.1, which keeps connections alive by default
+                ProtocolVersion requestVersion = request.getRequestLine().getProtocolVersion();
+                ProtocolVersion version = requestVersion.lessEquals(HttpVersion.HTTP_1_0)
+                        ? HttpVersion.HTTP_1_0 : HttpVersion.HTTP_1_1;
+                StatusLine statusLine = response.getStatusLine();
+                StringBuilder header = new StringBuilder();
+                header.append(BasicLineFormatter.formatStatusLine(new BasicStatusLine(version,
+                        statusLine.getStatusCode(), statusLine.getReasonPhrase()), null));
+                header.append("\r\n");
+                response.removeHeaders("Connection");
+                if (mCloseAfterSending) {
+                    response.addHeader("Connection", "close");
+                } else if (version.equals(HttpVersion.HTTP_1_0)) {
+                    response.addHeader("Connection", "keep-alive");
+                }
+                for (Header responseHeader : response.getAllHeaders()) {
+                    header.append(BasicLineFormatter.formatHeader(responseHeader, null));
+                    header.append("\r\n");
+                }
+                header.append("\r\n");
+
+                byte[] headerBytes = header.toString().getBytes("ISO-8859-1");
+                if (headerBytes.length <= mBuffer.capacity()) {
+                    mBuffer.clear();
+                    mBuffer.put(headerBytes);
+                    mBuffer.flip();
+                    mOutput = mBuffer;
+                } else {
+                    mOutput = ByteBuffer.wrap(headerBytes);
+                }
+                if (sendBody) {
+                    mBody = entity.getContent();
+                    mBodyRemaining = length;
+                } else {
+                    // The body of a HEAD response is not sent, so close the asset it is read from
+                    closeContent(entity);
+                }
+            }
+
+            /**
+             * Return the Content-Length of {@code response}, or -1 if it has none. An invalid
+             * Content-Length is removed, so that one is set as if the response had none.
+             */
+            private long getContentLength(HttpResponse response) {
+                Header contentLength = response.getFirstHeader("Content-Length");
+                if (contentLength == null) {
+                    return -1;
+                }
+                try {
+                    long length = Long.parseLong(contentLength.getValue().trim());
+                    if (length >= 0) {
+                        return length;
+                    }
+                } catch (NumberFormatException e) {
+                    // handled below
+                }
+                Log.w(TAG, "Invalid response content length: " + contentLength);
+                response.removeHeaders("Content-Length");
+                return -1;
+            }
+
+            private void fillOutputFromBody() throws IOException {
+                int limit = mBuffer.capacity();
+                if (mBodyRemaining != -1 && mBodyRemaining < limit) {
+                    limit = (int) mBodyRemaining;
+                }
+                int count = limit == 0 ? -1 : mBody.read(mBuffer.array(), 0, limit);
+                if (count == -1) {
+                    mBody.close();
+                    mBody = null;
+                    if (mBodyRemaining > 0) {
+                        throw new IOException("Response body is shorter than its length");
+                    }
+                    return;
+                }
+                if (mBodyRemaining != -1) {
+                    mBodyRemaining -= count;
+                }
+                mBuffer.clear();
+                mBuffer.limit(count);
+                mOutput = mBuffer;
+            }
+
+            /** Select the events this connection is waiting for. */
+            void updateInterest() {
+                if (mIsClosed) {
+                    return;
+                }
+                boolean canWrite = mOutput.hasRemaining() || mBody != null || mSending != null
+                        || (!mResponses.isEmpty() && !mResponses.peek().mIsDelayed);
+                if (mIsInputDone && !canWrite && mResponses.isEmpty()) {
+                    close();
+                    return;
+                }
+                int ops = 0;
+                if (!mIsInputDone && mResponses.size() < MAX_PIPELINED_REQUESTS) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                if (canWrite) {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                mKey.interestOps(ops);
+            }
+
+            void close() {
+                if (mIsClosed) {
+                    return;
+                }
+                mIsClosed = true;
+                mKey.cancel();
+                closeQuietly(mChannel);
+                if (mBody != null) {
+                    closeQuietly(mBody);
+                } else if (mSending != null) {
+                    // The response failed before its body was started
+                    closeContent(mSending.mResponse.getEntity());
+                }
+                // Close the assets opened for the responses which were not sent
+                for (PendingResponse pendingResponse : mResponses) {
+                    closeContent(pendingResponse.mResponse.getEntity());
+                }
+            }
+        }
+    }
 }
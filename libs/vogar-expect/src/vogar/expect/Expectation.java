@@ -83,6 +83,10 @@ public final class Expectation {
         return tags;
     }
 
+    Pattern getPattern() {
+        return pattern;
+    }
+
     /**
      * Set the current status of this expectation's bug. When a bug is open,
      * any result (success or failure) is permitted.
@@ -95,10 +99,15 @@ public final class Expectation {
      * Returns true if {@code outcome} matches this expectation.
      */
     public boolean matches(Outcome outcome) {
-        return patternMatches(outcome) && (bugIsOpen || result == outcome.getResult());
+        // The result is compared first as it is much cheaper than matching the output
+        return resultMatches(outcome) && patternMatches(outcome);
+    }
+
+    boolean resultMatches(Outcome outcome) {
+        return bugIsOpen || result == outcome.getResult();
     }
 
-    private boolean patternMatches(Outcome outcome) {
+    boolean patternMatches(Outcome outcome) {
         return pattern.matcher(outcome.getOutput()).matches();
     }
 
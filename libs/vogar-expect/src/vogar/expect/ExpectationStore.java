@@ -63,6 +63,11 @@ public final class ExpectationStore {
     private final Map<String, Expectation> outcomes = new LinkedHashMap<String, Expectation>();
     private final Map<String, Expectation> failures = new LinkedHashMap<String, Expectation>();
 
+    /** The outcome expectations, for finding the expectation of a name or its package. */
+    private final NameTrie outcomesByName = new NameTrie();
+    /** Matches the failure expectations, rebuilt after each expectations file is parsed. */
+    private FailureMatcher failureMatcher = new FailureMatcher(failures.values());
+
     private ExpectationStore() {}
 
     /**
@@ -89,30 +94,21 @@ public final class ExpectationStore {
             return exactNameMatch;
         }
 
-        for (Map.Entry<String, Expectation> entry : failures.entrySet()) {
-            if (entry.getValue().matches(outcome)) {
-                return entry.getValue();
-            }
+        Expectation failureMatch = failureMatcher.match(outcome);
+        if (failureMatch != null) {
+            return failureMatch;
         }
 
         Expectation byName = getByNameOrPackage(outcome.getName());
         return byName != null ? byName : SUCCESS;
     }
 
+    /**
+     * Returns the expectation for {@code name}, or else for the longest prefix of it ending before
+     * a '.' or '#', such as its class or package.
+     */
     private Expectation getByNameOrPackage(String name) {
-        while (true) {
-            Expectation expectation = outcomes.get(name);
-            if (expectation != null) {
-                return expectation;
-            }
-
-            int dotOrHash = Math.max(name.lastIndexOf('.'), name.lastIndexOf('#'));
-            if (dotOrHash == -1) {
-                return null;
-            }
-
-            name = name.substring(0, dotOrHash);
-        }
+        return outcomesByName.get(name);
     }
 
     public static ExpectationStore parse(Set<File> expectationFiles, ModeId mode) throws IOException {
@@ -178,6 +174,7 @@ public final class ExpectationStore {
                 count++;
             }
             jsonReader.endArray();
+            failureMatcher = new FailureMatcher(failures.values());
 
             Log.verbose("loaded " + count + " expectations from " + source);
         }
@@ -244,6 +241,9 @@ public final class ExpectationStore {
             if (map.put(name, expectation) != null) {
                 throw new IllegalArgumentException("Duplicate expectations for " + name);
             }
+            if (!isFailure) {
+                outcomesByName.put(name, expectation);
+            }
         }
     }
 
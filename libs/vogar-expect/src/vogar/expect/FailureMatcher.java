@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.expect;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the first of a list of failure expectations which matches an outcome.
+ *
+ * <p>Most failure patterns can only match output containing some literal text, such as the text
+ * of a "substring" expectation. The literals of all of the patterns are found in a single pass
+ * over the output using an Aho-Corasick automaton, and the pattern of an expectation is only run
+ * if its literal was found.
+ */
+final class FailureMatcher {
+
+    private static final int NO_LITERAL = -1;
+
+    /** The flags of patterns which {@link #requiredLiteral(String)} understands. */
+    private static final int SUPPORTED_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+
+    /** Separates the literal atoms found by {@link #requiredLiteral(String)}. */
+    private static final char NON_LITERAL = '\u0000';
+
+    /** The expectations in the order they are tried. */
+    private final Expectation[] expectations;
+    /** The index of the literal required by each expectation, or {@link #NO_LITERAL}. */
+    private final int[] literalIndexes;
+    private final int literalCount;
+
+    // The automaton. The transitions of each state are sorted by char, and a missing transition
+    // is taken from the failure state instead.
+    private final char[][] transitionChars;
+    private final int[][] transitionStates;
+    private final int[] failureStates;
+    /** The indexes of the literals ending at each state, including through its failure states. */
+    private final int[][] matchedLiterals;
+
+    FailureMatcher(Collection<Expectation> failures) {
+        expectations = failures.toArray(new Expectation[0]);
+        literalIndexes = new int[expectations.length];
+
+        Map<String, Integer> literals = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < expectations.length; i++) {
+            Pattern pattern = expectations[i].getPattern();
+            String literal = (pattern.flags() & ~SUPPORTED_FLAGS) == 0
+                    ? requiredLiteral(pattern.pattern()) : "";
+            if (literal.isEmpty()) {
+                literalIndexes[i] = NO_LITERAL;
+                continue;
+            }
+            Integer index = literals.get(literal);
+            if (index == null) {
+                index = literals.size();
+                literals.put(literal, index);
+            }
+            literalIndexes[i] = index;
+        }
+        literalCount = literals.size();
+
+        // Build the trie of the literals
+        List<TreeMap<Character, Integer>> transitions =
+                new ArrayList<TreeMap<Character, Integer>>();
+        List<List<Integer>> matches = new ArrayList<List<Integer>>();
+        transitions.add(new TreeMap<Character, Integer>());
+        matches.add(new ArrayList<Integer>());
+        for (Map.Entry<String, Integer> entry : literals.entrySet()) {
+            int state = 0;
+            for (char c : entry.getKey().toCharArray()) {
+                Integer next = transitions.get(state).get(c);
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<Character, Integer>());
+                    matches.add(new ArrayList<Integer>());
+                    transitions.get(state).put(c, next);
+                }
+                state = next;
+            }
+            matches.get(state).add(entry.getValue());
+        }
+
+        int stateCount = transitions.size();
+        transitionChars = new char[stateCount][];
+        transitionStates = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            TreeMap<Character, Integer> stateTransitions = transitions.get(state);
+            transitionChars[state] = new char[stateTransitions.size()];
+            transitionStates[state] = new int[stateTransitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : stateTransitions.entrySet()) {
+                transitionChars[state][i] = transition.getKey();
+                transitionStates[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Set the failure states breadth first, so the failure state of each state's failure
+        // state, which is shallower, is already set
+        failureStates = new int[stateCount];
+        Queue<Integer> queue = new ArrayDeque<Integer>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            matches.get(state).addAll(matches.get(failureStates[state]));
+            for (int i = 0; i < transitionChars[state].length; i++) {
+                int next = transitionStates[state][i];
+                failureStates[next] = state == 0
+                        ? 0 : step(failureStates[state], transitionChars[state][i]);
+                queue.add(next);
+            }
+        }
+
+        matchedLiterals = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            List<Integer> stateMatches = matches.get(state);
+            matchedLiterals[state] = new int[stateMatches.size()];
+            for (int i = 0; i < stateMatches.size(); i++) {
+                matchedLiterals[state][i] = stateMatches.get(i);
+            }
+        }
+    }
+
+    /** Returns the first failure expectation which matches {@code outcome}, or null if none do. */
+    Expectation match(Outcome outcome) {
+        boolean[] found = null;
+        for (int i = 0; i < expectations.length; i++) {
+            Expectation expectation = expectations[i];
+            if (!expectation.resultMatches(outcome)) {
+                continue;
+            }
+            int literalIndex = literalIndexes[i];
+            if (literalIndex != NO_LITERAL) {
+                if (found == null) {
+                    found = findLiterals(outcome.getOutput());
+                }
+                if (!found[literalIndex]) {
+                    continue;
+                }
+            }
+            if (expectation.patternMatches(outcome)) {
+                return expectation;
+            }
+        }
+        return null;
+    }
+
+    private boolean[] findLiterals(String output) {
+        boolean[] found = new boolean[literalCount];
+        int remaining = literalCount;
+        int state = 0;
+        for (int i = 0; i < output.length() && remaining > 0; i++) {
+            state = step(state, output.charAt(i));
+            for (int literalIndex : matchedLiterals[state]) {
+                if (!found[literalIndex]) {
+                    found[literalIndex] = true;
+                    remaining--;
+                }
+            }
+        }
+        return found;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int i = Arrays.binarySearch(transitionChars[state], c);
+            if (i >= 0) {
+                return transitionStates[state][i];
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failureStates[state];
+        }
+    }
+
+    /**
+     * Returns the longest literal text which all of the output matched by {@code regex} must
+     * contain, or an empty string if none is found.
+     *
+     * <p>Only literals in the top level sequence of the pattern are considered. A pattern using
+     * alternation, special groups such as flags, or escapes which this does not understand, has
+     * no literal.
+     */
+    static String requiredLiteral(String regex) {
+        // Each char of the pattern's top level sequence, or NON_LITERAL for anything else
+        StringBuilder atoms = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            switch (c) {
+                case '\\':
+                    if (i == regex.length()) {
+                        return "";
+                    }
+                    char escaped = regex.charAt(i++);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i);
+                        if (end == -1) {
+                            end = regex.length();
+                        }
+                        if (depth == 0) {
+                            for (int j = i; j < end; j++) {
+                                atoms.append(literalAtom(regex.charAt(j)));
+                            }
+                        }
+                        i = Math.min(end + 2, regex.length());
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // Character classes and assertions such as \d and \b are a single atom,
+                        // but other escapes such as \x41 and \p{Lu} are followed by arguments
+                        if ("dDsSwWbBAGZzRXhHvVtnrfae".indexOf(escaped) == -1) {
+                            return "";
+                        }
+                        atoms.append(NON_LITERAL);
+                    } else {
+                        atoms.append(depth == 0 ? literalAtom(escaped) : NON_LITERAL);
+                    }
+                    break;
+                case '[':
+                    i = skipCharacterClass(regex, i);
+                    if (i == -1) {
+                        return "";
+                    }
+                    atoms.append(NON_LITERAL);
+                    break;
+                case '(':
+                    if (i < regex.length() && regex.charAt(i) == '?') {
+                        return "";
+                    }
+                    depth++;
+                    atoms.append(NON_LITERAL);
+                    break;
+                case ')':
+                    depth--;
+                    atoms.append(NON_LITERAL);
+                    break;
+                case '|':
+                    return "";
+                case '?':
+                case '*':
+                    // The previous atom may not occur
+                    replaceLastAtom(atoms);
+                    break;
+                case '{':
+                    replaceLastAtom(atoms);
+                    int end = regex.indexOf('}', i);
+                    if (end == -1) {
+                        return "";
+                    }
+                    i = end + 1;
+                    break;
+                case '+':
+                    // The previous atom occurs, but may be repeated
+                    atoms.append(NON_LITERAL);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    atoms.append(NON_LITERAL);
+                    break;
+                default:
+                    atoms.append(depth == 0 ? literalAtom(c) : NON_LITERAL);
+                    break;
+            }
+        }
+
+        String longest = "";
+        for (String literal : atoms.toString().split(String.valueOf(NON_LITERAL))) {
+            if (literal.length() > longest.length()) {
+                longest = literal;
+            }
+        }
+        return longest;
+    }
+
+    private static char literalAtom(char c) {
+        // A quantifier following a supplementary character applies to both of its chars
+        return c == NON_LITERAL || Character.isSurrogate(c) ? NON_LITERAL : c;
+    }
+
+    private static void replaceLastAtom(StringBuilder atoms) {
+        if (atoms.length() > 0) {
+            atoms.setCharAt(atoms.length() - 1, NON_LITERAL);
+        }
+    }
+
+    /**
+     * Returns the index after the end of the character class starting at {@code start}, which is
+     * just after its opening '[', or -1 if the class is not understood.
+     */
+    private static int skipCharacterClass(String regex, int start) {
+        int depth = 1;
+        int i = start;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        // A ']' at the start of a class is literal
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (c == '\\') {
+                if (i < regex.length() && regex.charAt(i) == 'Q') {
+                    return -1;
+                }
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.expect;
+
+/**
+ * Outcome expectations keyed by the segments of their names, such as "java", ".util" and
+ * "#testFoo", so that the expectation for a name or its closest package or class can be found in
+ * one pass over the name.
+ *
+ * <p>The first segment of a name is the text before its first '.' or '#', and each following
+ * segment is a separator and the text up to the next one. The nodes on the path of a name are
+ * therefore exactly the prefixes which {@link #get(String)} considers.
+ */
+final class NameTrie {
+
+    private final Node root = new Node();
+
+    /** Sets the expectation for {@code name}, replacing any previous expectation. */
+    void put(String name, Expectation expectation) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            // Following segments start with their separator
+            int end = segmentEnd(name, node == root ? start : start + 1);
+            node = node.getOrAddChild(name, start, end);
+            if (end == name.length()) {
+                node.expectation = expectation;
+                return;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Returns the expectation for {@code name}, or else for the longest prefix of it which ends
+     * before a '.' or '#', or null if there is none.
+     */
+    Expectation get(String name) {
+        Node node = root;
+        Expectation longest = null;
+        int start = 0;
+        while (true) {
+            // Following segments start with their separator
+            int end = segmentEnd(name, node == root ? start : start + 1);
+            node = node.getChild(name, start, end);
+            if (node == null) {
+                return longest;
+            }
+            if (node.expectation != null) {
+                longest = node.expectation;
+            }
+            if (end == name.length()) {
+                return longest;
+            }
+            start = end;
+        }
+    }
+
+    /** Returns the index of the first '.' or '#' in {@code name} from {@code from}, or its end. */
+    private static int segmentEnd(String name, int from) {
+        for (int i = from; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.' || c == '#') {
+                return i;
+            }
+        }
+        return name.length();
+    }
+
+    /**
+     * Returns the hash of the chars of {@code s} from {@code start} to {@code end}, which is the
+     * same as the {@link String#hashCode()} of that substring.
+     */
+    private static int hash(String s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return hash;
+    }
+
+    private static final class Node {
+        private static final int INITIAL_CAPACITY = 4;
+
+        Expectation expectation;
+
+        // An open addressing hash table of the children, keyed by their segment. This is looked up
+        // by a range of the name so that segments are not copied to be looked up.
+        private String[] segments;
+        private Node[] children;
+        private int childCount;
+
+        Node getChild(String name, int start, int end) {
+            if (segments == null) {
+                return null;
+            }
+            int length = end - start;
+            int mask = segments.length - 1;
+            for (int i = spread(hash(name, start, end)) & mask; ; i = (i + 1) & mask) {
+                String segment = segments[i];
+                if (segment == null) {
+                    return null;
+                }
+                if (segment.length() == length && name.regionMatches(start, segment, 0, length)) {
+                    return children[i];
+                }
+            }
+        }
+
+        Node getOrAddChild(String name, int start, int end) {
+            Node child = getChild(name, start, end);
+            if (child != null) {
+                return child;
+            }
+            if (segments == null) {
+                segments = new String[INITIAL_CAPACITY];
+                children = new Node[INITIAL_CAPACITY];
+            } else if ((childCount + 1) * 2 > segments.length) {
+                resize();
+            }
+            child = new Node();
+            insert(name.substring(start, end), child);
+            childCount++;
+            return child;
+        }
+
+        private void resize() {
+            String[] oldSegments = segments;
+            Node[] oldChildren = children;
+            segments = new String[oldSegments.length * 2];
+            children = new Node[oldSegments.length * 2];
+            for (int i = 0; i < oldSegments.length; i++) {
+                if (oldSegments[i] != null) {
+                    insert(oldSegments[i], oldChildren[i]);
+                }
+            }
+        }
+
+        private void insert(String segment, Node child) {
+            int mask = segments.length - 1;
+            int i = spread(segment.hashCode()) & mask;
+            while (segments[i] != null) {
+                i = (i + 1) & mask;
+            }
+            segments[i] = segment;
+            children[i] = child;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
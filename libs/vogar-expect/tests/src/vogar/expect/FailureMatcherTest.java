@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package vogar.expect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link FailureMatcher}, comparing the expectations it finds with those found by
+ * matching every pattern in turn.
+ */
+@RunWith(JUnit4.class)
+public class FailureMatcherTest {
+
+    private static final String EXPECTATIONS = "failure-expectations.txt";
+
+    private static final int PATTERN_FLAGS = Pattern.MULTILINE | Pattern.DOTALL;
+
+    /** The outputs matched against the expectations of {@link #EXPECTATIONS}. */
+    private static final String[] OUTPUTS = {
+            "",
+            "java.net.UnknownHostException: Unable to resolve host \"example.com\"",
+            "Test failed: Timeout",
+            "junit.framework.AssertionFailedError: timed out after 500ms",
+            "timed out after ms",
+            "java.lang.ArrayIndexOutOfBoundsException: length=0; index=-1",
+            "java.lang.ArrayIndexOutOfBoundsException: length=0; index=1",
+            "java.lang.StackOverflowError\n  at a.b.C.d(C.java:1)\n  at a.b.C.d(C.java:1)\n"
+                    + "Caused by: java.lang.StackOverflowError",
+            "java.lang.StackOverflowError\nCaused by: nothing",
+            "at libcore.util.ZoneInfoDB.getInstance",
+            "at libcore.icu.util.ZoneInfoDB.getInstance",
+            "junit.framework.AssertionFailedError: expected:<42> but was:<43>",
+            "expected:<> but was:<43>",
+            "javax.net.ssl.SSLHandshakeException: Handshake failed",
+            "javax.net.ssl.SSLHandshakeExceptions: Handshake failed",
+            "junit.framework.AssertionFailedError\n\tat android.cts.FooTest.testFoo(FooTest.java:1)",
+            "junit.framework.AssertionFailedError: message\n\tat android.cts.FooTest.testFoo",
+            "Unsupported",
+            "Unsupported operation",
+            "libcore.io.ErrnoException: open failed: EACCES (Permission denied)",
+            "Expected [1, 2] (size=2). but was [1]",
+            "Expected [1, 2] (size=2) but was [1]",
+            "Expected [1, 2] (size=2)x but was [1]",
+            "token ]a1 unexpected",
+            "token a unexpected",
+    };
+
+    /** The chars of generated patterns and outputs, including some regex metacharacters. */
+    private static final String ALPHABET = "ab.|(\n";
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals("java.net.Foo", FailureMatcher.requiredLiteral(".*java\\.net\\.Foo.*"));
+        assertEquals("a|b(c", FailureMatcher.requiredLiteral(".*\\Qa|b(c\\E.*"));
+        assertEquals("Caused by", FailureMatcher.requiredLiteral("x(ab)+Caused by(cd)*"));
+        assertEquals("abc", FailureMatcher.requiredLiteral("abc(de){0}f"));
+        assertEquals("de", FailureMatcher.requiredLiteral("[abc]de[^f]+"));
+        assertEquals("ab", FailureMatcher.requiredLiteral("abc?d"));
+        assertEquals("", FailureMatcher.requiredLiteral("abc|def"));
+        assertEquals("", FailureMatcher.requiredLiteral("(?i)abc"));
+        assertEquals("", FailureMatcher.requiredLiteral("abc\\1"));
+    }
+
+    @Test
+    public void testExpectationFiles_matchSameAsPatterns() throws Exception {
+        ExpectationStore store = ExpectationStore.parseResources(FailureMatcherTest.class,
+                Collections.singleton(EXPECTATIONS), ModeId.HOST);
+        Collection<Expectation> failures = store.getAllFailures().values();
+        assertEquals(12, failures.size());
+
+        FailureMatcher matcher = new FailureMatcher(failures);
+        int matched = 0;
+        for (String output : OUTPUTS) {
+            for (Result result : Arrays.asList(Result.EXEC_FAILED, Result.EXEC_TIMEOUT)) {
+                Outcome outcome = new Outcome("test", result, output);
+                Expectation expected = matchEachPattern(failures, outcome);
+                assertSame(output, expected, matcher.match(outcome));
+                if (expected != null) {
+                    matched++;
+                }
+            }
+        }
+        // The comparison is not only of nulls
+        assertEquals(16, matched);
+    }
+
+    @Test
+    public void testGeneratedPatterns_matchSameAsPatterns() {
+        Random random = new Random(0);
+        for (int round = 0; round < 500; round++) {
+            List<Expectation> failures = new ArrayList<Expectation>();
+            List<String> outputs = new ArrayList<String>();
+            for (int i = 0; i < 20; i++) {
+                Node node = randomNode(random, 3);
+                StringBuilder regex = new StringBuilder();
+                node.appendRegex(regex);
+                Pattern pattern = Pattern.compile(regex.toString(), PATTERN_FLAGS);
+                failures.add(new Expectation(Result.EXEC_FAILED, pattern,
+                        Collections.<String>emptySet(), regex.toString(), -1));
+                for (int j = 0; j < 5; j++) {
+                    StringBuilder output = new StringBuilder();
+                    node.appendSample(random, output);
+                    outputs.add(output.toString());
+                }
+                outputs.add(randomString(random, 8));
+            }
+
+            FailureMatcher matcher = new FailureMatcher(failures);
+            for (String output : outputs) {
+                Outcome outcome = new Outcome("test", Result.EXEC_FAILED, output);
+                assertSame(failures.toString() + " " + output,
+                        matchEachPattern(failures, outcome), matcher.match(outcome));
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedPatterns_outputContainsRequiredLiteral() {
+        Random random = new Random(1);
+        int checked = 0;
+        for (int i = 0; i < 20000; i++) {
+            Node node = randomNode(random, 3);
+            StringBuilder regex = new StringBuilder();
+            node.appendRegex(regex);
+            String literal = FailureMatcher.requiredLiteral(regex.toString());
+            if (literal.isEmpty()) {
+                continue;
+            }
+            Pattern pattern = Pattern.compile(regex.toString(), PATTERN_FLAGS);
+            for (int j = 0; j < 10; j++) {
+                StringBuilder output = new StringBuilder();
+                node.appendSample(random, output);
+                if (pattern.matcher(output).matches()) {
+                    assertTrue(regex + " matches " + output + " without " + literal,
+                            output.indexOf(literal) != -1);
+                    checked++;
+                }
+            }
+        }
+        assertTrue("checked " + checked, checked > 10000);
+    }
+
+    /** Returns the first expectation matching {@code outcome} without any prefilter. */
+    private static Expectation matchEachPattern(Collection<Expectation> failures,
+            Outcome outcome) {
+        for (Expectation failure : failures) {
+            if (failure.resultMatches(outcome)
+                    && failure.getPattern().matcher(outcome.getOutput()).matches()) {
+                return failure;
+            }
+        }
+        return null;
+    }
+
+    private static String randomString(Random random, int maxLength) {
+        StringBuilder result = new StringBuilder();
+        for (int length = random.nextInt(maxLength + 1); length > 0; length--) {
+            result.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return result.toString();
+    }
+
+    /** A part of a generated pattern, which can also generate output it is likely to match. */
+    private interface Node {
+        void appendRegex(StringBuilder regex);
+
+        void appendSample(Random random, StringBuilder output);
+    }
+
+    /** A node with a fixed regex, matched by any of a set of samples. */
+    private static Node atom(String regex, String... samples) {
+        return new Node() {
+            @Override
+            public void appendRegex(StringBuilder builder) {
+                builder.append(regex);
+            }
+
+            @Override
+            public void appendSample(Random random, StringBuilder output) {
+                output.append(samples[random.nextInt(samples.length)]);
+            }
+        };
+    }
+
+    private static Node randomAtom(Random random) {
+        switch (random.nextInt(14)) {
+            case 0:
+                return atom(".", "a", "|", "\n");
+            case 1:
+                return atom("[ab]", "a", "b");
+            case 2:
+                return atom("[^a]", "b", ".", "\n");
+            case 3:
+                return atom("[]a]", "]", "a");
+            case 4:
+                return atom("[a[.|]]", "a", ".", "|");
+            case 5:
+                return atom("\\Qa|(b\\E", "a|(b");
+            case 6:
+                return atom("\\Q.\\E", ".");
+            case 7:
+                return atom("\\.", ".");
+            case 8:
+                return atom("\\|", "|");
+            case 9:
+                return atom("\\n", "\n");
+            case 10:
+                return atom("\\s", "\n");
+            case 11:
+                return atom("^", "");
+            case 12:
+                return atom("$", "");
+            default:
+                char c = "ab".charAt(random.nextInt(2));
+                return atom(String.valueOf(c), String.valueOf(c));
+        }
+    }
+
+    private static Node randomNode(Random random, int depth) {
+        Node[] children = new Node[1 + random.nextInt(4)];
+        for (int i = 0; i < children.length; i++) {
+            Node child = depth > 1 && random.nextInt(4) == 0
+                    ? group(random, randomNode(random, depth - 1)) : randomAtom(random);
+            children[i] = random.nextInt(3) == 0 ? quantified(random, child) : child;
+        }
+        Node sequence = sequence(children);
+        return random.nextInt(8) == 0
+                ? alternation(sequence, randomNode(random, depth - 1)) : sequence;
+    }
+
+    private static Node sequence(Node... children) {
+        return new Node() {
+            @Override
+            public void appendRegex(StringBuilder regex) {
+                for (Node child : children) {
+                    child.appendRegex(regex);
+                }
+            }
+
+            @Override
+            public void appendSample(Random random, StringBuilder output) {
+                for (Node child : children) {
+                    child.appendSample(random, output);
+                }
+            }
+        };
+    }
+
+    private static Node alternation(Node first, Node second) {
+        return new Node() {
+            @Override
+            public void appendRegex(StringBuilder regex) {
+                first.appendRegex(regex);
+                regex.append('|');
+                second.appendRegex(regex);
+            }
+
+            @Override
+            public void appendSample(Random random, StringBuilder output) {
+                (random.nextBoolean() ? first : second).appendSample(random, output);
+            }
+        };
+    }
+
+    private static Node group(Random random, Node child) {
+        boolean capturing = random.nextBoolean();
+        return new Node() {
+            @Override
+            public void appendRegex(StringBuilder regex) {
+                regex.append(capturing ? "(" : "(?:");
+                child.appendRegex(regex);
+                regex.append(')');
+            }
+
+            @Override
+            public void appendSample(Random random, StringBuilder output) {
+                child.appendSample(random, output);
+            }
+        };
+    }
+
+    private static Node quantified(Random random, Node child) {
+        // The minimum and maximum count of each quantifier, -1 meaning unbounded
+        String[] quantifiers = {"?", "*", "+", "{0}", "{2}", "{0,2}", "{1,}"};
+        int[][] counts = {{0, 1}, {0, -1}, {1, -1}, {0, 0}, {2, 2}, {0, 2}, {1, -1}};
+        int index = random.nextInt(quantifiers.length);
+        // Lazy and possessive quantifiers require the same as greedy ones
+        String suffix = new String[] {"", "", "?", "+"}[random.nextInt(4)];
+        return new Node() {
+            @Override
+            public void appendRegex(StringBuilder regex) {
+                child.appendRegex(regex);
+                regex.append(quantifiers[index]).append(suffix);
+            }
+
+            @Override
+            public void appendSample(Random random, StringBuilder output) {
+                int min = counts[index][0];
+                int max = counts[index][1] == -1 ? min + 2 : counts[index][1];
+                for (int count = min + random.nextInt(max - min + 1); count > 0; count--) {
+                    child.appendSample(random, output);
+                }
+            }
+        };
+    }
+}
@@ -35,7 +35,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
-import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.runner.RunWith;
 
@@ -63,11 +62,6 @@ public abstract class AbstractApiTest {
      */
     private Collection<String> expectedFailures = Collections.emptyList();
 
-    @AfterClass
-    public static void closeResourceStore() {
-        ResourceStore.close();
-    }
-
     public Instrumentation getInstrumentation() {
         return InstrumentationRegistry.getInstrumentation();
     }
@@ -218,9 +212,8 @@ public abstract class AbstractApiTest {
     /**
      * Retrieve a stream of {@link VirtualPath} from a list of API resource files.
      *
-     * <p>Any zip files are flattened, i.e. if a resource name ends with {@code .zip} then it is
-     * unpacked into a temporary directory and the paths to the unpacked files are returned instead
-     * of the path to the zip file.</p>
+     * <p>Any zip files are flattened, i.e. if a resource name ends with {@code .zip} then the
+     * paths to its mapped entries are returned instead of the path to the zip file.</p>
      *
      * @param classLoader the {@link ClassLoader} from which the resources will be loaded.
      * @param apiResources the list of API resource files.
@@ -17,6 +17,7 @@
 package android.signature.cts.api;
 
 import android.os.Bundle;
+import android.signature.cts.ByteBufferLineSpliterator;
 import android.signature.cts.DexApiDocumentParser;
 import android.signature.cts.DexField;
 import android.signature.cts.DexMember;
@@ -28,8 +29,13 @@ import android.signature.cts.VirtualPath;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import org.junit.Test;
 
@@ -38,6 +44,9 @@ import org.junit.Test;
  */
 public class HiddenApiTest extends AbstractApiTest {
 
+    // Estimate of the length of a line in the hiddenapi files.
+    private static final int LINE_LENGTH_ESTIMATE = 100;
+
     private String[] hiddenapiFiles;
     private String[] hiddenapiTestFlags;
     private String hiddenapiFilterFile;
@@ -150,20 +159,19 @@ public class HiddenApiTest extends AbstractApiTest {
             };
 
             for (String apiFile : hiddenapiFiles) {
-                VirtualPath.ResourcePath resourcePath =
-                        VirtualPath.get(getClass().getClassLoader(), apiFile);
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(resourcePath.newInputStream()));
+                ByteBuffer buffer = ResourceStore.mapResource(getClass().getClassLoader(), apiFile);
+                Iterator<ByteBuffer> lines = Spliterators.iterator(
+                        ByteBufferLineSpliterator.forRawLines(buffer, LINE_LENGTH_ESTIMATE,
+                                Function.identity()));
                 int lineIndex = 1;
-                String line = reader.readLine();
-                while (line != null) {
+                while (lines.hasNext()) {
+                    ByteBuffer line = lines.next();
                     DexMember dexMember = DexApiDocumentParser.parseLine(line, lineIndex);
                     if (memberFilter.test(dexMember) && shouldTestMember(dexMember)
                             && !isFiltered(line)) {
                         DexMemberChecker.checkSingleMember(dexMember, reflection, jni,
                                 observer);
                     }
-                    line = reader.readLine();
                     lineIndex++;
                 }
             }
@@ -195,13 +203,23 @@ public class HiddenApiTest extends AbstractApiTest {
      * @param line is the line from the hiddenapi-flags.csv indicating which method/field to check
      * @return true if the method/field is to be filtered out, false otherwise
      */
-    private boolean isFiltered(String line) {
-        if (line == null) {
+    private boolean isFiltered(ByteBuffer line) {
+        if (hiddenapiFilterSet.isEmpty()) {
             return false;
         }
         // Need to remove which list the method/field is a part of (at the end of the line)
-        int commaIndex = line.indexOf(',');
-        return commaIndex > 0 && hiddenapiFilterSet.contains(line.substring(0, commaIndex));
+        for (int i = line.position(); i < line.limit(); i++) {
+            if (line.get(i) == ',') {
+                if (i == line.position()) {
+                    return false;
+                }
+                ByteBuffer signature = line.duplicate();
+                signature.limit(i);
+                return hiddenapiFilterSet.contains(
+                        StandardCharsets.UTF_8.decode(signature).toString());
+            }
+        }
+        return false;
     }
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts.api;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * A minimal read only view of a zip file whose content is held in a {@link ByteBuffer}, usually a
+ * memory mapped file, or a region of one.
+ *
+ * <p>Unlike {@link java.util.zip.ZipFile} this gives direct access to the bytes of each entry so
+ * that stored entries can be used in place without copying. Zip64 archives are not supported.
+ */
+class MappedZipFile {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xffff;
+
+    /**
+     * An entry in the zip file.
+     */
+    static class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long compressedSize, long size,
+                long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isStored() {
+            return method == ZipEntry.STORED;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * The uncompressed size of the entry.
+         */
+        long getSize() {
+            return size;
+        }
+    }
+
+    private final ByteBuffer buffer;
+
+    private final List<Entry> entries;
+
+    MappedZipFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = Collections.unmodifiableList(readCentralDirectory());
+    }
+
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    Entry getEntry(String name) {
+        for (Entry entry : entries) {
+            if (entry.name.equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the raw, i.e. possibly compressed, content of the entry. The returned buffer shares its
+     * content with the buffer of this zip file.
+     */
+    ByteBuffer getRawContent(Entry entry) throws IOException {
+        long offset = entry.localHeaderOffset;
+        if (offset + LOCAL_HEADER_LENGTH > buffer.limit()
+                || buffer.getInt((int) offset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Bad local header for " + entry.name);
+        }
+        int nameLength = buffer.getShort((int) offset + 26) & 0xffff;
+        int extraLength = buffer.getShort((int) offset + 28) & 0xffff;
+        long start = offset + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+        long end = start + entry.compressedSize;
+        if (end > buffer.limit()) {
+            throw new IOException("Truncated content for " + entry.name);
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.position((int) start).limit((int) end);
+        return content.slice();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        int endOfCentralDirectory = findEndOfCentralDirectory();
+        int count = buffer.getShort(endOfCentralDirectory + 10) & 0xffff;
+        long centralDirectoryOffset = buffer.getInt(endOfCentralDirectory + 16) & 0xffffffffL;
+        if (count == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+            throw new IOException("Zip64 archives are not supported");
+        }
+
+        List<Entry> entries = new ArrayList<>(count);
+        int offset = (int) centralDirectoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (offset + CENTRAL_HEADER_LENGTH > endOfCentralDirectory
+                    || buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Bad central directory header at " + offset);
+            }
+            int method = buffer.getShort(offset + 10) & 0xffff;
+            long compressedSize = buffer.getInt(offset + 20) & 0xffffffffL;
+            long size = buffer.getInt(offset + 24) & 0xffffffffL;
+            int nameLength = buffer.getShort(offset + 28) & 0xffff;
+            int extraLength = buffer.getShort(offset + 30) & 0xffff;
+            int commentLength = buffer.getShort(offset + 32) & 0xffff;
+            long localHeaderOffset = buffer.getInt(offset + 42) & 0xffffffffL;
+            if (compressedSize == 0xffffffffL || size == 0xffffffffL
+                    || localHeaderOffset == 0xffffffffL) {
+                throw new IOException("Zip64 archives are not supported");
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer name = buffer.duplicate();
+            name.position(offset + CENTRAL_HEADER_LENGTH);
+            name.get(nameBytes);
+            entries.add(new Entry(new String(nameBytes, StandardCharsets.UTF_8), method,
+                    compressedSize, size, localHeaderOffset));
+
+            offset += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private int findEndOfCentralDirectory() throws IOException {
+        int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_LENGTH;
+        int first = Math.max(0, last - MAX_COMMENT_LENGTH);
+        for (int offset = last; offset >= first; offset--) {
+            if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new IOException("Not a zip file, could not find end of central directory");
+    }
+}
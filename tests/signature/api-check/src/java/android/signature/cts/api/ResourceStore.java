@@ -20,17 +20,32 @@ import android.util.Log;
 import com.google.common.base.Suppliers;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
-import java.util.zip.ZipFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
- * Manages local storage of resources that need to be extracted from the Jar into the local
- * filesystem before use.
+ * Provides access to resources, and the entries of zip file resources, as memory mapped buffers.
+ *
+ * <p>Where possible the content is mapped in place, i.e. directly from the APK containing the
+ * resource for stored resources, and directly from the mapped zip file for stored zip entries.
+ * Compressed content is inflated once into a mapped scratch file. Mapped content is shared by all
+ * the test classes in the process.
  */
 public class ResourceStore {
 
@@ -48,29 +63,41 @@ public class ResourceStore {
     })::get;
 
     /**
-     * A map from a {@link VirtualPath} to a {@link ZipFile} for zip file resources that
-     * have been extracted from the jar into the local file system.
+     * A map from the name of a resource, or of an entry in a zip file resource, to its content.
+     */
+    private static final Map<String, ByteBuffer> mappedContents = new HashMap<>();
+
+    /**
+     * A map from the name of a zip file resource to the paths of its entries.
+     */
+    private static final Map<String, List<VirtualPath>> mappedZipEntries = new HashMap<>();
+
+    /**
+     * A map from the location of an APK, or other jar, to the mapped zip file.
      */
-    private static final Map<VirtualPath, ZipFile> extractedZipFiles = new HashMap<>();
+    private static final Map<String, MappedZipFile> mappedJars = new HashMap<>();
 
-    public static Stream<VirtualPath> readResource(ClassLoader classLoader, String resourceName) {
+    /**
+     * Retrieve a resource as a stream of {@link VirtualPath}.
+     *
+     * <p>If the resource name ends with {@code .zip} then the stream contains one path per entry in
+     * the zip file, otherwise it contains a single path to the resource. Each path is a
+     * {@link VirtualPath.ByteBufferPath} onto the mapped content.
+     */
+    public static synchronized Stream<VirtualPath> readResource(ClassLoader classLoader,
+            String resourceName) {
         try {
-            VirtualPath resourcePath = VirtualPath.get(classLoader, resourceName);
+            VirtualPath.ResourcePath resourcePath = VirtualPath.get(classLoader, resourceName);
             if (resourceName.endsWith(".zip")) {
-                // Extract to a temporary file and then read from there. If the resource has already
-                // been extracted before then reuse the previous file.
-                @SuppressWarnings("resource")
-                ZipFile zip = extractedZipFiles.computeIfAbsent(resourcePath, virtualPath -> {
-                    try {
-                        Path path = extractResourceToFile(resourceName, resourcePath);
-                        return new ZipFile(path.toFile());
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-                return zip.stream().map(entry -> VirtualPath.get(zip, entry));
+                List<VirtualPath> entries = mappedZipEntries.get(resourceName);
+                if (entries == null) {
+                    entries = mapZipEntries(resourceName, resourcePath);
+                    mappedZipEntries.put(resourceName, entries);
+                }
+                return entries.stream();
             } else {
-                return Stream.of(resourcePath);
+                return Stream.of(VirtualPath.get(resourcePath.toString(),
+                        mapResource(resourceName, resourcePath)));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -78,16 +105,160 @@ public class ResourceStore {
     }
 
     /**
-     * Close any previously opened {@link ZipFile} instances.
+     * Retrieve the content of a resource as a memory mapped buffer.
+     *
+     * @return a buffer that is independent of any other buffer returned by this method.
+     */
+    public static synchronized ByteBuffer mapResource(ClassLoader classLoader,
+            String resourceName) {
+        try {
+            return mapResource(resourceName, VirtualPath.get(classLoader, resourceName));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static ByteBuffer mapResource(String resourceName,
+            VirtualPath.ResourcePath resourcePath) throws IOException {
+        String key = resourcePath.toString();
+        ByteBuffer content = mappedContents.get(key);
+        if (content == null) {
+            content = mapJarEntry(resourcePath.getUrl());
+            if (content == null) {
+                // Not directly accessible, e.g. because the class loader does not load from a
+                // local jar file, so extract it to a temporary file and then map that.
+                content = mapFile(extractResourceToFile(resourceName, resourcePath));
+            }
+            mappedContents.put(key, content);
+        }
+        return content.duplicate();
+    }
+
+    private static List<VirtualPath> mapZipEntries(String resourceName,
+            VirtualPath.ResourcePath resourcePath) throws IOException {
+        MappedZipFile zip = new MappedZipFile(mapResource(resourceName, resourcePath));
+        List<VirtualPath> paths = new ArrayList<>();
+        for (MappedZipFile.Entry entry : zip.getEntries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String name = "zip:" + resourcePath + "!/" + entry.getName();
+            paths.add(VirtualPath.get(name, mapZipEntry(name, zip, entry)));
+        }
+        return paths;
+    }
+
+    private static ByteBuffer mapZipEntry(String key, MappedZipFile zip, MappedZipFile.Entry entry)
+            throws IOException {
+        if (entry.isStored()) {
+            return zip.getRawContent(entry);
+        }
+        ByteBuffer content = mappedContents.get(key);
+        if (content == null) {
+            content = inflateToScratchFile(entry.getName(), zip.getRawContent(entry),
+                    entry.getSize());
+            mappedContents.put(key, content);
+        }
+        return content.duplicate();
+    }
+
+    /**
+     * Map a resource directly from the jar that contains it.
+     *
+     * @return the content, or null if the URL does not refer to an entry in a local jar.
+     */
+    private static ByteBuffer mapJarEntry(URL url) throws IOException {
+        if (!"jar".equals(url.getProtocol())) {
+            return null;
+        }
+        // The file part of a jar URL is <url of the jar>!/<entry name>.
+        String spec = url.getFile();
+        int separator = spec.indexOf("!/");
+        if (separator == -1 || !spec.startsWith("file:")) {
+            return null;
+        }
+        Path jarPath;
+        try {
+            jarPath = Paths.get(new URI(spec.substring(0, separator)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            Log.w(TAG, "Could not map " + url + " in place", e);
+            return null;
+        }
+
+        String jarKey = jarPath.toString();
+        MappedZipFile jar = mappedJars.get(jarKey);
+        if (jar == null) {
+            jar = new MappedZipFile(mapFile(jarPath));
+            mappedJars.put(jarKey, jar);
+        }
+        MappedZipFile.Entry entry = jar.getEntry(spec.substring(separator + 2));
+        if (entry == null) {
+            return null;
+        }
+        return mapZipEntry(url.toString(), jar, entry);
+    }
+
+    private static ByteBuffer mapFile(Path path) throws IOException {
+        // The mapping remains valid after the channel has been closed.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Inflate compressed zip entry content into a scratch file and map it.
+     *
+     * <p>The scratch file is deleted as soon as it has been mapped, the mapping keeps it alive
+     * until it is no longer referenced.
      */
-    public static void close() {
-        for (ZipFile zipfile: extractedZipFiles.values()) {
-            // If an error occurred when closing the ZipFile log the failure and continue.
-            try {
-                zipfile.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Could not close ZipFile " + zipfile, e);
+    private static ByteBuffer inflateToScratchFile(String name, ByteBuffer compressed, long size)
+            throws IOException {
+        Path file = Files.createTempFile(TEMPORARY_DIRECTORY.get(), "inflated", null);
+        Log.i(TAG, "inflateToScratchFile: inflating " + name + " to " + file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            MappedByteBuffer output = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            inflate(compressed, output);
+            if (output.hasRemaining()) {
+                throw new IOException("Inflated " + name + " is shorter than " + size + " bytes");
+            }
+            output.rewind();
+            return output.asReadOnlyBuffer();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void inflate(ByteBuffer input, ByteBuffer output) throws IOException {
+        Inflater inflater = new Inflater(/* nowrap= */ true);
+        byte[] inputChunk = new byte[8192];
+        byte[] outputChunk = new byte[8192];
+        try {
+            boolean addedDummyByte = false;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (input.hasRemaining()) {
+                        int count = Math.min(inputChunk.length, input.remaining());
+                        input.get(inputChunk, 0, count);
+                        inflater.setInput(inputChunk, 0, count);
+                    } else if (!addedDummyByte) {
+                        // Raw deflate data may need an extra byte to signal the end of the input.
+                        inflater.setInput(new byte[1]);
+                        addedDummyByte = true;
+                    } else {
+                        throw new IOException("Unexpected end of compressed data");
+                    }
+                }
+                int count = inflater.inflate(outputChunk);
+                if (count > output.remaining()) {
+                    throw new IOException("Inflated data is longer than expected");
+                }
+                output.put(outputChunk, 0, count);
             }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
         }
     }
 
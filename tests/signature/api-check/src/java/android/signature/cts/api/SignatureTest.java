@@ -162,9 +162,9 @@ public class SignatureTest extends AbstractSignatureTest {
     private void checkClassesSignatureCompliance(ApiComplianceChecker complianceChecker,
             String[] classes, Set<JDiffClassDescription> unexpectedClasses, boolean isPreviousApi) {
         ApiDocumentParser apiDocumentParser = new ApiDocumentParser(TAG);
-        parseApiResourcesAsStream(apiDocumentParser, classes)
-                .filter(not(unexpectedClasses::contains))
-                .map(clazz -> clazz.setPreviousApiFlag(isPreviousApi))
-                .forEach(complianceChecker::checkSignatureCompliance);
+        complianceChecker.checkSignatureComplianceInParallel(
+                parseApiResourcesAsStream(apiDocumentParser, classes)
+                        .filter(not(unexpectedClasses::contains))
+                        .map(clazz -> clazz.setPreviousApiFlag(isPreviousApi)));
     }
 }
@@ -26,6 +26,10 @@ import junit.framework.TestCase;
 
 /**
  * Keeps track of any reported failures.
+ *
+ * <p>Safe to use from multiple threads, although failures are reported in the order in which they
+ * are received so callers that need a stable report must serialize them, e.g. as
+ * {@link android.signature.cts.ApiPresenceChecker#checkSignatureComplianceInParallel} does.
  */
 class TestResultObserver implements ResultObserver {
 
@@ -35,7 +39,7 @@ class TestResultObserver implements ResultObserver {
     private StringWriter mErrorString = new StringWriter();
 
     @Override
-    public void notifyFailure(FailureType type, String name, String errorMessage,
+    public synchronized void notifyFailure(FailureType type, String name, String errorMessage,
             Throwable throwable) {
         mDidFail = true;
         failures++;
@@ -66,7 +70,7 @@ class TestResultObserver implements ResultObserver {
         }
     }
 
-    public void onTestComplete() {
+    public synchronized void onTestComplete() {
         if (mDidFail) {
             finalizeErrorString();
             Assert.fail(mErrorString.toString());
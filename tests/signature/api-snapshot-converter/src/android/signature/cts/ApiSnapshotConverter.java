@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Converts an API specification, e.g. an XML {@code .api} or {@code .api.gz} file, into a binary
+ * {@link ApiSnapshot}.
+ *
+ * <p>Usage: {@code signature-api-snapshot-converter <input> <output>.api.bin}
+ */
+public class ApiSnapshotConverter {
+
+    private static final String TAG = ApiSnapshotConverter.class.getSimpleName();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: " + TAG + " <input> <output>" + ApiSnapshot.FILE_EXTENSION);
+            System.exit(1);
+        }
+
+        ApiSnapshotWriter writer = new ApiSnapshotWriter();
+        new ApiDocumentParser(TAG)
+                .parseAsStream(VirtualPath.get(args[0]))
+                .forEach(writer::addClass);
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(args[1]))) {
+            writer.write(output);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Debug logging for the API parsers on the host, where android.util.Log is not available.
+ *
+ * <p>This replaces the device version of this class, which is not part of
+ * {@code cts-signature-api-parser-srcs}.
+ */
+final class ParserLog {
+
+    private ParserLog() {
+    }
+
+    static void d(String tag, String msg) {
+        Logger logger = Logger.getLogger(tag);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(msg);
+        }
+    }
+}
@@ -19,8 +19,8 @@ import java.util.stream.Stream;
 
 
 /**
- * Parses an XML api definition file and constructs and populates an {@link JDiffClassDescription}
- * for every class.
+ * Parses an XML api definition file, or a binary {@link ApiSnapshot} of one, and constructs and
+ * populates an {@link JDiffClassDescription} for every class.
  *
  * <p>The definition file is converted into a {@link Stream} of {@link JDiffClassDescription}.
  */
@@ -38,6 +38,8 @@ public class ApiDocumentParser {
             // it because we don't want metalava to be used as a library, especially
             // on the device side.
             throw new RuntimeException("Signature format not supported");
+        } else if (path.toString().endsWith(ApiSnapshot.FILE_EXTENSION)) {
+            return new ApiSnapshotParser();
         } else if (path.toString().endsWith(".api")) {
             return new XmlApiParser(tag, /*gzipped=*/ false);
         } else if (path.toString().endsWith(".api.gz")) {
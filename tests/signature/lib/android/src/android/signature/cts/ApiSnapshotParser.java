@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+/**
+ * Parser for the binary snapshot representation of an API specification.
+ *
+ * @see ApiSnapshot
+ */
+class ApiSnapshotParser extends ApiParser {
+
+    @Override
+    Stream<JDiffClassDescription> parseAsStream(VirtualPath path) {
+        try {
+            return new ApiSnapshot(getContent(path)).stream();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Could not parse " + path, e);
+        }
+    }
+
+    /**
+     * Get the content of the path, mapping it into memory where possible.
+     */
+    static ByteBuffer getContent(VirtualPath path) throws IOException {
+        if (path instanceof VirtualPath.ByteBufferPath) {
+            return ((VirtualPath.ByteBufferPath) path).getByteBuffer();
+        } else if (path instanceof VirtualPath.LocalFilePath) {
+            // The mapping remains valid after the channel has been closed.
+            try (FileChannel channel = FileChannel.open(
+                    ((VirtualPath.LocalFilePath) path).toFile().toPath(),
+                    StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        try (InputStream input = path.newInputStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+            return ByteBuffer.wrap(output.toByteArray());
+        }
+    }
+}
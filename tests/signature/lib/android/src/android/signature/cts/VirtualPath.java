@@ -20,6 +20,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -54,6 +55,17 @@ public abstract class VirtualPath {
         return new ResourcePath(classLoader, resourceName);
     }
 
+    /**
+     * Get a path to some content that is already available in memory, e.g. a memory mapped region
+     * of a file.
+     *
+     * @param name the name of the content, used as the string representation of the path.
+     * @param buffer the content, between its position and its limit.
+     */
+    public static ByteBufferPath get(String name, ByteBuffer buffer) {
+        return new ByteBufferPath(name, buffer);
+    }
+
     public abstract InputStream newInputStream() throws IOException;
 
     /**
@@ -167,6 +179,10 @@ public abstract class VirtualPath {
             }
         }
 
+        public URL getUrl() {
+            return url;
+        }
+
         @Override
         public InputStream newInputStream() throws IOException {
             return url.openStream();
@@ -194,4 +210,87 @@ public abstract class VirtualPath {
             return url.toExternalForm();
         }
     }
+
+    public static class ByteBufferPath extends VirtualPath {
+        private final String name;
+        private final ByteBuffer buffer;
+
+        ByteBufferPath(String name, ByteBuffer buffer) {
+            this.name = name;
+            this.buffer = buffer.slice();
+        }
+
+        /**
+         * Get the content of this path. The returned buffer is independent of any other buffer
+         * returned by this method so can be used concurrently with them.
+         */
+        public ByteBuffer getByteBuffer() {
+            return buffer.duplicate();
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            return new ByteBufferInputStream(getByteBuffer());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ByteBufferPath that = (ByteBufferPath) o;
+            return name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
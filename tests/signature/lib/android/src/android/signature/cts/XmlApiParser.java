@@ -18,7 +18,6 @@ package android.signature.cts;
 import android.signature.cts.JDiffClassDescription.JDiffConstructor;
 import android.signature.cts.JDiffClassDescription.JDiffField;
 import android.signature.cts.JDiffClassDescription.JDiffMethod;
-import android.util.Log;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Modifier;
@@ -541,9 +540,7 @@ class XmlApiParser extends ApiParser {
     }
 
     private void logd(String msg) {
-        if (Log.isLoggable(tag, Log.DEBUG)) {
-            Log.d(tag, msg);
-        }
+        ParserLog.d(tag, msg);
     }
 
     // This unescapes the string format used by doclava and so needs to be kept in sync with any
@@ -105,8 +105,10 @@ public class ApiComplianceChecker extends ApiPresenceChecker {
     @Override
     protected boolean checkClass(JDiffClassDescription classDescription, Class<?> runtimeClass) {
         if (JDiffClassDescription.JDiffType.INTERFACE.equals(classDescription.getClassType())) {
-            // Queue the interface for deferred checking.
-            interfaceChecker.queueForDeferredCheck(classDescription, runtimeClass);
+            // Queue the interface for deferred checking, in order as the same interface may be
+            // queued by more than one description.
+            runInOrder(() -> interfaceChecker.queueForDeferredCheck(classDescription,
+                    runtimeClass));
         }
 
         String reason;
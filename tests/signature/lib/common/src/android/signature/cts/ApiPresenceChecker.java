@@ -18,11 +18,14 @@ package android.signature.cts;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Base class for those that process a set of API definition files and perform some checking on
@@ -30,13 +33,82 @@ import java.util.stream.Collectors;
  */
 public class ApiPresenceChecker {
 
+    /**
+     * The number of classes handed to a thread at a time when checking in parallel.
+     */
+    private static final int PARALLEL_BATCH_SIZE = 16;
+
+    /**
+     * Reports failures to the observer passed to the constructor, via {@link #runInOrder}.
+     */
     protected final ResultObserver resultObserver;
 
     final ClassProvider classProvider;
 
+    /**
+     * The effects of checking the current class, when it is being checked as part of
+     * {@link #checkSignatureComplianceInParallel(Stream)}, null otherwise.
+     */
+    private final ThreadLocal<List<Runnable>> mPendingEffects = new ThreadLocal<>();
+
+    /**
+     * The reflected members of the classes checked by this checker, shared by all the threads
+     * checking them.
+     */
+    private final ClassReflectionIndex.Indices mReflectionIndices =
+            new ClassReflectionIndex.Indices();
+
     public ApiPresenceChecker(ClassProvider classProvider, ResultObserver resultObserver) {
         this.classProvider = classProvider;
-        this.resultObserver = resultObserver;
+        this.resultObserver = (type, name, errorMessage, throwable) ->
+                runInOrder(() -> resultObserver.notifyFailure(type, name, errorMessage, throwable));
+    }
+
+    /**
+     * Checks the classes concurrently, using the common fork join pool.
+     *
+     * <p>Failures, and any other effects of checking a class that go through
+     * {@link #runInOrder(Runnable)}, are recorded while a class is checked and then replayed one
+     * class at a time in the order of the stream. So the observer sees exactly the same sequence
+     * of calls as it would from {@link #checkSignatureCompliance(JDiffClassDescription)}.
+     *
+     * <p>Only use this with a checker whose checks of a class modify shared state solely through
+     * {@link #runInOrder(Runnable)}, e.g. {@link ApiComplianceChecker}.
+     */
+    public void checkSignatureComplianceInParallel(Stream<JDiffClassDescription> classDescriptions) {
+        StreamSupport.stream(
+                new BatchingSpliterator<>(classDescriptions.spliterator(), PARALLEL_BATCH_SIZE),
+                /* parallel= */ true)
+                .map(this::checkSignatureComplianceRecordingEffects)
+                .forEachOrdered(effects -> effects.forEach(Runnable::run));
+    }
+
+    private List<Runnable> checkSignatureComplianceRecordingEffects(
+            JDiffClassDescription classDescription) {
+        List<Runnable> effects = new ArrayList<>();
+        mPendingEffects.set(effects);
+        try {
+            checkSignatureCompliance(classDescription);
+        } finally {
+            mPendingEffects.remove();
+        }
+        return effects;
+    }
+
+    /**
+     * Run an effect of checking a class that must happen in the order in which the classes are
+     * checked, e.g. reporting a failure or updating state shared between classes.
+     *
+     * <p>The effect is run immediately unless called while checking a class in parallel, in
+     * which case it is run once all the effects of the preceding classes have been run.
+     */
+    protected void runInOrder(Runnable effect) {
+        List<Runnable> effects = mPendingEffects.get();
+        if (effects == null) {
+            effect.run();
+        } else {
+            effects.add(effect);
+        }
     }
 
     /**
@@ -138,35 +210,15 @@ public class ApiPresenceChecker {
      *
      * @return a {@link Map} of fieldName to {@link Field}
      */
-    private static Map<String, Field> buildFieldMap(Class<?> testClass) {
+    private Map<String, Field> buildFieldMap(Class<?> testClass) {
         try {
-            return buildFieldMapImpl(testClass);
+            return mReflectionIndices.of(testClass).getFieldMap();
         } catch (NoClassDefFoundError e) {
             LogHelper.loge("AbstractApiChecker: Could not retrieve fields of " + testClass, e);
             return Collections.emptyMap();
         }
     }
 
-    private static Map<String, Field> buildFieldMapImpl(Class<?> testClass) {
-        Map<String, Field> fieldMap = new HashMap<>();
-        // Scan the superclass
-        if (testClass.getSuperclass() != null) {
-            fieldMap.putAll(buildFieldMapImpl(testClass.getSuperclass()));
-        }
-
-        // Scan the interfaces
-        for (Class<?> interfaceClass : testClass.getInterfaces()) {
-            fieldMap.putAll(buildFieldMapImpl(interfaceClass));
-        }
-
-        // Check the fields in the test class
-        for (Field field : testClass.getDeclaredFields()) {
-            fieldMap.put(field.getName(), field);
-        }
-
-        return fieldMap;
-    }
-
     protected void checkField(JDiffClassDescription classDescription,
             Class<?> runtimeClass,
             JDiffClassDescription.JDiffField fieldDescription, Field field) {
@@ -185,8 +237,8 @@ public class ApiPresenceChecker {
         Map<Constructor, String> mismatchReasons = new LinkedHashMap<>();
         for (JDiffClassDescription.JDiffConstructor con : classDescription.getConstructors()) {
             try {
-                Constructor<?> c = ReflectionHelper.findMatchingConstructor(runtimeClass, con,
-                        mismatchReasons);
+                Constructor<?> c = ReflectionHelper.findMatchingConstructor(mReflectionIndices,
+                        runtimeClass, con, mismatchReasons);
                 if (c == null) {
                     resultObserver.notifyFailure(FailureType.MISSING_CONSTRUCTOR,
                             con.toReadableString(classDescription.getAbsoluteClassName()),
@@ -229,7 +281,7 @@ public class ApiPresenceChecker {
         for (JDiffClassDescription.JDiffMethod method : classDescription.getMethods()) {
             try {
                 Method m = ReflectionHelper.findMatchingMethod(
-                        runtimeClass, method, mismatchReasons);
+                        mReflectionIndices, runtimeClass, method, mismatchReasons);
                 if (m == null) {
                     resultObserver.notifyFailure(FailureType.MISSING_METHOD,
                             method.toReadableString(classDescription.getAbsoluteClassName()),
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import android.signature.cts.JDiffClassDescription.JDiffConstructor;
+import android.signature.cts.JDiffClassDescription.JDiffField;
+import android.signature.cts.JDiffClassDescription.JDiffMethod;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A read only view of a binary API snapshot, as written by {@link ApiSnapshotWriter}.
+ *
+ * <p>A snapshot is a pre-compiled form of an API specification that is built from the XML form at
+ * build time, so that the tests do not need to parse XML. Classes are decoded on demand, in any
+ * order, directly from the buffer, which is usually memory mapped, so checking a few packages only
+ * touches the parts of the file that they use.
+ *
+ * <p>The layout of the snapshot is, with all fixed size values in little endian order:
+ * <pre>
+ *   header:
+ *     int magic, int version, int string count, int class count,
+ *     int offset of string offsets, int offset of class index, int offset of sorted class index
+ *   strings:
+ *     for each string: varint length in bytes, UTF-8 bytes
+ *   string offsets:
+ *     for each string: int offset of the string
+ *   classes:
+ *     for each class, see {@link ApiSnapshotWriter}
+ *   class index, in the order in which the classes were written:
+ *     for each class: int absolute class name, int package name, int offset of the class
+ *   sorted class index:
+ *     for each class in order of absolute class name: int position in the class index
+ * </pre>
+ * Strings are referenced by their position in the string table, optional strings by that position
+ * plus one with zero meaning null. Counts, modifiers and references within a class are varints.
+ *
+ * <p>Instances are safe to use from multiple threads. Decoding a class returns a new
+ * {@link JDiffClassDescription} every time so callers can modify it freely.
+ */
+public final class ApiSnapshot {
+
+    /**
+     * The extension of files containing an API snapshot.
+     */
+    public static final String FILE_EXTENSION = ".api.bin";
+
+    static final int MAGIC = 0x53415041; // "APAS" when read as bytes, API snapshot.
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 7 * Integer.BYTES;
+
+    static final int CLASS_INDEX_ENTRY_SIZE = 3 * Integer.BYTES;
+
+    static final int TYPE_CLASS = 0;
+
+    static final int TYPE_INTERFACE = 1;
+
+    private final ByteBuffer mBuffer;
+
+    private final int mStringCount;
+
+    private final int mClassCount;
+
+    private final int mStringOffsetsOffset;
+
+    private final int mClassIndexOffset;
+
+    private final int mSortedClassIndexOffset;
+
+    /**
+     * The decoded strings, filled in on demand. Racing threads may decode the same string twice
+     * but will produce equal results, so no locking is needed.
+     */
+    private final String[] mStrings;
+
+    /**
+     * Create a view of the snapshot in the buffer.
+     *
+     * <p>The content between the buffer's position and limit must be the snapshot. The buffer
+     * itself is not modified and must not be modified while this is in use.
+     *
+     * @throws IllegalArgumentException if the buffer does not contain a supported snapshot.
+     */
+    public ApiSnapshot(ByteBuffer buffer) {
+        mBuffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (mBuffer.limit() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not an API snapshot");
+        }
+        int version = mBuffer.getInt(4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported API snapshot version " + version + ", expected " + VERSION);
+        }
+        mStringCount = mBuffer.getInt(8);
+        mClassCount = mBuffer.getInt(12);
+        mStringOffsetsOffset = mBuffer.getInt(16);
+        mClassIndexOffset = mBuffer.getInt(20);
+        mSortedClassIndexOffset = mBuffer.getInt(24);
+        if (mStringCount < 0 || mClassCount < 0
+                || !fits(mStringOffsetsOffset, (long) mStringCount * Integer.BYTES)
+                || !fits(mClassIndexOffset, (long) mClassCount * CLASS_INDEX_ENTRY_SIZE)
+                || !fits(mSortedClassIndexOffset, (long) mClassCount * Integer.BYTES)) {
+            throw new IllegalArgumentException("Corrupt API snapshot header");
+        }
+        mStrings = new String[mStringCount];
+    }
+
+    private boolean fits(int offset, long length) {
+        return offset >= HEADER_SIZE && offset + length <= mBuffer.limit();
+    }
+
+    /**
+     * The number of classes in the snapshot.
+     */
+    public int getClassCount() {
+        return mClassCount;
+    }
+
+    /**
+     * Get the absolute name of the class at the index, without decoding the class.
+     */
+    public String getClassName(int index) {
+        return getString(mBuffer.getInt(classIndexEntry(index)));
+    }
+
+    /**
+     * Get the name of the package of the class at the index, without decoding the class.
+     */
+    public String getPackageName(int index) {
+        return getString(mBuffer.getInt(classIndexEntry(index) + Integer.BYTES));
+    }
+
+    /**
+     * Decode the class at the index.
+     *
+     * @param index the position of the class, in the order in which they were written.
+     */
+    public JDiffClassDescription getClass(int index) {
+        int offset = mBuffer.getInt(classIndexEntry(index) + 2 * Integer.BYTES);
+        return new ClassReader(offset).readClass();
+    }
+
+    /**
+     * Find and decode the class with the absolute name.
+     *
+     * @return the class, or null if the snapshot does not contain it.
+     */
+    public JDiffClassDescription findClass(String absoluteClassName) {
+        int low = 0;
+        int high = mClassCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int index = mBuffer.getInt(mSortedClassIndexOffset + middle * Integer.BYTES);
+            int comparison = getClassName(index).compareTo(absoluteClassName);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return getClass(index);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decode all the classes, in the order in which they were written.
+     *
+     * <p>The stream is sized and splits evenly so it works well in parallel.
+     */
+    public Stream<JDiffClassDescription> stream() {
+        return IntStream.range(0, mClassCount).mapToObj(this::getClass);
+    }
+
+    /**
+     * Decode the classes in the package, in the order in which they were written.
+     *
+     * <p>Only the index is read to find the classes, so the classes in other packages are never
+     * touched.
+     */
+    public Stream<JDiffClassDescription> streamPackage(String packageName) {
+        return IntStream.range(0, mClassCount)
+                .filter(index -> getPackageName(index).equals(packageName))
+                .mapToObj(this::getClass);
+    }
+
+    private int classIndexEntry(int index) {
+        if (index < 0 || index >= mClassCount) {
+            throw new IndexOutOfBoundsException(
+                    "Class index " + index + " out of range [0, " + mClassCount + ")");
+        }
+        return mClassIndexOffset + index * CLASS_INDEX_ENTRY_SIZE;
+    }
+
+    private String getString(int index) {
+        String string = mStrings[index];
+        if (string == null) {
+            int offset = mBuffer.getInt(mStringOffsetsOffset + index * Integer.BYTES);
+            ByteBuffer bytes = mBuffer.duplicate();
+            bytes.position(offset);
+            int length = readVarint(bytes);
+            byte[] utf8 = new byte[length];
+            bytes.get(utf8);
+            string = new String(utf8, StandardCharsets.UTF_8);
+            mStrings[index] = string;
+        }
+        return string;
+    }
+
+    static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in API snapshot");
+    }
+
+    /**
+     * Decodes a single class record.
+     */
+    private class ClassReader {
+
+        private final ByteBuffer mRecord;
+
+        ClassReader(int offset) {
+            mRecord = mBuffer.duplicate();
+            mRecord.position(offset);
+        }
+
+        JDiffClassDescription readClass() {
+            String packageName = readString();
+            String shortClassName = readString();
+            JDiffClassDescription classDescription =
+                    new JDiffClassDescription(packageName, shortClassName);
+            classDescription.setType(readVarint() == TYPE_INTERFACE
+                    ? JDiffClassDescription.JDiffType.INTERFACE
+                    : JDiffClassDescription.JDiffType.CLASS);
+            classDescription.setModifier(readVarint());
+            classDescription.setExtendsClass(readOptionalString());
+
+            for (int count = readVarint(); count > 0; count--) {
+                classDescription.addImplInterface(readString());
+            }
+            for (int count = readVarint(); count > 0; count--) {
+                String name = readString();
+                String type = readString();
+                int modifier = readVarint();
+                String value = readOptionalString();
+                classDescription.addField(new JDiffField(name, type, modifier, value));
+            }
+            for (int count = readVarint(); count > 0; count--) {
+                String name = readString();
+                int modifier = readVarint();
+                JDiffConstructor constructor = new JDiffConstructor(name, modifier);
+                readParamsAndExceptions(constructor);
+                classDescription.addConstructor(constructor);
+            }
+            for (int count = readVarint(); count > 0; count--) {
+                String name = readString();
+                int modifier = readVarint();
+                String returnType = readString();
+                JDiffMethod method = new JDiffMethod(name, modifier, returnType);
+                readParamsAndExceptions(method);
+                classDescription.addMethod(method);
+            }
+            return classDescription;
+        }
+
+        private void readParamsAndExceptions(JDiffMethod method) {
+            for (int count = readVarint(); count > 0; count--) {
+                method.addParam(readString());
+            }
+            for (int count = readVarint(); count > 0; count--) {
+                method.addException(readString());
+            }
+        }
+
+        private int readVarint() {
+            return ApiSnapshot.readVarint(mRecord);
+        }
+
+        private String readString() {
+            return getString(readVarint());
+        }
+
+        private String readOptionalString() {
+            int reference = readVarint();
+            return reference == 0 ? null : getString(reference - 1);
+        }
+    }
+}
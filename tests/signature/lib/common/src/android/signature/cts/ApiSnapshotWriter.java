@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import android.signature.cts.JDiffClassDescription.JDiffConstructor;
+import android.signature.cts.JDiffClassDescription.JDiffField;
+import android.signature.cts.JDiffClassDescription.JDiffMethod;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Writes a binary API snapshot that can be read by {@link ApiSnapshot}.
+ *
+ * <p>Each class record consists of:
+ * <pre>
+ *   package name, short class name, type, modifiers, optional extended class,
+ *   interface count, interface names,
+ *   field count, for each field: name, type, modifiers, optional value,
+ *   constructor count, for each constructor:
+ *     name, modifiers, parameter count, parameter types, exception count, exception types
+ *   method count, for each method:
+ *     name, modifiers, return type, parameter count, parameter types, exception count,
+ *     exception types
+ * </pre>
+ *
+ * <p>Add the classes with {@link #addClass(JDiffClassDescription)} and then call
+ * {@link #write(OutputStream)}.
+ */
+public class ApiSnapshotWriter {
+
+    private final Map<String, Integer> mStringReferences = new HashMap<>();
+
+    private final List<String> mStrings = new ArrayList<>();
+
+    private final ByteArrayOutputStream mClasses = new ByteArrayOutputStream();
+
+    /**
+     * For each class, its absolute name, package name and the offset of its record relative to
+     * the start of the classes.
+     */
+    private final List<int[]> mClassIndex = new ArrayList<>();
+
+    public void addClass(JDiffClassDescription classDescription) {
+        mClassIndex.add(new int[] {
+                stringReference(classDescription.getAbsoluteClassName()),
+                stringReference(classDescription.getPackageName()),
+                mClasses.size(),
+        });
+
+        writeString(classDescription.getPackageName());
+        writeString(classDescription.getShortClassName());
+        writeVarint(mClasses,
+                JDiffClassDescription.JDiffType.INTERFACE.equals(classDescription.getClassType())
+                        ? ApiSnapshot.TYPE_INTERFACE
+                        : ApiSnapshot.TYPE_CLASS);
+        writeVarint(mClasses, classDescription.getModifier());
+        writeOptionalString(classDescription.getExtendedClass());
+
+        writeStrings(classDescription.getImplInterfaces());
+        writeVarint(mClasses, classDescription.getFields().size());
+        for (JDiffField field : classDescription.getFields()) {
+            writeString(field.mName);
+            writeString(field.mFieldType);
+            writeVarint(mClasses, field.mModifier);
+            writeOptionalString(field.getValueString());
+        }
+        writeVarint(mClasses, classDescription.getConstructors().size());
+        for (JDiffConstructor constructor : classDescription.getConstructors()) {
+            writeString(constructor.mName);
+            writeVarint(mClasses, constructor.mModifier);
+            writeStrings(constructor.mParamList);
+            writeStrings(constructor.mExceptionList);
+        }
+        writeVarint(mClasses, classDescription.getMethods().size());
+        for (JDiffMethod method : classDescription.getMethods()) {
+            writeString(method.mName);
+            writeVarint(mClasses, method.mModifier);
+            writeString(method.mReturnType);
+            writeStrings(method.mParamList);
+            writeStrings(method.mExceptionList);
+        }
+    }
+
+    /**
+     * Write the snapshot of all the classes added so far.
+     */
+    public void write(OutputStream output) throws IOException {
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int[] stringOffsets = new int[mStrings.size()];
+        for (int i = 0; i < stringOffsets.length; i++) {
+            stringOffsets[i] = ApiSnapshot.HEADER_SIZE + strings.size();
+            byte[] utf8 = mStrings.get(i).getBytes(StandardCharsets.UTF_8);
+            writeVarint(strings, utf8.length);
+            strings.write(utf8);
+        }
+
+        int stringOffsetsOffset = ApiSnapshot.HEADER_SIZE + strings.size();
+        int classesOffset = stringOffsetsOffset + stringOffsets.length * Integer.BYTES;
+        int classIndexOffset = classesOffset + mClasses.size();
+        int sortedClassIndexOffset =
+                classIndexOffset + mClassIndex.size() * ApiSnapshot.CLASS_INDEX_ENTRY_SIZE;
+
+        writeInt(output, ApiSnapshot.MAGIC);
+        writeInt(output, ApiSnapshot.VERSION);
+        writeInt(output, mStrings.size());
+        writeInt(output, mClassIndex.size());
+        writeInt(output, stringOffsetsOffset);
+        writeInt(output, classIndexOffset);
+        writeInt(output, sortedClassIndexOffset);
+        strings.writeTo(output);
+        for (int offset : stringOffsets) {
+            writeInt(output, offset);
+        }
+        mClasses.writeTo(output);
+        for (int[] entry : mClassIndex) {
+            writeInt(output, entry[0]);
+            writeInt(output, entry[1]);
+            writeInt(output, classesOffset + entry[2]);
+        }
+        int[] sorted = IntStream.range(0, mClassIndex.size())
+                .boxed()
+                .sorted(Comparator.comparing(index -> mStrings.get(mClassIndex.get(index)[0])))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        for (int index : sorted) {
+            writeInt(output, index);
+        }
+    }
+
+    private int stringReference(String string) {
+        Integer reference = mStringReferences.get(string);
+        if (reference == null) {
+            reference = mStrings.size();
+            mStrings.add(string);
+            mStringReferences.put(string, reference);
+        }
+        return reference;
+    }
+
+    private void writeString(String string) {
+        writeVarint(mClasses, stringReference(string));
+    }
+
+    private void writeOptionalString(String string) {
+        writeVarint(mClasses, string == null ? 0 : stringReference(string) + 1);
+    }
+
+    private void writeStrings(List<String> strings) {
+        writeVarint(mClasses, strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7f) != 0) {
+            output.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static void writeInt(OutputStream output, int value) throws IOException {
+        output.write(value);
+        output.write(value >>> 8);
+        output.write(value >>> 16);
+        output.write(value >>> 24);
+    }
+}
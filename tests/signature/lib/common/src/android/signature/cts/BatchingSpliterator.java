@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} that allows a sequential source, e.g. one that parses its elements from a
+ * file, to be processed in parallel.
+ *
+ * <p>Each call to {@link #trySplit()} pulls the next batch of elements from the source and returns
+ * them as a separate {@link Spliterator}, so the source is only ever traversed by one thread at a
+ * time while the batches are processed concurrently. Small batches are used because the cost of
+ * processing an element, e.g. checking a class, is usually much higher than the cost of producing
+ * it.
+ */
+public class BatchingSpliterator<T> implements Spliterator<T> {
+
+    private final Spliterator<T> mSource;
+
+    private final int mBatchSize;
+
+    public BatchingSpliterator(Spliterator<T> source, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive but was " + batchSize);
+        }
+        mSource = source;
+        mBatchSize = batchSize;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        return mSource.tryAdvance(action);
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        mSource.forEachRemaining(action);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Spliterator<T> trySplit() {
+        Batch batch = new Batch(mBatchSize);
+        while (batch.count < batch.elements.length && mSource.tryAdvance(batch)) {
+            // Keep going until the batch is full or the source is exhausted.
+        }
+        if (batch.count == 0) {
+            return null;
+        }
+        return (Spliterator<T>) Spliterators.spliterator(batch.elements, 0, batch.count,
+                characteristics() | SIZED | SUBSIZED);
+    }
+
+    @Override
+    public long estimateSize() {
+        // Report an unknown size so that a parallel stream keeps splitting off batches until the
+        // source is exhausted, instead of processing the remainder sequentially once the source's
+        // own, usually much coarser, estimate drops.
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        // The batches are taken from the front so the encounter order is preserved.
+        return mSource.characteristics() & (ORDERED | DISTINCT | NONNULL | IMMUTABLE);
+    }
+
+    private static class Batch implements Consumer<Object> {
+        final Object[] elements;
+        int count;
+
+        Batch(int size) {
+            elements = new Object[size];
+        }
+
+        @Override
+        public void accept(Object element) {
+            elements[count++] = element;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package android.signature.cts;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -12,114 +14,222 @@ import java.util.function.Function;
  *
  * This class assumes that there is no issue looking for just '\n'. That is not true for all of
  * unicode and must be guaranteed by the caller.
+ *
+ * The first time the spliterator is split it indexes the end of every remaining line. From then
+ * on this spliterator and all spliterators split from it share the index, split on exact line
+ * count midpoints and know their exact size, so parallel streams get evenly sized chunks of work
+ * even when line lengths vary a lot.
  */
 public class ByteBufferLineSpliterator<T> implements Spliterator<T> {
     private final ByteBuffer mBuffer;
     private final int mLineLengthEstimate;
-    private final Function<String, T> mConverter;
+    private final Function<ByteBuffer, T> mConverter;
+    // True if lines are passed to the converter as raw bytes, see forRawLines().
+    private final boolean mRawLines;
+
+    // The absolute positions in mBuffer of the end of each line, i.e. of its '\n' or of the limit
+    // for an unterminated last line. Null until the first split. Shared with split spliterators.
+    private int[] mLineEnds;
+    // The index in mLineEnds of the next line to return.
+    private int mLineIndex;
+    // The index in mLineEnds after the last line covered by this spliterator.
+    private int mLineFence;
 
     private static final Charset CHAR_SET = Charset.defaultCharset();
 
+    // Constants for finding a '\n' in 8 bytes at once, see findLineEnds().
+    private static final long NEW_LINES = 0x0a0a0a0a0a0a0a0aL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
     public ByteBufferLineSpliterator(ByteBuffer buffer, int lineLengthEstimate,
             Function<String, T> converter) {
+        this(decodingConverter(converter), false, buffer, lineLengthEstimate, null, 0, 0);
+    }
+
+    private ByteBufferLineSpliterator(Function<ByteBuffer, T> converter, boolean rawLines,
+            ByteBuffer buffer, int lineLengthEstimate, int[] lineEnds, int lineIndex,
+            int lineFence) {
         mBuffer = buffer;
         mLineLengthEstimate = lineLengthEstimate;
         mConverter = converter;
+        mRawLines = rawLines;
+        mLineEnds = lineEnds;
+        mLineIndex = lineIndex;
+        mLineFence = lineFence;
+    }
+
+    /**
+     * Creates a spliterator that passes each line to the converter as a slice of the underlying
+     * buffer, without decoding it into a String first.
+     *
+     * <p>The slice spans exactly one line, excluding the line break, and shares its content with
+     * the buffer, so the converter may keep a reference to it. As with
+     * {@link java.io.BufferedReader#readLine()}, a "\r\n" line break is excluded too, and empty
+     * lines are passed to the converter as empty slices, so that it can report them.
+     */
+    public static <T> ByteBufferLineSpliterator<T> forRawLines(ByteBuffer buffer,
+            int lineLengthEstimate, Function<ByteBuffer, T> converter) {
+        return new ByteBufferLineSpliterator<T>(converter, true, buffer, lineLengthEstimate, null,
+                0, 0);
+    }
+
+    private static <T> Function<ByteBuffer, T> decodingConverter(Function<String, T> converter) {
+        return line -> converter.apply(CHAR_SET.decode(line).toString());
     }
 
     @Override
     public Spliterator<T> trySplit() {
-        // Approach: jump into the middle of the remaining segment and look
-        // for the next line break. If there is none, return null. Otherwise
-        // initialize a return value with a subsequence, and limit the
-        // current buffer.
-        //
-        // This relies heavily on lines not having outliers (wrt/ length).
-
-        // Only attempt if there's enough "work" left.
-        if (mBuffer.remaining() < 10 * mLineLengthEstimate) {
-            return null;
+        // Approach: index all the remaining lines once, then hand the second half of the
+        // remaining lines to a new spliterator that shares the index and keep the first half.
+        if (mLineEnds == null) {
+            // Only attempt if there's enough "work" left to make indexing worthwhile.
+            if (mBuffer.remaining() < 10 * mLineLengthEstimate) {
+                return null;
+            }
+            mLineEnds = findLineEnds();
+            mLineIndex = 0;
+            mLineFence = mLineEnds.length;
         }
 
-        int curPos = mBuffer.position();
-        mBuffer.position(curPos + mBuffer.remaining() / 2);
-        int nextNewLine = findNextNewLine();
-        if (nextNewLine == -1) {
+        int remainingLines = mLineFence - mLineIndex;
+        if (remainingLines < 2) {
             return null;
         }
 
-        mBuffer.position(mBuffer.position() + nextNewLine + 1);
-        Spliterator<T> retValue = new ByteBufferLineSpliterator<T>(mBuffer.slice(),
-                mLineLengthEstimate, mConverter);
+        int middle = mLineIndex + remainingLines / 2;
+        ByteBuffer suffix = mBuffer.duplicate();
+        suffix.position(mLineEnds[middle - 1] + 1);
+        Spliterator<T> retValue = new ByteBufferLineSpliterator<T>(mConverter, mRawLines, suffix,
+                mLineLengthEstimate, mLineEnds, middle, mLineFence);
 
-        // Reset this buffer and set limit.
-        mBuffer.position(curPos).limit(curPos + mBuffer.remaining() / 2 + nextNewLine);
+        // Limit this buffer to the first half.
+        mBuffer.limit(mLineEnds[middle - 1]);
+        mLineFence = middle;
 
         return retValue;
     }
 
     @Override
     public long estimateSize() {
+        if (mLineEnds != null) {
+            return mLineFence - mLineIndex;
+        }
         return mBuffer.remaining() / mLineLengthEstimate;
     }
 
     @Override
     public int characteristics() {
-        return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        int characteristics = ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        if (mLineEnds != null) {
+            characteristics |= SIZED | SUBSIZED;
+        }
+        return characteristics;
     }
 
-    private int findNextNewLine() {
-        if (!mBuffer.hasRemaining()) {
-            return -1;
+    /**
+     * Finds the end of every line between the position and the limit of the buffer.
+     *
+     * <p>Looks at 8 bytes at a time, using the usual bit trick for finding a zero byte in a word
+     * applied to the word XORed with '\n' in every byte. The trick can report false positives
+     * after a real match, so every candidate is checked.
+     */
+    private int[] findLineEnds() {
+        int start = mBuffer.position();
+        int limit = mBuffer.limit();
+        int[] lineEnds = new int[(limit - start) / Math.max(1, mLineLengthEstimate) + 16];
+        int count = 0;
+
+        ByteBuffer buffer = mBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int i = start;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long word = buffer.getLong(i) ^ NEW_LINES;
+            long matches = (word - LOW_BITS) & ~word & HIGH_BITS;
+            while (matches != 0) {
+                int index = i + (Long.numberOfTrailingZeros(matches) >>> 3);
+                if (buffer.get(index) == '\n') {
+                    if (count == lineEnds.length) {
+                        lineEnds = Arrays.copyOf(lineEnds, count * 2);
+                    }
+                    lineEnds[count++] = index;
+                }
+                matches &= matches - 1;
+            }
         }
-        mBuffer.mark();
-        int index = 0;
-        try {
-            while (mBuffer.hasRemaining()) {
-                if (mBuffer.get() == '\n') {
-                    return index;
+        for (; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                if (count == lineEnds.length) {
+                    lineEnds = Arrays.copyOf(lineEnds, count * 2);
                 }
-                index++;
+                lineEnds[count++] = i;
+            }
+        }
+
+        // An unterminated last line ends at the limit.
+        int lastLineStart = count == 0 ? start : lineEnds[count - 1] + 1;
+        if (lastLineStart < limit) {
+            if (count == lineEnds.length) {
+                lineEnds = Arrays.copyOf(lineEnds, count + 1);
+            }
+            lineEnds[count++] = limit;
+        }
+        return Arrays.copyOf(lineEnds, count);
+    }
+
+    /**
+     * Returns the absolute position of the next '\n' in the buffer, or -1 if there is none.
+     */
+    private int findNextNewLine() {
+        for (int i = mBuffer.position(), limit = mBuffer.limit(); i < limit; i++) {
+            if (mBuffer.get(i) == '\n') {
+                return i;
             }
-            return -1;
-        } finally {
-            mBuffer.reset();
         }
+        return -1;
     }
 
-    private ByteBuffer subsequence(int start, int end) {
-        int curPos = mBuffer.position();
-        mBuffer.position(curPos + start);
+    private ByteBuffer subsequence(int end) {
         int curLimit = mBuffer.limit();
-        mBuffer.limit(curPos + end);
+        mBuffer.limit(end);
         ByteBuffer retValue = mBuffer.slice();
-        mBuffer.position(curPos).limit(curLimit);
+        mBuffer.limit(curLimit);
         return retValue;
     }
 
-    protected String nextLine() {
-        if (!mBuffer.hasRemaining()) {
-            return null;
+    protected ByteBuffer nextLine() {
+        int lineEnd;
+        if (mLineEnds != null) {
+            // The buffer may be exhausted before an empty last line, so only the index counts.
+            if (mLineIndex >= mLineFence) {
+                return null;
+            }
+            lineEnd = mLineEnds[mLineIndex++];
+        } else {
+            if (!mBuffer.hasRemaining()) {
+                return null;
+            }
+            lineEnd = findNextNewLine();
+            if (lineEnd == -1) {
+                lineEnd = mBuffer.limit();
+            }
         }
-
-        int nextLineBreakIndex = findNextNewLine();
-        if (nextLineBreakIndex == 0) {
+        int lineStart = mBuffer.position();
+        int contentEnd = lineEnd;
+        if (mRawLines) {
+            if (contentEnd > lineStart && mBuffer.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+        } else if (lineEnd == lineStart) {
             throw new IllegalStateException("Empty line.");
         }
-        String line;
-        if (nextLineBreakIndex > 0) {
-            line = CHAR_SET.decode(subsequence(0, nextLineBreakIndex)).toString();
-            mBuffer.position(mBuffer.position() + nextLineBreakIndex + 1);
-        } else {
-            line = CHAR_SET.decode(mBuffer).toString();
-            mBuffer.position(mBuffer.limit()); // Should not be necessary?
-        }
+        ByteBuffer line = subsequence(contentEnd);
+        mBuffer.position(Math.min(lineEnd + 1, mBuffer.limit()));
         return line;
     }
 
     @Override
     public boolean tryAdvance(Consumer<? super T> action) {
-        String nextLine = nextLine();
+        ByteBuffer nextLine = nextLine();
         if (nextLine == null) {
             return false;
         }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the reflected members of a single class, built once per class by the
+ * {@link Indices} of a checker and shared by all of its threads.
+ *
+ * <p>Checking an API against the runtime used to call {@link Class#getDeclaredMethods()} or
+ * {@link Class#getDeclaredConstructors()} and {@link ReflectionHelper#typeToString(Type)} for
+ * every candidate of every API member. The index groups the declared methods by name and caches
+ * the jdiff compatible strings of the types of each method and constructor, so finding the
+ * matching member only compares strings of the overloads with the right name.
+ *
+ * <p>Each part of the index is built on first use; the type strings of a member are only computed
+ * when the member is first compared, and those of a constructor's parameters one at a time until
+ * one does not match. That means reflection failures, e.g. a {@link NoClassDefFoundError} for a
+ * type that cannot be loaded, happen in the same circumstances as without the index. A failure is
+ * not cached so will happen again on the next use.
+ */
+final class ClassReflectionIndex {
+
+    private final Indices mIndices;
+
+    private final Class<?> mClass;
+
+    // The following are built lazily. Racing threads may build them more than once but will
+    // produce equivalent results, so no locking is needed.
+    private volatile Map<String, List<MethodEntry>> mMethodsByName;
+    private volatile List<ConstructorEntry> mConstructors;
+    private volatile Map<String, Field> mFieldMap;
+
+    private ClassReflectionIndex(Indices indices, Class<?> clazz) {
+        mIndices = indices;
+        mClass = clazz;
+    }
+
+    /**
+     * The indices of the classes checked by a single checker.
+     *
+     * <p>The indices are only referenced by their checker, so they, and the classes they
+     * reference, can be collected along with it once the checks are done.
+     */
+    static final class Indices {
+        private final Map<Class<?>, ClassReflectionIndex> mIndices = new ConcurrentHashMap<>();
+
+        /**
+         * Get the shared index for the class.
+         */
+        ClassReflectionIndex of(Class<?> clazz) {
+            ClassReflectionIndex index = mIndices.get(clazz);
+            if (index == null) {
+                index = new ClassReflectionIndex(this, clazz);
+                ClassReflectionIndex previous = mIndices.putIfAbsent(clazz, index);
+                if (previous != null) {
+                    index = previous;
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Get the methods declared in this class with the given name, in the order returned by
+     * {@link Class#getDeclaredMethods()}.
+     */
+    List<MethodEntry> getDeclaredMethods(String name) {
+        Map<String, List<MethodEntry>> methodsByName = mMethodsByName;
+        if (methodsByName == null) {
+            methodsByName = new HashMap<>();
+            for (Method method : mClass.getDeclaredMethods()) {
+                methodsByName.computeIfAbsent(method.getName(), k -> new ArrayList<>())
+                        .add(new MethodEntry(method));
+            }
+            mMethodsByName = methodsByName;
+        }
+        List<MethodEntry> methods = methodsByName.get(name);
+        return methods == null ? Collections.emptyList() : methods;
+    }
+
+    /**
+     * Get the constructors declared in this class, in the order returned by
+     * {@link Class#getDeclaredConstructors()}.
+     */
+    List<ConstructorEntry> getDeclaredConstructors() {
+        List<ConstructorEntry> constructors = mConstructors;
+        if (constructors == null) {
+            constructors = new ArrayList<>();
+            for (Constructor<?> constructor : mClass.getDeclaredConstructors()) {
+                constructors.add(new ConstructorEntry(constructor));
+            }
+            mConstructors = constructors;
+        }
+        return constructors;
+    }
+
+    /**
+     * Get a map from field name to field of the fields of this class and its entire inheritance
+     * chain, fields in this class taking precedence over those in its interfaces which take
+     * precedence over those in its superclass.
+     */
+    Map<String, Field> getFieldMap() {
+        Map<String, Field> fieldMap = mFieldMap;
+        if (fieldMap == null) {
+            fieldMap = new HashMap<>();
+            // Scan the superclass
+            if (mClass.getSuperclass() != null) {
+                fieldMap.putAll(mIndices.of(mClass.getSuperclass()).getFieldMap());
+            }
+
+            // Scan the interfaces
+            for (Class<?> interfaceClass : mClass.getInterfaces()) {
+                fieldMap.putAll(mIndices.of(interfaceClass).getFieldMap());
+            }
+
+            // Check the fields in the class
+            for (Field field : mClass.getDeclaredFields()) {
+                fieldMap.put(field.getName(), field);
+            }
+            fieldMap = Collections.unmodifiableMap(fieldMap);
+            mFieldMap = fieldMap;
+        }
+        return fieldMap;
+    }
+
+    /**
+     * A method together with its lazily retrieved generic types and their strings.
+     */
+    static final class MethodEntry {
+        final Method method;
+        private volatile String mReturnType;
+        private volatile Type[] mGenericParameterTypes;
+        private volatile String[] mParameterTypes;
+
+        MethodEntry(Method method) {
+            this.method = method;
+        }
+
+        /**
+         * The {@link ReflectionHelper#typeToString(Type)} of the generic return type.
+         */
+        String getReturnType() {
+            String returnType = mReturnType;
+            if (returnType == null) {
+                returnType = ReflectionHelper.typeToString(method.getGenericReturnType());
+                mReturnType = returnType;
+            }
+            return returnType;
+        }
+
+        Type[] getGenericParameterTypes() {
+            Type[] genericParameterTypes = mGenericParameterTypes;
+            if (genericParameterTypes == null) {
+                genericParameterTypes = method.getGenericParameterTypes();
+                mGenericParameterTypes = genericParameterTypes;
+            }
+            return genericParameterTypes;
+        }
+
+        /**
+         * The {@link ReflectionHelper#typeToString(Type)} of each generic parameter type.
+         */
+        String[] getParameterTypes() {
+            String[] parameterTypes = mParameterTypes;
+            if (parameterTypes == null) {
+                parameterTypes = typesToStrings(getGenericParameterTypes(), 0);
+                mParameterTypes = parameterTypes;
+            }
+            return parameterTypes;
+        }
+    }
+
+    /**
+     * A constructor together with its lazily retrieved generic parameter types and their strings.
+     */
+    static final class ConstructorEntry {
+        final Constructor<?> constructor;
+        private volatile Type[] mGenericParameterTypes;
+        private volatile String[] mParameterTypes;
+
+        ConstructorEntry(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        Type[] getGenericParameterTypes() {
+            Type[] genericParameterTypes = mGenericParameterTypes;
+            if (genericParameterTypes == null) {
+                genericParameterTypes = constructor.getGenericParameterTypes();
+                mGenericParameterTypes = genericParameterTypes;
+            }
+            return genericParameterTypes;
+        }
+
+        /**
+         * The offset of the first parameter that appears in the API, i.e. 1 when the first
+         * parameter is the implicit outer instance of a non-static inner class, 0 otherwise.
+         */
+        int getApiParameterOffset() {
+            Class<?> declaringClass = constructor.getDeclaringClass();
+            boolean isStaticClass = ((declaringClass.getModifiers() & Modifier.STATIC) != 0);
+            // non-static inner class -> skip implicit parent pointer as first arg
+            return declaringClass.isMemberClass() && !isStaticClass
+                    && getGenericParameterTypes().length >= 1 ? 1 : 0;
+        }
+
+        /**
+         * The {@link ReflectionHelper#typeToString(Type)} of the generic type of the parameter
+         * with the given index among those that appear in the API.
+         *
+         * <p>Each string is only computed when first requested, so a caller comparing the
+         * parameters in order does not stringify the parameters after the first mismatch.
+         */
+        String getApiParameterType(int index) {
+            String[] parameterTypes = mParameterTypes;
+            if (parameterTypes == null) {
+                parameterTypes = new String[getGenericParameterTypes().length
+                        - getApiParameterOffset()];
+                mParameterTypes = parameterTypes;
+            }
+            // Racing threads may compute the same string, and see each other's strings late.
+            String parameterType = parameterTypes[index];
+            if (parameterType == null) {
+                parameterType = ReflectionHelper.typeToString(
+                        getGenericParameterTypes()[index + getApiParameterOffset()]);
+                parameterTypes[index] = parameterType;
+            }
+            return parameterType;
+        }
+    }
+
+    private static String[] typesToStrings(Type[] types, int offset) {
+        String[] strings = new String[types.length - offset];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = ReflectionHelper.typeToString(types[i + offset]);
+        }
+        return strings;
+    }
+}
@@ -19,7 +19,9 @@ import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.regex.Matcher;
@@ -47,10 +49,10 @@ public class DexApiDocumentParser {
     // Estimate of the length of a line.
     private static final int LINE_LENGTH_ESTIMATE = 100;
 
-    // Converter from String to DexMember. Cached here.
-    private static final Function<String, DexMember> DEX_MEMBER_CONVERTER = str -> {
+    // Converter from a line of bytes to DexMember. Cached here.
+    private static final Function<ByteBuffer, DexMember> DEX_MEMBER_CONVERTER = line -> {
         try {
-            return parseLine(str, /* lineNum= */ -1); // No line info available.
+            return parseLine(line, /* lineNum= */ -1); // No line info available.
         } catch (ParseException e) {
             throw new RuntimeException(e);
         }
@@ -84,7 +86,7 @@ public class DexApiDocumentParser {
     }
     public Stream<DexMember> parseAsStream(ByteBuffer buffer, int lineLengthEstimate) {
         // TODO: Ensurance that the input conforms to ByteBufferLineSpliterator requirements.
-        return StreamSupport.stream(new ByteBufferLineSpliterator<DexMember>(buffer,
+        return StreamSupport.stream(ByteBufferLineSpliterator.forRawLines(buffer,
                 lineLengthEstimate, DEX_MEMBER_CONVERTER), true);
     }
 
@@ -116,4 +118,99 @@ public class DexApiDocumentParser {
         }
         throw new IllegalStateException();
     }
+
+    /**
+     * Parses a line without decoding it into a String or running any regular expression.
+     *
+     * <p>Accepts exactly the same lines as {@link #parseLine(String, int)}, with the same results.
+     * The delimiters are found in a single pass over the bytes between the position and the limit
+     * of {@code line}; the buffer itself is not modified. The class descriptor, name and type of the
+     * returned member are only decoded when they are first requested, which is cheap for members
+     * that are filtered out by flags or kind.
+     */
+    public static DexMember parseLine(ByteBuffer line, int lineNum) throws ParseException {
+        int start = line.position();
+        int limit = line.limit();
+
+        // Find the end of the signature, i.e. the first comma, and the position of the delimiters
+        // within it. Both the regexes require the signature to start with a class descriptor
+        // "L[^>]*;" followed by "->". After that REGEX_FIELD splits on the last ':', while
+        // REGEX_METHOD splits on the last '(' that is followed by a ')'.
+        int end = limit;
+        int arrow = -1;
+        int lastColon = -1;
+        int lastOpenParen = -1;
+        int methodParen = -1;
+        boolean validClass = start < limit && line.get(start) == 'L';
+        for (int i = start; i < limit; i++) {
+            byte b = line.get(i);
+            if (b == ',') {
+                end = i;
+                break;
+            } else if (arrow == -1) {
+                if (b == '>') {
+                    if (i - start < 3 || line.get(i - 1) != '-' || line.get(i - 2) != ';') {
+                        validClass = false;
+                        break;
+                    }
+                    arrow = i - 1;
+                }
+            } else if (b == '\n' || b == '\r') {
+                // Neither regex allows '.' to match a line terminator.
+                validClass = false;
+                break;
+            } else if (b == ':') {
+                lastColon = i;
+            } else if (b == '(') {
+                lastOpenParen = i;
+            } else if (b == ')') {
+                methodParen = lastOpenParen;
+            }
+        }
+
+        boolean isField = validClass && arrow != -1 && lastColon != -1;
+        boolean isMethod = validClass && arrow != -1 && methodParen != -1;
+        if (!isField && !isMethod) {
+            throw new ParseException("Could not parse: \"" + decodeLine(line) + "\"", lineNum);
+        } else if (isField && isMethod) {
+            throw new ParseException("Ambiguous parse: \"" + decodeLine(line) + "\"", lineNum);
+        }
+
+        String[] flags = parseFlags(line, end, limit);
+        int nameStart = arrow + 2;
+        if (isField) {
+            return new DexField(new RawDexSignature(line, start, arrow, nameStart, lastColon,
+                    lastColon + 1, end), flags);
+        } else {
+            return new DexMethod(new RawDexSignature(line, start, arrow, nameStart, methodParen,
+                    methodParen, end), flags);
+        }
+    }
+
+    /**
+     * Splits the comma separated flags that follow the signature, dropping trailing empty flags in
+     * the same way as {@link String#split(String)}.
+     */
+    private static String[] parseFlags(ByteBuffer line, int signatureEnd, int limit) {
+        if (signatureEnd >= limit) {
+            return new String[0];
+        }
+        List<String> flags = new ArrayList<>();
+        int flagStart = signatureEnd + 1;
+        for (int i = flagStart; i <= limit; i++) {
+            if (i == limit || line.get(i) == ',') {
+                flags.add(RawDexSignature.decode(line, flagStart, i));
+                flagStart = i + 1;
+            }
+        }
+        int size = flags.size();
+        while (size > 0 && flags.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return flags.subList(0, size).toArray(new String[size]);
+    }
+
+    private static String decodeLine(ByteBuffer line) {
+        return RawDexSignature.decode(line, line.position(), line.limit());
+    }
 }
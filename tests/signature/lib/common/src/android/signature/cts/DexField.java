@@ -20,6 +20,10 @@ public class DexField extends DexMember {
       super(className, name, type, flags);
   }
 
+  DexField(RawDexSignature rawSignature, String[] flags) {
+      super(rawSignature, flags);
+  }
+
   @Override
   public String toString() {
       return getJavaType() + " " + getJavaClassName() + "." + getName();
@@ -24,42 +24,81 @@ import java.util.Set;
  * Represents one class member parsed from the reader of dex signatures.
  */
 public abstract class DexMember {
-    private final String mName;
-    private final String mClassDescriptor;
-    private final String mType;
+    // The following are decoded from mRawSignature on first use when this member was created by
+    // the byte level parser. Racing threads will decode the same value so no locking is needed.
+    private String mName;
+    private String mClassDescriptor;
+    private String mType;
     private final Set<String> mFlags;
+    private final RawDexSignature mRawSignature;
 
     protected DexMember(String className, String name, String type, String[] flags) {
         mName = name;
         mClassDescriptor = className;
         mType = type;
         mFlags = flags == null ? Collections.emptySet() : new HashSet<>(Arrays.asList(flags));
+        mRawSignature = null;
+    }
+
+    DexMember(RawDexSignature rawSignature, String[] flags) {
+        mFlags = flags == null ? Collections.emptySet() : new HashSet<>(Arrays.asList(flags));
+        mRawSignature = rawSignature;
     }
 
     public String getName() {
-        return mName;
+        String name = mName;
+        if (name == null) {
+            name = mRawSignature.getName();
+            mName = name;
+        }
+        return name;
     }
 
     public String getDexClassName() {
-        return mClassDescriptor;
+        String classDescriptor = mClassDescriptor;
+        if (classDescriptor == null) {
+            classDescriptor = mRawSignature.getClassDescriptor();
+            mClassDescriptor = classDescriptor;
+        }
+        return classDescriptor;
     }
 
     public String getJavaClassName() {
-        return dexToJavaType(mClassDescriptor);
+        return dexToJavaType(getDexClassName());
     }
 
     public String getDexType() {
-        return mType;
+        String type = mType;
+        if (type == null) {
+            type = decodeDexType(mRawSignature);
+            mType = type;
+        }
+        return type;
     }
 
     public String getJavaType() {
-        return dexToJavaType(mType);
+        return dexToJavaType(getDexType());
     }
 
     public Set<String> getHiddenapiFlags() {
         return mFlags;
     }
 
+    /**
+     * Returns the signature this member was parsed from, or null if it was constructed from
+     * already decoded strings.
+     */
+    RawDexSignature getRawSignature() {
+        return mRawSignature;
+    }
+
+    /**
+     * Decodes the DEX type of this member from the raw signature.
+     */
+    String decodeDexType(RawDexSignature rawSignature) {
+        return rawSignature.getType();
+    }
+
     /**
      * Converts `type` to a Java type.
      */
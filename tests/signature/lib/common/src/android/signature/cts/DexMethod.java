@@ -16,13 +16,15 @@
 package android.signature.cts;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class DexMethod extends DexMember {
-  private final List<String> mParamTypeList;
+  // Lazily parsed when this method was created from a RawDexSignature.
+  private List<String> mParamTypeList;
 
   private enum ParseType {
       DEX_TYPE_LIST,
@@ -34,20 +36,26 @@ public class DexMethod extends DexMember {
       mParamTypeList = parseDexTypeList(signature);
   }
 
+  DexMethod(RawDexSignature rawSignature, String[] flags) {
+      super(rawSignature, flags);
+  }
+
   public String getDexSignature() {
-      return "(" + String.join("", mParamTypeList) + ")" + getDexType();
+      return "(" + String.join("", getParamTypeList()) + ")" + getDexType();
   }
 
   public List<String> getJavaParameterTypes() {
-      return mParamTypeList.stream().map(DexMember::dexToJavaType).collect(Collectors.toList());
+      return getParamTypeList().stream().map(DexMember::dexToJavaType)
+              .collect(Collectors.toList());
   }
 
   public Class<?>[] getJavaParameterClasses() throws ClassNotFoundException {
     // Ideally we'd use streams, but DexMember.typeToClass throws a checked exception, and that's
     // tricky to handle.
-    Class<?>[] classes = new Class<?>[mParamTypeList.size()];
+    List<String> paramTypeList = getParamTypeList();
+    Class<?>[] classes = new Class<?>[paramTypeList.size()];
     int i = 0;
-    for (String param : mParamTypeList) {
+    for (String param : paramTypeList) {
         classes[i++] = DexMember.typeToClass(param);
     }
     return classes;
@@ -67,6 +75,22 @@ public class DexMethod extends DexMember {
               + "(" + String.join(", ", getJavaParameterTypes()) + ")";
   }
 
+  @Override
+  String decodeDexType(RawDexSignature rawSignature) {
+      return parseSignature(rawSignature.getType(), ParseType.DEX_RETURN_TYPE);
+  }
+
+  private List<String> getParamTypeList() {
+      List<String> paramTypeList = mParamTypeList;
+      if (paramTypeList == null) {
+          // Wrapped so that the list is safely published to other threads.
+          paramTypeList = Collections.unmodifiableList(
+                  parseDexTypeList(getRawSignature().getType()));
+          mParamTypeList = paramTypeList;
+      }
+      return paramTypeList;
+  }
+
   private static String parseSignature(String signature, ParseType type) {
       // Form of signature:
       //   (DexTypeList)DexReturnType
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The undecoded DEX signature of a class member, as found by
+ * {@link DexApiDocumentParser#parseLine(ByteBuffer, int)}.
+ *
+ * <p>Holds the line it was parsed from together with the offsets of the class descriptor, the
+ * member name and the member type, so that a {@link DexMember} only has to decode the parts that
+ * are actually used. For a method the type is the whole {@code (params)return} signature.
+ */
+final class RawDexSignature {
+    private final ByteBuffer mLine;
+    private final int mClassStart;
+    private final int mClassEnd;
+    private final int mNameStart;
+    private final int mNameEnd;
+    private final int mTypeStart;
+    private final int mTypeEnd;
+
+    RawDexSignature(ByteBuffer line, int classStart, int classEnd, int nameStart, int nameEnd,
+            int typeStart, int typeEnd) {
+        mLine = line;
+        mClassStart = classStart;
+        mClassEnd = classEnd;
+        mNameStart = nameStart;
+        mNameEnd = nameEnd;
+        mTypeStart = typeStart;
+        mTypeEnd = typeEnd;
+    }
+
+    String getClassDescriptor() {
+        return decode(mLine, mClassStart, mClassEnd);
+    }
+
+    String getName() {
+        return decode(mLine, mNameStart, mNameEnd);
+    }
+
+    String getType() {
+        return decode(mLine, mTypeStart, mTypeEnd);
+    }
+
+    /**
+     * Decodes the bytes between {@code start} (inclusive) and {@code end} (exclusive) without
+     * changing the position of the buffer.
+     */
+    static String decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -15,6 +15,8 @@
  */
 package android.signature.cts;
 
+import android.signature.cts.ClassReflectionIndex.ConstructorEntry;
+import android.signature.cts.ClassReflectionIndex.MethodEntry;
 import android.signature.cts.JDiffClassDescription.JDiffConstructor;
 import android.signature.cts.JDiffClassDescription.JDiffMethod;
 import java.lang.annotation.Annotation;
@@ -24,7 +26,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
@@ -130,59 +131,47 @@ public class ReflectionHelper {
     /**
      * Searches available constructor.
      *
+     * @param indices the indices of the reflected members of the classes being checked.
      * @param runtimeClass the class in which to search.
      * @param jdiffDes constructor description to find.
      * @param mismatchReasons a map from rejected constructor to the reason it was rejected.
      * @return reflected constructor, or null if not found.
      */
-    static Constructor<?> findMatchingConstructor(Class<?> runtimeClass,
-            JDiffConstructor jdiffDes, Map<Constructor, String> mismatchReasons) {
+    static Constructor<?> findMatchingConstructor(ClassReflectionIndex.Indices indices,
+            Class<?> runtimeClass, JDiffConstructor jdiffDes,
+            Map<Constructor, String> mismatchReasons) {
 
         try {
-            return findMatchingConstructorImpl(runtimeClass, jdiffDes, mismatchReasons);
+            return findMatchingConstructorImpl(indices, runtimeClass, jdiffDes, mismatchReasons);
         } catch (NoClassDefFoundError e) {
             LogHelper.loge(TAG + ": Could not retrieve constructors of " + runtimeClass, e);
             return null;
         }
     }
 
-    static Constructor<?> findMatchingConstructorImpl(Class<?> runtimeClass,
-            JDiffConstructor jdiffDes, Map<Constructor, String> mismatchReasons) {
-        for (Constructor<?> c : runtimeClass.getDeclaredConstructors()) {
-            Type[] params = c.getGenericParameterTypes();
-            boolean isStaticClass = ((runtimeClass.getModifiers() & Modifier.STATIC) != 0);
-
-            int startParamOffset = 0;
-            int numberOfParams = params.length;
-
-            // non-static inner class -> skip implicit parent pointer
-            // as first arg
-            if (runtimeClass.isMemberClass() && !isStaticClass && params.length >= 1) {
-                startParamOffset = 1;
-                --numberOfParams;
-            }
+    static Constructor<?> findMatchingConstructorImpl(ClassReflectionIndex.Indices indices,
+            Class<?> runtimeClass, JDiffConstructor jdiffDes,
+            Map<Constructor, String> mismatchReasons) {
+        for (ConstructorEntry entry : indices.of(runtimeClass).getDeclaredConstructors()) {
+            Constructor<?> c = entry.constructor;
+            Type[] params = entry.getGenericParameterTypes();
+            int numberOfParams = params.length - entry.getApiParameterOffset();
 
             ArrayList<String> jdiffParamList = jdiffDes.mParamList;
             if (jdiffParamList.size() == numberOfParams) {
                 boolean isFound = true;
-                // i counts jdiff params, j counts reflected params
-                int i = 0;
-                int j = startParamOffset;
-                while (i < jdiffParamList.size()) {
+                for (int i = 0; i < jdiffParamList.size(); i++) {
                     String expectedParameter = jdiffParamList.get(i);
-                    Type actualParameter = params[j];
-                    if (!compareParam(expectedParameter, actualParameter,
+                    if (!compareParam(expectedParameter, entry.getApiParameterType(i),
                             DefaultTypeComparator.INSTANCE)) {
                         mismatchReasons.put(c,
                                 String.format("parameter %d mismatch: expected (%s), found (%s)",
                                         i,
                                         expectedParameter,
-                                        actualParameter));
+                                        params[i + entry.getApiParameterOffset()]));
                         isFound = false;
                         break;
                     }
-                    ++i;
-                    ++j;
                 }
                 if (isFound) {
                     return c;
@@ -202,17 +191,17 @@ public class ReflectionHelper {
      * reflection.
      *
      * @param jdiffParam param parsed from the API xml file.
-     * @param reflectionParamType param gotten from the Java reflection.
+     * @param reflectionParam the {@link #typeToString(Type)} of the param gotten from the Java
+     *     reflection.
      * @param typeComparator compares two types to determine if they are equal.
      * @return True if the two params match, otherwise return false.
      */
-    private static boolean compareParam(String jdiffParam, Type reflectionParamType,
+    private static boolean compareParam(String jdiffParam, String reflectionParam,
             TypeComparator typeComparator) {
         if (jdiffParam == null) {
             return false;
         }
 
-        String reflectionParam = typeToString(reflectionParamType);
         // Most things aren't varargs, so just do a simple compare
         // first.
         if (typeComparator.compare(jdiffParam, reflectionParam)) {
@@ -236,23 +225,24 @@ public class ReflectionHelper {
     /**
      * Finds the reflected method specified by the method description.
      *
+     * @param indices the indices of the reflected members of the classes being checked.
      * @param runtimeClass the class in which to search.
      * @param method description of the method to find
      * @param mismatchReasons a map from rejected method to the reason it was rejected, only
      *     contains methods with the same name.
      * @return the reflected method, or null if not found.
      */
-    static Method findMatchingMethod(
+    static Method findMatchingMethod(ClassReflectionIndex.Indices indices,
             Class<?> runtimeClass, JDiffMethod method, Map<Method, String> mismatchReasons) {
         try {
-            return findMatchingMethodImpl(runtimeClass, method, mismatchReasons);
+            return findMatchingMethodImpl(indices, runtimeClass, method, mismatchReasons);
         } catch (NoClassDefFoundError e) {
             LogHelper.loge(TAG + ": Could not retrieve methods of " + runtimeClass, e);
             return null;
         }
     }
 
-    static Method findMatchingMethodImpl(
+    static Method findMatchingMethodImpl(ClassReflectionIndex.Indices indices,
             Class<?> runtimeClass, JDiffMethod method, Map<Method, String> mismatchReasons) {
 
         // Search through the class to find the methods just in case the method was actually
@@ -261,16 +251,10 @@ public class ReflectionHelper {
         // will only return public methods and the API includes protected methods.
         Class<?> currentClass = runtimeClass;
         while (currentClass != null) {
-            Method[] reflectedMethods = currentClass.getDeclaredMethods();
-
-            for (Method reflectedMethod : reflectedMethods) {
-                // If the method names aren't equal, the methods can't match.
-                if (!method.mName.equals(reflectedMethod.getName())) {
-                    continue;
-                }
-
-                if (matchesSignature(method, reflectedMethod, mismatchReasons)) {
-                    return reflectedMethod;
+            // Only methods with the same name can match.
+            for (MethodEntry entry : indices.of(currentClass).getDeclaredMethods(method.mName)) {
+                if (matchesSignature(method, entry, mismatchReasons)) {
+                    return entry.method;
                 }
             }
 
@@ -309,6 +293,13 @@ public class ReflectionHelper {
      */
     static boolean matchesSignature(JDiffMethod jDiffMethod, Method reflectedMethod,
             Map<Method, String> mismatchReasons) {
+        return matchesSignature(jDiffMethod, new MethodEntry(reflectedMethod), mismatchReasons);
+    }
+
+    private static boolean matchesSignature(JDiffMethod jDiffMethod, MethodEntry entry,
+            Map<Method, String> mismatchReasons) {
+        Method reflectedMethod = entry.method;
+
         // If the method is a bridge then use a special comparator for comparing types as
         // bridge methods created for generic methods may not have generic signatures.
         // See b/123558763 for more information.
@@ -316,7 +307,7 @@ public class ReflectionHelper {
                 ? BridgeTypeComparator.INSTANCE : DefaultTypeComparator.INSTANCE;
 
         String jdiffReturnType = jDiffMethod.mReturnType;
-        String reflectionReturnType = typeToString(reflectedMethod.getGenericReturnType());
+        String reflectionReturnType = entry.getReturnType();
 
         // Next, compare the return types of the two methods.  If
         // they aren't equal, the methods can't match.
@@ -328,7 +319,7 @@ public class ReflectionHelper {
         }
 
         List<String> jdiffParamList = jDiffMethod.mParamList;
-        Type[] params = reflectedMethod.getGenericParameterTypes();
+        Type[] params = entry.getGenericParameterTypes();
 
         // Next, check the method parameters.  If they have different
         // parameter lengths, the two methods can't match.
@@ -343,8 +334,10 @@ public class ReflectionHelper {
         boolean piecewiseParamsMatch = true;
 
         // Compare method parameters piecewise and return true if they all match.
+        String[] reflectionParamList = entry.getParameterTypes();
         for (int i = 0; i < jdiffParamList.size(); i++) {
-            piecewiseParamsMatch &= compareParam(jdiffParamList.get(i), params[i], typeComparator);
+            piecewiseParamsMatch &=
+                    compareParam(jdiffParamList.get(i), reflectionParamList[i], typeComparator);
         }
         if (piecewiseParamsMatch) {
             return true;
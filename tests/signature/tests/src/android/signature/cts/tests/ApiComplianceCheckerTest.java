@@ -31,7 +31,12 @@ import android.signature.cts.tests.data.ExtendedNormalInterface;
 import android.signature.cts.tests.data.NormalClass;
 import android.signature.cts.tests.data.NormalInterface;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.Test;
 import org.junit.runners.JUnit4;
@@ -826,4 +831,33 @@ public class ApiComplianceCheckerTest extends ApiPresenceCheckerTest<ApiComplian
             });
         }
     }
+
+    @Test
+    public void testParallelCheckReportsFailuresInStreamOrder() {
+        List<String> expectedNames = IntStream.range(0, 1000)
+                .mapToObj(i -> "android.signature.cts.tests.data.NoSuchClass" + i)
+                .collect(Collectors.toList());
+        List<String> reportedNames = new ArrayList<>();
+        runWithApiChecker(
+                (type, name, errorMessage, throwable) -> {
+                    assertEquals(FailureType.MISSING_CLASS, type);
+                    reportedNames.add(name);
+                },
+                checker -> checker.checkSignatureComplianceInParallel(
+                        IntStream.range(0, 1000).mapToObj(i -> createClass("NoSuchClass" + i))));
+        assertEquals(expectedNames, reportedNames);
+    }
+
+    @Test
+    public void testParallelCheckQueuesInterfaces() {
+        try (ExpectFailure observer = new ExpectFailure(FailureType.MISMATCH_INTERFACE_METHOD)) {
+            runWithApiChecker(observer, checker -> {
+                JDiffClassDescription iface = createInterface(
+                        ExtendedNormalInterface.class.getSimpleName());
+                iface.addMethod(method("doSomething", Modifier.PUBLIC | Modifier.ABSTRACT, "void"));
+                checker.checkSignatureComplianceInParallel(
+                        Stream.of(createClass(NormalClass.class.getSimpleName()), iface));
+            });
+        }
+    }
 }
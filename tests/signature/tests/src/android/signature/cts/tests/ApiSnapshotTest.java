@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.signature.cts.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.signature.cts.ApiSnapshot;
+import android.signature.cts.ApiSnapshotWriter;
+import android.signature.cts.JDiffClassDescription;
+import android.signature.cts.JDiffClassDescription.JDiffConstructor;
+import android.signature.cts.JDiffClassDescription.JDiffField;
+import android.signature.cts.JDiffClassDescription.JDiffMethod;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Test class for {@link ApiSnapshot} and {@link ApiSnapshotWriter}.
+ */
+@RunWith(JUnit4.class)
+public class ApiSnapshotTest {
+
+    private static JDiffClassDescription createClass() {
+        JDiffClassDescription clz = new JDiffClassDescription("android.pkg", "Outer.Inner");
+        clz.setType(JDiffClassDescription.JDiffType.CLASS);
+        clz.setModifier(Modifier.PUBLIC | Modifier.STATIC | Modifier.FINAL);
+        clz.setExtendsClass("java.lang.Number");
+        clz.addImplInterface("java.lang.Comparable<android.pkg.Outer.Inner>");
+        clz.addImplInterface("java.io.Serializable");
+        clz.addField(new JDiffField("CONSTANT", "java.lang.String", Modifier.PUBLIC
+                | Modifier.STATIC | Modifier.FINAL, "caf\u00e9 \u2603"));
+        clz.addField(new JDiffField("field", "int", Modifier.PROTECTED, null));
+        JDiffConstructor constructor = new JDiffConstructor("Outer.Inner", Modifier.PUBLIC);
+        constructor.addParam("java.util.List<? extends java.lang.Object>");
+        constructor.addException("java.io.IOException");
+        clz.addConstructor(constructor);
+        JDiffMethod method = new JDiffMethod("compareTo", Modifier.PUBLIC, "int");
+        method.addParam("android.pkg.Outer.Inner");
+        clz.addMethod(method);
+        clz.addMethod(new JDiffMethod("run", Modifier.PUBLIC | Modifier.ABSTRACT, null));
+        return clz;
+    }
+
+    private static JDiffClassDescription createInterface(String pkg, String name) {
+        JDiffClassDescription clz = new JDiffClassDescription(pkg, name);
+        clz.setType(JDiffClassDescription.JDiffType.INTERFACE);
+        clz.setModifier(Modifier.PUBLIC | Modifier.ABSTRACT);
+        return clz;
+    }
+
+    private static ApiSnapshot writeAndRead(JDiffClassDescription... classes)
+            throws IOException {
+        ApiSnapshotWriter writer = new ApiSnapshotWriter();
+        for (JDiffClassDescription clz : classes) {
+            writer.addClass(clz);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(output);
+        return new ApiSnapshot(ByteBuffer.wrap(output.toByteArray()));
+    }
+
+    private static String describe(JDiffClassDescription clz) {
+        StringBuilder sb = new StringBuilder(clz.getAbsoluteClassName())
+                .append(": ").append(clz.toSignatureString());
+        for (JDiffField field : clz.getFieldList()) {
+            sb.append("\n  ").append(field.toSignatureString())
+                    .append(" = ").append(field.getValueString());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        JDiffClassDescription clz = createClass();
+        ApiSnapshot snapshot = writeAndRead(clz);
+        assertEquals(1, snapshot.getClassCount());
+        JDiffClassDescription read = snapshot.getClass(0);
+        assertEquals(describe(clz), describe(read));
+        assertEquals("public static final class Outer.Inner extends java.lang.Number "
+                + " implements java.lang.Comparable<android.pkg.Outer.Inner>,"
+                + " java.io.Serializable", read.toSignatureString());
+    }
+
+    @Test
+    public void testFindClass() throws IOException {
+        ApiSnapshot snapshot = writeAndRead(
+                createInterface("android.b", "Second"),
+                createClass(),
+                createInterface("android.a", "First"));
+        assertEquals("android.a.First", snapshot.findClass("android.a.First").toString());
+        assertEquals("android.b.Second", snapshot.findClass("android.b.Second").toString());
+        assertEquals(describe(createClass()),
+                describe(snapshot.findClass("android.pkg.Outer.Inner")));
+        assertNull(snapshot.findClass("android.a.Missing"));
+        assertNull(snapshot.findClass(""));
+    }
+
+    @Test
+    public void testStreamKeepsOrder() throws IOException {
+        ApiSnapshot snapshot = writeAndRead(
+                createInterface("android.b", "Second"),
+                createInterface("android.a", "First"),
+                createInterface("android.b", "Third"));
+        List<String> names = snapshot.stream()
+                .map(JDiffClassDescription::getAbsoluteClassName)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("android.b.Second", "android.a.First", "android.b.Third"),
+                names);
+    }
+
+    @Test
+    public void testStreamPackage() throws IOException {
+        ApiSnapshot snapshot = writeAndRead(
+                createInterface("android.b", "Second"),
+                createInterface("android.b.sub", "Nested"),
+                createInterface("android.a", "First"),
+                createInterface("android.b", "Third"));
+        List<String> names = snapshot.streamPackage("android.b")
+                .map(JDiffClassDescription::getAbsoluteClassName)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("android.b.Second", "android.b.Third"), names);
+        assertEquals(0, snapshot.streamPackage("android").count());
+    }
+
+    @Test
+    public void testManyStrings() throws IOException {
+        // Enough strings that references need multi-byte varints.
+        JDiffClassDescription[] classes = Stream.iterate(0, i -> i + 1)
+                .limit(20000)
+                .map(i -> createInterface("android.pkg" + (i % 7), "Interface" + i))
+                .toArray(JDiffClassDescription[]::new);
+        ApiSnapshot snapshot = writeAndRead(classes);
+        assertEquals(20000, snapshot.getClassCount());
+        assertEquals("android.pkg0.Interface19999",
+                snapshot.findClass("android.pkg0.Interface19999").getAbsoluteClassName());
+        assertEquals("android.pkg0.Interface0", snapshot.getClass(0).getAbsoluteClassName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotASnapshot() {
+        new ApiSnapshot(ByteBuffer.wrap(new byte[64]));
+    }
+}
@@ -22,7 +22,11 @@ import static org.junit.Assert.assertTrue;
 
 import android.signature.cts.ByteBufferLineSpliterator;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Spliterator;
 import java.util.function.Function;
 
@@ -55,6 +59,75 @@ public class ByteBufferLineSpliteratorTest extends LineSpliteratorTestBase {
         assertTrue("c1=" + c1 + ", c2=" + c2, Math.abs(c1 - c2) < 10);
     }
 
+    @Test
+    public void testSplitExactMiddleWithVaryingLineLengths() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            // The first half of the lines is much longer than the second half.
+            builder.append("test").append(i < 50 ? "0000000000000000000000000" : "").append(i);
+            if (i < 99) {
+                builder.append('\n');
+            }
+        }
+        Spliterator<Integer> split1 = createSpliterator(builder.toString(), CONVERTER);
+        Spliterator<Integer> split2 = split1.trySplit();
+        assertNotNull(split2);
+        assertEquals(50, split1.estimateSize());
+        assertEquals(50, split2.estimateSize());
+        assertTrue(split1.hasCharacteristics(Spliterator.SIZED));
+
+        Spliterator<Integer> split3 = split2.trySplit();
+        assertNotNull(split3);
+        assertEquals(25, split2.estimateSize());
+        assertEquals(25, split3.estimateSize());
+
+        int[] next = {0};
+        for (Spliterator<Integer> split : Arrays.asList(split1, split2, split3)) {
+            while (split.tryAdvance(intValue -> assertEquals(next[0]++, (int) intValue))) {
+            }
+        }
+        assertEquals(100, next[0]);
+    }
+
+    @Test
+    public void testRawLinesExcludeCarriageReturnAndKeepEmptyLines() {
+        ByteBuffer buffer = Charset.defaultCharset().encode("a\r\n\r\n\nb\rc\r\nd");
+        List<String> lines = new ArrayList<>();
+        Spliterator<String> spliterator = ByteBufferLineSpliterator.forRawLines(buffer, 6,
+                line -> Charset.defaultCharset().decode(line).toString());
+        while (spliterator.tryAdvance(lines::add)) {
+        }
+        assertEquals(Arrays.asList("a", "", "", "b\rc", "d"), lines);
+    }
+
+    @Test
+    public void testSplitKeepsEmptyLastLines() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.append("line").append(i).append("\n\n");
+        }
+        // 40 lines, every other one empty, so the first half of a split ends with an empty line
+        // as does the buffer.
+        ByteBuffer buffer = Charset.defaultCharset().encode(builder.toString());
+        Spliterator<String> split1 = ByteBufferLineSpliterator.forRawLines(buffer, 1,
+                line -> Charset.defaultCharset().decode(line).toString());
+        Spliterator<String> split2 = split1.trySplit();
+        assertNotNull(split2);
+        Spliterator<String> split3 = split2.trySplit();
+        assertNotNull(split3);
+
+        List<String> lines = new ArrayList<>();
+        for (Spliterator<String> split : Arrays.asList(split1, split2, split3)) {
+            while (split.tryAdvance(lines::add)) {
+            }
+        }
+        assertEquals(40, lines.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("line" + i, lines.get(2 * i));
+            assertEquals("", lines.get(2 * i + 1));
+        }
+    }
+
     @Override
     protected Spliterator<Integer> createSpliterator(String data,
             Function<String, Integer> converter) {
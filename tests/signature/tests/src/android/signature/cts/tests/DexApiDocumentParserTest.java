@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.signature.cts.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.signature.cts.ByteBufferLineSpliterator;
+import android.signature.cts.DexApiDocumentParser;
+import android.signature.cts.DexField;
+import android.signature.cts.DexMember;
+import android.signature.cts.DexMethod;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Test class for {@link android.signature.cts.DexApiDocumentParser}.
+ */
+@RunWith(JUnit4.class)
+public class DexApiDocumentParserTest {
+
+    private static final String[] VALID_LINES = {
+            "Landroid/app/Activity;->mResumed:Z,blocked",
+            "Landroid/app/Activity;->mFragments:Landroid/app/FragmentController;,unsupported,sdk",
+            "Landroid/app/Activity;-><init>()V,public-api,sdk,system-api,test-api",
+            "Landroid/app/Activity;-><clinit>()V,blocked",
+            "Landroid/app/Activity;->getTitle()Ljava/lang/CharSequence;,public-api",
+            "Landroid/app/Activity;->dump(Ljava/lang/String;[I[[Ljava/io/FileDescriptor;J)V,max-target-o",
+            "Landroid/app/Activity$1;->this$0:Landroid/app/Activity;",
+            "Landroid/app/Activity;->a:I,",
+            "Landroid/app/Activity;->a:I,,blocked,,",
+    };
+
+    private static final String[] INVALID_LINES = {
+            "",
+            ",blocked",
+            "android/app/Activity;->a:I,blocked",
+            "Landroid/app/Activity->a:I,blocked",
+            "Landroid/app/Activity;->a,blocked:I",
+            "Landroid/app/Activity;->a(IV,blocked",
+            "Landroid/app/Act>ivity;->a:I,blocked",
+            "Landroid/app/Activity;->a(:)V,blocked",
+    };
+
+    private static DexMember parseBytes(String line) throws ParseException {
+        return DexApiDocumentParser.parseLine(
+                ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)), 1);
+    }
+
+    private static void assertSameMember(DexMember expected, DexMember actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getDexClassName(), actual.getDexClassName());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getDexType(), actual.getDexType());
+        assertEquals(expected.getHiddenapiFlags(), actual.getHiddenapiFlags());
+        assertEquals(expected.toString(), actual.toString());
+        if (expected instanceof DexMethod) {
+            assertEquals(((DexMethod) expected).getDexSignature(),
+                    ((DexMethod) actual).getDexSignature());
+        }
+    }
+
+    @Test
+    public void testByteParserMatchesStringParser() throws ParseException {
+        for (String line : VALID_LINES) {
+            assertSameMember(DexApiDocumentParser.parseLine(line, 1), parseBytes(line));
+        }
+    }
+
+    @Test
+    public void testByteParserRejectsInvalidLines() {
+        for (String line : INVALID_LINES) {
+            try {
+                DexApiDocumentParser.parseLine(line, 1);
+                fail("String parser accepted \"" + line + "\"");
+            } catch (ParseException e) {
+                // Expected.
+            }
+            try {
+                parseBytes(line);
+                fail("Byte parser accepted \"" + line + "\"");
+            } catch (ParseException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void testByteParserHonoursBufferBounds() throws ParseException {
+        String line = "Landroid/app/Activity;->mResumed:Z,blocked";
+        ByteBuffer buffer = ByteBuffer.wrap(("xx" + line + "\nyy").getBytes(StandardCharsets.UTF_8));
+        buffer.position(2).limit(2 + line.length());
+        DexMember member = DexApiDocumentParser.parseLine(buffer, 1);
+        assertTrue(member instanceof DexField);
+        assertSameMember(DexApiDocumentParser.parseLine(line, 1), member);
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testParseAsStream() {
+        StringBuilder builder = new StringBuilder();
+        for (String line : VALID_LINES) {
+            builder.append(line).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+        List<String> members = new DexApiDocumentParser().parseAsStream(buffer)
+                .map(DexMember::toString)
+                .collect(Collectors.toList());
+        assertEquals(VALID_LINES.length, members.size());
+        assertEquals("java.lang.CharSequence android.app.Activity.getTitle()", members.get(4));
+    }
+
+    @Test
+    public void testRawLinesReportLineNumbers() throws ParseException {
+        ByteBuffer buffer = ByteBuffer.wrap(
+                "Landroid/app/Activity;->mResumed:Z,blocked\r\n\r\n".getBytes(
+                        StandardCharsets.UTF_8));
+        Iterator<ByteBuffer> lines = Spliterators.iterator(
+                ByteBufferLineSpliterator.forRawLines(buffer, 100, Function.identity()));
+        DexMember member = DexApiDocumentParser.parseLine(lines.next(), 1);
+        assertEquals(Collections.singleton("blocked"), member.getHiddenapiFlags());
+        try {
+            DexApiDocumentParser.parseLine(lines.next(), 2);
+            fail("Byte parser accepted an empty line");
+        } catch (ParseException e) {
+            assertEquals(2, e.getErrorOffset());
+        }
+        assertFalse(lines.hasNext());
+    }
+}
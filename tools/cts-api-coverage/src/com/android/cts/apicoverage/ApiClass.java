@@ -20,10 +20,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /** Representation of a class in the API with constructors and methods. */
 class ApiClass implements Comparable<ApiClass>, HasCoverage {
@@ -40,12 +43,29 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     private final List<ApiMethod> mApiMethods = Collections.synchronizedList(new ArrayList<>());
 
+    /**
+     * Constructors by number of parameters and methods by name, in the order they were added, to
+     * look them up without scanning all of them. Lookups do not lock, so coverage can be marked
+     * from many threads.
+     */
+    private final Map<Integer, List<Overload<ApiConstructor>>> mConstructorIndex =
+            new ConcurrentHashMap<>();
+
+    private final Map<String, List<Overload<ApiMethod>>> mMethodIndex = new ConcurrentHashMap<>();
+
     private final String mSuperClassName;
 
     private ApiClass mSuperClass;
 
     private Map<String, ApiClass> mInterfaceMap = new HashMap<String, ApiClass>();
 
+    /**
+     * This class, its super classes and its interfaces, which all get the coverage of a method.
+     * Computed on first use, so super classes and interfaces must be resolved before marking
+     * coverage.
+     */
+    private volatile List<ApiClass> mMethodCoverageClasses;
+
     /**
      * @param name The name of the class
      * @param deprecated true iff the class is marked as deprecated
@@ -85,7 +105,10 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
         return mAbstract;
     }
 
-    public void setSuperClass(ApiClass superClass) { mSuperClass = superClass; }
+    public void setSuperClass(ApiClass superClass) {
+        mSuperClass = superClass;
+        mMethodCoverageClasses = null;
+    }
 
     public void addInterface(String interfaceName) {
         mInterfaceMap.put(interfaceName, null);
@@ -93,6 +116,7 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void resolveInterface(String interfaceName, ApiClass apiInterface) {
         mInterfaceMap.replace(interfaceName, apiInterface);
+        mMethodCoverageClasses = null;
     }
 
     public Set<String> getInterfaceNames() {
@@ -101,6 +125,10 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addConstructor(ApiConstructor constructor) {
         mApiConstructors.add(constructor);
+        List<String> parameterTypes = constructor.getParameterTypes();
+        mConstructorIndex
+                .computeIfAbsent(parameterTypes.size(), size -> new CopyOnWriteArrayList<>())
+                .add(new Overload<>(constructor, parameterTypes));
     }
 
     public Collection<ApiConstructor> getConstructors() {
@@ -109,6 +137,9 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
 
     public void addMethod(ApiMethod method) {
         mApiMethods.add(method);
+        mMethodIndex
+                .computeIfAbsent(method.getName(), name -> new CopyOnWriteArrayList<>())
+                .add(new Overload<>(method, method.getParameterTypes()));
     }
 
     /** Look for a matching constructor and mark it as covered */
@@ -117,26 +148,46 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
             // Mark matching constructors in the superclass
             mSuperClass.markConstructorCovered(parameterTypes, coveredbyApk);
         }
-        Optional<ApiConstructor> apiConstructor = getConstructor(parameterTypes);
+        Optional<ApiConstructor> apiConstructor =
+                getConstructor(parameterTypes, parameterTypes.hashCode());
         apiConstructor.ifPresent(constructor -> constructor.setCovered(coveredbyApk));
     }
 
     /** Look for a matching method and if found and mark it as covered */
     public void markMethodCovered(String name, List<String> parameterTypes, String coveredbyApk) {
+        int parameterTypesHash = parameterTypes.hashCode();
+        // Mark matching methods in this class, the super classes and the interfaces
+        for (ApiClass apiClass : getMethodCoverageClasses()) {
+            Optional<ApiMethod> apiMethod =
+                    apiClass.getMethod(name, parameterTypes, parameterTypesHash);
+            apiMethod.ifPresent(method -> method.setCovered(coveredbyApk));
+        }
+    }
+
+    private List<ApiClass> getMethodCoverageClasses() {
+        List<ApiClass> classes = mMethodCoverageClasses;
+        if (classes == null) {
+            // Racing threads compute the same list, so no locking is needed
+            Set<ApiClass> classSet = new LinkedHashSet<>();
+            addMethodCoverageClasses(classSet);
+            classes = Collections.unmodifiableList(new ArrayList<>(classSet));
+            mMethodCoverageClasses = classes;
+        }
+        return classes;
+    }
+
+    private void addMethodCoverageClasses(Set<ApiClass> classes) {
+        if (!classes.add(this)) {
+            return;
+        }
         if (mSuperClass != null) {
-            // Mark matching methods in the super class
-            mSuperClass.markMethodCovered(name, parameterTypes, coveredbyApk);
+            mSuperClass.addMethodCoverageClasses(classes);
         }
-        if (!mInterfaceMap.isEmpty()) {
-            // Mark matching methods in the interfaces
-            for (ApiClass mInterface : mInterfaceMap.values()) {
-                if (mInterface != null) {
-                    mInterface.markMethodCovered(name, parameterTypes, coveredbyApk);
-                }
+        for (ApiClass mInterface : mInterfaceMap.values()) {
+            if (mInterface != null) {
+                mInterface.addMethodCoverageClasses(classes);
             }
         }
-        Optional<ApiMethod> apiMethod = getMethod(name, parameterTypes);
-        apiMethod.ifPresent(method -> method.setCovered(coveredbyApk));
     }
 
     public Collection<ApiMethod> getMethods() {
@@ -176,13 +227,25 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
         return getTotalMethods();
     }
 
-    private Optional<ApiMethod> getMethod(String name, List<String> parameterTypes) {
-        for (ApiMethod method : mApiMethods) {
-            boolean methodNameMatch = name.equals(method.getName());
-            boolean parameterTypeMatch =
-                    compareParameterTypes(method.getParameterTypes(), parameterTypes);
-            if (methodNameMatch && parameterTypeMatch) {
-                return Optional.of(method);
+    private Optional<ApiMethod> getMethod(
+            String name, List<String> parameterTypes, int parameterTypesHash) {
+        return findOverload(mMethodIndex.get(name), parameterTypes, parameterTypesHash);
+    }
+
+    private Optional<ApiConstructor> getConstructor(
+            List<String> parameterTypes, int parameterTypesHash) {
+        return findOverload(
+                mConstructorIndex.get(parameterTypes.size()), parameterTypes, parameterTypesHash);
+    }
+
+    /** @return the first of the overloads that matches the parameter types. */
+    private static <T> Optional<T> findOverload(
+            List<Overload<T>> overloads, List<String> parameterTypes, int parameterTypesHash) {
+        if (overloads != null) {
+            for (Overload<T> overload : overloads) {
+                if (overload.matches(parameterTypes, parameterTypesHash)) {
+                    return Optional.of(overload.mMember);
+                }
             }
         }
         return Optional.empty();
@@ -260,12 +323,39 @@ class ApiClass implements Comparable<ApiClass>, HasCoverage {
         return type.length() == 3 && isGenericType(type.substring(0, 1)) && isArrayType(type);
     }
 
-    private Optional<ApiConstructor> getConstructor(List<String> parameterTypes) {
-        for (ApiConstructor constructor : mApiConstructors) {
-            if (compareParameterTypes(constructor.getParameterTypes(), parameterTypes)) {
-                return Optional.of(constructor);
+    /** A constructor or method with what is needed to match its parameter types precomputed. */
+    private static final class Overload<T> {
+
+        private final T mMember;
+
+        private final List<String> mParameterTypes;
+
+        private final int mParameterTypesHash;
+
+        /** true iff a parameter type can match other types, see {@link #compareType}. */
+        private final boolean mInexact;
+
+        Overload(T member, List<String> parameterTypes) {
+            mMember = member;
+            mParameterTypes = parameterTypes;
+            mParameterTypesHash = parameterTypes.hashCode();
+            boolean inexact = false;
+            for (String type : parameterTypes) {
+                inexact |= isGenericType(type) || isGenericArrayType(type) || isVarArg(type);
             }
+            mInexact = inexact;
+        }
+
+        /** Same as {@link #compareParameterTypes} with the API parameter types of this member. */
+        boolean matches(List<String> parameterTypes, int parameterTypesHash) {
+            if (mParameterTypes.size() != parameterTypes.size()) {
+                return false;
+            }
+            if (mParameterTypesHash == parameterTypesHash
+                    && mParameterTypes.equals(parameterTypes)) {
+                return true;
+            }
+            return mInexact && compareParameterTypes(mParameterTypes, parameterTypes);
         }
-        return Optional.empty();
     }
 }
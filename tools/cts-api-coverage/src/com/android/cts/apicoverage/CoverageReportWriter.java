@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes the XML, HTML and JSON reports of the {@link ApiCoverage} in one pass over the packages
+ * and classes, so the reports do not have to be held in memory or transformed.
+ *
+ * <p>The XML report is the one viewed with api-coverage.xsl and the HTML report has the content
+ * that api-coverage.xsl renders from it. The JSON report has the content of the XML report.
+ */
+class CoverageReportWriter {
+
+    private static final String HTML_HEAD =
+            "<script type=\"text/javascript\">\n"
+            + "function toggleVisibility(id) {\n"
+            + "    element = document.getElementById(id);\n"
+            + "    if (element.style.display == \"none\") {\n"
+            + "        element.style.display = \"\";\n"
+            + "    } else {\n"
+            + "        element.style.display = \"none\";\n"
+            + "    }\n"
+            + "}\n"
+            + "</script>\n"
+            + "<style type=\"text/css\">\n"
+            + "body {\n"
+            + "    background-color: #CCCCCC;\n"
+            + "    font-family: sans-serif;\n"
+            + "    margin: 10px;\n"
+            + "}\n"
+            + ".info {\n"
+            + "    margin-bottom: 10px;\n"
+            + "}\n"
+            + ".apks, .package, .class {\n"
+            + "    cursor: pointer;\n"
+            + "    text-decoration: underline;\n"
+            + "}\n"
+            + ".packageDetails {\n"
+            + "    padding-left: 20px;\n"
+            + "}\n"
+            + ".classDetails {\n"
+            + "    padding-left: 40px;\n"
+            + "}\n"
+            + ".method {\n"
+            + "    font-family: courier;\n"
+            + "    white-space: nowrap;\n"
+            + "}\n"
+            + ".red {\n"
+            + "    background-color: #FF6666;\n"
+            + "}\n"
+            + ".yellow {\n"
+            + "    background-color: #FFFF66;\n"
+            + "}\n"
+            + ".green {\n"
+            + "    background-color: #66FF66;\n"
+            + "}\n"
+            + ".deprecated {\n"
+            + "    text-decoration: line-through;\n"
+            + "}\n"
+            + "</style>\n";
+
+    private final List<File> mTestApks;
+    private final ApiCoverage mApiCoverage;
+    private final CddCoverage mCddCoverage;
+    private final PackageFilter mPackageFilter;
+    private final String mReportTitle;
+    private final String mGeneratedTime;
+
+    // Any of them may be null if that report is not wanted.
+    private Writer mXml;
+    private Writer mHtml;
+    private Writer mJson;
+
+    CoverageReportWriter(List<File> testApks, ApiCoverage apiCoverage, CddCoverage cddCoverage,
+            PackageFilter packageFilter, String reportTitle) {
+        mTestApks = new ArrayList<File>(testApks);
+        Collections.sort(mTestApks);
+        mApiCoverage = apiCoverage;
+        mCddCoverage = cddCoverage;
+        mPackageFilter = packageFilter;
+        mReportTitle = reportTitle;
+        SimpleDateFormat format = new SimpleDateFormat("EEE, MMM d, yyyy h:mm a z");
+        mGeneratedTime = format.format(new Date(System.currentTimeMillis()));
+    }
+
+    /**
+     * Writes the reports to the given writers, which are flushed but not closed.
+     *
+     * @param xml writer of the XML report or null
+     * @param html writer of the HTML report or null
+     * @param json writer of the JSON report or null
+     */
+    public void write(Writer xml, Writer html, Writer json) throws IOException {
+        mXml = xml;
+        mHtml = html;
+        mJson = json;
+
+        CoverageComparator comparator = new CoverageComparator();
+        List<ApiPackage> packages = new ArrayList<ApiPackage>();
+        for (ApiPackage pkg : mApiCoverage.getPackages()) {
+            if (mPackageFilter.accept(pkg.getName()) && pkg.getTotalMethods() > 0) {
+                packages.add(pkg);
+            }
+        }
+        Collections.sort(packages, comparator);
+
+        // The HTML report shows the total before the packages, so count it first.
+        int totalMethods = 0;
+        int totalCoveredMethods = 0;
+        for (ApiPackage pkg : packages) {
+            totalMethods += pkg.getTotalMethods();
+            totalCoveredMethods += pkg.getNumCoveredMethods();
+            for (ApiClass apiClass : pkg.getClasses()) {
+                // Deprecated members are not counted in the total, only in their class.
+                for (ApiConstructor constructor : apiClass.getConstructors()) {
+                    if (constructor.isDeprecated()) {
+                        totalMethods--;
+                        totalCoveredMethods -= constructor.isCovered() ? 1 : 0;
+                    }
+                }
+                for (ApiMethod method : apiClass.getMethods()) {
+                    if (method.isDeprecated()) {
+                        totalMethods--;
+                        totalCoveredMethods -= method.isCovered() ? 1 : 0;
+                    }
+                }
+            }
+        }
+        int totalPercentage = Math.round((float) totalCoveredMethods / totalMethods * 100.0f);
+
+        writeHeader(totalCoveredMethods, totalMethods, totalPercentage);
+        boolean firstPackage = true;
+        for (ApiPackage pkg : packages) {
+            List<ApiClass> classes = new ArrayList<ApiClass>();
+            for (ApiClass apiClass : pkg.getClasses()) {
+                if (apiClass.getTotalMethods() > 0) {
+                    classes.add(apiClass);
+                }
+            }
+            Collections.sort(classes, comparator);
+            writePackage(pkg, classes, firstPackage);
+            firstPackage = false;
+        }
+        writeFooter(totalCoveredMethods, totalMethods, totalPercentage);
+
+        for (Writer writer : new Writer[] {mXml, mHtml, mJson}) {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+
+    private void writeHeader(int numCovered, int numTotal, int percentage) throws IOException {
+        if (mXml != null) {
+            mXml.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            mXml.write("<?xml-stylesheet type=\"text/xsl\"  href=\"api-coverage.xsl\"?>\n");
+            mXml.write("<api-coverage generatedTime=\"" + escape(mGeneratedTime)
+                    + "\" title=\"" + escape(mReportTitle) + "\">\n");
+            mXml.write("<debug>\n");
+            mXml.write("<sources>\n");
+            for (File testApk : mTestApks) {
+                mXml.write("<apk path=\"" + escape(testApk.getPath()) + "\" />\n");
+            }
+            mXml.write("</sources>\n");
+            mXml.write("</debug>\n");
+            mXml.write("<api>\n");
+        }
+
+        if (mHtml != null) {
+            mHtml.write("<html>\n<head>\n");
+            mHtml.write("<META http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n");
+            mHtml.write("<title>" + escape(mReportTitle) + "</title>\n");
+            mHtml.write(HTML_HEAD);
+            mHtml.write("</head>\n<body>\n");
+            mHtml.write("<h1>" + escape(mReportTitle) + "</h1>\n");
+            mHtml.write("<div class=\"info\">Generated: " + escape(mGeneratedTime) + "</div>\n");
+            mHtml.write("<div class=\"total\">Total:&nbsp;" + percentage + "%&nbsp;("
+                    + numCovered + "/" + numTotal + ")</div>\n");
+            mHtml.write("<div class=\"apks\" onclick=\"toggleVisibility('sourceApks')\">"
+                    + "Source Modules (" + mTestApks.size() + ")</div>\n");
+            mHtml.write("<div id=\"sourceApks\" style=\"display: none\">\n<ul>\n");
+            for (File testApk : mTestApks) {
+                mHtml.write("<li>" + escape(testApk.getPath()) + "</li>\n");
+            }
+            mHtml.write("</ul>\n</div>\n");
+            mHtml.write("<ul>\n");
+        }
+
+        if (mJson != null) {
+            mJson.write("{\"title\":" + quote(mReportTitle)
+                    + ",\"generatedTime\":" + quote(mGeneratedTime)
+                    + ",\"sources\":[");
+            for (int i = 0; i < mTestApks.size(); i++) {
+                mJson.write((i > 0 ? "," : "") + quote(mTestApks.get(i).getPath()));
+            }
+            mJson.write("],\n\"packages\":[");
+        }
+    }
+
+    private void writePackage(ApiPackage pkg, List<ApiClass> classes, boolean first)
+            throws IOException {
+        int numCovered = pkg.getNumCoveredMethods();
+        int numTotal = pkg.getTotalMethods();
+        int percentage = Math.round(pkg.getCoveragePercentage());
+
+        if (mXml != null) {
+            mXml.write("<package name=\"" + escape(pkg.getName())
+                    + "\" numCovered=\"" + numCovered
+                    + "\" numTotal=\"" + numTotal
+                    + "\" coveragePercentage=\"" + percentage
+                    + "\">\n");
+        }
+        if (mHtml != null) {
+            writeHtmlListItem("package", pkg.getName(), pkg.getName(), false,
+                    numCovered, numTotal, percentage);
+            mHtml.write("<div class=\"packageDetails\" id=\"" + escape(pkg.getName())
+                    + "\" style=\"display: none\">\n<ul>\n");
+        }
+        if (mJson != null) {
+            mJson.write((first ? "" : ",") + "\n{\"name\":" + quote(pkg.getName())
+                    + ",\"numCovered\":" + numCovered
+                    + ",\"numTotal\":" + numTotal
+                    + ",\"coveragePercentage\":" + percentage
+                    + ",\"classes\":[");
+        }
+
+        for (int i = 0; i < classes.size(); i++) {
+            writeClass(pkg, classes.get(i), i == 0);
+        }
+
+        if (mXml != null) {
+            mXml.write("</package>\n");
+        }
+        if (mHtml != null) {
+            mHtml.write("</ul>\n</div>\n");
+        }
+        if (mJson != null) {
+            mJson.write("]}");
+        }
+    }
+
+    private void writeClass(ApiPackage pkg, ApiClass apiClass, boolean first)
+            throws IOException {
+        int numCovered = apiClass.getNumCoveredMethods();
+        int numTotal = apiClass.getTotalMethods();
+        int percentage = Math.round(apiClass.getCoveragePercentage());
+
+        if (mXml != null) {
+            mXml.write("<class name=\"" + escape(apiClass.getName())
+                    + "\" numCovered=\"" + numCovered
+                    + "\" numTotal=\"" + numTotal
+                    + "\" deprecated=\"" + apiClass.isDeprecated()
+                    + "\" coveragePercentage=\"" + percentage
+                    + "\">\n");
+        }
+        if (mHtml != null) {
+            String classId = pkg.getName() + "." + apiClass.getName();
+            writeHtmlListItem("class", classId, apiClass.getName(), apiClass.isDeprecated(),
+                    numCovered, numTotal, percentage);
+            mHtml.write("<div class=\"classDetails\" id=\"" + escape(classId)
+                    + "\" style=\"display: none\">\n");
+        }
+        if (mJson != null) {
+            mJson.write((first ? "" : ",") + "\n{\"name\":" + quote(apiClass.getName())
+                    + ",\"numCovered\":" + numCovered
+                    + ",\"numTotal\":" + numTotal
+                    + ",\"deprecated\":" + apiClass.isDeprecated()
+                    + ",\"coveragePercentage\":" + percentage
+                    + ",\"constructors\":[");
+        }
+
+        boolean firstMember = true;
+        for (ApiConstructor constructor : apiClass.getConstructors()) {
+            writeConstructor(constructor, firstMember);
+            firstMember = false;
+        }
+        if (mJson != null) {
+            mJson.write("],\"methods\":[");
+        }
+        firstMember = true;
+        for (ApiMethod method : apiClass.getMethods()) {
+            writeMethod(method, firstMember);
+            firstMember = false;
+        }
+
+        if (mXml != null) {
+            mXml.write("</class>\n");
+        }
+        if (mHtml != null) {
+            mHtml.write("</div>\n");
+        }
+        if (mJson != null) {
+            mJson.write("]}");
+        }
+    }
+
+    private void writeConstructor(ApiConstructor constructor, boolean first) throws IOException {
+        List<String> coveredWith = sorted(constructor.getCoveredWith());
+        if (mXml != null) {
+            mXml.write("<constructor name=\"" + escape(constructor.getName())
+                    + "\" deprecated=\"" + constructor.isDeprecated()
+                    + "\" covered=\"" + constructor.isCovered()
+                    + "\" with=\"" + escape(String.join(",", coveredWith))
+                    + "\">\n");
+            writeXmlParameters(constructor.getParameterTypes());
+            mXml.write("</constructor>\n");
+        }
+        if (mHtml != null) {
+            writeHtmlMember(constructor.getName(), constructor.getParameterTypes(),
+                    constructor.isDeprecated(), constructor.isCovered(), "", "");
+        }
+        if (mJson != null) {
+            mJson.write((first ? "" : ",") + "{\"name\":" + quote(constructor.getName())
+                    + ",\"deprecated\":" + constructor.isDeprecated()
+                    + ",\"covered\":" + constructor.isCovered()
+                    + ",\"with\":" + quote(coveredWith)
+                    + ",\"parameters\":" + quote(constructor.getParameterTypes())
+                    + "}");
+        }
+    }
+
+    private void writeMethod(ApiMethod method, boolean first) throws IOException {
+        List<String> coveredWith = sorted(method.getCoveredWith());
+        if (mXml != null) {
+            mXml.write("<method name=\"" + escape(method.getName())
+                    + "\" returnType=\"" + escape(method.getReturnType())
+                    + "\" deprecated=\"" + method.isDeprecated()
+                    + "\" static=\"" + method.isStaticMethod()
+                    + "\" final=\"" + method.isFinalMethod()
+                    + "\" visibility=\"" + escape(method.getVisibility())
+                    + "\" abstract=\"" + method.isAbstractMethod()
+                    + "\" covered=\"" + method.isCovered()
+                    + "\" with=\"" + escape(String.join(",", coveredWith))
+                    + "\">\n");
+            writeXmlParameters(method.getParameterTypes());
+            mXml.write("</method>\n");
+        }
+        if (mHtml != null) {
+            StringBuilder modifiers = new StringBuilder();
+            if (!String.valueOf(method.getVisibility()).isEmpty()) {
+                modifiers.append("&nbsp;").append(escape(method.getVisibility()));
+            }
+            if (method.isAbstractMethod()) {
+                modifiers.append("&nbsp;abstract");
+            }
+            if (method.isStaticMethod()) {
+                modifiers.append("&nbsp;static");
+            }
+            if (method.isFinalMethod()) {
+                modifiers.append("&nbsp;final");
+            }
+            writeHtmlMember(method.getName(), method.getParameterTypes(), method.isDeprecated(),
+                    method.isCovered(), modifiers.toString(), method.getReturnType());
+        }
+        if (mJson != null) {
+            mJson.write((first ? "" : ",") + "{\"name\":" + quote(method.getName())
+                    + ",\"returnType\":" + quote(method.getReturnType())
+                    + ",\"deprecated\":" + method.isDeprecated()
+                    + ",\"static\":" + method.isStaticMethod()
+                    + ",\"final\":" + method.isFinalMethod()
+                    + ",\"visibility\":" + quote(method.getVisibility())
+                    + ",\"abstract\":" + method.isAbstractMethod()
+                    + ",\"covered\":" + method.isCovered()
+                    + ",\"with\":" + quote(coveredWith)
+                    + ",\"parameters\":" + quote(method.getParameterTypes())
+                    + "}");
+        }
+    }
+
+    private void writeFooter(int numCovered, int numTotal, int percentage) throws IOException {
+        if (mXml != null) {
+            mXml.write("</api>\n");
+            mXml.write("<cdd>\n");
+            for (CddCoverage.CddRequirement requirement : mCddCoverage.getCddRequirements()) {
+                mXml.write("<requirement id=\"" + escape(requirement.getRequirementId())
+                        + "\">\n");
+                for (CddCoverage.TestMethod method : requirement.getTestMethods()) {
+                    mXml.write("<test module=\"" + escape(method.getTestModule())
+                            + "\" class=\"" + escape(method.getTestClass()) + "\" ");
+                    if (method.getTestMethod() != null) {
+                        mXml.write("method=\"" + escape(method.getTestMethod()) + "\"");
+                    }
+                    mXml.write("/>\n");
+                }
+                mXml.write("</requirement>\n");
+            }
+            mXml.write("</cdd>\n");
+            mXml.write("<total numCovered=\"" + numCovered + "\" "
+                    + "numTotal=\"" + numTotal + "\" "
+                    + "coveragePercentage=\"" + percentage + "\" />\n");
+            mXml.write("</api-coverage>\n");
+        }
+
+        if (mHtml != null) {
+            mHtml.write("</ul>\n</body>\n</html>\n");
+        }
+
+        if (mJson != null) {
+            mJson.write("],\n\"cdd\":[");
+            boolean firstRequirement = true;
+            for (CddCoverage.CddRequirement requirement : mCddCoverage.getCddRequirements()) {
+                mJson.write((firstRequirement ? "" : ",") + "\n{\"id\":"
+                        + quote(requirement.getRequirementId()) + ",\"tests\":[");
+                boolean firstTest = true;
+                for (CddCoverage.TestMethod method : requirement.getTestMethods()) {
+                    mJson.write((firstTest ? "" : ",") + "{\"module\":"
+                            + quote(method.getTestModule())
+                            + ",\"class\":" + quote(method.getTestClass()));
+                    if (method.getTestMethod() != null) {
+                        mJson.write(",\"method\":" + quote(method.getTestMethod()));
+                    }
+                    mJson.write("}");
+                    firstTest = false;
+                }
+                mJson.write("]}");
+                firstRequirement = false;
+            }
+            mJson.write("],\n\"total\":{\"numCovered\":" + numCovered
+                    + ",\"numTotal\":" + numTotal
+                    + ",\"coveragePercentage\":" + percentage + "}}\n");
+        }
+    }
+
+    private void writeXmlParameters(List<String> parameterTypes) throws IOException {
+        for (String parameterType : parameterTypes) {
+            mXml.write("<parameter type=\"" + escape(parameterType) + "\" />\n");
+        }
+    }
+
+    private void writeHtmlListItem(String bulletClass, String toggleId, String name,
+            boolean deprecated, int numCovered, int numTotal, int percentage) throws IOException {
+        // note that this segmentation logic is duplicated in CoverageComparator
+        String colorClass = percentage <= 50 ? "red" : percentage <= 80 ? "yellow" : "green";
+        mHtml.write("<li class=\"" + bulletClass + "\" onclick=\"toggleVisibility('"
+                + escape(toggleId) + "')\"><span class=\"" + colorClass + " "
+                + (deprecated ? "deprecated" : "") + "\"><b>" + escape(name) + "</b>&nbsp;"
+                + percentage + "%&nbsp;(" + numCovered + "/" + numTotal + ")</span></li>\n");
+    }
+
+    private void writeHtmlMember(String name, List<String> parameterTypes, boolean deprecated,
+            boolean covered, String modifiers, String returnType) throws IOException {
+        StringBuilder builder = new StringBuilder("<span class=\"method ")
+                .append(deprecated ? "deprecated" : "").append("\">")
+                .append(covered ? "[X]" : "[ ]")
+                .append(modifiers);
+        if (!String.valueOf(returnType).isEmpty()) {
+            builder.append("&nbsp;").append(escape(returnType));
+        }
+        builder.append("<b>&nbsp;").append(escape(name)).append("</b>(");
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                builder.append(",&nbsp;");
+            }
+            builder.append(escape(parameterTypes.get(i)));
+        }
+        builder.append(")</span><br>\n");
+        mHtml.write(builder.toString());
+    }
+
+    private static List<String> sorted(Collection<String> values) {
+        List<String> list = new ArrayList<String>(values);
+        Collections.sort(list);
+        return list;
+    }
+
+    /** Escapes the text for XML and HTML attribute values and text. */
+    private static String escape(String value) {
+        String text = String.valueOf(value);
+        StringBuilder builder = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                default:
+                    if (builder != null) {
+                        builder.append(c);
+                    }
+                    continue;
+            }
+            if (builder == null) {
+                builder = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            builder.append(replacement);
+        }
+        return builder == null ? text : builder.toString();
+    }
+
+    private static String quote(List<String> values) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(quote(values.get(i)));
+        }
+        return builder.append(']').toString();
+    }
+
+    /** Quotes the value as a JSON string. */
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -27,18 +27,24 @@ import org.jf.dexlib2.iface.ClassDef;
 import org.jf.dexlib2.iface.DexFile;
 import org.jf.dexlib2.iface.Method;
 import org.jf.dexlib2.iface.value.StringEncodedValue;
+import org.jf.util.ExceptionWithContext;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -48,8 +54,8 @@ import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.zip.ZipException;
 
-import javax.xml.transform.TransformerException;
 
 /**
  * Tool that generates a report of what Android framework methods are being called from a given
@@ -70,6 +76,11 @@ public class CtsApiCoverage {
 
     private static final int FORMAT_HTML = 2;
 
+    private static final int FORMAT_JSON = 3;
+
+    // XML, HTML and JSON written together
+    private static final int FORMAT_ALL = 4;
+
     private static final String CDD_REQUIREMENT_ANNOTATION = "Lcom/android/compatibility/common/util/CddTest;";
 
     private static final String CDD_REQUIREMENT_ELEMENT_NAME = "requirement";
@@ -85,12 +96,14 @@ public class CtsApiCoverage {
         System.out.println("Use the Makefiles rules in CtsCoverage.mk to generate the report ");
         System.out.println("rather than executing this directly. If you still want to run this ");
         System.out.println("directly, then this must be used from the $ANDROID_BUILD_TOP ");
-        System.out.println("directory and dexdeps must be built via \"make dexdeps\".");
+        System.out.println("directory.");
         System.out.println();
         System.out.println("Options:");
         System.out.println("  -o FILE                output file or standard out if not given");
-        System.out.println("  -f [txt|xml|html]      format of output");
-        System.out.println("  -d PATH                path to dexdeps or expected to be in $PATH");
+        System.out.println("  -f [txt|xml|html|json|all]");
+        System.out.println("                         format of output, all writes FILE.xml,");
+        System.out.println("                         FILE.html and FILE.json in one pass");
+        System.out.println("  -d PATH                ignored, dex files are read in process");
         System.out.println("  -a PATH                path to the API XML file");
         System.out.println(
                 "  -n PATH                path to the NDK API XML file, which can be updated via ndk-api-report with the ndk target");
@@ -98,6 +111,7 @@ public class CtsApiCoverage {
         System.out.println("  -t TITLE               report title");
         System.out.println("  -a API                 the Android API Level");
         System.out.println("  -b BITS                64 or 32 bits, default 64");
+        System.out.println("  -c DIR                 cache of the references found in the APKs");
         System.out.println();
         System.exit(1);
     }
@@ -106,7 +120,6 @@ public class CtsApiCoverage {
         List<File> testApks = new ArrayList<File>();
         File outputFile = null;
         int format = FORMAT_TXT;
-        String dexDeps = "dexDeps";
         String apiXmlPath = "";
         String napiXmlPath = "";
         PackageFilter packageFilter = new PackageFilter();
@@ -114,6 +127,7 @@ public class CtsApiCoverage {
         int apiLevel = Integer.MAX_VALUE;
         String testCasesFolder = "";
         String bits = "64";
+        File cacheDir = null;
 
         List<File> notFoundTestApks = new ArrayList<File>();
         int numTestApkArgs = 0;
@@ -129,11 +143,16 @@ public class CtsApiCoverage {
                         format = FORMAT_TXT;
                     } else if ("html".equalsIgnoreCase(formatSpec)) {
                         format = FORMAT_HTML;
+                    } else if ("json".equalsIgnoreCase(formatSpec)) {
+                        format = FORMAT_JSON;
+                    } else if ("all".equalsIgnoreCase(formatSpec)) {
+                        format = FORMAT_ALL;
                     } else {
                         printUsage();
                     }
                 } else if ("-d".equals(args[i])) {
-                    dexDeps = getExpectedArg(args, ++i);
+                    // Kept for compatibility with existing callers.
+                    getExpectedArg(args, ++i);
                 } else if ("-a".equals(args[i])) {
                     apiXmlPath = getExpectedArg(args, ++i);
                 } else if ("-n".equals(args[i])) {
@@ -146,6 +165,8 @@ public class CtsApiCoverage {
                     apiLevel = Integer.parseInt(getExpectedArg(args, ++i));
                 } else if ("-b".equals(args[i])) {
                     bits = getExpectedArg(args, ++i);
+                } else if ("-c".equals(args[i])) {
+                    cacheDir = new File(getExpectedArg(args, ++i));
                 } else {
                     printUsage();
                 }
@@ -163,6 +184,10 @@ public class CtsApiCoverage {
             }
         }
 
+        if (format == FORMAT_ALL && outputFile == null) {
+            printUsage();
+        }
+
         if (!notFoundTestApks.isEmpty()) {
             String msg = String.format(Locale.US, "%d/%d testApks not found: %s",
                     notFoundTestApks.size(), numTestApkArgs, notFoundTestApks);
@@ -174,7 +199,8 @@ public class CtsApiCoverage {
          *    in current.xml. The object will have no information about the coverage for each
          *    constructor or method yet.
          *
-         * 2. For each provided APK, scan it using dexdeps, parse the output of dexdeps, and
+         * 2. For each provided APK, read the method references of its dex files and its CDD
+         *    annotations, or get them from the cache when the APK did not change, and
          *    call methods on the ApiCoverage object to cumulatively add coverage stats.
          *
          * 3. Output a report based on the coverage stats in the ApiCoverage object.
@@ -201,10 +227,11 @@ public class CtsApiCoverage {
 
         ExecutorService service =
             Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        TestApkReferenceCache cache =
+                cacheDir != null ? new TestApkReferenceCache(cacheDir, apiLevel) : null;
         List<Future> tasks = new ArrayList<>();
         for (File testApk : testApks) {
-            tasks.add(addApiCoverage(service, apiCoverage, testApk, dexDeps));
-            tasks.add(addCddCoverage(service, cddCoverage, testApk, apiLevel));
+            tasks.add(addCoverage(service, apiCoverage, cddCoverage, testApk, apiLevel, cache));
         }
         // Wait until all tasks finish.
         for (Future task : tasks) {
@@ -274,34 +301,56 @@ public class CtsApiCoverage {
     }
 
     /**
-     * Adds coverage information gleamed from running dexdeps on the APK to the
-     * {@link ApiCoverage} object.
+     * Adds coverage information gleamed from the method references and CDD annotations in the
+     * APK to the {@link ApiCoverage} and {@link CddCoverage} objects.
      *
      * @param apiCoverage object to which the coverage statistics will be added to
-     * @param testApk containing the tests that will be scanned by dexdeps
+     * @param cddCoverage object to which the CDD coverage will be added to
+     * @param testApk containing the tests that will be scanned
+     * @param cache of the references of unchanged APKs or null to always scan the APK
      */
-    private static Future addApiCoverage(
-        ExecutorService service, ApiCoverage apiCoverage, File testApk, String dexdeps) {
+    private static Future addCoverage(ExecutorService service, ApiCoverage apiCoverage,
+            CddCoverage cddCoverage, File testApk, int api, TestApkReferenceCache cache) {
         return service.submit(() -> {
-            String apkPath = testApk.getPath();
             try {
-                XMLReader xmlReader = XMLReaderFactory.createXMLReader();
-                String testApkName = testApk.getName();
-                DexDepsXmlHandler dexDepsXmlHandler = new DexDepsXmlHandler(apiCoverage, testApkName);
-                xmlReader.setContentHandler(dexDepsXmlHandler);
-
-                Process process = new ProcessBuilder(dexdeps, "--format=xml", apkPath).start();
-                xmlReader.parse(new InputSource(process.getInputStream()));
-            } catch (SAXException e) {
-                // Catch this exception, but continue. SAXException is acceptable in cases
-                // where the apk does not contain a classes.dex and therefore parsing won't work.
-                System.err.println("warning: dexdeps failed for: " + apkPath);
+                String key = cache != null ? cache.getKey(testApk) : null;
+                TestApkReferences references = key != null ? cache.get(key) : null;
+                if (references == null) {
+                    references = new TestApkReferences();
+                    boolean complete = addApiReferences(references, testApk);
+                    addCddReferences(references, testApk, api);
+                    if (key != null && complete) {
+                        cache.put(key, references);
+                    }
+                }
+                references.markCovered(apiCoverage, cddCoverage, testApk.getName());
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    /**
+     * Adds the method references in the dex files of the APK.
+     *
+     * @return false if the APK could not be read, so the references should not be cached
+     */
+    private static boolean addApiReferences(TestApkReferences references, File testApk)
+            throws IOException {
+        String apkPath = testApk.getPath();
+        try {
+            if (!new DexReferenceReader(references).read(testApk)) {
+                // Continue, as an apk may not contain a classes.dex.
+                System.err.println("warning: no dex file found in: " + apkPath);
+            }
+            return true;
+        } catch (ZipException | ExceptionWithContext e) {
+            // Catch this exception, but continue, as for an apk that cannot be read.
+            System.err.println("warning: reading dex failed for: " + apkPath);
+            return false;
+        }
+    }
+
     /**
      * Adds coverage information from native code symbol array to the {@link ApiCoverage} object.
      *
@@ -398,25 +447,19 @@ public class CtsApiCoverage {
         }
     }
 
-    private static Future addCddCoverage(
-        ExecutorService service, CddCoverage cddCoverage, File testSource, int api) {
-        return service.submit(() -> {
-            try {
-                if (testSource.getName().endsWith(".apk")) {
-                    addCddApkCoverage(cddCoverage, testSource, api);
-                } else if (testSource.getName().endsWith(".jar")) {
-                    addCddJarCoverage(cddCoverage, testSource);
-                } else {
-                    System.err
-                        .println("Unsupported file type for CDD coverage: " + testSource.getPath());
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
+    private static void addCddReferences(
+        TestApkReferences references, File testSource, int api) throws IOException {
+        if (testSource.getName().endsWith(".apk")) {
+            addCddApkReferences(references, testSource, api);
+        } else if (testSource.getName().endsWith(".jar")) {
+            addCddJarReferences(references, testSource);
+        } else {
+            System.err
+                .println("Unsupported file type for CDD coverage: " + testSource.getPath());
+        }
     }
 
-    private static void addCddJarCoverage(CddCoverage cddCoverage, File testSource)
+    private static void addCddJarReferences(TestApkReferences references, File testSource)
             throws IOException {
 
         Collection<Class<?>> classes = JarTestFinder.getClasses(testSource);
@@ -424,17 +467,14 @@ public class CtsApiCoverage {
             for (java.lang.reflect.Method m : c.getMethods()) {
                 if (m.isAnnotationPresent(CddTest.class)) {
                     CddTest cddTest = m.getAnnotation(CddTest.class);
-                    CddCoverage.TestMethod testMethod =
-                            new CddCoverage.TestMethod(
-                                    testSource.getName(), c.getName(), m.getName());
-                    cddCoverage.addCoverage(cddTest.requirement(), testMethod);
+                    references.addCddTest(cddTest.requirement(), c.getName(), m.getName());
                 }
             }
         }
     }
 
-    private static void addCddApkCoverage(
-        CddCoverage cddCoverage, File testSource, int api)
+    private static void addCddApkReferences(
+        TestApkReferences references, File testSource, int api)
             throws IOException {
 
         DexFile dexFile = null;
@@ -445,23 +485,20 @@ public class CtsApiCoverage {
             return;
         }
 
-        String moduleName = testSource.getName();
         for (ClassDef classDef : dexFile.getClasses()) {
             String className = classDef.getType();
             handleAnnotations(
-                cddCoverage, moduleName, className, null /*methodName*/,
-                classDef.getAnnotations());
+                references, className, null /*methodName*/, classDef.getAnnotations());
 
             for (Method method : classDef.getMethods()) {
                 String methodName = method.getName();
-                handleAnnotations(
-                    cddCoverage, moduleName, className, methodName, method.getAnnotations());
+                handleAnnotations(references, className, methodName, method.getAnnotations());
             }
         }
     }
 
     private static void handleAnnotations(
-            CddCoverage cddCoverage, String moduleName, String className,
+            TestApkReferences references, String className,
                     String methodName, Set<? extends Annotation> annotations) {
         for (Annotation annotation : annotations) {
             if (annotation.getType().equals(CDD_REQUIREMENT_ANNOTATION)) {
@@ -469,10 +506,8 @@ public class CtsApiCoverage {
                     if (annotationElement.getName().equals(CDD_REQUIREMENT_ELEMENT_NAME)) {
                         String cddRequirement =
                                 ((StringEncodedValue) annotationElement.getValue()).getValue();
-                        CddCoverage.TestMethod testMethod =
-                                new CddCoverage.TestMethod(
-                                        moduleName, dexToJavaName(className), methodName);
-                        cddCoverage.addCoverage(cddRequirement, testMethod);
+                        references.addCddTest(
+                                cddRequirement, dexToJavaName(className), methodName);
                     }
                 }
             }
@@ -503,11 +538,23 @@ public class CtsApiCoverage {
     private static void outputCoverageReport(ApiCoverage apiCoverage, CddCoverage cddCoverage,
             List<File> testApks, File outputFile, int format, PackageFilter packageFilter,
             String reportTitle)
-                throws IOException, TransformerException, InterruptedException {
+                throws IOException, InterruptedException {
+
+        if (format == FORMAT_ALL) {
+            String path = outputFile.getPath();
+            try (Writer xml = newReportWriter(new File(path + ".xml"));
+                    Writer html = newReportWriter(new File(path + ".html"));
+                    Writer json = newReportWriter(new File(path + ".json"))) {
+                new CoverageReportWriter(
+                        testApks, apiCoverage, cddCoverage, packageFilter, reportTitle)
+                        .write(xml, html, json);
+            }
+            return;
+        }
 
-        OutputStream out = outputFile != null
+        OutputStream out = new BufferedOutputStream(outputFile != null
                 ? new FileOutputStream(outputFile)
-                : System.out;
+                : System.out);
 
         try {
             switch (format) {
@@ -524,9 +571,22 @@ public class CtsApiCoverage {
                     HtmlReport.printHtmlReport(testApks, apiCoverage, cddCoverage,
                         packageFilter, reportTitle, out);
                     break;
+
+                case FORMAT_JSON:
+                    Writer json = new BufferedWriter(
+                            new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    new CoverageReportWriter(
+                            testApks, apiCoverage, cddCoverage, packageFilter, reportTitle)
+                            .write(null, null, json);
+                    break;
             }
         } finally {
             out.close();
         }
     }
+
+    private static Writer newReportWriter(File file) throws IOException {
+        return new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.ReferenceType;
+import org.jf.dexlib2.dexbacked.DexBackedClassDef;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.iface.reference.Reference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the method references of the dex files in a test APK into a {@link TestApkReferences}.
+ *
+ * <p>This reports the same references as dexdeps: those to methods of classes that are not
+ * defined in the same dex file. Names are converted the way dexdeps and {@link
+ * CurrentXmlHandler#getValue} convert them, so they match the API.
+ */
+class DexReferenceReader {
+
+    private static final Pattern DEX_ENTRY_NAME = Pattern.compile("classes\\d*\\.dex");
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    private final TestApkReferences mReferences;
+
+    DexReferenceReader(TestApkReferences references) {
+        mReferences = references;
+    }
+
+    /**
+     * Reads the classes.dex, classes2.dex, ... files in the APK.
+     *
+     * @return false if the APK does not contain any dex file.
+     */
+    public boolean read(File testApk) throws IOException {
+        boolean foundDex = false;
+        try (ZipFile zipFile = new ZipFile(testApk)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (DEX_ENTRY_NAME.matcher(entry.getName()).matches()) {
+                    foundDex = true;
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        read(new DexBackedDexFile(
+                                Opcodes.getDefault(), readFully(input, entry.getSize())));
+                    }
+                }
+            }
+        }
+        return foundDex;
+    }
+
+    private void read(DexBackedDexFile dexFile) {
+        Set<String> internalClasses = new HashSet<>();
+        for (DexBackedClassDef classDef : dexFile.getClasses()) {
+            internalClasses.add(classDef.getType());
+        }
+
+        for (Reference reference : dexFile.getReferences(ReferenceType.METHOD)) {
+            MethodReference method = (MethodReference) reference;
+            String definingClass = method.getDefiningClass();
+            if (internalClasses.contains(definingClass)) {
+                continue;
+            }
+            String dottedClass = descriptorToDot(definingClass);
+            int lastDot = dottedClass.lastIndexOf('.');
+            String packageName = lastDot < 0 ? "" : dottedClass.substring(0, lastDot);
+            String className = dottedClass.substring(lastDot + 1).replace('$', '.');
+
+            List<String> parameterTypes = new ArrayList<>();
+            for (CharSequence parameterType : method.getParameterTypes()) {
+                parameterTypes.add(descriptorToDot(parameterType.toString()).replace('$', '.'));
+            }
+            if (CONSTRUCTOR_NAME.equals(method.getName())) {
+                mReferences.addConstructor(packageName, className, parameterTypes);
+            } else {
+                mReferences.addMethod(packageName, className, method.getName(), parameterTypes);
+            }
+        }
+    }
+
+    /**
+     * Converts a type descriptor to the dotted form, e.g. "Ljava/lang/String;" to
+     * "java.lang.String" and "[I" to "int[]". Inner classes keep their "$".
+     */
+    static String descriptorToDot(String descriptor) {
+        int arrayDepth = 0;
+        while (arrayDepth < descriptor.length() - 1 && descriptor.charAt(arrayDepth) == '[') {
+            arrayDepth++;
+        }
+        String type = descriptor.substring(arrayDepth);
+        StringBuilder dotted = new StringBuilder();
+        if (type.length() == 1) {
+            dotted.append(primitiveTypeName(type.charAt(0)));
+        } else if (type.startsWith("L") && type.endsWith(";")) {
+            dotted.append(type, 1, type.length() - 1);
+        } else {
+            dotted.append(type);
+        }
+        for (int i = 0; i < dotted.length(); i++) {
+            if (dotted.charAt(i) == '/') {
+                dotted.setCharAt(i, '.');
+            }
+        }
+        for (int i = 0; i < arrayDepth; i++) {
+            dotted.append("[]");
+        }
+        return dotted.toString();
+    }
+
+    private static String primitiveTypeName(char type) {
+        switch (type) {
+            case 'Z':
+                return "boolean";
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'F':
+                return "float";
+            case 'D':
+                return "double";
+            case 'V':
+                return "void";
+            default:
+                return String.valueOf(type);
+        }
+    }
+
+    private static byte[] readFully(InputStream input, long size) throws IOException {
+        ByteArrayOutputStream output =
+                new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192);
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+        return output.toByteArray();
+    }
+}
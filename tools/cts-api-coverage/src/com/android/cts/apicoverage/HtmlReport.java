@@ -16,56 +16,26 @@
 
 package com.android.cts.apicoverage;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
-
 /**
- * Class that outputs an HTML report of the {@link ApiCoverage} collected. It is the XML report
- * transformed into HTML.
+ * Class that outputs an HTML report of the {@link ApiCoverage} collected. It has the content of
+ * the XML report transformed by api-coverage.xsl, but is written directly.
  */
 class HtmlReport {
 
     public static void printHtmlReport(final List<File> testApks, final ApiCoverage apiCoverage,
             final CddCoverage cddCoverage, final PackageFilter packageFilter,
-            final String reportTitle, final OutputStream out)
-                throws IOException, TransformerException {
-        final PipedOutputStream xmlOut = new PipedOutputStream();
-        final PipedInputStream xmlIn = new PipedInputStream(xmlOut);
-
-        Thread t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                XmlReport.printXmlReport(
-                    testApks, apiCoverage, cddCoverage, packageFilter, reportTitle, xmlOut);
-
-                // Close the output stream to avoid "Write dead end" errors.
-                try {
-                    xmlOut.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        });
-        t.start();
-
-        InputStream xsl = CtsApiCoverage.class.getResourceAsStream("/api-coverage.xsl");
-        StreamSource xslSource = new StreamSource(xsl);
-        TransformerFactory factory = TransformerFactory.newInstance();
-        Transformer transformer = factory.newTransformer(xslSource);
-
-        StreamSource xmlSource = new StreamSource(xmlIn);
-        StreamResult result = new StreamResult(out);
-        transformer.transform(xmlSource, result);
+            final String reportTitle, final OutputStream out) throws IOException {
+        BufferedWriter html =
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        new CoverageReportWriter(testApks, apiCoverage, cddCoverage, packageFilter, reportTitle)
+                .write(null, html, null);
     }
 }
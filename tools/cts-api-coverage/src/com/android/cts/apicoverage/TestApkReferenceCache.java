@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Caches the {@link TestApkReferences} of test APKs in a directory, keyed by the SHA-256 of the
+ * APK content, so unchanged APKs are not scanned again.
+ */
+class TestApkReferenceCache {
+
+    // Change when the extracted references or their format change, to invalidate old entries.
+    private static final String VERSION = "1";
+
+    private static final String FILE_SUFFIX = ".refs";
+
+    private final File mDirectory;
+
+    private final int mApiLevel;
+
+    TestApkReferenceCache(File directory, int apiLevel) {
+        mDirectory = directory;
+        mApiLevel = apiLevel;
+    }
+
+    /** Gets the key of the test APK, which changes when its content changes. */
+    public String getKey(File testApk) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((VERSION + ":" + mApiLevel + ":").getBytes(StandardCharsets.UTF_8));
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(testApk.toPath())) {
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /** @return the cached references, or null if there are none for the key. */
+    public TestApkReferences get(String key) {
+        try (BufferedReader reader =
+                Files.newBufferedReader(getPath(key), StandardCharsets.UTF_8)) {
+            return TestApkReferences.read(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("warning: ignoring invalid cache entry: " + getPath(key));
+            return null;
+        }
+    }
+
+    public void put(String key, TestApkReferences references) throws IOException {
+        Files.createDirectories(mDirectory.toPath());
+        // Write to a temporary file first so concurrent runs never read a partial entry.
+        Path temp = Files.createTempFile(mDirectory.toPath(), key, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                references.write(writer);
+            }
+            Files.move(temp, getPath(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path getPath(String key) {
+        return new File(mDirectory, key + FILE_SUFFIX).toPath();
+    }
+}
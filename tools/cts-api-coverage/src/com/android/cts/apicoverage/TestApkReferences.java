@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.apicoverage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The API references and CDD annotated tests found in one test APK.
+ *
+ * <p>They do not depend on the API being covered or on the name of the APK, so they can be cached
+ * by the content of the APK and marked on a new {@link ApiCoverage} in a later run.
+ */
+class TestApkReferences {
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String CONSTRUCTOR = "C";
+
+    private static final String METHOD = "M";
+
+    private static final String CDD_TEST = "R";
+
+    private final List<MemberReference> mMemberReferences = new ArrayList<>();
+
+    private final List<CddTestReference> mCddTestReferences = new ArrayList<>();
+
+    public void addConstructor(String packageName, String className, List<String> parameterTypes) {
+        mMemberReferences.add(new MemberReference(packageName, className, null, parameterTypes));
+    }
+
+    public void addMethod(String packageName, String className, String methodName,
+            List<String> parameterTypes) {
+        mMemberReferences.add(
+                new MemberReference(packageName, className, methodName, parameterTypes));
+    }
+
+    /**
+     * @param methodName the name of the annotated method or null if the class is annotated
+     */
+    public void addCddTest(String requirement, String className, String methodName) {
+        if (requirement == null) {
+            return;
+        }
+        mCddTestReferences.add(new CddTestReference(requirement, className, methodName));
+    }
+
+    /** Marks the references as covered by the test APK with the given name. */
+    public void markCovered(ApiCoverage apiCoverage, CddCoverage cddCoverage, String testApkName) {
+        for (MemberReference reference : mMemberReferences) {
+            ApiPackage apiPackage = apiCoverage.getPackage(reference.mPackageName);
+            if (apiPackage == null) {
+                continue;
+            }
+            ApiClass apiClass = apiPackage.getClass(reference.mClassName);
+            if (apiClass == null) {
+                continue;
+            }
+            if (reference.mMethodName == null) {
+                apiClass.markConstructorCovered(reference.mParameterTypes, testApkName);
+            } else {
+                apiClass.markMethodCovered(
+                        reference.mMethodName, reference.mParameterTypes, testApkName);
+            }
+        }
+        for (CddTestReference reference : mCddTestReferences) {
+            cddCoverage.addCoverage(reference.mRequirement,
+                    new CddCoverage.TestMethod(
+                            testApkName, reference.mClassName, reference.mMethodName));
+        }
+    }
+
+    /**
+     * Writes the references one per line, with the fields separated by tabs. An empty method
+     * name stands for an annotated class.
+     */
+    public void write(Writer writer) throws IOException {
+        for (MemberReference reference : mMemberReferences) {
+            if (reference.mMethodName == null) {
+                writeLine(writer, CONSTRUCTOR, reference.mPackageName, reference.mClassName,
+                        reference.mParameterTypes);
+            } else {
+                List<String> fields = new ArrayList<>();
+                fields.add(reference.mMethodName);
+                fields.addAll(reference.mParameterTypes);
+                writeLine(writer, METHOD, reference.mPackageName, reference.mClassName, fields);
+            }
+        }
+        for (CddTestReference reference : mCddTestReferences) {
+            writeLine(writer, CDD_TEST, reference.mRequirement, reference.mClassName,
+                    Collections.singletonList(
+                            reference.mMethodName == null ? "" : reference.mMethodName));
+        }
+    }
+
+    private static void writeLine(Writer writer, String type, String first, String second,
+            List<String> fields) throws IOException {
+        writer.write(type);
+        writer.write(SEPARATOR);
+        writer.write(first);
+        writer.write(SEPARATOR);
+        writer.write(second);
+        for (String field : fields) {
+            writer.write(SEPARATOR);
+            writer.write(field);
+        }
+        writer.write('\n');
+    }
+
+    /** Reads references written by {@link #write}. */
+    public static TestApkReferences read(BufferedReader reader) throws IOException {
+        TestApkReferences references = new TestApkReferences();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+            if (fields.length < 3) {
+                throw new IOException("Invalid reference: " + line);
+            }
+            switch (fields[0]) {
+                case CONSTRUCTOR:
+                    references.addConstructor(fields[1], fields[2],
+                            Arrays.asList(Arrays.copyOfRange(fields, 3, fields.length)));
+                    break;
+                case METHOD:
+                    if (fields.length < 4) {
+                        throw new IOException("Invalid method reference: " + line);
+                    }
+                    references.addMethod(fields[1], fields[2], fields[3],
+                            Arrays.asList(Arrays.copyOfRange(fields, 4, fields.length)));
+                    break;
+                case CDD_TEST:
+                    if (fields.length != 4) {
+                        throw new IOException("Invalid CDD test reference: " + line);
+                    }
+                    references.addCddTest(
+                            fields[1], fields[2], fields[3].isEmpty() ? null : fields[3]);
+                    break;
+                default:
+                    throw new IOException("Invalid reference: " + line);
+            }
+        }
+        return references;
+    }
+
+    private static class MemberReference {
+        private final String mPackageName;
+        private final String mClassName;
+        // null for a constructor
+        private final String mMethodName;
+        private final List<String> mParameterTypes;
+
+        MemberReference(String packageName, String className, String methodName,
+                List<String> parameterTypes) {
+            mPackageName = packageName;
+            mClassName = className;
+            mMethodName = methodName;
+            mParameterTypes = parameterTypes;
+        }
+    }
+
+    private static class CddTestReference {
+        private final String mRequirement;
+        private final String mClassName;
+        // null for an annotated class
+        private final String mMethodName;
+
+        CddTestReference(String requirement, String className, String methodName) {
+            mRequirement = requirement;
+            mClassName = className;
+            mMethodName = methodName;
+        }
+    }
+}
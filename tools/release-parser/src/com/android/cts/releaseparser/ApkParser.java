@@ -19,10 +19,14 @@ package com.android.cts.releaseparser;
 import com.android.cts.releaseparser.ReleaseProto.*;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 public class ApkParser extends ZipParser {
+    private static final String CLASSES_DEX = "classes.dex";
     private ApiPackage mExternalApiPackage;
     private ApiPackage mInternalApiPackage;
     private AppInfo.Builder mAppInfoBuilder;
@@ -77,7 +81,7 @@ public class ApkParser extends ZipParser {
     }
 
     private void processDex() {
-        DexParser dexParser = new DexParser(getFile());
+        DexParser dexParser = getDexParser();
         dexParser.setPackageName(mAppInfoBuilder.getPackageName());
         mExternalApiPackage = dexParser.getExternalApiPackage();
         mAppInfoBuilder.addExternalApiPackages(mExternalApiPackage);
@@ -85,6 +89,21 @@ public class ApkParser extends ZipParser {
         mAppInfoBuilder.addInternalApiPackages(mInternalApiPackage);
     }
 
+    // Reads classes.dex in memory as DexFileFactory.loadDexFile(apk) does, falling back to that
+    // to report the error if it cannot be read
+    private DexParser getDexParser() {
+        try (ZipFile zFile = new ZipFile(getFile())) {
+            ZipEntry entry = zFile.getEntry(CLASSES_DEX);
+            if (entry != null) {
+                byte[] content = new ZipEntryReader(getFile(), zFile).getBytes(entry);
+                return new DexParser(getFile(), content);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read: " + CLASSES_DEX + "\n" + e.getMessage());
+        }
+        return new DexParser(getFile());
+    }
+
     private void processZip() {
         mAppInfoBuilder.setPackageFileContent(getPackageFileContent());
     }
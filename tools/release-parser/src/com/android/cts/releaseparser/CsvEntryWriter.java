@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/** Writes entries as the rows of a release content CSV file. */
+public class CsvEntryWriter implements EntryWriter {
+    private static final String HEADER =
+            "release,type,name,size,relative_path,content_id,parent_folder,code_id,architecture,bits,dependencies,dynamic_loading_dependencies,services\n";
+    private static final String ROW_FORMAT = "%s,%s,%s,%d,%s,%s,%s,%s,%s,%d,%s,%s,%s\n";
+
+    private final String mRelNameVer;
+    private final Writer mWriter;
+
+    public CsvEntryWriter(String relNameVer, String csvFile) throws IOException {
+        mRelNameVer = relNameVer;
+        mWriter =
+                new BufferedWriter(
+                        new OutputStreamWriter(
+                                new FileOutputStream(csvFile), StandardCharsets.UTF_8));
+        mWriter.write(HEADER);
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        mWriter.write(
+                String.format(
+                        ROW_FORMAT,
+                        mRelNameVer,
+                        entry.getType(),
+                        entry.getName(),
+                        entry.getSize(),
+                        entry.getRelativePath(),
+                        entry.getContentId(),
+                        entry.getParentFolder(),
+                        entry.getCodeId(),
+                        entry.getAbiArchitecture(),
+                        entry.getAbiBits(),
+                        String.join(" ", entry.getDependenciesList()),
+                        String.join(" ", entry.getDynamicLoadingDependenciesList()),
+                        RcParser.toString(entry.getServicesList())));
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWriter.close();
+    }
+}
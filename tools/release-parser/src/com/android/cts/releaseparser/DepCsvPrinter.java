@@ -18,6 +18,7 @@ package com.android.cts.releaseparser;
 
 import com.android.cts.releaseparser.ReleaseProto.*;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
@@ -86,7 +87,7 @@ public class DepCsvPrinter {
         try {
             String exeName = entry.getName();
             FileWriter fWriter = new FileWriter(fileName);
-            mPWriter = new PrintWriter(fWriter);
+            mPWriter = new PrintWriter(new BufferedWriter(fWriter));
             mLibMap = new HashMap<String, String>();
             mEntryList = new ArrayList<Entry>();
             mDepPathMap = new HashMap<String, String>();
@@ -135,7 +136,7 @@ public class DepCsvPrinter {
         String fileName = String.format("%s/%s.csv", dirName, "RC-files");
         try {
             FileWriter fWriter = new FileWriter(fileName);
-            mPWriter = new PrintWriter(fWriter);
+            mPWriter = new PrintWriter(new BufferedWriter(fWriter));
             String rootNode = "root";
             mPWriter.println("digraph {");
             mPWriter.println("rankdir=LR;");
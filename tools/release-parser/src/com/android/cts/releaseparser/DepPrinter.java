@@ -18,6 +18,7 @@ package com.android.cts.releaseparser;
 
 import com.android.cts.releaseparser.ReleaseProto.*;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
@@ -84,7 +85,7 @@ public class DepPrinter {
         try {
             String exeName = entry.getName();
             FileWriter fWriter = new FileWriter(fileName);
-            mPWriter = new PrintWriter(fWriter);
+            mPWriter = new PrintWriter(new BufferedWriter(fWriter));
             mLibMap = new HashMap<String, Integer>();
             mDepPathMap = new HashMap<String, Integer>();
             mBits = entry.getAbiBits();
@@ -120,7 +121,7 @@ public class DepPrinter {
         String fileName = String.format("%s/%s.gv", dirName, "RC-files");
         try {
             FileWriter fWriter = new FileWriter(fileName);
-            mPWriter = new PrintWriter(fWriter);
+            mPWriter = new PrintWriter(new BufferedWriter(fWriter));
             String rootNode = "root";
             mPWriter.println("digraph {");
             mPWriter.println("rankdir=LR;");
@@ -54,6 +54,8 @@ public class DexParser extends FileParser {
     private HashMap<String, ApiClass.Builder> mInternalApiClassBuilderMap;
     private String mPackageName;
     private boolean mParseInternalApi;
+    // Content of a Dex file in memory, e.g. in an APK, instead of the file
+    private byte[] mContent;
 
     public DexParser(File file) {
         super(file);
@@ -61,6 +63,17 @@ public class DexParser extends FileParser {
         mPackageName = getFileName().split("\\.")[0];
     }
 
+    /**
+     * Parses a Dex file from memory.
+     *
+     * @param file the file containing the Dex file, e.g. an APK
+     * @param content the content of the Dex file
+     */
+    public DexParser(File file, byte[] content) {
+        this(file);
+        mContent = content;
+    }
+
     @Override
     public Entry.EntryType getType() {
         return Entry.EntryType.APK;
@@ -100,7 +113,13 @@ public class DexParser extends FileParser {
         // Loads a Dex file
         System.out.println("dexFile: " + getFile().getAbsoluteFile());
         try {
-            dexFile = DexFileFactory.loadDexFile(getFile().getAbsoluteFile(), Opcodes.getDefault());
+            if (mContent != null) {
+                dexFile = new DexBackedDexFile(Opcodes.getDefault(), mContent);
+            } else {
+                dexFile =
+                        DexFileFactory.loadDexFile(
+                                getFile().getAbsoluteFile(), Opcodes.getDefault());
+            }
 
             // Iterates through all clesses in the Dex file
             for (DexBackedClassDef classDef : dexFile.getClasses()) {
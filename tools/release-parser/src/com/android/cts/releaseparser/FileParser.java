@@ -21,18 +21,25 @@ import com.android.cts.releaseparser.ReleaseProto.*;
 import com.google.protobuf.TextFormat;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 import java.util.List;
 
 public class FileParser {
-    private static final String NO_ID = "";
+    protected static final String NO_ID = "";
     protected static final int READ_BLOCK_SIZE = 1024;
+    // Files are read for hashing in blocks of this size
+    private static final int HASH_BLOCK_SIZE = 1024 * 1024;
+    // Reused by every file hashed on a thread; a heap buffer is hashed without copying
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(HASH_BLOCK_SIZE));
 
     // Target File Extensions
     public static final String APK_EXT_TAG = ".apk";
@@ -128,13 +135,14 @@ public class FileParser {
 
     public String getFileContentId() {
         if (NO_ID.equals(mContentId)) {
-            try {
+            try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
                 MessageDigest md = MessageDigest.getInstance("SHA-256");
-                FileInputStream fis = new FileInputStream(mFile);
-                byte[] dataBytes = new byte[READ_BLOCK_SIZE];
-                int nread = 0;
-                while ((nread = fis.read(dataBytes)) != -1) {
-                    md.update(dataBytes, 0, nread);
+                ByteBuffer buffer = HASH_BUFFER.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    md.update(buffer);
+                    buffer.clear();
                 }
                 // Converts to Base64 String
                 mContentId = Base64.getEncoder().encodeToString(md.digest());
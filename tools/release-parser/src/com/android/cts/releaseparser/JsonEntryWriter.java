@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+import com.android.json.stream.NewlineDelimitedJsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Writes entries as newline-delimited JSON, one file object per line. */
+public class JsonEntryWriter implements EntryWriter {
+    private final String mReleaseId;
+    private final NewlineDelimitedJsonWriter mJsonWriter;
+
+    public JsonEntryWriter(String releaseId, String jsonFile) throws IOException {
+        mReleaseId = releaseId;
+        mJsonWriter =
+                new NewlineDelimitedJsonWriter(
+                        new BufferedWriter(
+                                new OutputStreamWriter(
+                                        new FileOutputStream(jsonFile), StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        writeFileInfo(mJsonWriter, entry, mReleaseId);
+        mJsonWriter.newlineDelimited();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mJsonWriter.flush();
+        mJsonWriter.close();
+    }
+
+    /**
+     * Writes the file info of an entry as a JSON object.
+     *
+     * @param releaseId the release id to add to the object, or null to leave it out
+     */
+    static void writeFileInfo(NewlineDelimitedJsonWriter jsonWriter, Entry entry, String releaseId)
+            throws IOException {
+        jsonWriter.beginObject();
+        if (releaseId != null) {
+            jsonWriter.name("release_id").value(releaseId);
+        }
+        jsonWriter.name("name").value(entry.getName());
+        jsonWriter.name("type").value(entry.getType().toString());
+        jsonWriter.name("size").value(entry.getSize());
+        jsonWriter.name("content_id").value(entry.getContentId());
+        jsonWriter.name("code_id").value(entry.getCodeId());
+        jsonWriter.name("abi_architecture").value(entry.getAbiArchitecture());
+        jsonWriter.name("abi_bits").value(entry.getAbiBits());
+        jsonWriter.name("parent_folder").value(entry.getParentFolder());
+        jsonWriter.name("relative_path").value(entry.getRelativePath());
+        writeStringCollection(jsonWriter, "dependencies", entry.getDependenciesList());
+        writeStringCollection(
+                jsonWriter,
+                "dynamic_loading_dependencies",
+                entry.getDynamicLoadingDependenciesList());
+        jsonWriter.endObject();
+    }
+
+    private static void writeStringCollection(
+            NewlineDelimitedJsonWriter jsonWriter, String name, Collection<String> strings)
+            throws IOException {
+        jsonWriter.name(name);
+        jsonWriter.beginArray();
+        for (String str : strings) {
+            jsonWriter.value(str);
+        }
+        jsonWriter.endArray();
+    }
+}
@@ -19,6 +19,7 @@ package com.android.cts.releaseparser;
 import com.android.cts.releaseparser.ReleaseProto.*;
 import com.android.json.stream.NewlineDelimitedJsonWriter;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -93,20 +94,7 @@ public class JsonPrinter {
         mJsonWriter.name("files");
         mJsonWriter.beginArray();
         for (Entry entry : entries) {
-            mJsonWriter.beginObject();
-            mJsonWriter.name("name").value(entry.getName());
-            mJsonWriter.name("type").value(entry.getType().toString());
-            mJsonWriter.name("size").value(entry.getSize());
-            mJsonWriter.name("content_id").value(entry.getContentId());
-            mJsonWriter.name("code_id").value(entry.getCodeId());
-            mJsonWriter.name("abi_architecture").value(entry.getAbiArchitecture());
-            mJsonWriter.name("abi_bits").value(entry.getAbiBits());
-            mJsonWriter.name("parent_folder").value(entry.getParentFolder());
-            mJsonWriter.name("relative_path").value(entry.getRelativePath());
-            writeStringCollection("dependencies", entry.getDependenciesList());
-            writeStringCollection(
-                    "dynamic_loading_dependencies", entry.getDynamicLoadingDependenciesList());
-            mJsonWriter.endObject();
+            JsonEntryWriter.writeFileInfo(mJsonWriter, entry, null);
         }
         mJsonWriter.endArray();
     }
@@ -245,7 +233,8 @@ public class JsonPrinter {
         FileOutputStream fOutStrem = new FileOutputStream(jsonFile);
         mJsonWriter =
                 new NewlineDelimitedJsonWriter(
-                        new OutputStreamWriter(fOutStrem, StandardCharsets.UTF_8));
+                        new BufferedWriter(
+                                new OutputStreamWriter(fOutStrem, StandardCharsets.UTF_8)));
     }
 
     private void close() throws IOException {
@@ -20,6 +20,7 @@ import com.android.cts.releaseparser.ReleaseProto.*;
 import com.google.protobuf.TextFormat;
 
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Paths;
 import java.util.logging.Logger;
@@ -33,16 +34,33 @@ public class Main {
                     + "\tto prase a release, such as device build, test suite or app distribution package\n"
                     + "Options:\n"
                     + "\t-i PATH\t path to a release folder\n"
-                    + "\t-o PATH\t path to output files\n";
+                    + "\t-o PATH\t path to output files\n"
+                    + "\t-j N\t number of threads to parse files with, default: all processors\n"
+                    + "\t-c PATH\t path to a cache file to reuse entries of unchanged files\n"
+                    + "\t-hash\t check files in the cache by their content id instead of time\n"
+                    + "\t-stream\t write entries to CSV, newline-delimited JSON and\n"
+                    + "\t\t length-delimited proto files as they are parsed\n";
 
     public static void main(final String[] args) {
         try {
             ArgumentParser argParser = new ArgumentParser(args);
             String relFolder = argParser.getParameterElement("i", 0);
             String outputPath = argParser.getParameterElement("o", 0);
+            String threads = argParser.getParameterElement("j", 0);
 
             // parse a release folder
-            ReleaseParser relParser = new ReleaseParser(relFolder);
+            ReleaseParser relParser =
+                    threads == null
+                            ? new ReleaseParser(relFolder)
+                            : new ReleaseParser(relFolder, Integer.parseInt(threads));
+            String cacheFile = argParser.getParameterElement("c", 0);
+            if (cacheFile != null) {
+                relParser.setCache(cacheFile, argParser.containsOption("hash"));
+            }
+            if (argParser.containsOption("stream")) {
+                writeStreams(relParser, outputPath);
+                return;
+            }
             String relNameVer = relParser.getReleaseId();
             relParser.writeRelesaeContentCsvFile(
                     relNameVer, getPathString(outputPath, "%s-ReleaseContent.csv", relNameVer));
@@ -99,6 +117,38 @@ public class Main {
         }
     }
 
+    // Writes the entries as they are parsed, then the release content without the entries
+    private static void writeStreams(ReleaseParser relParser, String outputPath)
+            throws IOException {
+        relParser.setKeepEntries(false);
+        String relNameVer = relParser.parseReleaseInfo();
+        try (EntryWriter csvWriter =
+                        new CsvEntryWriter(
+                                relNameVer,
+                                getPathString(outputPath, "%s-ReleaseContent.csv", relNameVer));
+                EntryWriter jsonWriter =
+                        new JsonEntryWriter(
+                                relNameVer,
+                                getPathString(outputPath, "%s-Entries.json", relNameVer));
+                EntryWriter pbWriter =
+                        new ProtoEntryWriter(
+                                getPathString(outputPath, "%s-Entries.pb", relNameVer))) {
+            relParser.addEntryWriter(csvWriter);
+            relParser.addEntryWriter(jsonWriter);
+            relParser.addEntryWriter(pbWriter);
+            relParser.getReleaseContent();
+        }
+
+        ReleaseContent relContent = relParser.getReleaseContent();
+        try (FileOutputStream output =
+                new FileOutputStream(
+                        getPathString(outputPath, "%s-ReleaseContent.pb", relNameVer))) {
+            relContent.writeTo(output);
+        }
+        relParser.writeKnownFailureCsvFile(
+                relNameVer, getPathString(outputPath, "%s-KnownFailure.csv", relNameVer));
+    }
+
     public static String getPathString(String outputPath, String format, String id) {
         return Paths.get(outputPath, String.format(format, id)).toString();
     }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import com.android.cts.releaseparser.ReleaseProto.*;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes entries as length-delimited Entry messages, which can be read back one at a time with
+ * Entry.parseDelimitedFrom().
+ */
+public class ProtoEntryWriter implements EntryWriter {
+    private final OutputStream mOutput;
+
+    public ProtoEntryWriter(String pbFile) throws IOException {
+        mOutput = new BufferedOutputStream(new FileOutputStream(pbFile));
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        entry.writeDelimitedTo(mOutput);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOutput.close();
+    }
+}
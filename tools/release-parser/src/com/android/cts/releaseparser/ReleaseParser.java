@@ -19,20 +19,29 @@ package com.android.cts.releaseparser;
 import com.android.cts.releaseparser.ReleaseProto.*;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 class ReleaseParser {
     private static final String ROOT_FOLDER_TAG = "/";
@@ -63,16 +72,135 @@ class ReleaseParser {
 
     private static final String TESTCASES_FOLDER_FORMAT = "testcases/%s";
 
+    // Bump this whenever a change to the parsers or Entry makes the cached entries stale
+    private static final int CACHE_VERSION = 1;
+
     private final String mFolderPath;
+    private final int mParallelism;
     private Path mRootPath;
     private ReleaseContent.Builder mRelContentBuilder;
     private Map<String, Entry> mEntries;
+    // incremental parsing
+    private String mCacheFile;
+    private boolean mVerifyCacheWithHash;
+    private Map<String, EntryCache.CachedEntry> mCachedEntries = Collections.emptyMap();
+    private Map<String, EntryCache.CachedEntry> mNewCachedEntries;
+    // streaming output
+    private final List<EntryWriter> mEntryWriters = new ArrayList<EntryWriter>();
+    private boolean mKeepEntries = true;
+    private boolean mReleaseInfoParsed;
+    private boolean mEntriesParsed;
 
     ReleaseParser(String folder) {
+        this(folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Parses the files of the release with up to parallelism threads
+    ReleaseParser(String folder, int parallelism) {
         mFolderPath = folder;
+        mParallelism = parallelism;
         File fFile = new File(mFolderPath);
         mRootPath = Paths.get(fFile.getAbsolutePath());
-        mEntries = new HashMap<String, Entry>();
+        mEntries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * Reuses the entries of unchanged files from a cache, and updates the cache after parsing.
+     *
+     * <p>A file is unchanged if its size and last modified time match the cached ones, or if
+     * verifyWithHash is set, if its size and content id match the cached ones. The latter suits
+     * releases that are extracted anew each time, which changes the last modified times. A cache
+     * written with a different {@link #CACHE_VERSION} is ignored.
+     *
+     * @param cacheFile path to the cache file, which is created if it does not exist
+     * @param verifyWithHash whether to check files by hashing their content
+     */
+    public void setCache(String cacheFile, boolean verifyWithHash) {
+        mCacheFile = cacheFile;
+        mVerifyCacheWithHash = verifyWithHash;
+        mCachedEntries = Collections.emptyMap();
+        mNewCachedEntries = new ConcurrentHashMap<String, EntryCache.CachedEntry>();
+        File file = new File(cacheFile);
+        if (file.isFile()) {
+            try (FileInputStream input = new FileInputStream(file)) {
+                EntryCache cache = EntryCache.parseFrom(input);
+                if (cache.getVersion() != CACHE_VERSION) {
+                    System.err.printf(
+                            "Ignoring cache %s of version %d, expected %d\n",
+                            cacheFile, cache.getVersion(), CACHE_VERSION);
+                    return;
+                }
+                mCachedEntries = cache.getEntriesMap();
+                System.out.printf(
+                        "Loaded %d cached entries from %s\n", mCachedEntries.size(), cacheFile);
+            } catch (IOException e) {
+                System.err.println(
+                        "Ignoring cache " + cacheFile + ", IOException:" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes each entry to the writer as soon as it is parsed.
+     *
+     * <p>Entries are written from the parsing threads, one at a time, when the folder containing
+     * them is done. The order varies between runs when parsing in parallel. The caller owns and
+     * closes the writer.
+     */
+    public void addEntryWriter(EntryWriter writer) {
+        mEntryWriters.add(writer);
+    }
+
+    /**
+     * Sets whether to keep the entries for getReleaseContent(), which is on by default. Turning it
+     * off with entry writers added keeps the memory use from growing with the size of the release.
+     */
+    public void setKeepEntries(boolean keepEntries) {
+        mKeepEntries = keepEntries;
+    }
+
+    /**
+     * Parses only the files describing the release, such as build.prop, so that its id is known
+     * before the entries are parsed, e.g. to name the files entry writers write to.
+     *
+     * @return the release id
+     */
+    public String parseReleaseInfo() {
+        if (!mReleaseInfoParsed && !mEntriesParsed) {
+            getReleaseContentBuilder();
+            parseReleaseInfo(new File(mFolderPath));
+            setDefaultName();
+            mReleaseInfoParsed = true;
+        }
+        return getReleaseId(mRelContentBuilder.build());
+    }
+
+    // Walks the folder in the same order as parseFolder() to apply the release info the same way
+    private void parseReleaseInfo(File folder) {
+        File[] fileList = folder.listFiles();
+        if (fileList == null) {
+            return;
+        }
+        for (File file : fileList) {
+            if (file.isFile()) {
+                String fName = file.getName();
+                // only creates parsers for the candidates, as getParser() may read the file
+                if (fName.endsWith(FileParser.TEST_SUITE_TRADEFED_TAG)
+                        || fName.endsWith(FileParser.BUILD_PROP_EXT_TAG)) {
+                    FileParser fParser = FileParser.getParser(file);
+                    if (isReleaseInfo(fParser.getType())) {
+                        fParser.getFileEntryBuilder()
+                                .setRelativePath(
+                                        mRootPath
+                                                .relativize(Paths.get(file.getAbsolutePath()))
+                                                .toString());
+                        setReleaseInfo(fParser);
+                    }
+                }
+            } else if (file.isDirectory()) {
+                parseReleaseInfo(file);
+            }
+        }
     }
 
     public String getReleaseId() {
@@ -87,17 +215,11 @@ class ReleaseParser {
     }
 
     public ReleaseContent getReleaseContent() {
-        if (mRelContentBuilder == null) {
-            mRelContentBuilder = ReleaseContent.newBuilder();
-            // default APP_DISTRIBUTION_PACKAGE if no BUILD_PROP nor TEST_SUITE_TRADEFED is found
-            mRelContentBuilder.setReleaseType(ReleaseType.APP_DISTRIBUTION_PACKAGE);
+        if (!mEntriesParsed) {
+            getReleaseContentBuilder();
             // also add the root folder entry
             Entry.Builder fBuilder = parseFolder(mFolderPath);
-            if (mRelContentBuilder.getName().equals("")) {
-                System.err.println("Release Name unknown!");
-                mRelContentBuilder.setName(mFolderPath);
-                mRelContentBuilder.setFullname(mFolderPath);
-            }
+            setDefaultName();
             fBuilder.setRelativePath(ROOT_FOLDER_TAG);
             String relId = getReleaseId(mRelContentBuilder.build());
             fBuilder.setName(relId);
@@ -105,116 +227,285 @@ class ReleaseParser {
             mRelContentBuilder.setContentId(fBuilder.getContentId());
             mRelContentBuilder.setSize(fBuilder.getSize());
             Entry fEntry = fBuilder.build();
-            mEntries.put(fEntry.getRelativePath(), fEntry);
-            mRelContentBuilder.putAllEntries(mEntries);
+            addEntry(fEntry);
+            // entries are found in parallel, so sorts them for a stable output
+            mRelContentBuilder.putAllEntries(new TreeMap<String, Entry>(mEntries));
+            mEntries.clear();
+            mEntriesParsed = true;
         }
         return mRelContentBuilder.build();
     }
 
+    private ReleaseContent.Builder getReleaseContentBuilder() {
+        if (mRelContentBuilder == null) {
+            mRelContentBuilder = ReleaseContent.newBuilder();
+            // default APP_DISTRIBUTION_PACKAGE if no BUILD_PROP nor TEST_SUITE_TRADEFED is found
+            mRelContentBuilder.setReleaseType(ReleaseType.APP_DISTRIBUTION_PACKAGE);
+        }
+        return mRelContentBuilder;
+    }
+
+    private void setDefaultName() {
+        if (mRelContentBuilder.getName().equals("")) {
+            System.err.println("Release Name unknown!");
+            mRelContentBuilder.setName(mFolderPath);
+            mRelContentBuilder.setFullname(mFolderPath);
+        }
+    }
+
+    // Keeps the entry if needed and writes it to the entry writers
+    private void addEntry(Entry entry) {
+        if (mKeepEntries) {
+            mEntries.put(entry.getRelativePath(), entry);
+        }
+        for (EntryWriter writer : mEntryWriters) {
+            try {
+                synchronized (writer) {
+                    writer.write(entry);
+                }
+            } catch (IOException e) {
+                System.err.println("IOException:" + e.getMessage());
+            }
+        }
+    }
+
     // Parse all files in a folder and return the foler entry builder
     private Entry.Builder parseFolder(String fPath) {
-        Entry.Builder folderEntry = Entry.newBuilder();
-        File folder = new File(fPath);
-        Path folderPath = Paths.get(folder.getAbsolutePath());
-        String folderRelativePath = mRootPath.relativize(folderPath).toString();
-        File[] fileList = folder.listFiles();
-        Long folderSize = 0L;
-        List<Entry> entryList = new ArrayList<Entry>();
-
-        // walks through all files
-        System.out.println("Parsing: " + folderRelativePath);
-        // skip if it's a symbolic link to a folder
-        if (fileList != null) {
-            for (File file : fileList) {
-                if (file.isFile()) {
-                    String fileRelativePath =
-                            mRootPath.relativize(Paths.get(file.getAbsolutePath())).toString();
-                    FileParser fParser = FileParser.getParser(file);
-                    Entry.Builder fileEntryBuilder = fParser.getFileEntryBuilder();
-                    fileEntryBuilder.setRelativePath(fileRelativePath);
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        ParseResult result;
+        try {
+            result = pool.invoke(new FolderTask(new File(fPath)));
+        } finally {
+            pool.shutdown();
+        }
+        // Apply the release info in the order the files were found, as a sequential walk would
+        if (!mReleaseInfoParsed) {
+            for (FileParser fParser : result.releaseInfoParsers) {
+                setReleaseInfo(fParser);
+            }
+        }
+        if (mCacheFile != null) {
+            writeCache();
+        }
+        return result.entryBuilder;
+    }
 
-                    if (folderRelativePath.isEmpty()) {
-                        fileEntryBuilder.setParentFolder(ROOT_FOLDER_TAG);
-                    } else {
-                        fileEntryBuilder.setParentFolder(folderRelativePath);
-                    }
+    // Gets the cached entry of an unchanged file or null. The parser of the file is only used to
+    // get its content id, which it keeps for parsing the file if the cached entry is not used.
+    private Entry.Builder getCachedEntryBuilder(FileParser fParser, String fileRelativePath) {
+        File file = fParser.getFile();
+        EntryCache.CachedEntry cachedEntry = mCachedEntries.get(fileRelativePath);
+        if (cachedEntry == null
+                || cachedEntry.getSize() != file.length()
+                // Release info is not in the entry, so needs the parser
+                || isReleaseInfo(cachedEntry.getEntry().getType())) {
+            return null;
+        }
+        if (mVerifyCacheWithHash) {
+            String contentId = fParser.getFileContentId();
+            if (!contentId.equals(cachedEntry.getEntry().getContentId())) {
+                return null;
+            }
+            // Keeps the new time so the next run can skip hashing if it uses the same files
+            cachedEntry = cachedEntry.toBuilder().setLastModified(file.lastModified()).build();
+        } else if (cachedEntry.getLastModified() != file.lastModified()) {
+            return null;
+        }
+        mNewCachedEntries.put(fileRelativePath, cachedEntry);
+        return cachedEntry.getEntry().toBuilder();
+    }
 
-                    Entry.EntryType eType = fParser.getType();
-                    switch (eType) {
-                        case TEST_SUITE_TRADEFED:
-                            mRelContentBuilder.setTestSuiteTradefed(fileRelativePath);
-                            TestSuiteTradefedParser tstParser = (TestSuiteTradefedParser) fParser;
-                            // get [cts]-known-failures.xml
-                            mRelContentBuilder.addAllKnownFailures(tstParser.getKnownFailureList());
-                            mRelContentBuilder.setName(tstParser.getName());
-                            mRelContentBuilder.setFullname(tstParser.getFullName());
-                            mRelContentBuilder.setBuildNumber(tstParser.getBuildNumber());
-                            mRelContentBuilder.setTargetArch(tstParser.getTargetArch());
-                            mRelContentBuilder.setVersion(tstParser.getVersion());
-                            mRelContentBuilder.setReleaseType(ReleaseType.TEST_SUITE);
-                            break;
-                        case BUILD_PROP:
-                            BuildPropParser bpParser = (BuildPropParser) fParser;
-                            try {
-                                mRelContentBuilder.setReleaseType(ReleaseType.DEVICE_BUILD);
-                                mRelContentBuilder.setName(bpParser.getName());
-                                mRelContentBuilder.setFullname(bpParser.getFullName());
-                                mRelContentBuilder.setBuildNumber(bpParser.getBuildNumber());
-                                mRelContentBuilder.setVersion(bpParser.getVersion());
-                                mRelContentBuilder.putAllProperties(bpParser.getProperties());
-                            } catch (Exception e) {
-                                System.err.println(
-                                        "No product name, version & etc. in "
-                                                + file.getAbsoluteFile()
-                                                + ", err:"
-                                                + e.getMessage());
-                            }
-                            break;
-                        default:
-                    }
-                    // System.err.println("File:" + file.getAbsoluteFile());
-                    if (fParser.getDependencies() != null) {
-                        fileEntryBuilder.addAllDependencies(fParser.getDependencies());
-                    }
-                    if (fParser.getDynamicLoadingDependencies() != null) {
-                        fileEntryBuilder.addAllDynamicLoadingDependencies(
-                                fParser.getDynamicLoadingDependencies());
-                    }
-                    fileEntryBuilder.setAbiBits(fParser.getAbiBits());
-                    fileEntryBuilder.setAbiArchitecture(fParser.getAbiArchitecture());
-
-                    Entry fEntry = fileEntryBuilder.build();
-                    entryList.add(fEntry);
-                    mEntries.put(fEntry.getRelativePath(), fEntry);
-                    folderSize += file.length();
-                } else if (file.isDirectory()) {
-                    // Checks subfolders
-                    Entry.Builder subFolderEntry = parseFolder(file.getAbsolutePath());
-                    if (folderRelativePath.isEmpty()) {
-                        subFolderEntry.setParentFolder(ROOT_FOLDER_TAG);
-                    } else {
-                        subFolderEntry.setParentFolder(folderRelativePath);
+    private void cacheEntry(File file, Entry entry) {
+        if (mNewCachedEntries != null) {
+            mNewCachedEntries.put(
+                    entry.getRelativePath(),
+                    EntryCache.CachedEntry.newBuilder()
+                            .setSize(file.length())
+                            .setLastModified(file.lastModified())
+                            .setEntry(entry)
+                            .build());
+        }
+    }
+
+    // Writes the entries of this release to the cache, dropping those of files that are gone
+    private void writeCache() {
+        EntryCache cache =
+                EntryCache.newBuilder()
+                        .setVersion(CACHE_VERSION)
+                        .putAllEntries(
+                                new TreeMap<String, EntryCache.CachedEntry>(mNewCachedEntries))
+                        .build();
+        Path cachePath = Paths.get(mCacheFile);
+        Path tmpPath = Paths.get(mCacheFile + ".tmp");
+        try {
+            try (FileOutputStream output = new FileOutputStream(tmpPath.toFile())) {
+                cache.writeTo(output);
+            }
+            Files.move(tmpPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.printf(
+                    "Saved %d cached entries to %s\n", cache.getEntriesCount(), mCacheFile);
+        } catch (IOException e) {
+            System.err.println("IOException:" + e.getMessage());
+        }
+    }
+
+    private void setReleaseInfo(FileParser fParser) {
+        switch (fParser.getType()) {
+            case TEST_SUITE_TRADEFED:
+                mRelContentBuilder.setTestSuiteTradefed(
+                        fParser.getFileEntryBuilder().getRelativePath());
+                TestSuiteTradefedParser tstParser = (TestSuiteTradefedParser) fParser;
+                // get [cts]-known-failures.xml
+                mRelContentBuilder.addAllKnownFailures(tstParser.getKnownFailureList());
+                mRelContentBuilder.setName(tstParser.getName());
+                mRelContentBuilder.setFullname(tstParser.getFullName());
+                mRelContentBuilder.setBuildNumber(tstParser.getBuildNumber());
+                mRelContentBuilder.setTargetArch(tstParser.getTargetArch());
+                mRelContentBuilder.setVersion(tstParser.getVersion());
+                mRelContentBuilder.setReleaseType(ReleaseType.TEST_SUITE);
+                break;
+            case BUILD_PROP:
+                BuildPropParser bpParser = (BuildPropParser) fParser;
+                try {
+                    mRelContentBuilder.setReleaseType(ReleaseType.DEVICE_BUILD);
+                    mRelContentBuilder.setName(bpParser.getName());
+                    mRelContentBuilder.setFullname(bpParser.getFullName());
+                    mRelContentBuilder.setBuildNumber(bpParser.getBuildNumber());
+                    mRelContentBuilder.setVersion(bpParser.getVersion());
+                    mRelContentBuilder.putAllProperties(bpParser.getProperties());
+                } catch (Exception e) {
+                    System.err.println(
+                            "No product name, version & etc. in "
+                                    + fParser.getFile().getAbsoluteFile()
+                                    + ", err:"
+                                    + e.getMessage());
+                }
+                break;
+            default:
+        }
+    }
+
+    private static boolean isReleaseInfo(Entry.EntryType eType) {
+        return eType == Entry.EntryType.TEST_SUITE_TRADEFED
+                || eType == Entry.EntryType.BUILD_PROP;
+    }
+
+    // The entry builder of a parsed file or folder, its parent folder is set by the caller
+    private static class ParseResult {
+        final Entry.Builder entryBuilder;
+        final long size;
+        // parsers of the files describing the release, in the order they were found
+        final List<FileParser> releaseInfoParsers;
+
+        ParseResult(Entry.Builder entryBuilder, long size, List<FileParser> releaseInfoParsers) {
+            this.entryBuilder = entryBuilder;
+            this.size = size;
+            this.releaseInfoParsers = releaseInfoParsers;
+        }
+    }
+
+    // Parses a single file
+    private class FileTask extends RecursiveTask<ParseResult> {
+        private final File mFile;
+
+        FileTask(File file) {
+            mFile = file;
+        }
+
+        @Override
+        protected ParseResult compute() {
+            String fileRelativePath =
+                    mRootPath.relativize(Paths.get(mFile.getAbsolutePath())).toString();
+            FileParser fParser = FileParser.getParser(mFile);
+            Entry.Builder cachedEntryBuilder = getCachedEntryBuilder(fParser, fileRelativePath);
+            if (cachedEntryBuilder != null) {
+                return new ParseResult(
+                        cachedEntryBuilder, mFile.length(), new ArrayList<FileParser>());
+            }
+            Entry.Builder fileEntryBuilder = fParser.getFileEntryBuilder();
+            fileEntryBuilder.setRelativePath(fileRelativePath);
+
+            // System.err.println("File:" + file.getAbsoluteFile());
+            if (fParser.getDependencies() != null) {
+                fileEntryBuilder.addAllDependencies(fParser.getDependencies());
+            }
+            if (fParser.getDynamicLoadingDependencies() != null) {
+                fileEntryBuilder.addAllDynamicLoadingDependencies(
+                        fParser.getDynamicLoadingDependencies());
+            }
+            fileEntryBuilder.setAbiBits(fParser.getAbiBits());
+            fileEntryBuilder.setAbiArchitecture(fParser.getAbiArchitecture());
+            cacheEntry(mFile, fileEntryBuilder.build());
+
+            List<FileParser> releaseInfoParsers = new ArrayList<FileParser>();
+            if (isReleaseInfo(fParser.getType())) {
+                releaseInfoParsers.add(fParser);
+            }
+            return new ParseResult(fileEntryBuilder, mFile.length(), releaseInfoParsers);
+        }
+    }
+
+    // Parses all files in a folder, and its subfolders, in parallel
+    private class FolderTask extends RecursiveTask<ParseResult> {
+        private final File mFolder;
+
+        FolderTask(File folder) {
+            mFolder = folder;
+        }
+
+        @Override
+        protected ParseResult compute() {
+            Entry.Builder folderEntry = Entry.newBuilder();
+            Path folderPath = Paths.get(mFolder.getAbsolutePath());
+            String folderRelativePath = mRootPath.relativize(folderPath).toString();
+            String parentFolder =
+                    folderRelativePath.isEmpty() ? ROOT_FOLDER_TAG : folderRelativePath;
+            File[] fileList = mFolder.listFiles();
+            long folderSize = 0L;
+            List<Entry> entryList = new ArrayList<Entry>();
+            List<FileParser> releaseInfoParsers = new ArrayList<FileParser>();
+
+            // walks through all files
+            System.out.println("Parsing: " + folderRelativePath);
+            // skip if it's a symbolic link to a folder
+            if (fileList != null) {
+                List<RecursiveTask<ParseResult>> tasks = new ArrayList<>();
+                for (File file : fileList) {
+                    if (file.isFile()) {
+                        tasks.add(new FileTask(file));
+                    } else if (file.isDirectory()) {
+                        // Checks subfolders
+                        tasks.add(new FolderTask(file));
                     }
-                    Entry sfEntry = subFolderEntry.build();
-                    entryList.add(sfEntry);
-                    mEntries.put(sfEntry.getRelativePath(), sfEntry);
-                    folderSize += sfEntry.getSize();
+                }
+                invokeAll(tasks);
+                for (RecursiveTask<ParseResult> task : tasks) {
+                    ParseResult result = task.join();
+                    result.entryBuilder.setParentFolder(parentFolder);
+                    Entry entry = result.entryBuilder.build();
+                    entryList.add(entry);
+                    addEntry(entry);
+                    folderSize += result.size;
+                    releaseInfoParsers.addAll(result.releaseInfoParsers);
                 }
             }
+            folderEntry.setName(folderRelativePath);
+            folderEntry.setSize(folderSize);
+            folderEntry.setType(Entry.EntryType.FOLDER);
+            folderEntry.setContentId(getFolderContentId(folderEntry, entryList));
+            folderEntry.setRelativePath(folderRelativePath);
+            return new ParseResult(folderEntry, folderSize, releaseInfoParsers);
         }
-        folderEntry.setName(folderRelativePath);
-        folderEntry.setSize(folderSize);
-        folderEntry.setType(Entry.EntryType.FOLDER);
-        folderEntry.setContentId(getFolderContentId(folderEntry, entryList));
-        folderEntry.setRelativePath(folderRelativePath);
-        return folderEntry;
     }
 
     private static String getFolderContentId(Entry.Builder folderEntry, List<Entry> entryList) {
         String id = null;
         try {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
-            for (Entry entry : entryList) {
+            // Orders the entries so the id does not depend on the order files were listed in
+            List<Entry> sortedEntryList = new ArrayList<Entry>(entryList);
+            sortedEntryList.sort(Comparator.comparing(Entry::getRelativePath));
+            for (Entry entry : sortedEntryList) {
                 md.update(entry.getContentId().getBytes(StandardCharsets.UTF_8));
             }
             // Converts to Base64 String
@@ -227,31 +518,10 @@ class ReleaseParser {
 
     // writes releaes content to a CSV file
     public void writeRelesaeContentCsvFile(String relNameVer, String csvFile) {
-        try {
-            FileWriter fWriter = new FileWriter(csvFile);
-            PrintWriter pWriter = new PrintWriter(fWriter);
-            // Header
-            pWriter.printf(
-                    "release,type,name,size,relative_path,content_id,parent_folder,code_id,architecture,bits,dependencies,dynamic_loading_dependencies,services\n");
+        try (CsvEntryWriter csvWriter = new CsvEntryWriter(relNameVer, csvFile)) {
             for (Entry entry : getFileEntries()) {
-                pWriter.printf(
-                        "%s,%s,%s,%d,%s,%s,%s,%s,%s,%d,%s,%s,%s\n",
-                        relNameVer,
-                        entry.getType(),
-                        entry.getName(),
-                        entry.getSize(),
-                        entry.getRelativePath(),
-                        entry.getContentId(),
-                        entry.getParentFolder(),
-                        entry.getCodeId(),
-                        entry.getAbiArchitecture(),
-                        entry.getAbiBits(),
-                        String.join(" ", entry.getDependenciesList()),
-                        String.join(" ", entry.getDynamicLoadingDependenciesList()),
-                        RcParser.toString(entry.getServicesList()));
+                csvWriter.write(entry);
             }
-            pWriter.flush();
-            pWriter.close();
         } catch (IOException e) {
             System.err.println("IOException:" + e.getMessage());
         }
@@ -23,8 +23,12 @@ import com.google.protobuf.TextFormat;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Level;
@@ -35,13 +39,14 @@ public class SoParser extends FileParser {
     private String mArch;
     private List<String> mDependencies;
     private List<String> mDynamicLoadingDependencies;
-    private ReadElf mElf;
     private String mPackageName;
     private ApiPackage.Builder mExternalApiPackageBuilder;
     private HashMap<String, ApiClass.Builder> mExternalApiClassBuilderMap;
     private ApiPackage.Builder mInternalApiPackageBuilder;
     private AppInfo.Builder mAppInfoBuilder;
     private boolean mParseInternalApi;
+    // Content of a SO in memory, e.g. in an APK, instead of the file
+    private ByteBuffer mContent;
 
     public SoParser(File file) {
         super(file);
@@ -56,11 +61,40 @@ public class SoParser extends FileParser {
         mParseInternalApi = false;
     }
 
+    /**
+     * Parses a SO from memory.
+     *
+     * @param name the name of the SO, e.g. its path in an APK
+     * @param content the content of the SO between the buffer's position and limit
+     */
+    public SoParser(String name, ByteBuffer content) {
+        this(new File(name));
+        mContent = content;
+    }
+
     @Override
     public Entry.EntryType getType() {
         return Entry.EntryType.SO;
     }
 
+    @Override
+    public String getFileContentId() {
+        if (mContent == null) {
+            return super.getFileContentId();
+        }
+        if (NO_ID.equals(mContentId)) {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                md.update(mContent.duplicate());
+                // Converts to Base64 String
+                mContentId = Base64.getEncoder().encodeToString(md.digest());
+            } catch (NoSuchAlgorithmException e) {
+                System.err.println("NoSuchAlgorithmException:" + e.getMessage());
+            }
+        }
+        return mContentId;
+    }
+
     @Override
     public String getCodeId() {
         return getFileContentId();
@@ -135,8 +169,13 @@ public class SoParser extends FileParser {
         mExternalApiPackageBuilder = ApiPackage.newBuilder();
         mExternalApiClassBuilderMap = new HashMap<String, ApiClass.Builder>();
         mInternalApiPackageBuilder = ApiPackage.newBuilder();
+        ReadElf mElf = null;
         try {
-            ReadElf mElf = ReadElf.read(getFile());
+            if (mContent != null) {
+                mElf = ReadElf.read(getFile().getPath(), mContent);
+            } else {
+                mElf = ReadElf.read(getFile());
+            }
             mBits = mElf.getBits();
             mArch = mElf.getArchitecture();
             mDependencies = mElf.getDynamicDependencies();
@@ -155,6 +194,10 @@ public class SoParser extends FileParser {
                                     "SoParser fails to parse %s. \n%s",
                                     getFileName(), ex.getMessage()));
             ex.printStackTrace();
+        } finally {
+            if (mElf != null) {
+                mElf.close();
+            }
         }
     }
 
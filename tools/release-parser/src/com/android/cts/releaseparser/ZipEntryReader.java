@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.cts.releaseparser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the content of zip entries into memory instead of extracting them to files.
+ *
+ * <p>Stored entries, e.g. page aligned native libraries in an APK, are returned as read only slices
+ * of the memory mapped zip file, so reading them copies nothing. Compressed entries are inflated
+ * into a buffer of the entry's size.
+ */
+class ZipEntryReader {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+    // Offsets and sizes of Zip64 archives do not fit in the fixed size fields
+    private static final long ZIP64_MAGIC = 0xffffffffL;
+
+    private final ZipFile mZipFile;
+    // null when the zip file is too large to be mapped in one piece
+    private final ByteBuffer mBuffer;
+    // Local header offsets of the entries by name, read from the central directory on demand
+    private Map<String, Integer> mLocalHeaderOffsets;
+
+    ZipEntryReader(File file, ZipFile zipFile) throws IOException {
+        mZipFile = zipFile;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= Integer.MAX_VALUE) {
+                // The mapping remains valid after the channel has been closed.
+                mBuffer =
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, size)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                mBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Gets the content of the entry.
+     *
+     * @return a buffer with the content between its position and limit, which must not be
+     *     modified.
+     */
+    public ByteBuffer getContent(ZipEntry entry) throws IOException {
+        if (entry.getMethod() == ZipEntry.STORED && mBuffer != null) {
+            Integer offset = getLocalHeaderOffsets().get(entry.getName());
+            if (offset != null) {
+                ByteBuffer content = getStoredContent(offset, entry.getSize());
+                if (content != null) {
+                    return content;
+                }
+            }
+        }
+        try (InputStream iStream = mZipFile.getInputStream(entry)) {
+            return ByteBuffer.wrap(readFully(iStream, entry.getSize()));
+        }
+    }
+
+    /** Gets the content of the entry as an array, for APIs that do not accept a buffer. */
+    public byte[] getBytes(ZipEntry entry) throws IOException {
+        ByteBuffer content = getContent(entry);
+        if (content.hasArray()
+                && content.arrayOffset() == 0
+                && content.position() == 0
+                && content.remaining() == content.array().length) {
+            return content.array();
+        }
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer getStoredContent(int localHeaderOffset, long size) {
+        if (size < 0
+                || localHeaderOffset + (long) LOCAL_HEADER_SIZE > mBuffer.limit()
+                || mBuffer.getInt(localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            return null;
+        }
+        int nameLength = mBuffer.getShort(localHeaderOffset + 26) & 0xffff;
+        int extraLength = mBuffer.getShort(localHeaderOffset + 28) & 0xffff;
+        long dataOffset = (long) localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+        if (dataOffset + size > mBuffer.limit()) {
+            return null;
+        }
+        ByteBuffer content = mBuffer.asReadOnlyBuffer();
+        content.position((int) dataOffset);
+        content.limit((int) (dataOffset + size));
+        return content.slice();
+    }
+
+    private Map<String, Integer> getLocalHeaderOffsets() {
+        if (mLocalHeaderOffsets == null) {
+            mLocalHeaderOffsets = new HashMap<>();
+            int end = findEndOfCentralDirectory();
+            if (end < 0) {
+                return mLocalHeaderOffsets;
+            }
+            long offset = mBuffer.getInt(end + 16) & ZIP64_MAGIC;
+            int count = mBuffer.getShort(end + 10) & 0xffff;
+            for (int i = 0; i < count; i++) {
+                if (offset + CENTRAL_HEADER_SIZE > mBuffer.limit()
+                        || mBuffer.getInt((int) offset) != CENTRAL_HEADER_SIGNATURE) {
+                    break;
+                }
+                int header = (int) offset;
+                int nameLength = mBuffer.getShort(header + 28) & 0xffff;
+                int extraLength = mBuffer.getShort(header + 30) & 0xffff;
+                int commentLength = mBuffer.getShort(header + 32) & 0xffff;
+                long localHeaderOffset = mBuffer.getInt(header + 42) & ZIP64_MAGIC;
+                if (header + CENTRAL_HEADER_SIZE + nameLength > mBuffer.limit()) {
+                    break;
+                }
+                // Zip64 entries are left to ZipFile
+                if (localHeaderOffset != ZIP64_MAGIC) {
+                    byte[] name = new byte[nameLength];
+                    ByteBuffer nameBuffer = mBuffer.duplicate();
+                    nameBuffer.position(header + CENTRAL_HEADER_SIZE);
+                    nameBuffer.get(name);
+                    mLocalHeaderOffsets.put(
+                            new String(name, StandardCharsets.UTF_8), (int) localHeaderOffset);
+                }
+                offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            }
+        }
+        return mLocalHeaderOffsets;
+    }
+
+    // Searches backwards as the end of central directory record is followed by a comment
+    private int findEndOfCentralDirectory() {
+        int last = mBuffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (mBuffer.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] readFully(InputStream iStream, long size) throws IOException {
+        if (size >= 0 && size <= Integer.MAX_VALUE - 8) {
+            byte[] content = new byte[(int) size];
+            int offset = 0;
+            int length;
+            while (offset < content.length
+                    && (length = iStream.read(content, offset, content.length - offset)) >= 0) {
+                offset += length;
+            }
+            int next = offset == content.length ? iStream.read() : -1;
+            if (offset == content.length && next < 0) {
+                return content;
+            }
+            // The size in the zip did not match the data, so fall back to reading it all.
+            ByteArrayOutputStream oStream = new ByteArrayOutputStream();
+            oStream.write(content, 0, offset);
+            if (next >= 0) {
+                oStream.write(next);
+                copy(iStream, oStream);
+            }
+            return oStream.toByteArray();
+        }
+        ByteArrayOutputStream oStream = new ByteArrayOutputStream();
+        copy(iStream, oStream);
+        return oStream.toByteArray();
+    }
+
+    private static void copy(InputStream iStream, ByteArrayOutputStream oStream)
+            throws IOException {
+        byte[] buffer = new byte[FileParser.READ_BLOCK_SIZE];
+        int length;
+        while ((length = iStream.read(buffer)) >= 0) {
+            oStream.write(buffer, 0, length);
+        }
+    }
+}
@@ -19,9 +19,7 @@ package com.android.cts.releaseparser;
 import com.android.cts.releaseparser.ReleaseProto.*;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -92,22 +90,6 @@ public class ZipParser extends FileParser {
         mParseInternalApi = parseInternalApi;
     }
 
-    public static File getFilefromZip(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
-        String fileName = zipEntry.getName();
-        File tmpFile = File.createTempFile("RPZ", "");
-        tmpFile.deleteOnExit();
-        InputStream iStream = zipFile.getInputStream(zipEntry);
-        FileOutputStream fOutputStream = new FileOutputStream(tmpFile);
-        byte[] buffer = new byte[READ_BLOCK_SIZE];
-        int length;
-        while ((length = iStream.read(buffer)) >= 0) {
-            fOutputStream.write(buffer, 0, length);
-        }
-        iStream.close();
-        fOutputStream.close();
-        return tmpFile;
-    }
-
     public PackageFileContent getPackageFileContent() {
         if (mPackageFileContentBuilder == null) {
             parseFileContent();
@@ -125,6 +107,7 @@ public class ZipParser extends FileParser {
 
         try {
             zFile = new ZipFile(getFile());
+            ZipEntryReader entryReader = new ZipEntryReader(getFile(), zFile);
 
             final Enumeration<? extends ZipEntry> entries = zFile.entries();
             while (entries.hasMoreElements()) {
@@ -144,8 +127,8 @@ public class ZipParser extends FileParser {
                         // ToDo: to be optimized if taking too long
                         if (name.endsWith(SO_EXT_TAG)) {
                             try {
-                                final File soFile = getFilefromZip(zFile, entry);
-                                SoParser fParser = new SoParser(soFile);
+                                SoParser fParser =
+                                        new SoParser(name, entryReader.getContent(entry));
                                 fParser.setPackageName(name);
                                 fParser.setParseInternalApi(mParseInternalApi);
 